@@ -46,6 +46,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -90,6 +91,7 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
     private boolean                   debugSource;
     private boolean                   debugLines;
     private boolean                   debugVars;
+    private int                       targetVersion = -1;
     @Nullable private ErrorHandler    optionalCompileErrorHandler;
     @Nullable private WarningHandler  optionalWarningHandler;
     @Nullable private Permissions     permissions;
@@ -360,6 +362,23 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
             }
         };
 
+        List<String> options = new ArrayList<String>();
+        options.add(
+            this.debugSource
+            ? "-g:source" + (this.debugLines ? ",lines" : "") + (this.debugVars ? ",vars" : "")
+            : this.debugLines
+            ? "-g:lines" + (this.debugVars ? ",vars" : "")
+            : this.debugVars
+            ? "-g:vars"
+            : "-g:none"
+        );
+        if (this.targetVersion != -1) {
+            options.add("-source");
+            options.add(Integer.toString(this.targetVersion));
+            options.add("-target");
+            options.add(Integer.toString(this.targetVersion));
+        }
+
         // Run the compiler.
         try {
 
@@ -367,15 +386,7 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
                 null,                                      // out
                 fileManager,                               // fileManager
                 dl,                                        // diagnosticListener
-                Collections.singletonList(                 // options
-                    this.debugSource
-                    ? "-g:source" + (this.debugLines ? ",lines" : "") + (this.debugVars ? ",vars" : "")
-                    : this.debugLines
-                    ? "-g:lines" + (this.debugVars ? ",vars" : "")
-                    : this.debugVars
-                    ? "-g:vars"
-                    : "-g:none"
-                ),
+                options,                                   // options
                 null,                                      // classes
                 Collections.singleton(compilationUnit)     // compilationUnits
             ).call()) {
@@ -418,6 +429,9 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
         this.debugVars   = debugVars;
     }
 
+    @Override public void
+    setTargetVersion(int version) { this.targetVersion = version; }
+
     @Override public void
     setParentClassLoader(@Nullable ClassLoader optionalParentClassLoader) {
         this.parentClassLoader = (
@@ -2661,7 +2661,7 @@ class JlsTest extends CommonsCompilerTestSuite {
         }
 
         String script = "java.util.function.Function<String, Integer> f = (var s) -> s.length();\n";
-        if (this.isJanino)                                            this.assertScriptUncookable(script, "NYI");
+        if (this.isJanino)                                            this.assertScriptUncookable(script, "require class file version 52");
         if (this.isJdk && CommonsCompilerTestSuite.JVM_VERSION >= 11) this.assertScriptExecutable(script);
     }
 }
@@ -92,6 +92,12 @@ class ICompiler {
     public abstract void
     setDebugSource(boolean value);
 
+    /**
+     * Equivalent of {@code -target}, e.g. 8 for class file version 52.0.
+     */
+    public abstract void
+    setTargetVersion(int version);
+
     /**
      * Equivalent of {@code --source-path}.
      */
@@ -141,6 +147,23 @@ class ICompiler {
     public abstract void
     setVerbose(boolean verbose);
 
+    /**
+     * Equivalent of {@code -j}: The number of threads that parse and compile concurrently. Implementations that do
+     * not support concurrent compilation ignore this setting.
+     *
+     * @param threadCount 1 (the default) means "parse and compile sequentially"
+     */
+    public void
+    setThreadCount(int threadCount) {}
+
+    /**
+     * Equivalent of {@code -incremental}: Compile only the source resources that have changed since the previous
+     * compilation, plus those that depend on APIs that have changed. Implementations that do not track dependencies
+     * ignore this setting.
+     */
+    public void
+    setIncremental(boolean value) {}
+
     /**
      * Equivalent of {@code -rebuild}.
      */
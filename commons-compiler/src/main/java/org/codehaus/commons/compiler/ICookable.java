@@ -71,6 +71,12 @@ interface ICookable {
      */
     void setDebuggingInformation(boolean debugSource, boolean debugLines, boolean debugVars);
 
+    /**
+     * Determines the Java version of the generated classes, e.g. 8 for class file version 52.0; equivalent of
+     * "{@code -target}". The default is implementation-specific.
+     */
+    void setTargetVersion(int version);
+
     /**
      * Reads, scans, parses and compiles Java tokens from the given {@link Reader}.
      *
@@ -54,6 +54,9 @@ class CompilerDemo {
         boolean         debugLines            = true;
         boolean         debugVars             = false;
         boolean         rebuild               = false;
+        int             targetVersion         = -1;
+        int             threadCount           = 1;
+        boolean         incremental           = false;
 
         // Process command line options.
         int i;
@@ -95,6 +98,15 @@ class CompilerDemo {
             if ("-rebuild".equals(arg)) {
                 rebuild = true;
             } else
+            if ("-target".equals(arg)) {
+                targetVersion = Integer.parseInt(args[++i]);
+            } else
+            if ("-j".equals(arg)) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else
+            if ("-incremental".equals(arg)) {
+                incremental = true;
+            } else
             if ("-help".equals(arg)) {
                 System.out.printf(CompilerDemo.USAGE, (Object[]) null);
                 System.exit(1);
@@ -126,6 +138,9 @@ class CompilerDemo {
         compiler.setDebugLines(debugLines);
         compiler.setDebugVars(debugVars);
         compiler.setRebuild(rebuild);
+        if (targetVersion != -1) compiler.setTargetVersion(targetVersion);
+        if (threadCount != 1) compiler.setThreadCount(threadCount);
+        compiler.setIncremental(incremental);
 
         // Compile source files.
         try {
@@ -161,6 +176,10 @@ class CompilerDemo {
         + "  -g:{source,lines,vars}    Generate only some debugging info%n"
         + "  -rebuild                  Compile all source files, even if the class files%n"
         + "                            seems up-to-date%n"
+        + "  -target <version>         Generate class files for the given Java version, e.g. \"8\"%n"
+        + "  -j <n>                    Parse and compile in <n> threads%n"
+        + "  -incremental              Compile only changed source files and their dependents%n"
+        + "                            (requires \"-d\")%n"
         + "  -help%n"
         + "%n"
         + "The default encoding in this environment is \"" + Charset.defaultCharset().toString() + "\".%n"
@@ -0,0 +1,125 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.nullanalysis.Nullable;
+import org.codehaus.janino.util.ClassFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the last two steps from an AST to loaded classes: {@link ClassFile#store(java.io.OutputStream)} and {@link
+ * ClassLoader#defineClass(String, byte[], int, int) defining} the resulting bytecode.
+ */
+@State(Scope.Benchmark) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1) @Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1)
+public
+class ClassFileBenchmark {
+
+    @Param({
+        "org/codehaus/janino/Parser.java",
+        "org/codehaus/janino/Scanner.java",
+        "org/codehaus/janino/util/ClassFile.java",
+    }) public String fileName;
+
+    private ClassFile[] classFiles;
+
+    private final Map<String /*className*/, byte[] /*data*/> classes = new HashMap<String, byte[]>();
+
+    @Setup public void
+    setUp() throws CompileException, IOException {
+
+        this.classFiles = Corpus.compile(this.fileName, Corpus.load(this.fileName));
+
+        for (ClassFile cf : this.classFiles) this.classes.put(cf.getThisClassName(), cf.toByteArray());
+    }
+
+    /**
+     * @return The total number of bytes stored
+     */
+    @Benchmark public int
+    store() throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (ClassFile cf : this.classFiles) cf.store(baos);
+        return baos.size();
+    }
+
+    /**
+     * Defines all classes of the compilation unit in a fresh class loader, but does not initialize them.
+     */
+    @Benchmark public void
+    define(Blackhole blackhole) throws ClassNotFoundException {
+
+        ClassLoader cl = new DefiningClassLoader(this.classes);
+        for (String className : this.classes.keySet()) blackhole.consume(cl.loadClass(className));
+    }
+
+    /**
+     * Defines the given classes itself, instead of delegating to the parent first; otherwise the classes from the
+     * benchmark's class path (which, by design, have the same names) would be loaded instead.
+     */
+    private static
+    class DefiningClassLoader extends ClassLoader {
+
+        private final Map<String /*className*/, byte[] /*data*/> classes;
+
+        DefiningClassLoader(Map<String /*className*/, byte[] /*data*/> classes) {
+            super(ClassFileBenchmark.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override protected synchronized Class<?>
+        loadClass(@Nullable String name, boolean resolve) throws ClassNotFoundException {
+            assert name != null;
+
+            byte[] data = (byte[]) this.classes.get(name);
+            if (data == null) return super.loadClass(name, resolve);
+
+            Class<?> c = this.findLoadedClass(name);
+            if (c == null) c = super.defineClass(name, data, 0, data.length);
+            if (resolve) this.resolveClass(c);
+            return c;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.janino.CodeContext;
+import org.codehaus.janino.Mod;
+import org.codehaus.janino.util.ClassFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how {@link CodeContext} copes with very large methods: Generates a method of {@link #instructions}
+ * one-byte instructions, half of which are appended, and the other half of which are inserted through an {@link
+ * CodeContext.Inserter} at the beginning of the method (which is what the code generator does, on a smaller scale,
+ * e.g. for widening conversions of left operands).
+ */
+@State(Scope.Benchmark) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1) @Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1)
+public
+class CodeContextBenchmark {
+
+    /**
+     * The opcode of the JVM's "NOP" instruction ({@code org.codehaus.janino.Opcode} is not accessible from here).
+     */
+    private static final byte NOP = 0x00;
+
+    @Param({ "10000", "50000" }) public int instructions;
+
+    /**
+     * Only appends instructions; this is the baseline.
+     *
+     * @return The code size
+     */
+    @Benchmark public int
+    append() {
+
+        CodeContext cc = CodeContextBenchmark.newCodeContext();
+        for (int i = 0; i < this.instructions; i++) cc.write(i / 10 + 1, CodeContextBenchmark.NOP);
+
+        cc.fixUpAndRelocate();
+        return cc.getCodeSize();
+    }
+
+    /**
+     * Alternately appends instructions and inserts them at the beginning of the method.
+     *
+     * @return The code size
+     */
+    @Benchmark public int
+    insert() {
+
+        CodeContext          cc    = CodeContextBenchmark.newCodeContext();
+        CodeContext.Inserter front = cc.newInserter();
+        for (int i = 0; i < this.instructions; i++) {
+            if (i % 2 == 0) {
+                cc.write(i / 10 + 1, CodeContextBenchmark.NOP);
+            } else {
+                cc.pushInserter(front);
+                try {
+                    cc.write(i / 10 + 1, CodeContextBenchmark.NOP);
+                } finally {
+                    cc.popInserter();
+                }
+            }
+        }
+
+        cc.fixUpAndRelocate();
+        return cc.getCodeSize();
+    }
+
+    private static CodeContext
+    newCodeContext() {
+        ClassFile cf = new ClassFile(Mod.PUBLIC, "Lpkg/Generated;", "Ljava/lang/Object;", new String[0]);
+        return new CodeContext(cf, "generated()V");
+    }
+}
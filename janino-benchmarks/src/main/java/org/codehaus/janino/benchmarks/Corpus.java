@@ -0,0 +1,102 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.ClassLoaderIClassLoader;
+import org.codehaus.janino.IClassLoader;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.UnitCompiler;
+import org.codehaus.janino.util.ClassFile;
+
+/**
+ * The input of the benchmarks: Some of JANINO's own source files, which the build copies into the "{@code corpus}"
+ * resource directory. These are realistic, medium-to-large compilation units that JANINO can compile in isolation.
+ */
+final
+class Corpus {
+
+    private Corpus() {}
+
+    /**
+     * The names of the compilation units that the benchmarks can process; see the {@code <resources>} of the POM.
+     */
+    static final String[] FILE_NAMES = {
+        "org/codehaus/janino/Parser.java",
+        "org/codehaus/janino/Scanner.java",
+        "org/codehaus/janino/util/ClassFile.java",
+    };
+
+    /**
+     * @return The contents of the named corpus file
+     */
+    static String
+    load(String fileName) throws IOException {
+
+        InputStream is = Corpus.class.getClassLoader().getResourceAsStream("corpus/" + fileName);
+        if (is == null) throw new IOException("Corpus file \"" + fileName + "\" not found on the class path");
+
+        try {
+            Reader        r  = new InputStreamReader(is, "UTF-8");
+            StringBuilder sb = new StringBuilder();
+            char[]        ca = new char[8192];
+            for (int n = r.read(ca); n != -1; n = r.read(ca)) sb.append(ca, 0, n);
+            return sb.toString();
+        } finally {
+            try { is.close(); } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * @return The parsed compilation unit
+     */
+    static Java.AbstractCompilationUnit
+    parse(String fileName, String source) throws CompileException, IOException {
+        return new Parser(new Scanner(fileName, new StringReader(source))).parseAbstractCompilationUnit();
+    }
+
+    /**
+     * @return An {@link IClassLoader} that loads the referenced classes through the benchmark's class loader
+     */
+    static IClassLoader
+    iClassLoader() { return new ClassLoaderIClassLoader(Corpus.class.getClassLoader()); }
+
+    /**
+     * @return The class files that result from compiling the named corpus file, without debugging information
+     */
+    static ClassFile[]
+    compile(String fileName, String source) throws CompileException, IOException {
+        return new UnitCompiler(Corpus.parse(fileName, source), Corpus.iClassLoader()).compileUnit(false, false, false);
+    }
+}
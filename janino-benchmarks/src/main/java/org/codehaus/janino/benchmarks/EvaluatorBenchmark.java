@@ -0,0 +1,154 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.ICompilerFactory;
+import org.codehaus.commons.compiler.IExpressionEvaluator;
+import org.codehaus.commons.compiler.IScriptEvaluator;
+import org.codehaus.commons.nullanalysis.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the end-to-end latency of cooking an expression or a script through the "commons-compiler" API, and the
+ * time to evaluate the result. Both the JANINO and the JDK implementation are benchmarked, so the JDK serves as the
+ * baseline.
+ */
+@State(Scope.Benchmark) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1) @Warmup(iterations = 5, time = 2) @Measurement(iterations = 5, time = 2)
+public
+class EvaluatorBenchmark {
+
+    /**
+     * A typical rule engine condition.
+     */
+    private static final String EXPRESSION = (
+        "order.length() > 3 && (amount > 1000.0 ? discount * 2 : discount) < 0.25 * amount "
+        + "|| order.startsWith(\"VIP-\") && quantity % 12 == 0"
+    );
+    private static final String[]   EXPRESSION_PARAMETER_NAMES = { "order", "amount", "discount", "quantity" };
+    private static final Class<?>[] EXPRESSION_PARAMETER_TYPES = {
+        String.class, double.class, double.class, int.class,
+    };
+    private static final Object[]   EXPRESSION_ARGUMENTS = { "VIP-4711", 1234.5, 17.0, 24 };
+
+    /**
+     * A typical templating script. (The parameters are {@link List}s rather than arrays, because the JDK
+     * implementation does not support array parameter types.)
+     */
+    private static final String SCRIPT = (
+        ""
+        + "StringBuilder sb = new StringBuilder();\n"
+        + "sb.append(\"<table>\\n\");\n"
+        + "for (int i = 0; i < names.size(); i++) {\n"
+        + "    String name = (String) names.get(i);\n"
+        + "    if (name == null || name.length() == 0) continue;\n"
+        + "    double score = ((Double) scores.get(i)).doubleValue() * factor;\n"
+        + "    sb.append(\"  <tr class=\\\"\").append(i % 2 == 0 ? \"even\" : \"odd\").append(\"\\\">\");\n"
+        + "    sb.append(\"<td>\").append(i + 1).append(\"</td>\");\n"
+        + "    sb.append(\"<td>\").append(name.toUpperCase()).append(\"</td>\");\n"
+        + "    sb.append(\"<td>\").append(String.format(\"%.2f\", new Object[] { score })).append(\"</td>\");\n"
+        + "    sb.append(\"</tr>\\n\");\n"
+        + "}\n"
+        + "sb.append(\"</table>\\n\");\n"
+        + "return sb.toString();\n"
+    );
+    private static final String[]   SCRIPT_PARAMETER_NAMES = { "names", "scores", "factor" };
+    private static final Class<?>[] SCRIPT_PARAMETER_TYPES = { List.class, List.class, double.class };
+    private static final Object[]   SCRIPT_ARGUMENTS       = {
+        Arrays.asList("alpha", "beta", "", "gamma", "delta"),
+        Arrays.asList(1.0, 2.5, 3.0, 4.25, 5.5),
+        1.5,
+    };
+
+    /**
+     * The "commons-compiler" implementation under test.
+     */
+    @Param({ "janino", "jdk" }) public String compiler;
+
+    private ICompilerFactory     compilerFactory;
+    private IExpressionEvaluator cookedExpressionEvaluator;
+    private IScriptEvaluator     cookedScriptEvaluator;
+
+    @Setup public void
+    setUp() throws Exception {
+
+        this.compilerFactory = CompilerFactoryFactory.getCompilerFactory(
+            "janino".equals(this.compiler)
+            ? "org.codehaus.janino.CompilerFactory"
+            : "org.codehaus.commons.compiler.jdk.CompilerFactory"
+        );
+
+        this.cookedExpressionEvaluator = this.cookExpression();
+        this.cookedScriptEvaluator     = this.cookScript();
+    }
+
+    @Benchmark public IExpressionEvaluator
+    cookExpression() throws CompileException {
+
+        IExpressionEvaluator ee = this.compilerFactory.newExpressionEvaluator();
+        ee.setParameters(EvaluatorBenchmark.EXPRESSION_PARAMETER_NAMES, EvaluatorBenchmark.EXPRESSION_PARAMETER_TYPES);
+        ee.setExpressionType(boolean.class);
+        ee.cook(EvaluatorBenchmark.EXPRESSION);
+        return ee;
+    }
+
+    @Benchmark @Nullable public Object
+    evaluateExpression() throws InvocationTargetException {
+        return this.cookedExpressionEvaluator.evaluate(EvaluatorBenchmark.EXPRESSION_ARGUMENTS);
+    }
+
+    @Benchmark public IScriptEvaluator
+    cookScript() throws CompileException {
+
+        IScriptEvaluator se = this.compilerFactory.newScriptEvaluator();
+        se.setParameters(EvaluatorBenchmark.SCRIPT_PARAMETER_NAMES, EvaluatorBenchmark.SCRIPT_PARAMETER_TYPES);
+        se.setReturnType(String.class);
+        se.cook(EvaluatorBenchmark.SCRIPT);
+        return se;
+    }
+
+    @Benchmark @Nullable public Object
+    evaluateScript() throws InvocationTargetException {
+        return this.cookedScriptEvaluator.evaluate(EvaluatorBenchmark.SCRIPT_ARGUMENTS);
+    }
+}
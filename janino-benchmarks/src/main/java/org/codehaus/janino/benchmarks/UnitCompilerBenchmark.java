@@ -0,0 +1,94 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.IClassLoader;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.UnitCompiler;
+import org.codehaus.janino.util.ClassFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link UnitCompiler#compileUnit(boolean, boolean, boolean)}, i.e. the translation of an already parsed
+ * compilation unit into class files.
+ * <p>
+ *   The AST is modified by the compilation (it caches resolved types and the like), so each invocation gets a freshly
+ *   parsed AST; the time for parsing is <em>not</em> included in the measurement. The {@link IClassLoader} is shared
+ *   by all invocations, so the measurement does not include the loading of the referenced JRE classes, either.
+ * </p>
+ */
+@State(Scope.Benchmark) @BenchmarkMode(Mode.SingleShotTime) @OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1) @Warmup(iterations = 20) @Measurement(iterations = 20)
+public
+class UnitCompilerBenchmark {
+
+    @Param({
+        "org/codehaus/janino/Parser.java",
+        "org/codehaus/janino/Scanner.java",
+        "org/codehaus/janino/util/ClassFile.java",
+    }) public String fileName;
+
+    @Param({ "false", "true" }) public boolean debug;
+
+    private String                       source;
+    private IClassLoader                 iClassLoader;
+    private Java.AbstractCompilationUnit compilationUnit;
+
+    @Setup public void
+    setUp() throws IOException {
+        this.source       = Corpus.load(this.fileName);
+        this.iClassLoader = Corpus.iClassLoader();
+    }
+
+    @Setup(Level.Invocation) public void
+    parse() throws CompileException, IOException {
+        this.compilationUnit = Corpus.parse(this.fileName, this.source);
+    }
+
+    @Benchmark public ClassFile[]
+    compile() throws CompileException {
+        return new UnitCompiler(this.compilationUnit, this.iClassLoader).compileUnit(
+            this.debug, // debugSource
+            this.debug, // debugLines
+            this.debug  // debugVars
+        );
+    }
+}
@@ -0,0 +1,49 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * <a href="http://openjdk.java.net/projects/code-tools/jmh/">JMH</a> benchmarks for the phases of JANINO: Scanning
+ * ({@link org.codehaus.janino.benchmarks.ScannerBenchmark}), parsing ({@link
+ * org.codehaus.janino.benchmarks.ParserBenchmark}), compiling ({@link
+ * org.codehaus.janino.benchmarks.UnitCompilerBenchmark}), generating the bytecode of very large methods ({@link
+ * org.codehaus.janino.benchmarks.CodeContextBenchmark}), storing and defining class files ({@link
+ * org.codehaus.janino.benchmarks.ClassFileBenchmark}), and cooking and evaluating expressions and scripts ({@link
+ * org.codehaus.janino.benchmarks.EvaluatorBenchmark}).
+ * <p>
+ *   To run all benchmarks:
+ * </p>
+ * <pre>
+ *   mvn -f janino-parent/pom.xml -Pbenchmarks install -DskipTests
+ *   java -jar janino-benchmarks/target/benchmarks.jar
+ * </pre>
+ * <p>
+ *   To run a subset, pass a regular expression, e.g. "{@code java -jar benchmarks.jar Parser}"; "{@code -prof gc}"
+ *   reports allocation rates, which are as relevant for JANINO as the raw times.
+ * </p>
+ */
+@NotNullByDefault
+package org.codehaus.janino.benchmarks;
+
+import org.codehaus.commons.nullanalysis.NotNullByDefault;
@@ -43,6 +43,7 @@ import org.codehaus.commons.compiler.util.StringUtil;
 import org.codehaus.commons.compiler.util.resource.Resource;
 import org.codehaus.commons.compiler.util.resource.ResourceFinder;
 import org.codehaus.commons.nullanalysis.Nullable;
+import org.codehaus.janino.util.resource.IndexedPathResourceFinder;
 import org.codehaus.janino.util.resource.JarDirectoriesResourceFinder;
 import org.codehaus.janino.util.resource.MultiResourceFinder;
 import org.codehaus.janino.util.resource.PathResourceFinder;
@@ -110,7 +111,7 @@ class AbstractCompiler extends ICompiler {
                 new MultiResourceFinder(Arrays.asList(
                     new PathResourceFinder(bcp),
                     new JarDirectoriesResourceFinder(this.extensionDirectories),
-                    new PathResourceFinder(this.classPath)
+                    new IndexedPathResourceFinder(this.classPath)
                 )),
                 null
             ));
@@ -169,7 +170,7 @@ class AbstractCompiler extends ICompiler {
                     new MultiResourceFinder(Arrays.asList(
                         rf,
                         new JarDirectoriesResourceFinder(this.extensionDirectories),
-                        new PathResourceFinder(this.classPath)
+                        new IndexedPathResourceFinder(this.classPath)
                     )),
                     null
                 ));
@@ -75,14 +75,30 @@ class ByteArrayClassLoader extends ClassLoader {
         // JNLP. See
         //     http://jira.codehaus.org/browse/JANINO-104
         //     http://www.nabble.com/-Help-jel--java.security.AccessControlException-to13073723.html
-        return super.defineClass(
+        long     begin  = System.nanoTime();
+        Class<?> result = super.defineClass(
             name,                                 // name
             data,                                 // b
             0,                                    // off
             data.length,                          // len
             this.getClass().getProtectionDomain() // protectionDomain
         );
+
+        CompilationListener cl = this.compilationListener;
+        if (cl != null) cl.classDefined(name, data.length, System.nanoTime() - begin);
+
+        return result;
+    }
+
+    /**
+     * @param compilationListener Is notified each time this class loader defines a class
+     */
+    void
+    setCompilationListener(@Nullable CompilationListener compilationListener) {
+        this.compilationListener = compilationListener;
     }
 
     private final Map<String /*className-or-classFileName*/, byte[] /*data*/> classes;
+
+    @Nullable private CompilationListener compilationListener;
 }
@@ -29,9 +29,10 @@ package org.codehaus.janino;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
@@ -66,6 +67,8 @@ class ClassBodyEvaluator extends SimpleCompiler implements IClassBodyEvaluator {
     private Class<?>[]         implementedTypes = ClassBodyEvaluator.ZERO_CLASSES;
     @Nullable private Class<?> result; // null=uncooked
 
+    @Nullable private PersistentEvaluatorCache persistentCache;
+
     /**
      * Equivalent to
      * <pre>
@@ -220,9 +223,76 @@ class ClassBodyEvaluator extends SimpleCompiler implements IClassBodyEvaluator {
     @Deprecated @Override public void
     setImplementedTypes(Class<?>[] implementedInterfaces) { this.setImplementedInterfaces(implementedInterfaces); }
 
+    /**
+     * Configures a {@link PersistentEvaluatorCache} that is consulted whenever this evaluator is cooked from a {@link
+     * String} or a {@link Reader}; notice that {@link #cook(Scanner)} never uses the cache.
+     *
+     * @param optionalPersistentCache {@code null} means "no persistent caching" (the default)
+     */
+    public void
+    setPersistentCache(@Nullable PersistentEvaluatorCache optionalPersistentCache) {
+        this.persistentCache = optionalPersistentCache;
+    }
+
+    /**
+     * @return The configured persistent cache, or {@code null}
+     */
+    @Nullable PersistentEvaluatorCache
+    getPersistentCache() { return this.persistentCache; }
+
+    @Override void
+    addCacheKeyElements(List<Object> result) {
+        super.addCacheKeyElements(result);
+        String[] dis = this.optionalDefaultImports;
+        result.add(dis == null ? null : Arrays.asList(dis.clone()));
+        result.add(this.className);
+        result.add(this.optionalExtendedType);
+        result.add(Arrays.asList(this.implementedTypes.clone()));
+    }
+
+    @Override public void
+    cook(@Nullable String optionalFileName, Reader r) throws CompileException, IOException {
+
+        PersistentEvaluatorCache pc = this.persistentCache;
+        if (pc == null || !this.isCacheable()) {
+            super.cook(optionalFileName, r);
+            return;
+        }
+
+        String classBody = ClassBodyEvaluator.readNormalized(r);
+
+        List<Object> key = new ArrayList<Object>();
+        this.addCacheKeyElements(key);
+        key.add(optionalFileName);
+        key.add(classBody);
+        byte[] hash = PersistentEvaluatorCache.hash(key);
+
+        // Cache hit?
+        Map<String /*className*/, byte[] /*bytecode*/> classes = pc.get(hash);
+        if (classes != null) {
+            this.cook(classes);
+            this.result = this.loadGeneratedClass();
+            return;
+        }
+
+        this.cook(new Scanner(optionalFileName, classBody.toCharArray()));
+        pc.put(hash, this.getBytecodes());
+    }
+
+    /**
+     * Reads all characters from the <var>reader</var>, and normalizes the line separators (which does not affect line
+     * numbers).
+     */
+    static String
+    readNormalized(Reader reader) throws IOException {
+        return Cookable.readString(reader).replace("\r\n", "\n").replace('\r', '\n');
+    }
+
     @Override public void
     cook(Scanner scanner) throws CompileException, IOException {
 
+        this.startCompilationMetrics(scanner);
+
         Parser               parser          = new Parser(scanner);
         Java.CompilationUnit compilationUnit = this.makeCompilationUnit(parser);
 
@@ -252,7 +322,7 @@ class ClassBodyEvaluator extends SimpleCompiler implements IClassBodyEvaluator {
         // Set default imports.
         if (this.optionalDefaultImports != null) {
             for (String defaultImport : this.optionalDefaultImports) {
-                Parser parser = new Parser(new Scanner(null, new StringReader(defaultImport)));
+                Parser parser = new Parser(new Scanner(null, defaultImport.toCharArray()));
                 l.add(parser.parseImportDeclarationBody());
                 parser.read(TokenType.END_OF_INPUT);
             }
@@ -282,7 +352,7 @@ class ClassBodyEvaluator extends SimpleCompiler implements IClassBodyEvaluator {
      */
     protected Java.PackageMemberClassDeclaration
     addPackageMemberClassDeclaration(Location location, Java.CompilationUnit compilationUnit) {
-        String cn  = this.className;
+        String cn  = this.getGeneratedClassName();
         int    idx = cn.lastIndexOf('.');
         if (idx != -1) {
             compilationUnit.setPackageDeclaration(new Java.PackageDeclaration(location, cn.substring(0, idx)));
@@ -311,20 +381,45 @@ class ClassBodyEvaluator extends SimpleCompiler implements IClassBodyEvaluator {
     compileToClass(Java.CompilationUnit compilationUnit) throws CompileException {
 
         // Compile and load the compilation unit.
-        ClassLoader cl = this.compileToClassLoader(compilationUnit);
+        this.compileToClassLoader(compilationUnit);
+
+        return this.loadGeneratedClass();
+    }
+
+    /**
+     * @return The generated class, loaded through the class loader that was created by the last {@code cook()}
+     */
+    final Class<?>
+    loadGeneratedClass() {
 
         // Find the generated class by name.
+        String cn = this.getGeneratedClassName();
         try {
-            return cl.loadClass(this.className);
+            return this.getResult().loadClass(cn);
         } catch (ClassNotFoundException ex) {
             throw new InternalCompilerException((
                 "SNO: Generated compilation unit does not declare class '"
-                + this.className
+                + cn
                 + "'"
             ), ex);
         }
     }
 
+    /**
+     * @return The configured class name; a class name without a package is placed in the package of the {@link
+     *         #setHiddenClassHost(Object) hidden class host} (if any), because hidden classes must be declared there
+     */
+    private String
+    getGeneratedClassName() {
+
+        Class<?> hchc = this.getHiddenClassHostClass();
+        if (hchc == null || this.className.indexOf('.') != -1) return this.className;
+
+        String hostClassName = hchc.getName();
+        int    idx           = hostClassName.lastIndexOf('.');
+        return idx == -1 ? this.className : hostClassName.substring(0, idx + 1) + this.className;
+    }
+
     @Override public Class<?>
     getClazz() {
 
@@ -454,18 +454,16 @@ class ClassFileIClass extends IClass {
         for (int i = 0; i < parameterTypes.length; ++i) parameterTypes[i] = this.resolveClass(md.parameterFds[i]);
 
         // Determine thrown exceptions.
-        IClass[]                  tes = null;
-        ClassFile.AttributeInfo[] ais = methodInfo.getAttributes();
-        for (ClassFile.AttributeInfo ai : ais) {
-            if (ai instanceof ClassFile.ExceptionsAttribute) {
-                ConstantClassInfo[] ccis = ((ClassFile.ExceptionsAttribute) ai).getExceptions(this.classFile);
-                tes = new IClass[ccis.length];
-                for (int i = 0; i < tes.length; ++i) {
-                    tes[i] = this.resolveClass(Descriptor.fromInternalForm(ccis[i].getName(this.classFile)));
-                }
+        IClass[]                      tes = new IClass[0];
+        ClassFile.ExceptionsAttribute ea  = methodInfo.getExceptionsAttribute();
+        if (ea != null) {
+            ConstantClassInfo[] ccis = ea.getExceptions(this.classFile);
+            tes = new IClass[ccis.length];
+            for (int i = 0; i < tes.length; ++i) {
+                tes[i] = this.resolveClass(Descriptor.fromInternalForm(ccis[i].getName(this.classFile)));
             }
         }
-        final IClass[] thrownExceptions = tes == null ? new IClass[0] : tes;
+        final IClass[] thrownExceptions = tes;
 
         // Determine access.
         final Access access = ClassFileIClass.accessFlags2Access(methodInfo.getAccessFlags());
@@ -550,13 +548,7 @@ class ClassFileIClass extends IClass {
         // attribute, we assume that it has a constant value. Notice that this assumption is not always correct,
         // because typical Java compilers do not generate a "ConstantValue" attribute for fields like
         // "int RED = 0", because "0" is the default value for an integer field.
-        ClassFile.ConstantValueAttribute cva = null;
-        for (ClassFile.AttributeInfo ai : fieldInfo.getAttributes()) {
-            if (ai instanceof ClassFile.ConstantValueAttribute) {
-                cva = (ClassFile.ConstantValueAttribute) ai;
-                break;
-            }
-        }
+        ClassFile.ConstantValueAttribute cva = fieldInfo.getConstantValueAttribute();
 
         final Object optionalConstantValue = (
             cva == null
@@ -33,6 +33,18 @@ import org.codehaus.commons.nullanalysis.Nullable;
 
 /**
  * An {@link IClassLoader} that loads {@link IClass}es through a reflection {@link ClassLoader}.
+ * <p>
+ *   The {@link IClass}es of the classes that were defined by the bootstrap class loader or by the platform (a.k.a.
+ *   "extension") class loader are created only once and shared by all {@link ClassLoaderIClassLoader}s of the JVM;
+ *   this saves the time and memory to reflect the JDK types anew for each compilation.
+ * </p>
+ * <p>
+ *   Name resolution probes many descriptors that do not exist, e.g. {@code Ljava/util/String;} for each
+ *   import-on-demand declaration. Because only the JDK can define types in the {@code java.*} packages, such misses
+ *   are answered by the shared {@link IClassLoader} as well, and are thus remembered for the lifetime of the JVM.
+ *   That {@link IClassLoader} checks for the class file before it loads a class, so that a miss does not cost a
+ *   {@link ClassNotFoundException}.
+ * </p>
  */
 public
 class ClassLoaderIClassLoader extends IClassLoader {
@@ -43,11 +55,18 @@ class ClassLoaderIClassLoader extends IClassLoader {
      * @param classLoader The delegate that loads the classes
      */
     public
-    ClassLoaderIClassLoader(ClassLoader classLoader) {
+    ClassLoaderIClassLoader(ClassLoader classLoader) { this(classLoader, false); }
+
+    @SuppressWarnings("null") private
+    ClassLoaderIClassLoader(@Nullable ClassLoader classLoader, boolean isJdkIClassLoader) {
         super(
             null   // optionalParentIClassLoader
         );
-        this.classLoader = classLoader;
+        this.classLoader       = classLoader;
+        this.isJdkIClassLoader = isJdkIClassLoader;
+
+        // "findIClass()" is thread-safe.
+        super.registerAsParallelCapable();
 
         super.postConstruct();
     }
@@ -71,6 +90,18 @@ class ClassLoaderIClassLoader extends IClassLoader {
     findIClass(String descriptor) throws ClassNotFoundException {
         ClassLoaderIClassLoader.LOGGER.entering(null, "findIClass", descriptor);
 
+        String className = Descriptor.toClassName(descriptor);
+
+        if (this.isJdkIClassLoader) {
+            if (!JdkIClassLoaderHolder.mayExist(className)) return null;
+        } else
+        if (className.startsWith("java.")) {
+
+            // Types in the "java.*" packages can only be defined by the JDK, so if the JDK IClassLoader cannot load
+            // the type, then our class loader cannot either.
+            if (JdkIClassLoaderHolder.INSTANCE.loadIClass(descriptor) == null) return null;
+        }
+
         Class<?> clazz;
         try {
 
@@ -86,7 +117,7 @@ class ClassLoaderIClassLoader extends IClassLoader {
             //
 
 //            clazz = this.classLoader.loadClass(Descriptor.toClassName(descriptor));
-            clazz = Class.forName(Descriptor.toClassName(descriptor), false, this.classLoader);
+            clazz = Class.forName(className, false, this.classLoader);
         } catch (ClassNotFoundException e) {
             if (e.getException() == null) {
                 return null;
@@ -97,10 +128,87 @@ class ClassLoaderIClassLoader extends IClassLoader {
         }
         ClassLoaderIClassLoader.LOGGER.log(Level.FINE, "clazz={0}", clazz);
 
-        IClass result = new ReflectionIClass(clazz, this);
+        // JDK types are wrapped only once, by the JDK IClassLoader. (Notice that "clazz" is the class that the
+        // "classLoader" actually resolved, so a class loader that does not delegate to its parent does not get the
+        // shared IClass.)
+        IClass result = null;
+        if (!this.isJdkIClassLoader && ClassLoaderIClassLoader.isJdkClass(clazz)) {
+            IClass jdkIClass = JdkIClassLoaderHolder.INSTANCE.loadIClass(descriptor);
+            if (jdkIClass instanceof ReflectionIClass && ((ReflectionIClass) jdkIClass).getClazz() == clazz) {
+                result = jdkIClass;
+            }
+        }
+        if (result == null) result = new ReflectionIClass(clazz, this);
+
         this.defineIClass(result);
         return result;
     }
 
+    private static boolean
+    isJdkClass(Class<?> clazz) {
+        ClassLoader cl = clazz.getClassLoader();
+        return cl == null || cl == JdkIClassLoaderHolder.PLATFORM_CLASS_LOADER;
+    }
+
+    /**
+     * Lazily creates the process-wide {@link IClassLoader} that wraps the JDK types.
+     */
+    private static final
+    class JdkIClassLoaderHolder {
+
+        /**
+         * The parent of the system class loader, i.e. the "platform class loader" (JRE 9+) or the "extension class
+         * loader" (JRE 8-), or {@code null} iff it cannot be determined.
+         */
+        @Nullable static final ClassLoader PLATFORM_CLASS_LOADER = JdkIClassLoaderHolder.getPlatformClassLoader();
+
+        /**
+         * Whether {@link #mayExist(String)} can rely on the class files of the JDK types being visible as resources;
+         * e.g. a security manager may hide them.
+         */
+        private static final boolean CLASS_FILES_VISIBLE = JdkIClassLoaderHolder.hasClassFile("java.lang.Object");
+
+        static final ClassLoaderIClassLoader
+        INSTANCE = new ClassLoaderIClassLoader(JdkIClassLoaderHolder.PLATFORM_CLASS_LOADER, true);
+
+        @Nullable private static ClassLoader
+        getPlatformClassLoader() {
+            try {
+                return ClassLoader.getSystemClassLoader().getParent();
+            } catch (SecurityException se) {
+                return null;
+            }
+        }
+
+        /**
+         * @return {@code false} iff the JDK definitely has no type with that name
+         */
+        static boolean
+        mayExist(String className) {
+            return !JdkIClassLoaderHolder.CLASS_FILES_VISIBLE || JdkIClassLoaderHolder.hasClassFile(className);
+        }
+
+        private static boolean
+        hasClassFile(String className) {
+
+            String      resourceName = className.replace('.', '/') + ".class";
+            ClassLoader cl           = JdkIClassLoaderHolder.PLATFORM_CLASS_LOADER;
+            try {
+                return (
+                    cl == null
+                    ? ClassLoader.getSystemResource(resourceName)
+                    : cl.getResource(resourceName)
+                ) != null;
+            } catch (SecurityException se) {
+                return true;
+            }
+        }
+    }
+
     private final ClassLoader classLoader;
+
+    /**
+     * Whether this is the {@link JdkIClassLoaderHolder#INSTANCE}.
+     */
+    private final boolean isJdkIClassLoader;
 }
@@ -30,16 +30,22 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.nullanalysis.Nullable;
 import org.codehaus.janino.util.ClassFile;
 import org.codehaus.janino.util.ClassFile.AttributeInfo;
@@ -60,6 +66,11 @@ class CodeContext {
     private static final byte    INVALID_OFFSET = -2;
     private static final int     MAX_STACK_SIZE = 65535;
 
+    /**
+     * The maximum number of bytes that one {@link FixUp} may insert.
+     */
+    public static final int MAX_FIX_UP_GROWTH = 3;
+
     private final ClassFile classFile;
     private final String    functionName;
 
@@ -71,6 +82,19 @@ class CodeContext {
     private Inserter                        currentInserter;
     private final List<ExceptionTableEntry> exceptionTableEntries;
 
+    /**
+     * The frames for the "StackMapTable" attribute; {@code null} iff none were generated.
+     *
+     * @see #generateStackMapFrames(short, String, MethodDescriptor, IClassFinder)
+     */
+    @Nullable private ClassFile.StackMapTableAttribute.StackMapFrame[] stackMapFrames;
+
+    /**
+     * The offsets of the branch targets and the exception handlers, as determined by {@link
+     * #flowAnalysis(String)}; {@code null} before the flow analysis.
+     */
+    @Nullable private BitSet branchTargets;
+
     /**
      * All the local variables that are allocated in any block in this {@link CodeContext}.
      */
@@ -98,6 +122,23 @@ class CodeContext {
     private short                   nextLocalVariableSlot;
     private final List<Relocatable> relocatables = new ArrayList<Relocatable>();
 
+    /**
+     * While the code is being generated, it is kept in a doubly-linked list of {@link Segment}s, so that an insertion
+     * at an {@link Inserter} never moves the code behind it. {@link #flatten()} concatenates the segments into {@link
+     * #code}, after which both fields are {@code null}.
+     */
+    @Nullable private Segment firstSegment, lastSegment;
+
+    /**
+     * Whether the {@link Segment#position}s are up-to-date; see {@link #computeSegmentPositions()}.
+     */
+    private boolean segmentPositionsValid = true;
+
+    /**
+     * The total number of bytes in all segments.
+     */
+    private int segmentedCodeSize;
+
     /**
      * Creates an empty "Code" attribute.
      */
@@ -108,16 +149,22 @@ class CodeContext {
 
         this.maxStack              = 0;
         this.maxLocals             = 0;
-        this.code                  = new byte[CodeContext.INITIAL_SIZE];
+        this.code                  = new byte[0];
         this.beginning             = new Offset();
         this.end                   = new Inserter();
         this.currentInserter       = this.end;
         this.exceptionTableEntries = new ArrayList<ExceptionTableEntry>();
 
-        this.beginning.offset = 0;
-        this.end.offset       = 0;
-        this.beginning.next   = this.end;
-        this.end.prev         = this.beginning;
+        Segment s = new Segment(new byte[CodeContext.INITIAL_SIZE], 0, 0);
+        this.firstSegment = s;
+        this.lastSegment  = s;
+
+        this.beginning.offset  = 0;
+        this.beginning.segment = s;
+        this.end.offset        = 0;
+        this.end.segment       = s;
+        this.beginning.next    = this.end;
+        this.end.prev          = this.beginning;
     }
 
     /**
@@ -222,6 +269,8 @@ class CodeContext {
         short            localVariableTableAttributeNameIndex,
         short            stackMapTableAttributeNameIndex
     ) throws IOException {
+        this.flatten();
+
         dos.writeShort(this.maxStack);                                               // max_stack
         dos.writeShort(this.maxLocals);                                              // max_locals
         dos.writeInt(this.end.offset);                                               // code_length
@@ -268,38 +317,13 @@ class CodeContext {
             if (ai != null) attributes.add(ai);
         }
 
-//        // Add "StackMapTable" attribute.
-//        attributes.add(new ClassFile.AttributeInfo(stackMapTableAttributeNameIndex) {
-//            @Override protected void
-//            storeBody(DataOutputStream dos) throws IOException {
-//                if (CodeContext.this.functionName.equals("eval0()Ljava/lang/Object;")) {
-//                    short occi = CodeContext.this.getClassFile().addConstantClassInfo("Ljava/lang/Object;");
-//                    short scci = CodeContext.this.getClassFile().addConstantClassInfo("Ljava/lang/String;");
-//                    dos.write(new byte[] {
-//
-//                        // xxx1:
-//                        0, 3,    // number_of_entries
-//                        66,      // entries[0]: 3: same_locals_1_stack_item_frame(stack=String)
-//                            7, (byte) (scci >> 8), (byte) scci,
-//                        78,      // entries[1]: 17: same_locals_1_stack_item_frame(stack=String)
-//                            7, (byte) (scci >> 8), (byte) scci,
-//                        -1,      // entries[2]: 19: full_frame(offsetDelta=1, locals=[], stack=[String, Object])
-//                            0, 1,                               // offset_delta
-//                            0, 0,                               // number_of_locals
-//                            0, 2,                               // number_of_stack_items
-//                            7, (byte) (scci >> 8), (byte) scci, // stack[0]: String
-//                            7, (byte) (occi >> 8), (byte) occi, // stack[1]: Object
-//
-////                        // xxx2:
-////                        0, 2,    // number_of_entries
-////                        15,      // entries[0]: 15: same_frame
-////                        64, 1,   // entries[1]: 16: same_locals_1_stack_item_frame(stack=int)
-//                    });
-//                } else {
-//                    dos.writeShort(0);
-//                }
-//            }
-//        });
+        // Add "StackMapTable" attribute.
+        if (stackMapTableAttributeNameIndex != 0) {
+            ClassFile.StackMapTableAttribute.StackMapFrame[] smfs = this.stackMapFrames;
+            if (smfs != null && smfs.length > 0) {
+                attributes.add(new ClassFile.StackMapTableAttribute(stackMapTableAttributeNameIndex, smfs));
+            }
+        }
 
         dos.writeShort(attributes.size());                     // attributes_count
         for (ClassFile.AttributeInfo attribute : attributes) { // attributes;
@@ -358,6 +382,13 @@ class CodeContext {
 
     /**
      * Checks the code for consistency; updates the "maxStack" member.
+     * <p>
+     *   The analysis is an iterative worklist over the basic blocks: Each reachable block is analyzed exactly once,
+     *   and propagates its operand stack size to the leaders of its successors. Thus, neither the depth of the Java
+     *   stack nor the memory depend on the length of the code, but only on the number of basic blocks. As a side
+     *   effect, the analysis records the branch targets for {@link #generateStackMapFrames(short, String,
+     *   MethodDescriptor, IClassFinder)}.
+     * </p>
      *
      * @throws InternalCompilerException The bytecode is inconsistent wrt/ the operand stack
      */
@@ -365,104 +396,162 @@ class CodeContext {
     flowAnalysis(String functionName) {
         CodeContext.LOGGER.entering(null, "flowAnalysis", functionName);
 
-        int[] stackSizes = new int[this.end.offset];
-        Arrays.fill(stackSizes, CodeContext.UNEXAMINED);
-
-        // Analyze flow from offset zero.
-        this.flowAnalysis(
-            functionName,
-            this.code,       // code
-            this.end.offset, // codeSize
-            0,               // offset
-            0,               // stackSize
-            stackSizes       // stackSizes
-        );
+        this.flatten();
 
-        // Analyze flow from exception handler entry points.
-        int analyzedExceptionHandlers = 0;
-        while (analyzedExceptionHandlers != this.exceptionTableEntries.size()) {
-            for (ExceptionTableEntry exceptionTableEntry : this.exceptionTableEntries) {
-                if (stackSizes[exceptionTableEntry.startPc.offset] != CodeContext.UNEXAMINED) {
-                    this.flowAnalysis(
-                        functionName,
-                        this.code,                                          // code
-                        this.end.offset,                                    // codeSize
-                        exceptionTableEntry.handlerPc.offset,               // offset
-                        stackSizes[exceptionTableEntry.startPc.offset] + 1, // stackSize
-                        stackSizes                                          // stackSizes
-                    );
-                    ++analyzedExceptionHandlers;
-                }
-            }
-        }
+        new FlowAnalyzer(functionName).run();
+    }
+
+    /**
+     * The state of one execution of {@link CodeContext#flowAnalysis(String)}.
+     */
+    private
+    class FlowAnalyzer {
 
-        // Check results and determine maximum stack size.
-        this.maxStack = 0;
-        for (int i = 0; i < stackSizes.length; ++i) {
-            int ss = stackSizes[i];
+        private final String functionName;
+        private final byte[] code     = CodeContext.this.code;
+        private final int    codeSize = CodeContext.this.end.offset;
 
-            if (ss == CodeContext.UNEXAMINED) {
-                String message = functionName + ": Unexamined code at offset " + i;
-                if (CodeContext.LOGGER.isLoggable(Level.FINE)) {
-                    CodeContext.LOGGER.fine(message);
+        /**
+         * The offsets of all instructions.
+         */
+        private final BitSet instructions;
 
-                    // Complete normally, so the .class file is created and can be examined.
-                    return;
+        /**
+         * The offsets of the leaders of the basic blocks, in ascending order.
+         */
+        private final int[] leaders;
+
+        /**
+         * The operand stack size at the beginning of each basic block, or {@link CodeContext#UNEXAMINED}.
+         */
+        private final int[] stackSizes;
+
+        /**
+         * The indexes of the basic blocks that were reached, but not yet analyzed. Because a block is enqueued only
+         * when its stack size is set, it is enqueued at most once.
+         */
+        private final int[] worklist;
+        private int         worklistSize;
+
+        private int maxStack;
+
+        FlowAnalyzer(String functionName) {
+            this.functionName = functionName;
+
+            // Decode the code in one linear pass. The leaders of the basic blocks are offset zero, the branch
+            // targets, the instructions that follow a GOTO, RETURN, etc., the exception handlers, and the beginnings
+            // of the exception-protected ranges (which determine the stack sizes of the handlers).
+            BitSet instructions  = new BitSet(this.codeSize);
+            BitSet branchTargets = new BitSet(this.codeSize);
+            BitSet leaders       = new BitSet(this.codeSize);
+            leaders.set(0);
+            {
+                List<Integer> targets = new ArrayList<Integer>();
+                for (int offset = 0; offset < this.codeSize;) {
+                    instructions.set(offset);
+
+                    int nextOffset = CodeContext.this.decodeInstruction(offset, targets);
+                    for (Integer target : targets) {
+                        int t = target;
+                        if (t < 0 || t >= this.codeSize) {
+                            throw new InternalCompilerException(functionName + ": Offset " + t + " is out of range");
+                        }
+                        branchTargets.set(t);
+                    }
+                    targets.clear();
+
+                    if (CodeContext.isNoFallthrough(this.code, offset)) leaders.set(nextOffset);
+                    offset = nextOffset;
                 }
-                throw new InternalCompilerException(message);
+            }
+            for (ExceptionTableEntry ete : CodeContext.this.exceptionTableEntries) {
+                branchTargets.set(ete.handlerPc.offset);
+                leaders.set(ete.startPc.offset);
+            }
+            leaders.or(branchTargets);
+            leaders.clear(this.codeSize, Integer.MAX_VALUE);
+
+            this.instructions = instructions;
+
+            this.leaders = new int[leaders.cardinality()];
+            for (int i = 0, offset = leaders.nextSetBit(0); offset != -1; offset = leaders.nextSetBit(offset + 1)) {
+                this.leaders[i++] = offset;
             }
 
-            if (ss > this.maxStack) this.maxStack = ss;
+            this.stackSizes = new int[this.leaders.length];
+            Arrays.fill(this.stackSizes, CodeContext.UNEXAMINED);
+
+            this.worklist = new int[this.leaders.length];
+
+            CodeContext.this.branchTargets = branchTargets;
         }
-    }
 
-    /**
-     * @param functionName
-     * @param code
-     * @param codeSize
-     * @param offset       Where to start the analysis
-     * @param stackSize    Stack size on start
-     * @param stackSizes   Stack sizes at offsets within <var>code</var>; {@link #UNEXAMINED} value
-     *                     indicates that the stack size at a given offset has not yet been
-     *                     calculated
-     */
-    private void
-    flowAnalysis(
-        String functionName,
-        byte[] code,
-        int    codeSize,
-        int    offset,
-        int    stackSize,
-        int[]  stackSizes
-    ) {
-        for (;;) {
-            CodeContext.LOGGER.entering(
-                null,
-                "flowAnalysis",
-                new Object[] { functionName, code, codeSize, offset, stackSize, stackSizes }
-            );
+        void
+        run() {
+
+            // Analyze flow from offset zero, and from the exception handlers of the reached protected ranges.
+            this.propagate(0, 0);
+
+            List<ExceptionTableEntry> etes    = CodeContext.this.exceptionTableEntries;
+            boolean[]                 reached = new boolean[etes.size()];
+            for (;;) {
+                while (this.worklistSize > 0) this.analyzeBlock(this.worklist[--this.worklistSize]);
 
-            // Check current bytecode offset.
-            if (offset < 0 || offset >= codeSize) {
-                throw new InternalCompilerException(functionName + ": Offset " + offset + " is out of range");
+                boolean progress = false;
+                for (int i = 0; i < reached.length; i++) {
+                    if (reached[i]) continue;
+
+                    ExceptionTableEntry ete = (ExceptionTableEntry) etes.get(i);
+
+                    int ss = this.stackSizes[Arrays.binarySearch(this.leaders, ete.startPc.offset)];
+                    if (ss == CodeContext.UNEXAMINED) continue;
+
+                    this.propagate(ete.handlerPc.offset, ss + 1);
+                    reached[i] = true;
+                    progress   = true;
+                }
+                if (!progress) break;
             }
 
-            // Have we hit an area that has already been analyzed?
-            int css = stackSizes[offset];
-            if (css == stackSize) return; // OK.
-            if (css == CodeContext.INVALID_OFFSET) {
-                String message = functionName + ": Invalid offset";
-                if (CodeContext.LOGGER.isLoggable(Level.FINE)) {
-                    CodeContext.LOGGER.fine(message);
+            CodeContext.this.maxStack = this.maxStack;
 
-                    // Complete normally, so the .class file is created and can be examined.
+            // Check that all code was examined.
+            for (int i = 0; i < this.leaders.length; i++) {
+                if (this.stackSizes[i] == CodeContext.UNEXAMINED) {
+                    CodeContext.flowAnalysisError(
+                        this.functionName
+                        + ": Unexamined code at offset "
+                        + this.leaders[i]
+                    );
                     return;
                 }
-                throw new InternalCompilerException(message);
             }
+        }
+
+        /**
+         * Sets the stack size at the basic block that begins at the given <var>offset</var>, and enqueues the block,
+         * or verifies that it already has the same stack size.
+         */
+        private void
+        propagate(int offset, int stackSize) {
+
+            if (offset < 0 || offset >= this.codeSize) {
+                throw new InternalCompilerException(this.functionName + ": Offset " + offset + " is out of range");
+            }
+
+            if (!this.instructions.get(offset)) {
+                CodeContext.flowAnalysisError(this.functionName + ": Invalid offset");
+                return;
+            }
+
+            int index = Arrays.binarySearch(this.leaders, offset);
+            assert index >= 0;
+
+            int css = this.stackSizes[index];
+            if (css == stackSize) return; // OK.
             if (css != CodeContext.UNEXAMINED) {
-                String message = (
-                    functionName
+                CodeContext.flowAnalysisError(
+                    this.functionName
                     + ": Operand stack inconsistent at offset "
                     + offset
                     + ": Previous size "
@@ -470,241 +559,2236 @@ class CodeContext {
                     + ", now "
                     + stackSize
                 );
-                if (CodeContext.LOGGER.isLoggable(Level.FINE)) {
-                    CodeContext.LOGGER.fine(message);
+                return;
+            }
+
+            this.stackSizes[index]             = stackSize;
+            this.worklist[this.worklistSize++] = index;
+        }
+
+        /**
+         * Simulates the effect of the instructions of one basic block on the operand stack size, and propagates the
+         * resulting stack size to the successor blocks.
+         */
+        private void
+        analyzeBlock(int index) {
+            byte[] code       = this.code;
+            int    offset     = this.leaders[index];
+            int    stackSize  = this.stackSizes[index];
+            int    nextLeader = index + 1 < this.leaders.length ? this.leaders[index + 1] : this.codeSize;
+
+            for (;;) {
+                if (stackSize > this.maxStack) this.maxStack = stackSize;
+
+                // Analyze current opcode.
+                byte  opcode        = code[offset];
+                int   operandOffset = offset + 1;
+                short props;
+                if (opcode == Opcode.WIDE) {
+                    opcode = code[operandOffset++];
+                    props  = Opcode.WIDE_OPCODE_PROPERTIES[0xff & opcode];
+                } else {
+                    props = Opcode.OPCODE_PROPERTIES[0xff & opcode];
+                }
+                if (props == Opcode.INVALID_OPCODE) {
+                    throw new InternalCompilerException(
+                        this.functionName
+                        + ": Invalid opcode "
+                        + (0xff & opcode)
+                        + " at offset "
+                        + offset
+                    );
+                }
+
+                switch (props & Opcode.SD_MASK) {
+
+                case Opcode.SD_M4:
+                case Opcode.SD_M3:
+                case Opcode.SD_M2:
+                case Opcode.SD_M1:
+                case Opcode.SD_P0:
+                case Opcode.SD_P1:
+                case Opcode.SD_P2:
+                    stackSize += (props & Opcode.SD_MASK) - Opcode.SD_P0;
+                    break;
 
-                    // Complete normally, so the .class file is created and can be examined.
+                case Opcode.SD_0:
+                    stackSize = 0;
+                    break;
+
+                case Opcode.SD_GETFIELD:
+                    --stackSize;
+                case Opcode.SD_GETSTATIC: // SUPPRESS CHECKSTYLE FallThrough
+                    stackSize += CodeContext.this.determineFieldSize(
+                        CodeContext.extract16BitValue(operandOffset, code)
+                    );
+                    break;
+
+                case Opcode.SD_PUTFIELD:
+                    --stackSize;
+                case Opcode.SD_PUTSTATIC: // SUPPRESS CHECKSTYLE FallThrough
+                    stackSize -= CodeContext.this.determineFieldSize(
+                        CodeContext.extract16BitValue(operandOffset, code)
+                    );
+                    break;
+
+                case Opcode.SD_INVOKEVIRTUAL:
+                case Opcode.SD_INVOKESPECIAL:
+                case Opcode.SD_INVOKEINTERFACE:
+                    --stackSize;
+                case Opcode.SD_INVOKESTATIC:  // SUPPRESS CHECKSTYLE FallThrough
+                case Opcode.SD_INVOKEDYNAMIC:
+                    stackSize -= CodeContext.this.determineArgumentsSize(
+                        CodeContext.extract16BitValue(operandOffset, code)
+                    );
+                    break;
+
+                case Opcode.SD_MULTIANEWARRAY:
+                    stackSize -= code[operandOffset + 2] - 1;
+                    break;
+
+                default:
+                    throw new InternalCompilerException(this.functionName + ": Invalid stack delta");
+                }
+
+                if (stackSize < 0) {
+                    CodeContext.flowAnalysisError(
+                        CodeContext.this.classFile.getThisClassName()
+                        + '.'
+                        + this.functionName
+                        + ": Operand stack underrun at offset "
+                        + offset
+                    );
                     return;
                 }
-                throw new InternalCompilerException(message);
-            }
-            stackSizes[offset] = stackSize;
 
-            // Analyze current opcode.
-            byte  opcode        = code[offset];
-            int   operandOffset = offset + 1;
-            short props;
-            if (opcode == Opcode.WIDE) {
-                opcode = code[operandOffset++];
-                props  = Opcode.WIDE_OPCODE_PROPERTIES[0xff & opcode];
-            } else {
-                props = Opcode.OPCODE_PROPERTIES[0xff & opcode];
-            }
-            if (props == Opcode.INVALID_OPCODE) {
-                throw new InternalCompilerException(
-                    functionName
-                    + ": Invalid opcode "
-                    + (0xff & opcode)
-                    + " at offset "
-                    + offset
-                );
-            }
+                if (stackSize > CodeContext.MAX_STACK_SIZE) {
+                    CodeContext.flowAnalysisError(
+                        CodeContext.this.classFile.getThisClassName()
+                        + '.'
+                        + this.functionName
+                        + ": Operand stack overflow at offset "
+                        + offset
+                    );
+                    return;
+                }
 
-            switch (props & Opcode.SD_MASK) {
+                switch (props & Opcode.OP1_MASK) {
 
-            case Opcode.SD_M4:
-            case Opcode.SD_M3:
-            case Opcode.SD_M2:
-            case Opcode.SD_M1:
-            case Opcode.SD_P0:
-            case Opcode.SD_P1:
-            case Opcode.SD_P2:
-                stackSize += (props & Opcode.SD_MASK) - Opcode.SD_P0;
-                break;
+                case 0:
+                    ;
+                    break;
 
-            case Opcode.SD_0:
-                stackSize = 0;
-                break;
+                case Opcode.OP1_SB:
+                case Opcode.OP1_UB:
+                case Opcode.OP1_CP1:
+                case Opcode.OP1_LV1:
+                    ++operandOffset;
+                    break;
 
-            case Opcode.SD_GETFIELD:
-                --stackSize;
-            case Opcode.SD_GETSTATIC: // SUPPRESS CHECKSTYLE FallThrough
-                stackSize += this.determineFieldSize(CodeContext.extract16BitValue(operandOffset, code));
-                break;
+                case Opcode.OP1_SS:
+                case Opcode.OP1_CP2:
+                case Opcode.OP1_LV2:
+                    operandOffset += 2;
+                    break;
 
-            case Opcode.SD_PUTFIELD:
-                --stackSize;
-            case Opcode.SD_PUTSTATIC: // SUPPRESS CHECKSTYLE FallThrough
-                stackSize -= this.determineFieldSize(CodeContext.extract16BitValue(operandOffset, code));
-                break;
+                case Opcode.OP1_BO2:
+                    this.propagate(CodeContext.extract16BitValue(offset, operandOffset, code), stackSize);
+                    operandOffset += 2;
+                    break;
 
-            case Opcode.SD_INVOKEVIRTUAL:
-            case Opcode.SD_INVOKESPECIAL:
-            case Opcode.SD_INVOKEINTERFACE:
-                --stackSize;
-            case Opcode.SD_INVOKESTATIC: // SUPPRESS CHECKSTYLE FallThrough
-                stackSize -= this.determineArgumentsSize(CodeContext.extract16BitValue(operandOffset, code));
-                break;
+                case Opcode.OP1_JSR:
+                    {
+                        int targetOffset = CodeContext.extract16BitValue(offset, operandOffset, code);
+                        operandOffset += 2;
 
-            case Opcode.SD_MULTIANEWARRAY:
-                stackSize -= code[operandOffset + 2] - 1;
-                break;
+                        // The subroutine is analyzed only once, with the return address on top of the stack.
+                        int ti = Arrays.binarySearch(this.leaders, targetOffset);
+                        if (ti < 0 || this.stackSizes[ti] == CodeContext.UNEXAMINED) {
+                            this.propagate(targetOffset, stackSize + 1);
+                        }
+                    }
+                    break;
 
-            default:
-                throw new InternalCompilerException(functionName + ": Invalid stack delta");
-            }
+                case Opcode.OP1_BO4:
+                    this.propagate(CodeContext.extract32BitValue(offset, operandOffset, code), stackSize);
+                    operandOffset += 4;
+                    break;
 
-            if (stackSize < 0) {
-                String message = (
-                    this.classFile.getThisClassName()
-                    + '.'
-                    + functionName
-                    + ": Operand stack underrun at offset "
-                    + offset
-                );
-                if (CodeContext.LOGGER.isLoggable(Level.FINE)) {
-                    CodeContext.LOGGER.fine(message);
+                case Opcode.OP1_LOOKUPSWITCH:
+                    while ((operandOffset & 3) != 0) ++operandOffset;
+                    this.propagate(CodeContext.extract32BitValue(offset, operandOffset, code), stackSize);
+                    operandOffset += 4;
+                    {
+                        int npairs = CodeContext.extract32BitValue(0, operandOffset, code);
+                        operandOffset += 4;
+
+                        for (int i = 0; i < npairs; ++i) {
+                            operandOffset += 4; //skip match value
+                            this.propagate(CodeContext.extract32BitValue(offset, operandOffset, code), stackSize);
+                            operandOffset += 4; //advance over offset
+                        }
+                    }
+                    break;
 
-                    // Complete normally, so the .class file is created and can be examined.
-                    return;
+                case Opcode.OP1_TABLESWITCH:
+                    while ((operandOffset & 3) != 0) ++operandOffset;
+                    this.propagate(CodeContext.extract32BitValue(offset, operandOffset, code), stackSize);
+                    operandOffset += 4;
+                    {
+                        int low = CodeContext.extract32BitValue(offset, operandOffset, code);
+                        operandOffset += 4;
+                        int hi = CodeContext.extract32BitValue(offset, operandOffset, code);
+                        operandOffset += 4;
+                        for (int i = low; i <= hi; ++i) {
+                            this.propagate(CodeContext.extract32BitValue(offset, operandOffset, code), stackSize);
+                            operandOffset += 4;
+                        }
+                    }
+                    break;
+
+                default:
+                    throw new InternalCompilerException(this.functionName + ": Invalid OP1");
                 }
-                throw new InternalCompilerException(message);
-            }
 
-            if (stackSize > CodeContext.MAX_STACK_SIZE) {
-                String message = (
-                    this.classFile.getThisClassName()
-                    + '.'
-                    + functionName
-                    + ": Operand stack overflow at offset "
-                    + offset
-                );
-                if (CodeContext.LOGGER.isLoggable(Level.FINE)) {
-                    CodeContext.LOGGER.fine(message);
+                switch (props & Opcode.OP2_MASK) {
+
+                case 0:
+                    ;
+                    break;
 
-                    // Complete normally, so the .class file is created and can be examined.
+                case Opcode.OP2_SB:
+                    ++operandOffset;
+                    break;
+
+                case Opcode.OP2_SS:
+                    operandOffset += 2;
+                    break;
+
+                default:
+                    throw new InternalCompilerException(this.functionName + ": Invalid OP2");
+                }
+
+                switch (props & Opcode.OP3_MASK) {
+
+                case 0:
+                    ;
+                    break;
+
+                case Opcode.OP3_SB:
+                    ++operandOffset;
+                    break;
+
+                default:
+                    throw new InternalCompilerException(this.functionName + ": Invalid OP3");
+                }
+
+                if ((props & Opcode.NO_FALLTHROUGH) != 0) return;
+
+                offset = operandOffset;
+                if (offset == nextLeader) {
+                    this.propagate(offset, stackSize);
                     return;
                 }
-                throw new InternalCompilerException(message);
             }
+        }
+    }
 
-            switch (props & Opcode.OP1_MASK) {
+    /**
+     * Reports an inconsistency that the flow analysis found: If FINE logging is enabled, then the inconsistency is
+     * only logged, so the .class file is created and can be examined; otherwise an {@link InternalCompilerException}
+     * is thrown.
+     */
+    private static void
+    flowAnalysisError(String message) {
 
-            case 0:
-                ;
-                break;
+        if (CodeContext.LOGGER.isLoggable(Level.FINE)) {
+            CodeContext.LOGGER.fine(message);
+            return;
+        }
 
-            case Opcode.OP1_SB:
-            case Opcode.OP1_UB:
-            case Opcode.OP1_CP1:
-            case Opcode.OP1_LV1:
-                ++operandOffset;
-                break;
+        throw new InternalCompilerException(message);
+    }
 
-            case Opcode.OP1_SS:
-            case Opcode.OP1_CP2:
-            case Opcode.OP1_LV2:
-                operandOffset += 2;
-                break;
+    /**
+     * Computes the stack map frames (JVMS8 4.7.4) of the code, i.e. the types of the local variables and of the
+     * operand stack entries at each branch target and exception handler, by simulating the execution of all
+     * instructions. Class files of version 50 and higher need these frames for the type checking verifier (JVMS8
+     * 4.10.1); from version 51 on, that verifier is mandatory.
+     * <p>
+     *   Must be invoked after {@link #fixUpAndRelocate()} and {@link #flowAnalysis(String)}. The frames are later
+     *   stored as the "StackMapTable" attribute of the "Code" attribute; see {@link
+     *   #storeCodeAttributeBody(DataOutputStream, short, short, short)}.
+     * </p>
+     *
+     * @param accessFlags      The access flags of the method; relevant is only {@link Mod#STATIC}
+     * @param methodName       E.g. "{@code <init>}"
+     * @param methodDescriptor Determines the types of the initial local variables
+     * @param iClassFinder     Is used to find the common superclass where two reference types merge
+     */
+    public void
+    generateStackMapFrames(
+        short            accessFlags,
+        String           methodName,
+        MethodDescriptor methodDescriptor,
+        IClassFinder     iClassFinder
+    ) {
+        this.flatten();
 
-            case Opcode.OP1_BO2:
-                this.flowAnalysis(
-                    functionName,
-                    code,
-                    codeSize,
-                    CodeContext.extract16BitValue(offset, operandOffset, code),
-                    stackSize,
-                    stackSizes
+        final int codeSize = this.end.offset;
+
+        // Build the frame that is effective at the beginning of the method.
+        Frame initialFrame = new Frame(new VerificationType[this.maxLocals], new ArrayList<VerificationType>());
+        {
+            VerificationType[] locals = initialFrame.locals;
+            Arrays.fill(locals, VerificationType.TOP);
+
+            int index = 0;
+            if ((accessFlags & Mod.STATIC) == 0) {
+                String thisFd = Descriptor.fromClassName(this.classFile.getThisClassName());
+                locals[index++] = (
+                    "<init>".equals(methodName) && !Descriptor.JAVA_LANG_OBJECT.equals(thisFd)
+                    ? VerificationType.UNINITIALIZED_THIS
+                    : VerificationType.object(thisFd)
                 );
-                operandOffset += 2;
-                break;
+            }
+            for (String parameterFd : methodDescriptor.parameterFds) {
+                VerificationType vt = VerificationType.fromFieldDescriptor(parameterFd);
+                locals[index++] = vt;
+                if (vt.isCategory2()) locals[index++] = VerificationType.TOP;
+            }
+        }
 
-            case Opcode.OP1_JSR:
-                int targetOffset = CodeContext.extract16BitValue(offset, operandOffset, code);
-                operandOffset += 2;
-                if (stackSizes[targetOffset] == CodeContext.UNEXAMINED) {
-                    this.flowAnalysis(
-                        functionName,
-                        code,
-                        codeSize,
-                        targetOffset,
-                        stackSize + 1,
-                        stackSizes
-                    );
+        // The offsets that require a stack map frame are the branch targets and the exception handlers, which the
+        // flow analysis has already determined.
+        BitSet needsFrame = this.branchTargets;
+        if (needsFrame == null) throw new InternalCompilerException("Flow analysis must precede stack map generation");
+
+        // Simulate the execution of the code, until the frames at all these offsets are stable.
+        Frame[] frames = new Frame[codeSize];
+        frames[0] = initialFrame.copy();
+
+        SortedSet<Integer> worklist = new TreeSet<Integer>();
+        worklist.add(0);
+        while (!worklist.isEmpty()) {
+            int offset = (Integer) worklist.first();
+            worklist.remove(offset);
+
+            Frame frame = frames[offset].copy();
+            for (;;) {
+                this.mergeIntoExceptionHandlers(offset, frame, frames, worklist, iClassFinder);
+
+                List<Integer> branchTargets = new ArrayList<Integer>();
+                int           nextOffset    = this.decodeInstruction(offset, branchTargets);
+
+                this.simulateInstruction(offset, frame);
+
+                this.mergeIntoExceptionHandlers(offset, frame, frames, worklist, iClassFinder);
+                for (Integer branchTarget : branchTargets) {
+                    CodeContext.mergeInto(frame, branchTarget, frames, worklist, iClassFinder);
+                }
+
+                if (CodeContext.isNoFallthrough(this.code, offset)) break;
+                if (nextOffset >= codeSize) {
+                    throw new InternalCompilerException(this.functionName + ": Flow past end of code");
+                }
+                if (needsFrame.get(nextOffset)) {
+                    CodeContext.mergeInto(frame, nextOffset, frames, worklist, iClassFinder);
+                    break;
                 }
+                offset = nextOffset;
+            }
+        }
+
+        // Encode the frames in the most compact form.
+        List<ClassFile.StackMapTableAttribute.StackMapFrame>
+        result = new ArrayList<ClassFile.StackMapTableAttribute.StackMapFrame>();
+
+        List<VerificationType> previousLocals = CodeContext.frameLocals(initialFrame.locals);
+        int                    previousOffset = -1;
+        for (int offset = needsFrame.nextSetBit(0); offset != -1; offset = needsFrame.nextSetBit(offset + 1)) {
+
+            Frame frame = frames[offset];
+            if (frame == null) {
+                throw new InternalCompilerException(this.functionName + ": Unreachable code at offset " + offset);
+            }
+
+            int                    offsetDelta = offset - previousOffset - 1;
+            List<VerificationType> locals      = CodeContext.frameLocals(frame.locals);
+            List<VerificationType> stack       = frame.stack;
+            int                    k           = locals.size() - previousLocals.size();
+
+            ClassFile.StackMapTableAttribute.StackMapFrame smf;
+            if (stack.isEmpty() && k == 0 && locals.equals(previousLocals)) {
+                smf = (
+                    offsetDelta < 64
+                    ? new ClassFile.StackMapTableAttribute.SameFrame(offsetDelta)
+                    : new ClassFile.StackMapTableAttribute.SameFrameExtended(offsetDelta)
+                );
+            } else
+            if (stack.size() == 1 && locals.equals(previousLocals)) {
+                VerificationType                                      vt  = (VerificationType) stack.get(0);
+                ClassFile.StackMapTableAttribute.VerificationTypeInfo vti = vt.toVerificationTypeInfo(this.classFile);
+                smf = (
+                    offsetDelta < 64
+                    ? new ClassFile.StackMapTableAttribute.SameLocals1StackItemFrame(offsetDelta, vti)
+                    : new ClassFile.StackMapTableAttribute.SameLocals1StackItemFrameExtended(offsetDelta, vti)
+                );
+            } else
+            if (stack.isEmpty() && k < 0 && k >= -3 && previousLocals.subList(0, locals.size()).equals(locals)) {
+                smf = new ClassFile.StackMapTableAttribute.ChopFrame(offsetDelta, -k);
+            } else
+            if (stack.isEmpty() && k > 0 && k <= 3 && locals.subList(0, previousLocals.size()).equals(previousLocals)) {
+                smf = new ClassFile.StackMapTableAttribute.AppendFrame(
+                    offsetDelta,
+                    this.toVerificationTypeInfos(locals.subList(previousLocals.size(), locals.size()))
+                );
+            } else
+            {
+                smf = new ClassFile.StackMapTableAttribute.FullFrame(
+                    offsetDelta,
+                    this.toVerificationTypeInfos(locals),
+                    this.toVerificationTypeInfos(stack)
+                );
+            }
+            result.add(smf);
+
+            previousLocals = locals;
+            previousOffset = offset;
+        }
+
+        this.stackMapFrames = (ClassFile.StackMapTableAttribute.StackMapFrame[]) result.toArray(
+            new ClassFile.StackMapTableAttribute.StackMapFrame[result.size()]
+        );
+    }
+
+    /**
+     * Finds {@link IClass}es by their field descriptors.
+     *
+     * @see CodeContext#generateStackMapFrames(short, String, MethodDescriptor, IClassFinder)
+     */
+    public
+    interface IClassFinder {
+
+        /**
+         * @return {@code null} iff the class or interface cannot be found
+         */
+        @Nullable IClass
+        findIClass(String fieldDescriptor);
+    }
+
+    /**
+     * Representation of a verification type (JVMS8 4.10.1.2), i.e. the type of a local variable or of an operand
+     * stack entry, as far as the verifier is concerned.
+     */
+    static final
+    class VerificationType {
+
+        private static final int ITEM_OBJECT        = 7;
+        private static final int ITEM_UNINITIALIZED = 8;
+
+        static final VerificationType TOP                = new VerificationType(0, null, -1);
+        static final VerificationType INTEGER            = new VerificationType(1, null, -1);
+        static final VerificationType FLOAT              = new VerificationType(2, null, -1);
+        static final VerificationType DOUBLE             = new VerificationType(3, null, -1);
+        static final VerificationType LONG               = new VerificationType(4, null, -1);
+        static final VerificationType NULL               = new VerificationType(5, null, -1);
+        static final VerificationType UNINITIALIZED_THIS = new VerificationType(6, null, -1);
+
+        /**
+         * The tag of the corresponding {@code verification_type_info} structure.
+         */
+        final int tag;
+
+        /**
+         * The field descriptor of the class or array type; only relevant iff the tag is {@link #ITEM_OBJECT}.
+         */
+        @Nullable final String fieldDescriptor;
+
+        /**
+         * The offset of the NEW instruction that created the object; only relevant iff the tag is {@link
+         * #ITEM_UNINITIALIZED}.
+         */
+        final int offset;
+
+        private
+        VerificationType(int tag, @Nullable String fieldDescriptor, int offset) {
+            this.tag             = tag;
+            this.fieldDescriptor = fieldDescriptor;
+            this.offset          = offset;
+        }
+
+        static VerificationType
+        object(String fieldDescriptor) { return new VerificationType(VerificationType.ITEM_OBJECT, fieldDescriptor, -1); }
+
+        static VerificationType
+        uninitialized(int offset) { return new VerificationType(VerificationType.ITEM_UNINITIALIZED, null, offset); }
+
+        /**
+         * @return The verification type of values of the given field type
+         */
+        static VerificationType
+        fromFieldDescriptor(String fd) {
+            switch (fd.charAt(0)) {
+
+            case 'Z':
+            case 'B':
+            case 'C':
+            case 'S':
+            case 'I':
+                return VerificationType.INTEGER;
+
+            case 'F':
+                return VerificationType.FLOAT;
+
+            case 'J':
+                return VerificationType.LONG;
+
+            case 'D':
+                return VerificationType.DOUBLE;
+
+            case 'L':
+            case '[':
+                return VerificationType.object(fd);
+
+            default:
+                throw new InternalCompilerException("Invalid field descriptor \"" + fd + "\"");
+            }
+        }
+
+        boolean
+        isCategory2() { return this == VerificationType.LONG || this == VerificationType.DOUBLE; }
+
+        boolean
+        isObject() { return this.tag == VerificationType.ITEM_OBJECT; }
+
+        boolean
+        isUninitialized() { return this.tag == VerificationType.ITEM_UNINITIALIZED; }
+
+        /**
+         * @return The "most specific" verification type that both <var>vt1</var> and <var>vt2</var> are assignable to
+         */
+        static VerificationType
+        merge(VerificationType vt1, VerificationType vt2, IClassFinder iClassFinder) {
+
+            if (vt1.equals(vt2)) return vt1;
+
+            if (vt1 == VerificationType.NULL && vt2.isObject()) return vt2;
+            if (vt2 == VerificationType.NULL && vt1.isObject()) return vt1;
+
+            if (vt1.isObject() && vt2.isObject()) {
+                String fd1 = vt1.fieldDescriptor;
+                String fd2 = vt2.fieldDescriptor;
+                assert fd1 != null && fd2 != null;
+                return VerificationType.object(VerificationType.commonSuperclass(fd1, fd2, iClassFinder));
+            }
+
+            return VerificationType.TOP;
+        }
+
+        /**
+         * Notice: Like the verifier, this method treats all interfaces like {@link Object}.
+         *
+         * @return The field descriptor of the most specific class that both reference types are assignable to
+         */
+        private static String
+        commonSuperclass(String fd1, String fd2, IClassFinder iClassFinder) {
+
+            if (fd1.equals(fd2)) return fd1;
+
+            if (Descriptor.isArrayReference(fd1) && Descriptor.isArrayReference(fd2)) {
+                String cfd1 = Descriptor.getComponentDescriptor(fd1);
+                String cfd2 = Descriptor.getComponentDescriptor(fd2);
+                if (Descriptor.isReference(cfd1) && Descriptor.isReference(cfd2)) {
+                    return '[' + VerificationType.commonSuperclass(cfd1, cfd2, iClassFinder);
+                }
+                return Descriptor.JAVA_LANG_OBJECT;
+            }
+
+            if (Descriptor.isArrayReference(fd1) || Descriptor.isArrayReference(fd2)) return Descriptor.JAVA_LANG_OBJECT;
+
+            IClass c1 = iClassFinder.findIClass(fd1);
+            IClass c2 = iClassFinder.findIClass(fd2);
+            if (c1 == null || c2 == null) return Descriptor.JAVA_LANG_OBJECT;
+
+            try {
+                if (c1.isInterface() || c2.isInterface()) return Descriptor.JAVA_LANG_OBJECT;
+                for (IClass c = c1; c != null; c = c.getSuperclass()) {
+                    if (c.isAssignableFrom(c2)) return c.getDescriptor();
+                }
+            } catch (CompileException ce) {
+                ;
+            }
+            return Descriptor.JAVA_LANG_OBJECT;
+        }
+
+        ClassFile.StackMapTableAttribute.VerificationTypeInfo
+        toVerificationTypeInfo(ClassFile classFile) {
+            switch (this.tag) {
+
+            case 0:
+                return new ClassFile.StackMapTableAttribute.TopVariableInfo();
+
+            case 1:
+                return new ClassFile.StackMapTableAttribute.IntegerVariableInfo();
+
+            case 2:
+                return new ClassFile.StackMapTableAttribute.FloatVariableInfo();
+
+            case 3:
+                return new ClassFile.StackMapTableAttribute.DoubleVariableInfo();
+
+            case 4:
+                return new ClassFile.StackMapTableAttribute.LongVariableInfo();
+
+            case 5:
+                return new ClassFile.StackMapTableAttribute.NullVariableInfo();
+
+            case 6:
+                return new ClassFile.StackMapTableAttribute.UninitializedThisVariableInfo();
+
+            case VerificationType.ITEM_OBJECT:
+                String fd = this.fieldDescriptor;
+                assert fd != null;
+                return new ClassFile.StackMapTableAttribute.ObjectVariableInfo(classFile.addConstantClassInfo(fd));
+
+            case VerificationType.ITEM_UNINITIALIZED:
+                return new ClassFile.StackMapTableAttribute.UninitializedVariableInfo((short) this.offset);
+
+            default:
+                throw new InternalCompilerException("Invalid verification type tag " + this.tag);
+            }
+        }
+
+        @Override public boolean
+        equals(@Nullable Object o) {
+            if (!(o instanceof VerificationType)) return false;
+            VerificationType that = (VerificationType) o;
+            return (
+                this.tag == that.tag
+                && this.offset == that.offset
+                && (this.fieldDescriptor == null ? that.fieldDescriptor == null : this.fieldDescriptor.equals(that.fieldDescriptor))
+            );
+        }
+
+        @Override public int
+        hashCode() {
+            return this.tag + 31 * this.offset + (this.fieldDescriptor == null ? 0 : this.fieldDescriptor.hashCode());
+        }
+
+        @Override public String
+        toString() {
+            return (
+                this.tag == VerificationType.ITEM_OBJECT        ? String.valueOf(this.fieldDescriptor) :
+                this.tag == VerificationType.ITEM_UNINITIALIZED ? "uninitialized(" + this.offset + ")" :
+                new String[] { "top", "int", "float", "double", "long", "null", "uninitializedThis" }[this.tag]
+            );
+        }
+    }
+
+    /**
+     * The types of the local variables and the operand stack entries at a particular offset in the code. Notice that,
+     * as in the {@code StackMapTable} attribute, a {@code long} or {@code double} value occupies <em>two</em> local
+     * variables (the second having type {@link VerificationType#TOP}), but only <em>one</em> operand stack entry.
+     */
+    static final
+    class Frame {
+
+        final VerificationType[]     locals;
+        final List<VerificationType> stack;
+
+        Frame(VerificationType[] locals, List<VerificationType> stack) {
+            this.locals = locals;
+            this.stack  = stack;
+        }
+
+        Frame
+        copy() { return this.withStack(new ArrayList<VerificationType>(this.stack)); }
+
+        /**
+         * @return A frame with a copy of this frame's local variables and the given operand stack
+         */
+        Frame
+        withStack(List<VerificationType> stack) {
+            VerificationType[] locals = new VerificationType[this.locals.length];
+            System.arraycopy(this.locals, 0, locals, 0, locals.length);
+            return new Frame(locals, stack);
+        }
+
+        void
+        push(VerificationType vt) { this.stack.add(vt); }
+
+        VerificationType
+        pop() {
+            if (this.stack.isEmpty()) throw new InternalCompilerException("Operand stack underrun");
+            return (VerificationType) this.stack.remove(this.stack.size() - 1);
+        }
+
+        void
+        pop(int n) { for (int i = 0; i < n; i++) this.pop(); }
+
+        VerificationType
+        peek() {
+            if (this.stack.isEmpty()) throw new InternalCompilerException("Operand stack underrun");
+            return (VerificationType) this.stack.get(this.stack.size() - 1);
+        }
+
+        void
+        store(int index, VerificationType vt) {
+            if (index > 0 && this.locals[index - 1].isCategory2()) this.locals[index - 1] = VerificationType.TOP;
+            this.locals[index] = vt;
+            if (vt.isCategory2()) this.locals[index + 1] = VerificationType.TOP;
+        }
+
+        /**
+         * Replaces all occurrences of <var>from</var> in the local variables and on the operand stack with
+         * <var>to</var>.
+         */
+        void
+        replace(VerificationType from, VerificationType to) {
+            for (int i = 0; i < this.locals.length; i++) {
+                if (this.locals[i].equals(from)) this.locals[i] = to;
+            }
+            for (int i = 0; i < this.stack.size(); i++) {
+                if (((VerificationType) this.stack.get(i)).equals(from)) this.stack.set(i, to);
+            }
+        }
+    }
+
+    /**
+     * Merges the <var>frame</var> into the frame at the <var>targetOffset</var>, and schedules the
+     * <var>targetOffset</var> for (re-)simulation if that frame changed.
+     */
+    private static void
+    mergeInto(
+        Frame              frame,
+        int                targetOffset,
+        Frame[]            frames,
+        SortedSet<Integer> worklist,
+        IClassFinder       iClassFinder
+    ) {
+        Frame targetFrame = frames[targetOffset];
+        if (targetFrame == null) {
+            frames[targetOffset] = frame.copy();
+            worklist.add(targetOffset);
+            return;
+        }
+
+        if (targetFrame.stack.size() != frame.stack.size()) {
+            throw new InternalCompilerException(
+                "Operand stack inconsistent at offset "
+                + targetOffset
+                + ": Previous size "
+                + targetFrame.stack.size()
+                + ", now "
+                + frame.stack.size()
+            );
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < targetFrame.locals.length; i++) {
+            VerificationType vt = VerificationType.merge(targetFrame.locals[i], frame.locals[i], iClassFinder);
+            if (!vt.equals(targetFrame.locals[i])) {
+                targetFrame.locals[i] = vt;
+                changed               = true;
+            }
+        }
+        for (int i = 0; i < targetFrame.stack.size(); i++) {
+            VerificationType tvt = (VerificationType) targetFrame.stack.get(i);
+            VerificationType vt  = VerificationType.merge(tvt, (VerificationType) frame.stack.get(i), iClassFinder);
+            if (!vt.equals(tvt)) {
+                targetFrame.stack.set(i, vt);
+                changed = true;
+            }
+        }
+
+        if (changed) worklist.add(targetOffset);
+    }
+
+    /**
+     * Merges the local variables of the <var>frame</var> into the frames of all exception handlers that cover the
+     * instruction at the given <var>offset</var>.
+     */
+    private void
+    mergeIntoExceptionHandlers(
+        int                offset,
+        Frame              frame,
+        Frame[]            frames,
+        SortedSet<Integer> worklist,
+        IClassFinder       iClassFinder
+    ) {
+        for (ExceptionTableEntry ete : this.exceptionTableEntries) {
+            if (offset < ete.startPc.offset || offset >= ete.endPc.offset) continue;
+
+            List<VerificationType> stack = new ArrayList<VerificationType>();
+            stack.add(VerificationType.object(
+                ete.catchType == 0
+                ? Descriptor.JAVA_LANG_THROWABLE
+                : this.getClassDescriptor(ete.catchType)
+            ));
+            CodeContext.mergeInto(
+                frame.withStack(stack),
+                ete.handlerPc.offset,
+                frames,
+                worklist,
+                iClassFinder
+            );
+        }
+    }
+
+    /**
+     * Converts the local variables of a frame into the representation that the {@code StackMapTable} attribute
+     * uses, i.e. {@code long} and {@code double} variables count as one entry, and trailing "top"s are removed.
+     */
+    private static List<VerificationType>
+    frameLocals(VerificationType[] locals) {
+        List<VerificationType> result = new ArrayList<VerificationType>();
+        int                    size   = 0;
+        for (int i = 0; i < locals.length; i++) {
+            VerificationType vt = locals[i];
+            result.add(vt);
+            if (vt != VerificationType.TOP) size = result.size();
+            if (vt.isCategory2()) i++;
+        }
+        return result.subList(0, size);
+    }
+
+    private ClassFile.StackMapTableAttribute.VerificationTypeInfo[]
+    toVerificationTypeInfos(List<VerificationType> vts) {
+        ClassFile.StackMapTableAttribute.VerificationTypeInfo[]
+        result = new ClassFile.StackMapTableAttribute.VerificationTypeInfo[vts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((VerificationType) vts.get(i)).toVerificationTypeInfo(this.classFile);
+        }
+        return result;
+    }
+
+    /**
+     * @return Whether the instruction at the given <var>offset</var> never continues with the next instruction, e.g.
+     *         a GOTO or a RETURN instruction
+     */
+    private static boolean
+    isNoFallthrough(byte[] code, int offset) {
+        return (CodeContext.getOpcodeProperties(code, offset) & Opcode.NO_FALLTHROUGH) != 0;
+    }
+
+    /**
+     * @return The properties of the instruction at the given <var>offset</var>, from {@link Opcode#OPCODE_PROPERTIES}
+     *         or, for a WIDE instruction, from {@link Opcode#WIDE_OPCODE_PROPERTIES}
+     */
+    private static short
+    getOpcodeProperties(byte[] code, int offset) {
+        return (
+            code[offset] == Opcode.WIDE
+            ? Opcode.WIDE_OPCODE_PROPERTIES[0xff & code[offset + 1]]
+            : Opcode.OPCODE_PROPERTIES[0xff & code[offset]]
+        );
+    }
+
+    /**
+     * Determines the length and the branch targets of the instruction at the given <var>offset</var>.
+     *
+     * @param branchTargets Receives the offsets that the instruction may branch to, except the next instruction
+     * @return              The offset of the next instruction
+     */
+    private int
+    decodeInstruction(int offset, Collection<Integer> branchTargets) {
+        byte[] code = this.code;
+
+        byte  opcode        = code[offset];
+        int   operandOffset = offset + 1;
+        short props;
+        if (opcode == Opcode.WIDE) {
+            opcode = code[operandOffset++];
+            props  = Opcode.WIDE_OPCODE_PROPERTIES[0xff & opcode];
+        } else {
+            props = Opcode.OPCODE_PROPERTIES[0xff & opcode];
+        }
+        if (props == Opcode.INVALID_OPCODE) {
+            throw new InternalCompilerException(
+                this.functionName
+                + ": Invalid opcode "
+                + (0xff & opcode)
+                + " at offset "
+                + offset
+            );
+        }
+
+        switch (props & Opcode.OP1_MASK) {
+
+        case 0:
+            break;
+
+        case Opcode.OP1_SB:
+        case Opcode.OP1_UB:
+        case Opcode.OP1_CP1:
+        case Opcode.OP1_LV1:
+            operandOffset++;
+            break;
+
+        case Opcode.OP1_SS:
+        case Opcode.OP1_CP2:
+        case Opcode.OP1_LV2:
+            operandOffset += 2;
+            break;
+
+        case Opcode.OP1_BO2:
+        case Opcode.OP1_JSR:
+            branchTargets.add(CodeContext.extract16BitValue(offset, operandOffset, code));
+            operandOffset += 2;
+            break;
+
+        case Opcode.OP1_BO4:
+            branchTargets.add(CodeContext.extract32BitValue(offset, operandOffset, code));
+            operandOffset += 4;
+            break;
+
+        case Opcode.OP1_LOOKUPSWITCH:
+            while ((operandOffset & 3) != 0) ++operandOffset;
+            branchTargets.add(CodeContext.extract32BitValue(offset, operandOffset, code));
+            operandOffset += 4;
+            {
+                int npairs = CodeContext.extract32BitValue(0, operandOffset, code);
+                operandOffset += 4;
+                for (int i = 0; i < npairs; ++i) {
+                    operandOffset += 4; // Skip match value.
+                    branchTargets.add(CodeContext.extract32BitValue(offset, operandOffset, code));
+                    operandOffset += 4;
+                }
+            }
+            break;
+
+        case Opcode.OP1_TABLESWITCH:
+            while ((operandOffset & 3) != 0) ++operandOffset;
+            branchTargets.add(CodeContext.extract32BitValue(offset, operandOffset, code));
+            operandOffset += 4;
+            {
+                int low = CodeContext.extract32BitValue(0, operandOffset, code);
+                operandOffset += 4;
+                int hi = CodeContext.extract32BitValue(0, operandOffset, code);
+                operandOffset += 4;
+                for (int i = low; i <= hi; ++i) {
+                    branchTargets.add(CodeContext.extract32BitValue(offset, operandOffset, code));
+                    operandOffset += 4;
+                }
+            }
+            break;
+
+        default:
+            throw new InternalCompilerException(this.functionName + ": Invalid OP1");
+        }
+
+        switch (props & Opcode.OP2_MASK) {
+
+        case 0:
+            break;
+
+        case Opcode.OP2_SB:
+            operandOffset++;
+            break;
+
+        case Opcode.OP2_SS:
+            operandOffset += 2;
+            break;
+
+        default:
+            throw new InternalCompilerException(this.functionName + ": Invalid OP2");
+        }
+
+        if ((props & Opcode.OP3_MASK) == Opcode.OP3_SB) operandOffset++;
+
+        return operandOffset;
+    }
+
+    /**
+     * Updates the <var>frame</var> as the instruction at the given <var>offset</var> would do it.
+     */
+    private void
+    simulateInstruction(int offset, Frame frame) {
+        byte[] code = this.code;
+
+        byte opcode = code[offset];
+        switch (opcode) {
+
+        case Opcode.NOP:
+        case Opcode.INEG:
+        case Opcode.LNEG:
+        case Opcode.FNEG:
+        case Opcode.DNEG:
+        case Opcode.I2B:
+        case Opcode.I2C:
+        case Opcode.I2S:
+        case Opcode.IINC:
+        case Opcode.GOTO:
+        case Opcode.GOTO_W:
+        case Opcode.RETURN:
+            break;
+
+        case Opcode.ACONST_NULL:
+            frame.push(VerificationType.NULL);
+            break;
+
+        case Opcode.ICONST_M1:
+        case Opcode.ICONST_0:
+        case Opcode.ICONST_1:
+        case Opcode.ICONST_2:
+        case Opcode.ICONST_3:
+        case Opcode.ICONST_4:
+        case Opcode.ICONST_5:
+        case Opcode.BIPUSH:
+        case Opcode.SIPUSH:
+        case Opcode.ILOAD:
+        case Opcode.ILOAD_0:
+        case Opcode.ILOAD_1:
+        case Opcode.ILOAD_2:
+        case Opcode.ILOAD_3:
+            frame.push(VerificationType.INTEGER);
+            break;
+
+        case Opcode.LCONST_0:
+        case Opcode.LCONST_1:
+        case Opcode.LLOAD:
+        case Opcode.LLOAD_0:
+        case Opcode.LLOAD_1:
+        case Opcode.LLOAD_2:
+        case Opcode.LLOAD_3:
+            frame.push(VerificationType.LONG);
+            break;
+
+        case Opcode.FCONST_0:
+        case Opcode.FCONST_1:
+        case Opcode.FCONST_2:
+        case Opcode.FLOAD:
+        case Opcode.FLOAD_0:
+        case Opcode.FLOAD_1:
+        case Opcode.FLOAD_2:
+        case Opcode.FLOAD_3:
+            frame.push(VerificationType.FLOAT);
+            break;
+
+        case Opcode.DCONST_0:
+        case Opcode.DCONST_1:
+        case Opcode.DLOAD:
+        case Opcode.DLOAD_0:
+        case Opcode.DLOAD_1:
+        case Opcode.DLOAD_2:
+        case Opcode.DLOAD_3:
+            frame.push(VerificationType.DOUBLE);
+            break;
+
+        case Opcode.LDC:
+            frame.push(this.getConstantType((short) (0xff & code[offset + 1])));
+            break;
+
+        case Opcode.LDC_W:
+        case Opcode.LDC2_W:
+            frame.push(this.getConstantType(CodeContext.extract16BitValue(offset + 1, code)));
+            break;
+
+        case Opcode.ALOAD:
+            frame.push(frame.locals[0xff & code[offset + 1]]);
+            break;
+
+        case Opcode.ALOAD_0:
+        case Opcode.ALOAD_1:
+        case Opcode.ALOAD_2:
+        case Opcode.ALOAD_3:
+            frame.push(frame.locals[opcode - Opcode.ALOAD_0]);
+            break;
+
+        case Opcode.IALOAD:
+        case Opcode.BALOAD:
+        case Opcode.CALOAD:
+        case Opcode.SALOAD:
+            frame.pop(2);
+            frame.push(VerificationType.INTEGER);
+            break;
+
+        case Opcode.LALOAD:
+            frame.pop(2);
+            frame.push(VerificationType.LONG);
+            break;
+
+        case Opcode.FALOAD:
+            frame.pop(2);
+            frame.push(VerificationType.FLOAT);
+            break;
+
+        case Opcode.DALOAD:
+            frame.pop(2);
+            frame.push(VerificationType.DOUBLE);
+            break;
+
+        case Opcode.AALOAD:
+            {
+                frame.pop();
+                VerificationType arrayType = frame.pop();
+                String           fd        = arrayType.fieldDescriptor;
+                frame.push(
+                    fd != null && Descriptor.isArrayReference(fd)
+                    ? VerificationType.fromFieldDescriptor(Descriptor.getComponentDescriptor(fd))
+                    : VerificationType.NULL
+                );
+            }
+            break;
+
+        case Opcode.ISTORE:
+        case Opcode.LSTORE:
+        case Opcode.FSTORE:
+        case Opcode.DSTORE:
+        case Opcode.ASTORE:
+            frame.store(0xff & code[offset + 1], frame.pop());
+            break;
+
+        case Opcode.ISTORE_0:
+        case Opcode.ISTORE_1:
+        case Opcode.ISTORE_2:
+        case Opcode.ISTORE_3:
+            frame.store(opcode - Opcode.ISTORE_0, frame.pop());
+            break;
+
+        case Opcode.LSTORE_0:
+        case Opcode.LSTORE_1:
+        case Opcode.LSTORE_2:
+        case Opcode.LSTORE_3:
+            frame.store(opcode - Opcode.LSTORE_0, frame.pop());
+            break;
+
+        case Opcode.FSTORE_0:
+        case Opcode.FSTORE_1:
+        case Opcode.FSTORE_2:
+        case Opcode.FSTORE_3:
+            frame.store(opcode - Opcode.FSTORE_0, frame.pop());
+            break;
+
+        case Opcode.DSTORE_0:
+        case Opcode.DSTORE_1:
+        case Opcode.DSTORE_2:
+        case Opcode.DSTORE_3:
+            frame.store(opcode - Opcode.DSTORE_0, frame.pop());
+            break;
+
+        case Opcode.ASTORE_0:
+        case Opcode.ASTORE_1:
+        case Opcode.ASTORE_2:
+        case Opcode.ASTORE_3:
+            frame.store(opcode - Opcode.ASTORE_0, frame.pop());
+            break;
+
+        case Opcode.IASTORE:
+        case Opcode.LASTORE:
+        case Opcode.FASTORE:
+        case Opcode.DASTORE:
+        case Opcode.AASTORE:
+        case Opcode.BASTORE:
+        case Opcode.CASTORE:
+        case Opcode.SASTORE:
+            frame.pop(3);
+            break;
+
+        case Opcode.POP:
+        case Opcode.IFEQ:
+        case Opcode.IFNE:
+        case Opcode.IFLT:
+        case Opcode.IFGE:
+        case Opcode.IFGT:
+        case Opcode.IFLE:
+        case Opcode.IFNULL:
+        case Opcode.IFNONNULL:
+        case Opcode.TABLESWITCH:
+        case Opcode.LOOKUPSWITCH:
+        case Opcode.IRETURN:
+        case Opcode.LRETURN:
+        case Opcode.FRETURN:
+        case Opcode.DRETURN:
+        case Opcode.ARETURN:
+        case Opcode.ATHROW:
+        case Opcode.MONITORENTER:
+        case Opcode.MONITOREXIT:
+            frame.pop();
+            break;
+
+        case Opcode.POP2:
+            if (!frame.pop().isCategory2()) frame.pop();
+            break;
+
+        case Opcode.IF_ICMPEQ:
+        case Opcode.IF_ICMPNE:
+        case Opcode.IF_ICMPLT:
+        case Opcode.IF_ICMPGE:
+        case Opcode.IF_ICMPGT:
+        case Opcode.IF_ICMPLE:
+        case Opcode.IF_ACMPEQ:
+        case Opcode.IF_ACMPNE:
+            frame.pop(2);
+            break;
+
+        case Opcode.DUP:
+            frame.push(frame.peek());
+            break;
+
+        case Opcode.DUP_X1:
+            {
+                VerificationType v1 = frame.pop(), v2 = frame.pop();
+                frame.push(v1);
+                frame.push(v2);
+                frame.push(v1);
+            }
+            break;
+
+        case Opcode.DUP_X2:
+            {
+                VerificationType v1 = frame.pop(), v2 = frame.pop();
+                if (v2.isCategory2()) {
+                    frame.push(v1);
+                    frame.push(v2);
+                    frame.push(v1);
+                } else {
+                    VerificationType v3 = frame.pop();
+                    frame.push(v1);
+                    frame.push(v3);
+                    frame.push(v2);
+                    frame.push(v1);
+                }
+            }
+            break;
+
+        case Opcode.DUP2:
+            {
+                VerificationType v1 = frame.pop();
+                if (v1.isCategory2()) {
+                    frame.push(v1);
+                    frame.push(v1);
+                } else {
+                    VerificationType v2 = frame.pop();
+                    frame.push(v2);
+                    frame.push(v1);
+                    frame.push(v2);
+                    frame.push(v1);
+                }
+            }
+            break;
+
+        case Opcode.DUP2_X1:
+            {
+                VerificationType v1 = frame.pop(), v2 = frame.pop();
+                if (v1.isCategory2()) {
+                    frame.push(v1);
+                    frame.push(v2);
+                    frame.push(v1);
+                } else {
+                    VerificationType v3 = frame.pop();
+                    frame.push(v2);
+                    frame.push(v1);
+                    frame.push(v3);
+                    frame.push(v2);
+                    frame.push(v1);
+                }
+            }
+            break;
+
+        case Opcode.DUP2_X2:
+            {
+                VerificationType v1 = frame.pop(), v2 = frame.pop();
+                if (v1.isCategory2()) {
+                    if (v2.isCategory2()) {
+                        frame.push(v1);
+                        frame.push(v2);
+                        frame.push(v1);
+                    } else {
+                        VerificationType v3 = frame.pop();
+                        frame.push(v1);
+                        frame.push(v3);
+                        frame.push(v2);
+                        frame.push(v1);
+                    }
+                } else {
+                    VerificationType v3 = frame.pop();
+                    if (v3.isCategory2()) {
+                        frame.push(v2);
+                        frame.push(v1);
+                        frame.push(v3);
+                        frame.push(v2);
+                        frame.push(v1);
+                    } else {
+                        VerificationType v4 = frame.pop();
+                        frame.push(v2);
+                        frame.push(v1);
+                        frame.push(v4);
+                        frame.push(v3);
+                        frame.push(v2);
+                        frame.push(v1);
+                    }
+                }
+            }
+            break;
+
+        case Opcode.SWAP:
+            {
+                VerificationType v1 = frame.pop(), v2 = frame.pop();
+                frame.push(v1);
+                frame.push(v2);
+            }
+            break;
+
+        case Opcode.IADD:
+        case Opcode.ISUB:
+        case Opcode.IMUL:
+        case Opcode.IDIV:
+        case Opcode.IREM:
+        case Opcode.ISHL:
+        case Opcode.ISHR:
+        case Opcode.IUSHR:
+        case Opcode.IAND:
+        case Opcode.IOR:
+        case Opcode.IXOR:
+        case Opcode.LCMP:
+        case Opcode.FCMPL:
+        case Opcode.FCMPG:
+        case Opcode.DCMPL:
+        case Opcode.DCMPG:
+            frame.pop(2);
+            frame.push(VerificationType.INTEGER);
+            break;
+
+        case Opcode.LADD:
+        case Opcode.LSUB:
+        case Opcode.LMUL:
+        case Opcode.LDIV:
+        case Opcode.LREM:
+        case Opcode.LSHL:
+        case Opcode.LSHR:
+        case Opcode.LUSHR:
+        case Opcode.LAND:
+        case Opcode.LOR:
+        case Opcode.LXOR:
+            frame.pop(2);
+            frame.push(VerificationType.LONG);
+            break;
+
+        case Opcode.FADD:
+        case Opcode.FSUB:
+        case Opcode.FMUL:
+        case Opcode.FDIV:
+        case Opcode.FREM:
+            frame.pop(2);
+            frame.push(VerificationType.FLOAT);
+            break;
+
+        case Opcode.DADD:
+        case Opcode.DSUB:
+        case Opcode.DMUL:
+        case Opcode.DDIV:
+        case Opcode.DREM:
+            frame.pop(2);
+            frame.push(VerificationType.DOUBLE);
+            break;
+
+        case Opcode.L2I:
+        case Opcode.F2I:
+        case Opcode.D2I:
+        case Opcode.ARRAYLENGTH:
+        case Opcode.INSTANCEOF:
+            frame.pop();
+            frame.push(VerificationType.INTEGER);
+            break;
+
+        case Opcode.I2L:
+        case Opcode.F2L:
+        case Opcode.D2L:
+            frame.pop();
+            frame.push(VerificationType.LONG);
+            break;
+
+        case Opcode.I2F:
+        case Opcode.L2F:
+        case Opcode.D2F:
+            frame.pop();
+            frame.push(VerificationType.FLOAT);
+            break;
+
+        case Opcode.I2D:
+        case Opcode.L2D:
+        case Opcode.F2D:
+            frame.pop();
+            frame.push(VerificationType.DOUBLE);
+            break;
+
+        case Opcode.GETSTATIC:
+            frame.push(VerificationType.fromFieldDescriptor(
+                this.getFieldDescriptor(CodeContext.extract16BitValue(offset + 1, code))
+            ));
+            break;
+
+        case Opcode.GETFIELD:
+            frame.pop();
+            frame.push(VerificationType.fromFieldDescriptor(
+                this.getFieldDescriptor(CodeContext.extract16BitValue(offset + 1, code))
+            ));
+            break;
+
+        case Opcode.PUTSTATIC:
+            frame.pop();
+            break;
+
+        case Opcode.PUTFIELD:
+            frame.pop(2);
+            break;
+
+        case Opcode.INVOKEVIRTUAL:
+        case Opcode.INVOKESPECIAL:
+        case Opcode.INVOKESTATIC:
+        case Opcode.INVOKEINTERFACE:
+        case Opcode.INVOKEDYNAMIC:
+            {
+                ClassFile.ConstantNameAndTypeInfo nat = this.getMethodNameAndType(
+                    CodeContext.extract16BitValue(offset + 1, code)
+                );
+                MethodDescriptor md = new MethodDescriptor(nat.getDescriptor(this.classFile));
+
+                frame.pop(md.parameterFds.length);
+                if (opcode != Opcode.INVOKESTATIC && opcode != Opcode.INVOKEDYNAMIC) {
+                    VerificationType receiver = frame.pop();
+                    if (opcode == Opcode.INVOKESPECIAL && "<init>".equals(nat.getName(this.classFile))) {
+
+                        // The constructor invocation initializes all copies of the receiver.
+                        if (receiver == VerificationType.UNINITIALIZED_THIS) {
+                            frame.replace(receiver, VerificationType.object(
+                                Descriptor.fromClassName(this.classFile.getThisClassName())
+                            ));
+                        } else
+                        if (receiver.isUninitialized()) {
+                            frame.replace(receiver, VerificationType.object(
+                                this.getClassDescriptor(CodeContext.extract16BitValue(receiver.offset + 1, code))
+                            ));
+                        }
+                    }
+                }
+                if (!Descriptor.VOID.equals(md.returnFd)) {
+                    frame.push(VerificationType.fromFieldDescriptor(md.returnFd));
+                }
+            }
+            break;
+
+        case Opcode.NEW:
+            frame.push(VerificationType.uninitialized(offset));
+            break;
+
+        case Opcode.NEWARRAY:
+            frame.pop();
+            frame.push(VerificationType.object("[" + "ZCFDBSIJ".charAt(code[offset + 1] - 4)));
+            break;
+
+        case Opcode.ANEWARRAY:
+            frame.pop();
+            frame.push(VerificationType.object(
+                '[' + this.getClassDescriptor(CodeContext.extract16BitValue(offset + 1, code))
+            ));
+            break;
+
+        case Opcode.CHECKCAST:
+            frame.pop();
+            frame.push(VerificationType.object(
+                this.getClassDescriptor(CodeContext.extract16BitValue(offset + 1, code))
+            ));
+            break;
+
+        case Opcode.MULTIANEWARRAY:
+            frame.pop(0xff & code[offset + 3]);
+            frame.push(VerificationType.object(
+                this.getClassDescriptor(CodeContext.extract16BitValue(offset + 1, code))
+            ));
+            break;
+
+        case Opcode.WIDE:
+            {
+                int index = 0xffff & CodeContext.extract16BitValue(offset + 2, code);
+                switch (code[offset + 1]) {
+
+                case Opcode.ILOAD:
+                    frame.push(VerificationType.INTEGER);
+                    break;
+
+                case Opcode.LLOAD:
+                    frame.push(VerificationType.LONG);
+                    break;
+
+                case Opcode.FLOAD:
+                    frame.push(VerificationType.FLOAT);
+                    break;
+
+                case Opcode.DLOAD:
+                    frame.push(VerificationType.DOUBLE);
+                    break;
+
+                case Opcode.ALOAD:
+                    frame.push(frame.locals[index]);
+                    break;
+
+                case Opcode.ISTORE:
+                case Opcode.LSTORE:
+                case Opcode.FSTORE:
+                case Opcode.DSTORE:
+                case Opcode.ASTORE:
+                    frame.store(index, frame.pop());
+                    break;
+
+                case Opcode.IINC:
+                    break;
+
+                default:
+                    throw new InternalCompilerException(
+                        this.functionName
+                        + ": Unexpected wide opcode "
+                        + (0xff & code[offset + 1])
+                        + " at offset "
+                        + offset
+                    );
+                }
+            }
+            break;
+
+        default:
+
+            // E.g. JSR and RET, which are not allowed in class files of version 51 and higher.
+            throw new InternalCompilerException(
+                this.functionName
+                + ": Unexpected opcode "
+                + (0xff & opcode)
+                + " at offset "
+                + offset
+            );
+        }
+    }
+
+    /**
+     * @return The verification type of the constant that an LDC, LDC_W or LDC2_W instruction would push
+     */
+    private VerificationType
+    getConstantType(short index) {
+        ClassFile.ConstantPoolInfo cpi = this.classFile.getConstantPoolInfo(index);
+
+        if (cpi instanceof ClassFile.ConstantValuePoolInfo) {
+            Object value = ((ClassFile.ConstantValuePoolInfo) cpi).getValue(this.classFile);
+            if (value instanceof Integer) return VerificationType.INTEGER;
+            if (value instanceof Float)   return VerificationType.FLOAT;
+            if (value instanceof Long)    return VerificationType.LONG;
+            if (value instanceof Double)  return VerificationType.DOUBLE;
+            if (value instanceof String)  return VerificationType.object(Descriptor.JAVA_LANG_STRING);
+        }
+        if (cpi instanceof ClassFile.ConstantClassInfo) return VerificationType.object(Descriptor.JAVA_LANG_CLASS);
+
+        if (cpi instanceof ClassFile.ConstantMethodTypeInfo) {
+            return VerificationType.object("Ljava/lang/invoke/MethodType;");
+        }
+        if (cpi instanceof ClassFile.ConstantMethodHandleInfo) {
+            return VerificationType.object("Ljava/lang/invoke/MethodHandle;");
+        }
+
+        throw new InternalCompilerException("Unexpected constant pool entry type " + cpi.getClass().getName());
+    }
+
+    /**
+     * @return The field descriptor of the class or array type that the given CONSTANT_Class_info entry designates
+     */
+    private String
+    getClassDescriptor(short index) {
+        String name = this.classFile.getConstantClassInfo(index).getName(this.classFile);
+        return name.startsWith("[") ? name : 'L' + name + ';';
+    }
+
+    private String
+    getFieldDescriptor(short index) {
+        return (
+            this
+            .classFile
+            .getConstantFieldrefInfo(index)
+            .getNameAndType(this.classFile)
+            .getDescriptor(this.classFile)
+        );
+    }
+
+    /**
+     * Extracts a 16 bit value at the given <var>offset</var> in the <var>code</var>.
+     */
+    private static short
+    extract16BitValue(int offset, byte[] code) {
+        CodeContext.LOGGER.entering(
+            null,
+            "extract16BitValue",
+            new Object[] { offset, code[offset], code[offset + 1] }
+        );
+
+        short result = (short) (((code[offset]) << 8) + (code[offset + 1] & 0xff));
+
+        CodeContext.LOGGER.exiting(null,  "extract16BitValue", result);
+        return result;
+    }
+
+    /**
+     * Extracts a 16 bit value at the given <var>offset</var> in the <var>code</var> and adds a
+     * <var>bias</var> to it.
+     *
+     * @return An integer that treats the two bytes at position offset as an UNSIGNED SHORT
+     */
+    private static int
+    extract16BitValue(int bias, int offset, byte[] code) {
+        CodeContext.LOGGER.entering(
+            null,
+            "extract16BitValue",
+            new Object[] { bias, offset, code[offset], code[offset + 1] }
+        );
+
+        int result = bias + ((code[offset]) << 8) + (code[offset + 1] & 0xff);
+        CodeContext.LOGGER.exiting(null,  "extract16BitValue", result);
+        return result;
+    }
+
+    /**
+     * Extracts a 32 bit value at offset in code and adds <var>bias</var> to it.
+     *
+     * @param bias   An int to skew the final result by (useful for calculating relative offsets)
+     * @param offset The position in the code array to extract the bytes from
+     * @param code   The array of bytes
+     * @return       The 4 bytes at position offset + bias
+     */
+    private static int
+    extract32BitValue(int bias, int offset, byte[] code) {
+        CodeContext.LOGGER.entering(
+            null,
+            "extract32BitValue",
+            new Object[] { bias, offset, code[offset], code[offset + 1], code[offset + 2], code[offset + 3] }
+        );
+
+        int result = bias + (
+            (code[offset] << 24)
+            + ((0xff & code[offset + 1]) << 16)
+            + ((0xff & code[offset + 2]) << 8)
+            + (0xff & code[offset + 3])
+        );
+
+        CodeContext.LOGGER.exiting(null, "extract32BitValue", result);
+        return result;
+    }
+
+    /**
+     * Rewrites the code into equivalent, but shorter code: Branches to GOTOs are redirected to the final destination,
+     * GOTOs to RETURN instructions are replaced with the RETURN instruction, conditional branches on constants are
+     * folded, and the following instruction pairs are removed: Boxing immediately followed by unboxing, a value that
+     * is pushed and immediately popped, a load of a local variable that is immediately stored back, and a store to a
+     * local variable that is read only by the immediately following load. Finally, GOTOs to the next instruction and
+     * code that has become unreachable are removed.
+     * <p>
+     *   Must be invoked before {@link #fixUpAndRelocate()}.
+     * </p>
+     *
+     * @return The number of bytes that were removed
+     * @see JaninoOption#PEEPHOLE_OPTIMIZATION
+     */
+    public int
+    optimize() {
+
+        this.flatten();
+
+        int originalSize = this.end.offset;
+        new PeepholeOptimizer().run();
+        return originalSize - this.end.offset;
+    }
+
+    /**
+     * The state of one execution of {@link CodeContext#optimize()}.
+     */
+    private
+    class PeepholeOptimizer {
+
+        /**
+         * The maximum number of times that the optimizations are applied; each round may enable more optimizations
+         * in the next round, e.g. by making a GOTO unreachable.
+         */
+        private static final int MAX_ROUNDS = 10;
+
+        private byte[] code;
+        private int    codeSize;
+
+        /**
+         * The offsets of all instructions.
+         */
+        private BitSet instructions = new BitSet();
+
+        /**
+         * The {@link Branch} at each offset, or {@code null}.
+         */
+        private Object[] branches = new Object[0];
+
+        /**
+         * The branch targets, the exception handlers, and the boundaries of the exception-protected ranges. An
+         * instruction at one of these offsets is never removed together with the preceding instruction.
+         */
+        private BitSet barriers = new BitSet();
+
+        /**
+         * How often each local variable slot is read (by xLOAD, IINC and RET instructions).
+         */
+        private int[] slotReads = new int[0];
+
+        /**
+         * The bytes to remove with the next {@link #compact()}.
+         */
+        private BitSet removedBytes = new BitSet();
+
+        /**
+         * The relocatables to remove with the next {@link #compact()}.
+         */
+        private final Set<Relocatable> removedRelocatables = new HashSet<Relocatable>();
+
+        void
+        run() {
+
+            for (int round = 0; round < PeepholeOptimizer.MAX_ROUNDS; round++) {
+                boolean changed = false;
+
+                this.analyze();
+                changed |= this.threadJumps();
+                this.compact();
+
+                this.analyze();
+                changed |= this.rewriteInstructionPairs();
+                this.compact();
+
+                this.analyze();
+                changed |= this.removeUnreachableCode();
+                this.compact();
+
+                if (!changed) break;
+            }
+
+            // Exception-protected ranges that have become empty are invalid (JVMS8 4.7.3).
+            for (Iterator<ExceptionTableEntry> it = CodeContext.this.exceptionTableEntries.iterator(); it.hasNext();) {
+                ExceptionTableEntry ete = (ExceptionTableEntry) it.next();
+                if (ete.startPc.offset >= ete.endPc.offset) it.remove();
+            }
+        }
+
+        /**
+         * Decodes the instructions, and determines the branches, the barriers and the local variable reads.
+         */
+        private void
+        analyze() {
+            this.code     = CodeContext.this.code;
+            this.codeSize = CodeContext.this.end.offset;
+
+            this.instructions = new BitSet(this.codeSize);
+            this.branches     = new Object[this.codeSize + 1];
+            this.barriers     = new BitSet(this.codeSize);
+            this.slotReads    = new int[CodeContext.this.maxLocals + 2];
+
+            for (Relocatable r : CodeContext.this.relocatables) {
+                if (r instanceof Branch) {
+                    Branch b = (Branch) r;
+                    this.branches[b.source.offset] = b;
+                    this.barriers.set(b.destination.offset);
+                } else
+                if (r instanceof OffsetBranch) {
+                    this.barriers.set(((OffsetBranch) r).destination.offset);
+                }
+            }
+            for (ExceptionTableEntry ete : CodeContext.this.exceptionTableEntries) {
+                this.barriers.set(ete.startPc.offset);
+                this.barriers.set(ete.endPc.offset);
+                this.barriers.set(ete.handlerPc.offset);
+            }
+
+            for (int offset = 0; offset < this.codeSize; offset = this.next(offset)) {
+                this.instructions.set(offset);
+
+                int load = this.localVariableAccess(offset, Opcode.ILOAD);
+                if (load != -1) {
+                    int slot = load & 0xffff;
+                    this.countRead(slot);
+
+                    // LLOAD and DLOAD also read the next slot.
+                    if (load >> 16 == 1 || load >> 16 == 3) this.countRead(slot + 1);
+                    continue;
+                }
+
+                int opcode = 0xff & this.code[offset];
+                if (opcode == (0xff & Opcode.WIDE)) {
+                    opcode = 0xff & this.code[offset + 1];
+                    if (opcode == (0xff & Opcode.IINC) || opcode == (0xff & Opcode.RET)) {
+                        this.countRead(0xffff & CodeContext.extract16BitValue(0, offset + 2, this.code));
+                    }
+                } else
+                if (opcode == (0xff & Opcode.IINC) || opcode == (0xff & Opcode.RET)) {
+                    this.countRead(0xff & this.code[offset + 1]);
+                }
+            }
+        }
+
+        private void
+        countRead(int slot) {
+            if (slot >= this.slotReads.length) {
+                int[] tmp = new int[slot + 2];
+                System.arraycopy(this.slotReads, 0, tmp, 0, this.slotReads.length);
+                this.slotReads = tmp;
+            }
+            this.slotReads[slot]++;
+        }
+
+        /**
+         * Redirects branches to GOTOs to the GOTO's destination, and replaces GOTOs to RETURN instructions with the
+         * RETURN instruction.
+         *
+         * @return Whether any branch was changed
+         */
+        private boolean
+        threadJumps() {
+            boolean changed = false;
+
+            for (Relocatable r : CodeContext.this.relocatables) {
+                if (!(r instanceof Branch)) continue;
+                Branch b = (Branch) r;
+
+                if (b.opcode == Opcode.JSR || b.opcode == Opcode.JSR_W || b.opcode == Opcode.GOTO_W) continue;
+
+                // Follow the chain of GOTOs, but not forever (e.g. "L: GOTO L").
+                Offset destination = b.destination;
+                for (int i = 0; i < PeepholeOptimizer.MAX_ROUNDS; i++) {
+                    Branch g = (Branch) this.branches[destination.offset];
+                    if (g == null || g == b || g.opcode != Opcode.GOTO) break;
+                    destination = g.destination;
+                }
+                if (destination != b.destination) {
+                    b.destination = destination;
+                    changed       = true;
+                }
+
+                if (b.opcode == Opcode.GOTO && destination.offset < this.codeSize) {
+                    byte opcode = this.code[destination.offset];
+                    if ((0xff & opcode) >= (0xff & Opcode.IRETURN) && (0xff & opcode) <= (0xff & Opcode.RETURN)) {
+                        int offset = b.source.offset;
+                        this.code[offset] = opcode;
+                        this.removedBytes.set(offset + 1, offset + 3);
+                        this.removedRelocatables.add(b);
+                        changed = true;
+                    }
+                }
+            }
+
+            return changed;
+        }
+
+        /**
+         * Folds conditional branches on constants, and removes redundant pairs of instructions and GOTOs to the next
+         * instruction.
+         *
+         * @return Whether any code was changed
+         */
+        private boolean
+        rewriteInstructionPairs() {
+            byte[] code    = this.code;
+            int    removed = this.removedBytes.cardinality();
+
+            for (int offset = 0; offset < this.codeSize;) {
+                int next = this.next(offset);
+
+                Branch b = (Branch) this.branches[offset];
+                if (b != null && b.opcode == Opcode.GOTO && b.destination.offset == next) {
+                    this.removeInstructions(offset, next);
+                    this.removedRelocatables.add(b);
+                    offset = next;
+                    continue;
+                }
+
+                if (next >= this.codeSize || this.barriers.get(next)) {
+                    offset = next;
+                    continue;
+                }
+                int afterNext = this.next(next);
+
+                byte   opcode     = code[offset];
+                byte   nextOpcode = code[next];
+                Branch nextBranch = (Branch) this.branches[next];
+                if (
+                    nextBranch != null
+                    && (
+                        ((opcode == Opcode.ICONST_0 || opcode == Opcode.ICONST_1) && (
+                            nextOpcode == Opcode.IFEQ || nextOpcode == Opcode.IFNE
+                        ))
+                        || (opcode == Opcode.ACONST_NULL && (
+                            nextOpcode == Opcode.IFNULL || nextOpcode == Opcode.IFNONNULL
+                        ))
+                    )
+                ) {
+
+                    // Conditional branch on a constant.
+                    boolean taken = (
+                        opcode == Opcode.ACONST_NULL
+                        ? nextOpcode == Opcode.IFNULL
+                        : (opcode == Opcode.ICONST_0) == (nextOpcode == Opcode.IFEQ)
+                    );
+                    if (taken) {
+                        code[next]        = Opcode.GOTO;
+                        nextBranch.opcode = Opcode.GOTO;
+                        this.removeInstructions(offset, next);
+                    } else {
+                        this.removeInstructions(offset, afterNext);
+                        this.removedRelocatables.add(nextBranch);
+                    }
+                } else
+                if (
+                    (nextOpcode == Opcode.POP && this.isPush(offset, 1))
+                    || (nextOpcode == Opcode.POP2 && this.isPush(offset, 2))
+                    || this.isBoxingAndUnboxing(offset, next)
+                ) {
+                    this.removeInstructions(offset, afterNext);
+                } else
+                {
+                    int load  = this.localVariableAccess(offset, Opcode.ILOAD);
+                    int store = this.localVariableAccess(offset, Opcode.ISTORE);
+                    if (
+                        (load != -1 && load == this.localVariableAccess(next, Opcode.ISTORE))
+                        || (
+                            store != -1
+                            && store == this.localVariableAccess(next, Opcode.ILOAD)
+                            && this.isOnlyRead(store)
+                        )
+                    ) {
+                        this.removeInstructions(offset, afterNext);
+                    } else {
+                        offset = next;
+                        continue;
+                    }
+                }
+                offset = afterNext;
+            }
+
+            return this.removedBytes.cardinality() != removed;
+        }
+
+        /**
+         * @return Whether the load that follows the store of the given <var>localVariableAccess</var> is the only
+         *         read of its slot(s)
+         */
+        private boolean
+        isOnlyRead(int localVariableAccess) {
+            int slot = localVariableAccess & 0xffff;
+            int kind = localVariableAccess >> 16;
+            return (
+                this.slotReads[slot] == 1
+                && (kind != 1 && kind != 3 || this.slotReads[slot + 1] == 1)
+            );
+        }
+
+        /**
+         * @return Whether the instruction at <var>offset</var> does nothing but push one value of the given
+         *         <var>size</var> (1 or 2) onto the operand stack
+         */
+        private boolean
+        isPush(int offset, int size) {
+            byte opcode = this.code[offset];
+
+            int load = this.localVariableAccess(offset, Opcode.ILOAD);
+            if (load != -1) return (load >> 16 == 1 || load >> 16 == 3) == (size == 2);
+
+            if (size == 1) {
+                return (
+                    opcode == Opcode.DUP
+                    || opcode == Opcode.ACONST_NULL
+                    || (opcode >= Opcode.ICONST_M1 && opcode <= Opcode.ICONST_5)
+                    || (opcode >= Opcode.FCONST_0 && opcode <= Opcode.FCONST_2)
+                    || opcode == Opcode.BIPUSH
+                    || opcode == Opcode.SIPUSH
+                );
+            } else {
+                return (
+                    opcode == Opcode.DUP2
+                    || opcode == Opcode.LCONST_0
+                    || opcode == Opcode.LCONST_1
+                    || opcode == Opcode.DCONST_0
+                    || opcode == Opcode.DCONST_1
+                );
+            }
+        }
+
+        /**
+         * @return Whether the instruction at <var>offset</var> boxes a primitive value, and the instruction at
+         *         <var>next</var> immediately unboxes it, e.g. "{@code Integer.valueOf(int)}" followed by
+         *         "{@code Integer.intValue()}"
+         */
+        private boolean
+        isBoxingAndUnboxing(int offset, int next) {
+            if (this.code[offset] != Opcode.INVOKESTATIC || this.code[next] != Opcode.INVOKEVIRTUAL) return false;
+
+            ClassFile cf = CodeContext.this.classFile;
+
+            Object cpi1 = cf.getConstantPoolInfo(CodeContext.extract16BitValue(offset + 1, this.code));
+            Object cpi2 = cf.getConstantPoolInfo(CodeContext.extract16BitValue(next + 1, this.code));
+            if (
+                !(cpi1 instanceof ClassFile.ConstantMethodrefInfo)
+                || !(cpi2 instanceof ClassFile.ConstantMethodrefInfo)
+            ) return false;
+            ClassFile.ConstantMethodrefInfo box   = (ClassFile.ConstantMethodrefInfo) cpi1;
+            ClassFile.ConstantMethodrefInfo unbox = (ClassFile.ConstantMethodrefInfo) cpi2;
+
+            String wrapper = box.getClassInfo(cf).getName(cf);
+            if (
+                !CodeContext.PRIMITIVE_WRAPPERS.contains(wrapper)
+                || !wrapper.equals(unbox.getClassInfo(cf).getName(cf))
+            ) return false;
+
+            ClassFile.ConstantNameAndTypeInfo boxNat   = box.getNameAndType(cf);
+            ClassFile.ConstantNameAndTypeInfo unboxNat = unbox.getNameAndType(cf);
+
+            String boxDescriptor   = boxNat.getDescriptor(cf);
+            String unboxDescriptor = unboxNat.getDescriptor(cf);
+            return (
+                "valueOf".equals(boxNat.getName(cf))
+                && unboxNat.getName(cf).endsWith("Value")
+                && unboxDescriptor.startsWith("()")
+                && boxDescriptor.equals("(" + unboxDescriptor.substring(2) + ")L" + wrapper + ";")
+            );
+        }
+
+        /**
+         * Removes the code that is not reachable from offset zero.
+         *
+         * @return Whether any code was removed
+         */
+        private boolean
+        removeUnreachableCode() {
+
+            BitSet reached  = new BitSet(this.codeSize);
+            int[]  worklist = new int[this.codeSize + 1];
+            int    n        = 0;
+
+            worklist[n++] = 0;
+            reached.set(0);
+            for (;;) {
+                while (n > 0) {
+                    for (int offset = worklist[--n];;) {
+                        int next = this.next(offset);
+
+                        Branch b = (Branch) this.branches[offset];
+                        if (b != null && !reached.get(b.destination.offset)) {
+                            reached.set(b.destination.offset);
+                            worklist[n++] = b.destination.offset;
+                        }
+
+                        byte opcode = this.code[offset];
+                        if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+                            for (Relocatable r : CodeContext.this.relocatables) {
+                                if (!(r instanceof OffsetBranch)) continue;
+                                OffsetBranch ob = (OffsetBranch) r;
+                                if (ob.source.offset != offset || reached.get(ob.destination.offset)) continue;
+                                reached.set(ob.destination.offset);
+                                worklist[n++] = ob.destination.offset;
+                            }
+                        }
+
+                        if (CodeContext.isNoFallthrough(this.code, offset) || next >= this.codeSize) break;
+                        if (reached.get(next)) break;
+                        reached.set(next);
+                        offset = next;
+                    }
+                }
+
+                // An exception handler is reachable iff any code in its protected range is.
+                for (ExceptionTableEntry ete : CodeContext.this.exceptionTableEntries) {
+                    int start = ete.startPc.offset, end = ete.endPc.offset, handler = ete.handlerPc.offset;
+                    if (reached.get(handler)) continue;
+
+                    int r = reached.nextSetBit(start);
+                    if (r == -1 || r >= end) continue;
+
+                    reached.set(handler);
+                    worklist[n++] = handler;
+                }
+                if (n == 0) break;
+            }
+
+            boolean changed = false;
+            for (int offset = 0; offset < this.codeSize;) {
+                int next = this.next(offset);
+                if (!reached.get(offset)) {
+                    this.removeInstructions(offset, next);
+                    changed = true;
+                }
+                offset = next;
+            }
+            if (!changed) return false;
+
+            for (Relocatable r : CodeContext.this.relocatables) {
+                int source = (
+                    r instanceof Branch
+                    ? ((Branch) r).source.offset
+                    : ((OffsetBranch) r).where.offset
+                );
+                if (this.removedBytes.get(source)) this.removedRelocatables.add(r);
+            }
+            for (Iterator<ExceptionTableEntry> it = CodeContext.this.exceptionTableEntries.iterator(); it.hasNext();) {
+                ExceptionTableEntry ete = (ExceptionTableEntry) it.next();
+                if (!reached.get(ete.handlerPc.offset)) it.remove();
+            }
+
+            return true;
+        }
+
+        private void
+        removeInstructions(int from, int to) { this.removedBytes.set(from, to); }
+
+        /**
+         * Removes the {@link #removedBytes} from the code, and the {@link #removedRelocatables}. Offsets within
+         * removed code move to the beginning of that code, except {@link FixUp}s, which are removed as well.
+         */
+        private void
+        compact() {
+
+            if (!this.removedRelocatables.isEmpty()) {
+                for (Iterator<Relocatable> it = CodeContext.this.relocatables.iterator(); it.hasNext();) {
+                    if (this.removedRelocatables.contains(it.next())) it.remove();
+                }
+                this.removedRelocatables.clear();
+            }
+
+            if (this.removedBytes.isEmpty()) return;
+
+            byte[] code = this.code;
+
+            // Compute the new offset of each old offset, and move the bytes.
+            int[] newOffsets = new int[this.codeSize + 1];
+            int   dst        = 0;
+            for (int src = 0; src < this.codeSize; src++) {
+                newOffsets[src] = dst;
+                if (!this.removedBytes.get(src)) code[dst++] = code[src];
+            }
+            newOffsets[this.codeSize] = dst;
+
+            for (Offset o = CodeContext.this.beginning; o != null;) {
+                Offset next = o.next;
+
+                int offset = o.offset;
+                if (
+                    o instanceof FixUp
+                    && offset > 0
+                    && this.removedBytes.get(offset)
+                    && this.removedBytes.get(offset - 1)
+                ) {
+
+                    // E.g. the padding of a removed TABLESWITCH.
+                    Offset prev = o.prev;
+                    assert prev != null && next != null;
+                    prev.next = next;
+                    next.prev = prev;
+                } else {
+                    o.offset = newOffsets[offset];
+                }
+
+                o = next;
+            }
+
+            this.removedBytes.clear();
+        }
+
+        /**
+         * @return {@code kind << 16 | index} iff the instruction at <var>offset</var> is an xLOAD (<var>base</var>
+         *         == {@link Opcode#ILOAD}) or xSTORE (<var>base</var> == {@link Opcode#ISTORE}) instruction, where
+         *         the kind is 0 (int), 1 (long), 2 (float), 3 (double) or 4 (reference); otherwise -1
+         */
+        private int
+        localVariableAccess(int offset, byte base) {
+            byte[] code   = this.code;
+            int    opcode = 0xff & code[offset];
+
+            if (opcode == (0xff & Opcode.WIDE)) {
+                opcode = 0xff & code[offset + 1];
+                if (opcode < base || opcode > base + 4) return -1;
+                return (opcode - base) << 16 | (0xffff & CodeContext.extract16BitValue(0, offset + 2, code));
+            }
+
+            if (opcode >= base && opcode <= base + 4) return (opcode - base) << 16 | (0xff & code[offset + 1]);
+
+            // ILOAD_0 ... ALOAD_3 resp. ISTORE_0 ... ASTORE_3.
+            int shortFormBase = base + 5;
+            if (opcode >= shortFormBase && opcode < shortFormBase + 20) {
+                return (opcode - shortFormBase) / 4 << 16 | (opcode - shortFormBase) % 4;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Notice that, unlike {@link CodeContext#decodeInstruction(int, Collection)}, this method decodes the code
+         * <em>before</em> {@link CodeContext#fixUpAndRelocate()}, where the TABLESWITCH and LOOKUPSWITCH
+         * instructions have no padding yet.
+         *
+         * @return The offset of the instruction that follows the instruction at <var>offset</var>
+         */
+        private int
+        next(int offset) {
+            byte[] code = this.code;
+
+            byte  opcode        = code[offset];
+            int   operandOffset = offset + 1;
+            short props;
+            if (opcode == Opcode.WIDE) {
+                opcode = code[operandOffset++];
+                props  = Opcode.WIDE_OPCODE_PROPERTIES[0xff & opcode];
+            } else {
+                props = Opcode.OPCODE_PROPERTIES[0xff & opcode];
+            }
+            if (props == Opcode.INVALID_OPCODE) {
+                throw new InternalCompilerException("Invalid opcode " + (0xff & opcode) + " at offset " + offset);
+            }
+
+            switch (props & Opcode.OP1_MASK) {
+
+            case 0:
+                break;
+
+            case Opcode.OP1_SB:
+            case Opcode.OP1_UB:
+            case Opcode.OP1_CP1:
+            case Opcode.OP1_LV1:
+                operandOffset++;
+                break;
+
+            case Opcode.OP1_SS:
+            case Opcode.OP1_CP2:
+            case Opcode.OP1_LV2:
+            case Opcode.OP1_BO2:
+            case Opcode.OP1_JSR:
+                operandOffset += 2;
                 break;
 
             case Opcode.OP1_BO4:
-                this.flowAnalysis(
-                    functionName,
-                    code,
-                    codeSize,
-                    CodeContext.extract32BitValue(offset, operandOffset, code),
-                    stackSize,
-                    stackSizes
-                );
                 operandOffset += 4;
                 break;
 
             case Opcode.OP1_LOOKUPSWITCH:
-                while ((operandOffset & 3) != 0) ++operandOffset;
-                this.flowAnalysis(
-                    functionName,
-                    code,
-                    codeSize,
-                    CodeContext.extract32BitValue(offset, operandOffset, code),
-                    stackSize,
-                    stackSizes
-                );
-                operandOffset += 4;
-
-                int npairs = CodeContext.extract32BitValue(0, operandOffset, code);
-                operandOffset += 4;
-
-                for (int i = 0; i < npairs; ++i) {
-                    operandOffset += 4; //skip match value
-                    this.flowAnalysis(
-                        functionName,
-                        code,
-                        codeSize,
-                        CodeContext.extract32BitValue(offset, operandOffset, code),
-                        stackSize,
-                        stackSizes
-                    );
-                    operandOffset += 4; //advance over offset
-                }
+                operandOffset += 4; // Skip default offset.
+                operandOffset += 4 + 8 * CodeContext.extract32BitValue(0, operandOffset, code);
                 break;
 
             case Opcode.OP1_TABLESWITCH:
-                while ((operandOffset & 3) != 0) ++operandOffset;
-                this.flowAnalysis(
-                    functionName,
-                    code,
-                    codeSize,
-                    CodeContext.extract32BitValue(offset, operandOffset, code),
-                    stackSize,
-                    stackSizes
-                );
-                operandOffset += 4;
-                int low = CodeContext.extract32BitValue(offset, operandOffset, code);
-                operandOffset += 4;
-                int hi = CodeContext.extract32BitValue(offset, operandOffset, code);
-                operandOffset += 4;
-                for (int i = low; i <= hi; ++i) {
-                    this.flowAnalysis(
-                        functionName,
-                        code,
-                        codeSize,
-                        CodeContext.extract32BitValue(offset, operandOffset, code),
-                        stackSize,
-                        stackSizes
-                    );
-                    operandOffset += 4;
+                operandOffset += 4; // Skip default offset.
+                {
+                    int low  = CodeContext.extract32BitValue(0, operandOffset, code);
+                    int high = CodeContext.extract32BitValue(0, operandOffset + 4, code);
+                    operandOffset += 8 + 4 * (high - low + 1);
                 }
                 break;
 
             default:
-                throw new InternalCompilerException(functionName + ": Invalid OP1");
+                throw new InternalCompilerException("Invalid OP1");
             }
 
             switch (props & Opcode.OP2_MASK) {
 
             case 0:
-                ;
                 break;
 
             case Opcode.OP2_SB:
-                ++operandOffset;
+                operandOffset++;
                 break;
 
             case Opcode.OP2_SS:
@@ -712,106 +2796,247 @@ class CodeContext {
                 break;
 
             default:
-                throw new InternalCompilerException(functionName + ": Invalid OP2");
+                throw new InternalCompilerException("Invalid OP2");
             }
 
-            switch (props & Opcode.OP3_MASK) {
+            if ((props & Opcode.OP3_MASK) == Opcode.OP3_SB) operandOffset++;
 
-            case 0:
-                ;
-                break;
+            return operandOffset;
+        }
+    }
 
-            case Opcode.OP3_SB:
-                ++operandOffset;
-                break;
+    /**
+     * The internal names of the classes that wrap primitive values.
+     */
+    private static final Set<String> PRIMITIVE_WRAPPERS = new HashSet<String>(Arrays.asList(
+        "java/lang/Boolean",
+        "java/lang/Byte",
+        "java/lang/Character",
+        "java/lang/Double",
+        "java/lang/Float",
+        "java/lang/Integer",
+        "java/lang/Long",
+        "java/lang/Short"
+    ));
 
-            default:
-                throw new InternalCompilerException(functionName + ": Invalid OP3");
-            }
+    /**
+     * Widens the branches that need it, fixes up all of the offsets and relocate() all relocatables.
+     *
+     * @return The number of branch relaxation rounds that were necessary (at least one); see {@link
+     *         #relaxBranches()}
+     */
+    public int
+    fixUpAndRelocate() {
 
-            Arrays.fill(stackSizes, offset + 1, operandOffset, CodeContext.INVALID_OFFSET);
+        // From here on, the code is kept in one contiguous array, because the fix-ups and relocatables address it
+        // through absolute offsets.
+        this.flatten();
 
-            if ((props & Opcode.NO_FALLTHROUGH) != 0) return;
-            offset = operandOffset;
-        }
+        int rounds = this.relaxBranches();
+        this.fixUp();
+        this.relocate();
+
+        return rounds;
     }
 
     /**
-     * Extracts a 16 bit value at the given <var>offset</var> in the <var>code</var>.
+     * Decides which branches must be widened (GOTO to GOTO_W, JSR to JSR_W, IF* to the inverted IF* plus a GOTO_W),
+     * and then widens all of them in one pass over the code.
+     * <p>
+     *   The decision is a monotone relaxation over the spans of the branches: Initially, all branches are short, and
+     *   each round widens those short branches whose displacement, plus the growth of the code within their span,
+     *   exceeds 16 bits. Because branches only ever grow, this terminates after at most one round per branch, and
+     *   almost always after the first round. No code is moved while the decisions are made.
+     * </p>
+     * <p>
+     *   {@link FixUp}s are counted with their maximum growth ({@link #MAX_FIX_UP_GROWTH}), because they are executed
+     *   only after the branches have been widened.
+     * </p>
+     *
+     * @return The number of relaxation rounds
      */
-    private static short
-    extract16BitValue(int offset, byte[] code) {
-        CodeContext.LOGGER.entering(
-            null,
-            "extract16BitValue",
-            new Object[] { offset, code[offset], code[offset + 1] }
-        );
+    private int
+    relaxBranches() {
 
-        short result = (short) (((code[offset]) << 8) + (code[offset + 1] & 0xff));
+        // Collect the points where the code can grow, in ascending order of their offsets.
+        Map<Offset, Branch> branchSources = new IdentityHashMap<Offset, Branch>();
+        for (Relocatable r : this.relocatables) {
+            if (r instanceof Branch) branchSources.put(((Branch) r).source, (Branch) r);
+        }
+        List<Offset> growthPoints = new ArrayList<Offset>();
+        for (Offset o = this.beginning; o != null; o = o.next) {
+            if (o instanceof FixUp || branchSources.containsKey(o)) growthPoints.add(o);
+        }
 
-        CodeContext.LOGGER.exiting(null,  "extract16BitValue", result);
-        return result;
+        int   n         = growthPoints.size();
+        int[] positions = new int[n];
+        int[] growths   = new int[n];     // Of the widened branches
+        int[] tree      = new int[n + 1]; // A Fenwick tree of the growths, plus the maximum growth of the fix-ups
+        for (int i = 0; i < n; i++) {
+            Offset o = (Offset) growthPoints.get(i);
+            positions[i] = o.offset;
+
+            Branch b = (Branch) branchSources.get(o);
+            if (b != null) {
+                b.growthPoint = i;
+            } else {
+                CodeContext.addGrowth(tree, i, CodeContext.MAX_FIX_UP_GROWTH);
+            }
+        }
+
+        List<Branch> shortBranches = new ArrayList<Branch>();
+        for (Branch b : branchSources.values()) {
+            if (b.destination.offset == Offset.UNSET) {
+                throw new InternalCompilerException("Cannot relocate branch to unset destination offset");
+            }
+            if (!b.expanded) shortBranches.add(b);
+        }
+
+        int rounds = 0, totalGrowth = 0;
+        for (;;) {
+            rounds++;
+
+            List<Branch> widened = new ArrayList<Branch>();
+            for (Iterator<Branch> it = shortBranches.iterator(); it.hasNext();) {
+                Branch b = (Branch) it.next();
+
+                int from = b.source.offset, to = b.destination.offset;
+                int displacement = (
+                    to >= from
+                    ? to - from + CodeContext.growthBetween(tree, positions, from, to)
+                    : to - from - CodeContext.growthBetween(tree, positions, to, from)
+                );
+                if (displacement < Short.MIN_VALUE || displacement > Short.MAX_VALUE) {
+                    widened.add(b);
+                    it.remove();
+                }
+            }
+            if (widened.isEmpty()) break;
+
+            for (Branch b : widened) {
+                int growth = b.opcode == Opcode.GOTO || b.opcode == Opcode.JSR ? 2 : 5;
+                b.expanded             =  true;
+                growths[b.growthPoint] =  growth;
+                totalGrowth            += growth;
+                CodeContext.addGrowth(tree, b.growthPoint, growth);
+            }
+        }
+
+        if (totalGrowth == 0) return rounds;
+
+        // Now move the code and the offsets, in one pass. Only offsets _behind_ a branch instruction move; e.g. a
+        // LineNumberOffset of the branch instruction keeps pointing to its first byte.
+        int codeSize = this.end.offset;
+        if (codeSize + totalGrowth > 0xffff) throw this.codeTooLarge();
+
+        byte[] code = new byte[codeSize + totalGrowth];
+        {
+            int from = 0, delta = 0;
+            for (int i = 0; i < n; i++) {
+                if (growths[i] == 0) continue;
+                System.arraycopy(this.code, from, code, from + delta, positions[i] - from);
+                from  =  positions[i];
+                delta += growths[i];
+            }
+            System.arraycopy(this.code, from, code, from + delta, codeSize - from);
+        }
+        {
+            int i = 0, delta = 0;
+            for (Offset o = this.beginning; o != null; o = o.next) {
+                while (i < n && positions[i] < o.offset) delta += growths[i++];
+                o.offset += delta;
+            }
+        }
+        this.code = code;
+
+        return rounds;
     }
 
     /**
-     * Extracts a 16 bit value at the given <var>offset</var> in the <var>code</var> and adds a
-     * <var>bias</var> to it.
-     *
-     * @return An integer that treats the two bytes at position offset as an UNSIGNED SHORT
+     * Adds <var>growth</var> to the growth point with the given index.
+     */
+    private static void
+    addGrowth(int[] tree, int index, int growth) {
+        for (int i = index + 1; i < tree.length; i += i & -i) tree[i] += growth;
+    }
+
+    /**
+     * @return The total growth of the growth points with <var>from</var> {@code <=} offset {@code <} <var>to</var>
      */
     private static int
-    extract16BitValue(int bias, int offset, byte[] code) {
-        CodeContext.LOGGER.entering(
-            null,
-            "extract16BitValue",
-            new Object[] { bias, offset, code[offset], code[offset + 1] }
-        );
+    growthBetween(int[] tree, int[] positions, int from, int to) {
+        return CodeContext.growthBefore(tree, positions, to) - CodeContext.growthBefore(tree, positions, from);
+    }
 
-        int result = bias + ((code[offset]) << 8) + (code[offset + 1] & 0xff);
-        CodeContext.LOGGER.exiting(null,  "extract16BitValue", result);
+    private static int
+    growthBefore(int[] tree, int[] positions, int offset) {
+
+        // Count the growth points with a position less than the offset.
+        int lo = 0, hi = positions.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (positions[mid] < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        int result = 0;
+        for (int i = lo; i > 0; i -= i & -i) result += tree[i];
         return result;
     }
 
     /**
-     * Extracts a 32 bit value at offset in code and adds <var>bias</var> to it.
-     *
-     * @param bias   An int to skew the final result by (useful for calculating relative offsets)
-     * @param offset The position in the code array to extract the bytes from
-     * @param code   The array of bytes
-     * @return       The 4 bytes at position offset + bias
+     * @return The length of the bytecode generated so far
      */
-    private static int
-    extract32BitValue(int bias, int offset, byte[] code) {
-        CodeContext.LOGGER.entering(
-            null,
-            "extract32BitValue",
-            new Object[] { bias, offset, code[offset], code[offset + 1], code[offset + 2], code[offset + 3] }
-        );
+    public int
+    getCodeSize() { return this.end.getOffset(); }
 
-        int result = bias + (
-            (code[offset] << 24)
-            + ((0xff & code[offset + 1]) << 16)
-            + ((0xff & code[offset + 2]) << 8)
-            + (0xff & code[offset + 3])
-        );
+    /**
+     * Concatenates the {@link Segment}s into {@link #code}, and converts all {@link Offset}s into absolute offsets.
+     * Insertions after that shift the bytes behind the inserter, which is fine for the few insertions that happen
+     * during {@link #fixUpAndRelocate()}. Does nothing if the code is already flat.
+     */
+    private void
+    flatten() {
 
-        CodeContext.LOGGER.exiting(null, "extract32BitValue", result);
-        return result;
+        if (this.firstSegment == null) return;
+
+        this.computeSegmentPositions();
+
+        byte[] code = new byte[this.segmentedCodeSize];
+        for (Segment s = this.firstSegment; s != null; s = s.next) {
+            System.arraycopy(s.bytes, s.start, code, s.position, s.end - s.start);
+        }
+
+        for (Offset o = this.beginning; o != null; o = o.next) {
+            Segment s = o.segment;
+            assert s != null;
+            o.offset  = s.position + o.offset - s.start;
+            o.segment = null;
+        }
+
+        this.code         = code;
+        this.firstSegment = null;
+        this.lastSegment  = null;
     }
 
     /**
-     * Fixes up all of the offsets and relocate() all relocatables.
+     * Updates the {@link Segment#position}s iff they are outdated.
      */
-    public void
-    fixUpAndRelocate() {
+    private void
+    computeSegmentPositions() {
 
-        // We do this in a loop to allow relocatables to adjust the size
-        // of things in the byte stream.  It is extremely unlikely, but possible
-        // that a late relocatable will grow the size of the bytecode, and require
-        // an earlier relocatable to switch from 32K mode to 64K mode branching
-        do {
-            this.fixUp();
-        } while (!this.relocate());
+        if (this.segmentPositionsValid) return;
+
+        int position = 0;
+        for (Segment s = this.firstSegment; s != null; s = s.next) {
+            s.position =  position;
+            position   += s.end - s.start;
+        }
+
+        this.segmentPositionsValid = true;
     }
 
     /**
@@ -826,20 +3051,11 @@ class CodeContext {
     }
 
     /**
-     * Relocates all relocatables and aggregate their response into a single one.
-     *
-     * @return {@code true} if all of them relocated successfully, {@code false} if any of them needed to change size
+     * Relocates all relocatables.
      */
-    private boolean
+    private void
     relocate() {
-        boolean finished = true;
-        for (Relocatable relocatable : this.relocatables) {
-
-            // Do not terminate earlier so that everything gets a chance to grow in the first pass changes the common
-            // case for this to be O(n) instead of O(n**2).
-            finished &= relocatable.relocate();
-        }
-        return finished;
+        for (Relocatable relocatable : this.relocatables) relocatable.relocate();
     }
 
     /**
@@ -864,13 +3080,7 @@ class CodeContext {
      */
     private int
     determineArgumentsSize(short idx) {
-        ClassFile.ConstantPoolInfo        cpi = this.classFile.getConstantPoolInfo(idx);
-        ClassFile.ConstantNameAndTypeInfo nat = (
-            cpi instanceof ClassFile.ConstantInterfaceMethodrefInfo
-            ? ((ClassFile.ConstantInterfaceMethodrefInfo) cpi).getNameAndType(this.classFile)
-            : ((ClassFile.ConstantMethodrefInfo)          cpi).getNameAndType(this.classFile)
-        );
-        String desc = nat.getDescriptor(this.classFile);
+        String desc = this.getMethodNameAndType(idx).getDescriptor(this.classFile);
 
         if (desc.charAt(0) != '(') throw new InternalCompilerException("Method descriptor does not start with \"(\"");
         int i   = 1;
@@ -903,6 +3113,21 @@ class CodeContext {
         }
     }
 
+    /**
+     * @return The NAME_AND_TYPE of the Methodref, InterfaceMethodref or InvokeDynamic at index <var>idx</var>
+     */
+    private ClassFile.ConstantNameAndTypeInfo
+    getMethodNameAndType(short idx) {
+        ClassFile.ConstantPoolInfo cpi = this.classFile.getConstantPoolInfo(idx);
+        return (
+            cpi instanceof ClassFile.ConstantInterfaceMethodrefInfo
+            ? ((ClassFile.ConstantInterfaceMethodrefInfo) cpi).getNameAndType(this.classFile)
+            : cpi instanceof ClassFile.ConstantInvokeDynamicInfo
+            ? ((ClassFile.ConstantInvokeDynamicInfo) cpi).getNameAndType(this.classFile)
+            : ((ClassFile.ConstantMethodrefInfo)          cpi).getNameAndType(this.classFile)
+        );
+    }
+
     /**
      * Inserts a sequence of bytes at the current insertion position. Creates {@link LineNumberOffset}s as necessary.
      *
@@ -914,9 +3139,9 @@ class CodeContext {
 
         if (b.length == 0) return;
 
-        // CAVEAT: "makeSpace()" may change "this.code", so make sure to call "makeSpace()" _before_ using "this.code"!
-        int o = this.makeSpace(lineNumber, b.length);
-        System.arraycopy(b, 0, this.code, o, b.length);
+        // CAVEAT: "insert()" may change "this.code", so make sure to call "insert()" _before_ using "this.code"!
+        int o = this.insert(lineNumber, b.length);
+        System.arraycopy(b, 0, this.currentCode(), o, b.length);
     }
 
     /**
@@ -931,9 +3156,9 @@ class CodeContext {
     public void
     write(int lineNumber, byte b1) {
 
-        // CAVEAT: "makeSpace()" may change "this.code", so make sure to call "makeSpace()" _before_ using "this.code"!
-        int o = this.makeSpace(lineNumber, 1);
-        this.code[o] = b1;
+        // CAVEAT: "insert()" may change "this.code", so make sure to call "insert()" _before_ using "this.code"!
+        int o = this.insert(lineNumber, 1);
+        this.currentCode()[o] = b1;
     }
 
     /**
@@ -947,10 +3172,11 @@ class CodeContext {
     public void
     write(int lineNumber, byte b1, byte b2) {
 
-        int o = this.makeSpace(lineNumber, 2);
+        int    o    = this.insert(lineNumber, 2);
+        byte[] code = this.currentCode();
 
-        this.code[o++] = b1;
-        this.code[o]   = b2;
+        code[o++] = b1;
+        code[o]   = b2;
     }
 
     /**
@@ -964,11 +3190,12 @@ class CodeContext {
     public void
     write(int lineNumber, byte b1, byte b2, byte b3) {
 
-        int o = this.makeSpace(lineNumber, 3);
+        int    o    = this.insert(lineNumber, 3);
+        byte[] code = this.currentCode();
 
-        this.code[o++] = b1;
-        this.code[o++] = b2;
-        this.code[o]   = b3;
+        code[o++] = b1;
+        code[o++] = b2;
+        code[o]   = b3;
     }
 
     /**
@@ -982,12 +3209,13 @@ class CodeContext {
     public void
     write(int lineNumber, byte b1, byte b2, byte b3, byte b4) {
 
-        int o = this.makeSpace(lineNumber, 4);
+        int    o    = this.insert(lineNumber, 4);
+        byte[] code = this.currentCode();
 
-        this.code[o++] = b1;
-        this.code[o++] = b2;
-        this.code[o++] = b3;
-        this.code[o]   = b4;
+        code[o++] = b1;
+        code[o++] = b2;
+        code[o++] = b3;
+        code[o]   = b4;
     }
 
     /**
@@ -1004,10 +3232,31 @@ class CodeContext {
      */
     public int
     makeSpace(int lineNumber, final int size) {
+        int o = this.insert(lineNumber, size);
+        return this.currentInserter.segment == null ? o : this.currentInserter.getOffset() - size;
+    }
 
-        final int cio = this.currentInserter.offset;
+    /**
+     * @return The array that holds the bytes at the current inserter's offset
+     */
+    private byte[]
+    currentCode() {
+        Segment s = this.currentInserter.segment;
+        return s == null ? this.code : s.bytes;
+    }
+
+    /**
+     * Like {@link #makeSpace(int, int)}, but returns the index of the first inserted byte within {@link
+     * #currentCode()}, which is different from its offset while the code is segmented.
+     */
+    private int
+    insert(int lineNumber, final int size) {
 
-        if (size == 0) return cio;
+        if (size == 0) return this.currentInserter.offset;
+
+        if (this.firstSegment != null) this.prepareSegment(size);
+
+        final int cio = this.currentInserter.offset;
 
         INSERT_LINE_NUMBER_OFFSET:
         if (lineNumber != -1) {
@@ -1028,6 +3277,7 @@ class CodeContext {
 
             // Insert a LineNumberOffset _before_ the current inserter.
             LineNumberOffset lno = new LineNumberOffset(cio, (short) lineNumber);
+            lno.segment = this.currentInserter.segment;
 
             Offset cip = this.currentInserter.prev;
             assert cip != null;
@@ -1040,6 +3290,17 @@ class CodeContext {
             this.currentInserter.prev = lno;
         }
 
+        Segment s = this.currentInserter.segment;
+        if (s != null) {
+
+            // "prepareSegment()" has moved everything behind the current inserter out of the way.
+            Arrays.fill(s.bytes, cio, cio + size, (byte) 0);
+            s.end                       += size;
+            this.currentInserter.offset += size;
+            this.segmentedCodeSize      += size;
+            return cio;
+        }
+
         if (this.end.offset + size <= this.code.length) {
 
             // Optimization to avoid a trivial method call in the common case
@@ -1050,15 +3311,7 @@ class CodeContext {
             byte[] oldCode = this.code;
             //double size to avoid horrible performance, but don't grow over our limit
             int newSize = Math.max(Math.min(oldCode.length * 2, 0xffff), oldCode.length + size);
-            if (newSize > 0xffff) {
-                throw new InternalCompilerException(
-                    "Code of method \""
-                    + this.functionName
-                    + "\" of class \""
-                    + this.classFile.getThisClassName()
-                    + "\" grows beyond 64 KB"
-                );
-            }
+            if (newSize > 0xffff) throw this.codeTooLarge();
             this.code = new byte[newSize];
             System.arraycopy(oldCode, 0, this.code, 0, cio);
             System.arraycopy(oldCode, cio, this.code, cio + size, this.end.offset - cio);
@@ -1069,6 +3322,97 @@ class CodeContext {
         return cio;
     }
 
+    /**
+     * Makes sure that the current inserter is the last offset of its {@link Segment}, that it is at the end of its
+     * segment, and that the segment has room for another <var>size</var> bytes.
+     * <p>
+     *   If the current inserter is in the middle of a segment, then that segment is split, and only the smaller part
+     *   is copied (into a new segment). Thus, no insertion ever moves the bulk of the code that was generated so far.
+     * </p>
+     */
+    private void
+    prepareSegment(int size) {
+
+        if (this.segmentedCodeSize + size > 0xffff) throw this.codeTooLarge();
+
+        Inserter ci = this.currentInserter;
+        Segment  s  = ci.segment;
+        assert s != null;
+
+        final int cio = ci.offset;
+
+        Offset cin = ci.next;
+        if (cio != s.end || (cin != null && cin.segment == s)) {
+
+            int prefixLength = cio - s.start, suffixLength = s.end - cio;
+            if (suffixLength <= prefixLength) {
+
+                // Move the bytes and offsets after the current inserter into a new segment.
+                Segment t = new Segment(Arrays.copyOfRange(s.bytes, cio, s.end), 0, suffixLength);
+                for (Offset o = cin; o != null && o.segment == s; o = o.next) {
+                    o.offset  -= cio;
+                    o.segment =  t;
+                }
+                s.end = cio;
+
+                t.prev = s;
+                t.next = s.next;
+                if (s.next == null) {
+                    this.lastSegment = t;
+                } else {
+                    s.next.prev = t;
+                }
+                s.next = t;
+            } else {
+
+                // Move the bytes and offsets up to the current inserter into a new segment.
+                byte[] ba = new byte[Math.max(2 * prefixLength, prefixLength + size)];
+                System.arraycopy(s.bytes, s.start, ba, 0, prefixLength);
+
+                Segment p = new Segment(ba, 0, prefixLength);
+                for (Offset o = ci; o != null && o.segment == s; o = o.prev) {
+                    o.offset  -= s.start;
+                    o.segment =  p;
+                }
+                s.start = cio;
+
+                p.next = s;
+                p.prev = s.prev;
+                if (s.prev == null) {
+                    this.firstSegment = p;
+                } else {
+                    s.prev.next = p;
+                }
+                s.prev = p;
+
+                s = p;
+            }
+        }
+
+        if (s.end + size > s.bytes.length) {
+            byte[] ba = new byte[Math.max(2 * s.bytes.length, s.end + size)];
+            System.arraycopy(s.bytes, s.start, ba, s.start, s.end - s.start);
+            s.bytes = ba;
+        }
+
+        // Appending to the last segment is the only modification that keeps all positions valid.
+        if (s != this.lastSegment) this.segmentPositionsValid = false;
+    }
+
+    /**
+     * @return The exception that reports that the code of this method exceeds the limit of the class file format
+     */
+    private InternalCompilerException
+    codeTooLarge() {
+        return new InternalCompilerException(
+            "Code of method \""
+            + this.functionName
+            + "\" of class \""
+            + this.classFile.getThisClassName()
+            + "\" grows beyond 64 KB"
+        );
+    }
+
     /**
      */
     public void
@@ -1103,34 +3447,19 @@ class CodeContext {
             }
         }
 
-        @Override public boolean
+        @Override public void
         relocate() {
             if (this.destination.offset == Offset.UNSET) {
                 throw new InternalCompilerException("Cannot relocate branch to unset destination offset");
             }
             int offset = this.destination.offset - this.source.offset;
 
-            if (!this.expanded && (offset > Short.MAX_VALUE || offset < Short.MIN_VALUE)) {
-                //we want to insert the data without skewing our source position,
-                //so we will cache it and then restore it later.
-                final int pos = this.source.offset;
-                CodeContext.this.pushInserter(this.source);
-                {
-                    // Promotion to a wide instruction only requires 2 extra bytes. Everything else requires a new
-                    // GOTO_W instruction after a negated if (5 extra bytes).
-                    CodeContext.this.makeSpace(
-                        -1,
-                        this.opcode == Opcode.GOTO || this.opcode == Opcode.JSR ? 2 : 5
-                    );
-                }
-                CodeContext.this.popInserter();
-                this.source.offset = pos;
-                this.expanded      = true;
-                return false;
-            }
-
             final byte[] ba;
             if (!this.expanded) {
+                if (offset > Short.MAX_VALUE || offset < Short.MIN_VALUE) {
+                    throw new InternalCompilerException("Branch was not widened although its offset exceeds 16 bits");
+                }
+
                 //we fit in a 16-bit jump
                 ba = new byte[] { (byte) this.opcode, (byte) (offset >> 8), (byte) offset };
             } else {
@@ -1166,13 +3495,13 @@ class CodeContext {
                 }
             }
             System.arraycopy(ba, 0, CodeContext.this.code, this.source.offset, ba.length);
-            return true;
         }
 
-        private boolean        expanded; //marks whether this has been expanded to account for a wide branch
-        private final int      opcode;
+        private boolean        expanded;    //marks whether this has been expanded to account for a wide branch
+        private int            growthPoint; // Used only by "relaxBranches()"
+        private int            opcode;      // May be changed by "optimize()"
         private final Inserter source;
-        private final Offset   destination;
+        private Offset         destination; // May be changed by "optimize()"
     }
 
     /**
@@ -1225,7 +3554,7 @@ class CodeContext {
             this.destination = destination;
         }
 
-        @Override public boolean
+        @Override public void
         relocate() {
             if (this.source.offset == Offset.UNSET || this.destination.offset == Offset.UNSET) {
                 throw new InternalCompilerException("Cannot relocate offset branch to unset destination offset");
@@ -1238,7 +3567,6 @@ class CodeContext {
                 (byte) offset
             };
             System.arraycopy(ba, 0, CodeContext.this.code, this.where.offset, 4);
-            return true;
         }
         private final Offset where, source, destination;
     }
@@ -1304,10 +3632,16 @@ class CodeContext {
     class Offset {
 
         /**
-         * The offset in the code attribute that this object represents.
+         * The offset in the code attribute that this object represents; however, while the code is segmented, this
+         * is the index into {@link #segment}'s bytes.
          */
         int offset = Offset.UNSET;
 
+        /**
+         * The segment that this offset lies in, or {@code null} iff the code is flat (or this offset is not set).
+         */
+        @Nullable Segment segment;
+
         /**
          * Links to preceding and succeeding offsets. Both are {@code null} <em>before</em> {@link #set()} is called,
          * and both are non-{@code null} <em>after</em> {@link #set()} has been called. This implies that {@link
@@ -1331,7 +3665,8 @@ class CodeContext {
 
             Inserter ci = CodeContext.this.currentInserter;
 
-            this.offset = ci.offset;
+            this.offset  = ci.offset;
+            this.segment = ci.segment;
 
             Offset cip = ci.prev;
             assert cip != null;
@@ -1343,13 +3678,53 @@ class CodeContext {
             ci.prev  = this;
         }
 
+        /**
+         * @return The offset in the code attribute that this object represents, or {@link #UNSET}
+         */
+        public int
+        getOffset() {
+
+            Segment s = this.segment;
+            if (s == null) return this.offset;
+
+            CodeContext.this.computeSegmentPositions();
+            return s.position + this.offset - s.start;
+        }
+
         /**
          * @return The {@link CodeContext} that this {@link Offset} belongs to
          */
         public final CodeContext getCodeContext() { return CodeContext.this; }
 
         @Override public String
-        toString() { return CodeContext.this.classFile.getThisClassName() + ": " + this.offset; }
+        toString() { return CodeContext.this.classFile.getThisClassName() + ": " + this.getOffset(); }
+    }
+
+    /**
+     * A piece of the code attribute while it is being generated; see {@link CodeContext#firstSegment}.
+     */
+    private static final
+    class Segment {
+
+        /**
+         * The bytes of this segment are {@code bytes[start]} through {@code bytes[end - 1]}.
+         */
+        byte[] bytes;
+        int    start, end;
+
+        /**
+         * The offset of {@code bytes[start]} in the code attribute; only valid iff {@link
+         * CodeContext#segmentPositionsValid}.
+         */
+        int position;
+
+        @Nullable Segment prev, next;
+
+        Segment(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end   = end;
+        }
     }
 
     /**
@@ -1412,12 +3787,9 @@ class CodeContext {
     class Relocatable {
 
         /**
-         * Relocates this object.
-         *
-         * @return {@code true} if the relocation succeeded in place; {@code false} if the relocation grew the number
-         *         of bytes required
+         * Writes the final bytes of this object into the code; must not change the size of the code.
          */
-        public abstract boolean relocate();
+        public abstract void relocate();
     }
 
     /**
@@ -1426,6 +3798,10 @@ class CodeContext {
      * <p>
      *   This is currently used for inserting the "padding bytes" into the TABLESWITCH and LOOKUPSWITCH instructions.
      * </p>
+     * <p>
+     *   A fix-up is executed exactly once, after all branches have been widened, and must not insert more than {@link
+     *   CodeContext#MAX_FIX_UP_GROWTH} bytes.
+     * </p>
      */
     public
     interface FixUp {
@@ -1451,13 +3827,36 @@ class CodeContext {
 
         if (from == to) return;
 
-        int size = to.offset - from.offset;
+        int size = to.getOffset() - from.getOffset();
         assert size >= 0;
 
         if (size == 0) return; // Short circuit.
 
-        // Shift down the bytecode past "to".
-        System.arraycopy(this.code, to.offset, this.code, from.offset, this.end.offset - to.offset);
+        Segment fs = from.segment, ts = to.segment;
+        if (fs == null) {
+
+            // Shift down the bytecode past "to".
+            System.arraycopy(this.code, to.offset, this.code, from.offset, this.end.offset - to.offset);
+        } else
+        if (fs == ts) {
+
+            // Shift down the rest of the segment.
+            System.arraycopy(fs.bytes, to.offset, fs.bytes, from.offset, fs.end - to.offset);
+            fs.end                     -= size;
+            this.segmentedCodeSize     -= size;
+            this.segmentPositionsValid =  false;
+        } else {
+            assert ts != null;
+
+            // Cut the segments between "from" and "to"; nothing needs to be moved.
+            fs.end   = from.offset;
+            ts.start = to.offset;
+            fs.next  = ts;
+            ts.prev  = fs;
+
+            this.segmentedCodeSize     -= size;
+            this.segmentPositionsValid =  false;
+        }
 
         // Invalidate all offsets between "from" and "to".
         // Remove all relocatables that originate between "from" and "to".
@@ -1474,6 +3873,7 @@ class CodeContext {
                 // Invalidate the offset for fast failure.
                 final Offset n = o.next;
                 o.offset    = -77;
+                o.segment   = null;
                 o.prev      = null;
                 o.next      = null;
 
@@ -1481,11 +3881,16 @@ class CodeContext {
                 assert o != null;
             }
 
-            for (;;) {
-                o.offset -= size;
-                if (o == this.end) break;
-                o = o.next;
-                assert o != null;
+            if (fs == null) {
+                for (;;) {
+                    o.offset -= size;
+                    if (o == this.end) break;
+                    o = o.next;
+                    assert o != null;
+                }
+            } else
+            if (fs == ts) {
+                for (; o != null && o.segment == fs; o = o.next) o.offset -= size;
             }
         }
 
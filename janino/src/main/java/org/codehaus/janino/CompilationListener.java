@@ -0,0 +1,52 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+/**
+ * Receives the performance metrics of the compilations of a {@link SimpleCompiler} (and thus of all evaluators) or a
+ * {@link Compiler}.
+ *
+ * @see SimpleCompiler#setCompilationListener(CompilationListener)
+ * @see Compiler#setCompilationListener(CompilationListener)
+ * @see JfrCompilationListener
+ */
+public
+interface CompilationListener {
+
+    /**
+     * Invoked after a compilation unit was successfully compiled, and the resulting class files were stored.
+     */
+    void compilationUnitCompiled(CompilationMetrics metrics);
+
+    /**
+     * Invoked after a generated class was defined into the JVM. Notice that classes are defined lazily, i.e. only
+     * when they are loaded for the first time, which is typically <em>after</em> the compilation has completed.
+     *
+     * @param className     The fully qualified name of the defined class
+     * @param classFileSize The length of the bytecode of the class
+     * @param nanos         The time spent defining the class
+     */
+    void classDefined(String className, int classFileSize, long nanos);
+}
@@ -0,0 +1,185 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import org.codehaus.commons.nullanalysis.Nullable;
+
+/**
+ * The performance metrics of the compilation of one compilation unit, as reported to a {@link CompilationListener}.
+ * <p>
+ *   The timings of the phases do not overlap, e.g. the time spent while loading {@link IClass}es during code
+ *   generation counts as "type resolution", and not as "code generation". All timings are in nanoseconds, and are
+ *   zero for phases that were not executed or not measured (e.g. the scanning and parsing of a compilation unit that
+ *   was passed to {@link SimpleCompiler#cook(Java.AbstractCompilationUnit)} as an AST).
+ * </p>
+ */
+public
+class CompilationMetrics {
+
+    @Nullable private final String fileName;
+
+    long scanNanos;
+    long parseNanos;
+    long typeResolutionNanos;
+    long codeGenerationNanos;
+    long relocationNanos;
+    long storeNanos;
+
+    int iClassesLoaded;
+    int classFileCount;
+    int bytecodeSize;
+    int constantPoolSize;
+    int relocationIterations;
+
+    /**
+     * The value of {@link System#nanoTime()} when the scanning and parsing began, or -1.
+     */
+    private long frontEndBegin = -1;
+
+    /**
+     * @param fileName The name of the compilation unit's source file, or {@code null}
+     */
+    public
+    CompilationMetrics(@Nullable String fileName) { this.fileName = fileName; }
+
+    /**
+     * Marks the beginning of the scanning and parsing of the compilation unit.
+     */
+    void
+    beginFrontEnd() { this.frontEndBegin = System.nanoTime(); }
+
+    /**
+     * Marks the end of the scanning and parsing of the compilation unit; all the time since {@link #beginFrontEnd()}
+     * that was not spent in the scanner counts as parse time.
+     */
+    void
+    endFrontEnd() {
+        if (this.frontEndBegin == -1) return;
+        this.parseNanos    += System.nanoTime() - this.frontEndBegin - this.scanNanos;
+        this.frontEndBegin =  -1;
+    }
+
+    /**
+     * @return The name of the compilation unit's source file, or {@code null}
+     */
+    @Nullable public String
+    getFileName() { return this.fileName; }
+
+    /**
+     * @return The time spent in the {@link Scanner}
+     */
+    public long
+    getScanNanos() { return this.scanNanos; }
+
+    /**
+     * @return The time spent in the {@link Parser}, excluding the time spent in the {@link Scanner}
+     */
+    public long
+    getParseNanos() { return this.parseNanos; }
+
+    /**
+     * @return The time spent while the {@link IClassLoader} loaded the referenced types
+     */
+    public long
+    getTypeResolutionNanos() { return this.typeResolutionNanos; }
+
+    /**
+     * @return The time spent in the {@link UnitCompiler}, excluding type resolution and relocation
+     */
+    public long
+    getCodeGenerationNanos() { return this.codeGenerationNanos; }
+
+    /**
+     * @return The time spent in {@link CodeContext#fixUpAndRelocate()}
+     */
+    public long
+    getRelocationNanos() { return this.relocationNanos; }
+
+    /**
+     * @return The time spent serializing the generated class files
+     */
+    public long
+    getStoreNanos() { return this.storeNanos; }
+
+    /**
+     * @return The number of {@link IClass}es that were loaded while the compilation unit was compiled
+     */
+    public int
+    getIClassesLoaded() { return this.iClassesLoaded; }
+
+    /**
+     * @return The number of class files that the compilation unit produced
+     */
+    public int
+    getClassFileCount() { return this.classFileCount; }
+
+    /**
+     * @return The total length of the bytecode of all the methods of all the generated class files
+     */
+    public int
+    getBytecodeSize() { return this.bytecodeSize; }
+
+    /**
+     * @return The total number of constant pool entries of all the generated class files
+     */
+    public int
+    getConstantPoolSize() { return this.constantPoolSize; }
+
+    /**
+     * @return The total number of branch relaxation rounds of {@link CodeContext#fixUpAndRelocate()} for all the
+     *         generated methods (one per method, unless branches had to be widened)
+     */
+    public int
+    getRelocationIterations() { return this.relocationIterations; }
+
+    @Override public String
+    toString() {
+        return (
+            (this.fileName == null ? "(unnamed)" : this.fileName)
+            + ": scan="
+            + this.scanNanos
+            + "ns, parse="
+            + this.parseNanos
+            + "ns, typeResolution="
+            + this.typeResolutionNanos
+            + "ns, codeGeneration="
+            + this.codeGenerationNanos
+            + "ns, relocation="
+            + this.relocationNanos
+            + "ns, store="
+            + this.storeNanos
+            + "ns, iClassesLoaded="
+            + this.iClassesLoaded
+            + ", classFiles="
+            + this.classFileCount
+            + ", bytecodeSize="
+            + this.bytecodeSize
+            + ", constantPoolSize="
+            + this.constantPoolSize
+            + ", relocationIterations="
+            + this.relocationIterations
+        );
+    }
+}
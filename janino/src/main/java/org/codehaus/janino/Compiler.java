@@ -31,16 +31,34 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.Cookable;
 import org.codehaus.commons.compiler.ErrorHandler;
 import org.codehaus.commons.compiler.ICompiler;
 import org.codehaus.commons.compiler.Location;
@@ -73,13 +91,21 @@ class Compiler extends AbstractCompiler {
     private boolean                   debugSource;
     private boolean                   debugLines;
     private boolean                   debugVars;
+    private int                       targetVersion = -1;
     @Nullable private WarningHandler  warningHandler;
     @Nullable private ErrorHandler    compileErrorHandler;
     private EnumSet<JaninoOption>     options = EnumSet.noneOf(JaninoOption.class);
+    private int                       threadCount = 1;
+    @Nullable private Executor        executor;
+    private boolean                   incremental;
+
+    @Nullable private CompilationListener compilationListener;
 
     // Compile time state:
 
     private final List<UnitCompiler> parsedCompilationUnits = new ArrayList<UnitCompiler>();
+    @Nullable private DependencyIndex dependencyIndex;
+    @Nullable private Set<String>     upToDateClassNames;
 
     /**
      * Initializes a new compiler.
@@ -230,14 +256,189 @@ class Compiler extends AbstractCompiler {
         return this;
     }
 
+    /**
+     * Installs a {@link CompilationListener} that receives the metrics of each compilation unit that is compiled.
+     *
+     * @param compilationListener {@code null} to disable the collection of metrics
+     * @see                       JfrCompilationListener
+     */
+    public void
+    setCompilationListener(@Nullable CompilationListener compilationListener) {
+        this.compilationListener = compilationListener;
+    }
+
+    /**
+     * If the <var>threadCount</var> is greater than one, then {@link #compile(Resource[])} parses all source resources
+     * concurrently, splits them into <var>threadCount</var> partitions, and compiles the partitions concurrently. The
+     * class files are stored in the same order as with sequential compilation.
+     *
+     * @param threadCount 1 (the default) means "parse and compile sequentially"
+     * @see               #setExecutor(Executor)
+     */
+    @Override public void
+    setThreadCount(int threadCount) {
+        if (threadCount < 1) throw new IllegalArgumentException("threadCount");
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Sets the {@link Executor} that runs the parse and compile tasks when the {@link #setThreadCount(int) thread
+     * count} is greater than one.
+     *
+     * @param executor {@code null} (the default) means "use a new thread pool for each compilation"
+     */
+    public void
+    setExecutor(@Nullable Executor executor) { this.executor = executor; }
+
+    /**
+     * In incremental mode, {@link #compile(Resource[])} records the APIs and the type dependencies of the compiled
+     * compilation units in an index next to the class files (resource {@value DependencyIndex#RESOURCE_NAME}). The
+     * next compilation then compiles only the source resources that have changed, plus the ones that use members of
+     * classes whose APIs have changed, and loads all other classes from their class files.
+     * <p>
+     *   Incremental mode requires a class file directory (a.k.a. "-d"); it is ignored when the class files are
+     *   created next to the source files. Notice that a newly added source resource that <em>hides</em> a type that
+     *   an up-to-date compilation unit uses (e.g. through a type-import-on-demand) is not detected.
+     * </p>
+     */
+    @Override public void
+    setIncremental(boolean value) { this.incremental = value; }
+
     @Override public void
     compile(Resource[] sourceResources) throws CompileException, IOException {
 
+        if (
+            this.incremental
+            && this.classFileFinder != ICompiler.FIND_NEXT_TO_SOURCE_FILE
+            && this.classFileCreator != ICompiler.CREATE_NEXT_TO_SOURCE_FILE
+        ) {
+            this.compileIncrementally(sourceResources);
+        } else {
+            this.compile2(sourceResources);
+        }
+    }
+
+    private void
+    compile2(Resource[] sourceResources) throws CompileException, IOException {
+
+        if (this.threadCount > 1) {
+            this.compileConcurrently(sourceResources);
+        } else {
+            this.compileSequentially(sourceResources);
+        }
+    }
+
+    /**
+     * Implements {@link #compile(Resource[])} in {@link #setIncremental(boolean) incremental mode}. Compiles the
+     * outdated compilation units in rounds: After each round, the compilation units that use the changed members
+     * of the just-compiled classes are compiled in the next round, until no more APIs change.
+     */
+    private void
+    compileIncrementally(Resource[] sourceResources) throws CompileException, IOException {
+
+        ResourceFinder  cff = this.classFileFinder;
+        ResourceCreator cfc = this.classFileCreator;
+        assert cff != null;
+        assert cfc != null;
+
+        DependencyIndex index = DependencyIndex.load(cff, (
+            ""
+            + this.debugSource
+            + this.debugLines
+            + this.debugVars
+            + this.targetVersion
+            + this.options
+        ));
+
+        Map<String, Resource> resources = new LinkedHashMap<String, Resource>();
+        for (Resource sourceResource : sourceResources) resources.put(sourceResource.getFileName(), sourceResource);
+
+        // Forget the compilation units that are no longer compiled, and delete their class files.
+        Map<String, Set<String>> changes = index.retainUnits(resources.keySet());
+        Compiler.deleteClassFiles(index, changes, cfc);
+
+        Set<String> outdated = new HashSet<String>();
+        for (Resource sourceResource : sourceResources) {
+            if (!index.isUpToDate(sourceResource, cff)) outdated.add(sourceResource.getFileName());
+        }
+        outdated.addAll(index.getDependents(changes, outdated));
+
+        if (outdated.isEmpty() && changes.isEmpty()) {
+            Compiler.LOGGER.fine("All compilation units are up-to-date");
+            return;
+        }
+
+        // Should the compilation fail, then the next compilation must be a full compilation.
+        cfc.deleteResource(DependencyIndex.RESOURCE_NAME);
+
+        this.dependencyIndex = index;
+        try {
+            for (int round = 1; !outdated.isEmpty(); round++) {
+                Compiler.LOGGER.log(
+                    Level.FINE,
+                    "Round {0}: Compiling {1} of {2} compilation unit(s)",
+                    new Object[] {
+                        Integer.valueOf(round),
+                        Integer.valueOf(outdated.size()),
+                        Integer.valueOf(sourceResources.length),
+                    }
+                );
+
+                List<Resource> roundResources = new ArrayList<Resource>();
+                for (Resource sourceResource : sourceResources) {
+                    if (outdated.contains(sourceResource.getFileName())) roundResources.add(sourceResource);
+                }
+
+                index.beginRound(roundResources);
+                this.upToDateClassNames = index.getClassNames(outdated);
+                this.compile2((Resource[]) roundResources.toArray(new Resource[roundResources.size()]));
+                changes = index.endRound();
+                Compiler.deleteClassFiles(index, changes, cfc);
+
+                // The compilation units of this round have already been compiled against the changed APIs.
+                outdated = index.getDependents(changes, outdated);
+            }
+        } finally {
+            this.dependencyIndex    = null;
+            this.upToDateClassNames = null;
+        }
+
+        index.store(cfc);
+    }
+
+    /**
+     * Deletes the class files of the changed classes that no longer exist.
+     */
+    private static void
+    deleteClassFiles(DependencyIndex index, Map<String, Set<String>> changes, ResourceCreator classFileCreator) {
+
+        Set<String> classNames = index.getClassNames(null);
+        for (String className : changes.keySet()) {
+            if (!classNames.contains(className)) {
+                classFileCreator.deleteResource(ClassFile.getClassFileResourceName(className));
+            }
+        }
+    }
+
+    /**
+     * Implements {@link #compile(Resource[])} for a thread count of one.
+     */
+    private void
+    compileSequentially(Resource[] sourceResources) throws CompileException, IOException {
+
         this.benchmark.beginReporting();
         try {
 
-            final IClassLoader
-            iClassLoader = new CompilerIClassLoader(this.sourceFinder, this.classFileFinder, this.iClassLoader);
+            final IClassLoader iClassLoader = new CompilerIClassLoader(
+                this.sourceFinder,           // sourceFinder
+                this.classFileFinder,        // classFileFinder
+                this.iClassLoader,           // parentIClassLoader
+                this.parsedCompilationUnits, // unitCompilers
+                null,                        // inputUnits
+                null,                        // claimedSourceFileNames
+                this.warningHandler,         // warningHandler
+                this.benchmark               // benchmark
+            );
 
             // Initialize compile time fields.
             this.parsedCompilationUnits.clear();
@@ -246,17 +447,20 @@ class Compiler extends AbstractCompiler {
             for (Resource sourceResource : sourceResources) {
                 Compiler.LOGGER.log(Level.FINE, "Compiling \"{0}\"", sourceResource);
 
-                UnitCompiler uc = new UnitCompiler(
+                CompilationMetrics cm = this.newCompilationMetrics(sourceResource.getFileName());
+
+                UnitCompiler uc = this.newUnitCompiler(
                     this.parseAbstractCompilationUnit(
                         sourceResource.getFileName(),                   // fileName
                         new BufferedInputStream(sourceResource.open()), // inputStream
-                        this.encoding                                   // encoding
+                        this.encoding,                                  // encoding
+                        cm                                              // compilationMetrics
                     ),
-                    iClassLoader
+                    iClassLoader,
+                    cm
                 );
                 uc.setCompileErrorHandler(this.compileErrorHandler);
                 uc.setWarningHandler(this.warningHandler);
-                uc.options(this.options);
 
                 this.parsedCompilationUnits.add(uc);
             }
@@ -287,21 +491,321 @@ class Compiler extends AbstractCompiler {
                 }
 
                 // Store the compiled classes and interfaces into class files.
-                this.benchmark.beginReporting(
-                    "Storing "
-                    + classFiles.length
-                    + " class file(s) resulting from compilation unit \""
-                    + sourceFile
-                    + "\""
+                this.storeClassFiles(unitCompiler, sourceFile, classFiles);
+            }
+        } finally {
+            this.benchmark.endReporting("Compiled " + this.parsedCompilationUnits.size() + " compilation unit(s)");
+        }
+    }
+
+    /**
+     * Implements {@link #compile(Resource[])} for thread counts greater than one. The compilation units are split
+     * into contiguous partitions, and each partition is compiled by one task with its own {@link
+     * CompilerIClassLoader}. Types that are declared in the compilation units of <em>other</em> partitions are
+     * resolved by parsing these compilation units once more, so that no {@link UnitCompiler} is ever used by more than
+     * one thread. Class files are stored on the calling thread, in the order of the <var>sourceResources</var>, and
+     * then those of the compilation units that were found through the source finder, in the order of their file
+     * names.
+     */
+    private void
+    compileConcurrently(Resource[] sourceResources) throws CompileException, IOException {
+
+        Executor        executor    = this.executor;
+        ExecutorService ownExecutor = null;
+        if (executor == null) executor = (ownExecutor = Executors.newFixedThreadPool(this.threadCount));
+
+        final ErrorHandler   compileErrorHandler = Compiler.synchronizedErrorHandler(this.compileErrorHandler);
+        final WarningHandler warningHandler      = Compiler.synchronizedWarningHandler(this.warningHandler);
+
+        List<Future<?>> tasks     = new ArrayList<Future<?>>();
+        int             unitCount = 0;
+        this.benchmark.beginReporting();
+        try {
+
+            // Parse all source files concurrently.
+            List<FutureTask<ParsedUnit>> parseTasks = new ArrayList<FutureTask<ParsedUnit>>();
+            for (final Resource sourceResource : sourceResources) {
+                Compiler.LOGGER.log(Level.FINE, "Compiling \"{0}\"", sourceResource);
+
+                FutureTask<ParsedUnit> parseTask = new FutureTask<ParsedUnit>(new Callable<ParsedUnit>() {
+
+                    @Override public ParsedUnit
+                    call() throws CompileException, IOException {
+                        CompilationMetrics cm = Compiler.this.newCompilationMetrics(sourceResource.getFileName());
+
+                        String text = Compiler.readString(
+                            new BufferedInputStream(sourceResource.open()),
+                            Compiler.this.encoding
+                        );
+                        return new ParsedUnit(
+                            sourceResource,
+                            text,
+                            Compiler.parse(sourceResource.getFileName(), text, cm, warningHandler),
+                            cm
+                        );
+                    }
+                });
+                tasks.add(parseTask);
+                parseTasks.add(parseTask);
+                executor.execute(parseTask);
+            }
+
+            // Wait for the parse tasks; report the first parse error in the order of the source resources.
+            final List<ParsedUnit> parsedUnits = new ArrayList<ParsedUnit>();
+            for (FutureTask<ParsedUnit> parseTask : parseTasks) parsedUnits.add((ParsedUnit) Compiler.get(parseTask));
+            if (parsedUnits.isEmpty()) return;
+
+            // Map the names of the declared top-level types to the compilation units that declare them.
+            final Map<String, ParsedUnit> inputUnits             = new HashMap<String, ParsedUnit>();
+            final Set<String>             claimedSourceFileNames = Collections.synchronizedSet(new HashSet<String>());
+            for (ParsedUnit pu : parsedUnits) {
+                claimedSourceFileNames.add(pu.resource.getFileName());
+
+                Java.AbstractCompilationUnit acu = pu.abstractCompilationUnit;
+                if (!(acu instanceof Java.CompilationUnit)) continue;
+                Java.CompilationUnit    cu  = (Java.CompilationUnit) acu;
+                Java.PackageDeclaration opd = cu.optionalPackageDeclaration;
+                for (Java.PackageMemberTypeDeclaration pmtd : cu.getPackageMemberTypeDeclarations()) {
+                    String className = opd == null ? pmtd.getName() : opd.packageName + '.' + pmtd.getName();
+                    if (!inputUnits.containsKey(className)) inputUnits.put(className, pu);
+                }
+            }
+
+            // Compile the partitions concurrently.
+            int                                  partitionCount = Math.min(this.threadCount, parsedUnits.size());
+            List<FutureTask<List<CompiledUnit>>> compileTasks   = new ArrayList<FutureTask<List<CompiledUnit>>>();
+            for (int i = 0; i < partitionCount; i++) {
+
+                final List<ParsedUnit> partition = parsedUnits.subList(
+                    i * parsedUnits.size() / partitionCount,
+                    (i + 1) * parsedUnits.size() / partitionCount
                 );
-                try {
-                    for (ClassFile classFile : classFiles) this.storeClassFile(classFile, sourceFile);
-                } finally {
-                    this.benchmark.endReporting();
+
+                FutureTask<List<CompiledUnit>>
+                compileTask = new FutureTask<List<CompiledUnit>>(new Callable<List<CompiledUnit>>() {
+
+                    @Override public List<CompiledUnit>
+                    call() throws CompileException, IOException {
+                        return Compiler.this.compilePartition(
+                            partition,
+                            inputUnits,
+                            claimedSourceFileNames,
+                            compileErrorHandler,
+                            warningHandler
+                        );
+                    }
+                });
+                tasks.add(compileTask);
+                compileTasks.add(compileTask);
+                executor.execute(compileTask);
+            }
+
+            // Store the class files in the order of the source resources. Which partition finds a compilation unit
+            // through the source finder first is a matter of timing, so these are stored last, in a fixed order.
+            SortedMap<String, CompiledUnit> foundUnits = new TreeMap<String, CompiledUnit>();
+            for (FutureTask<List<CompiledUnit>> compileTask : compileTasks) {
+                List<?> compiledUnits = (List<?>) Compiler.get(compileTask);
+                for (int i = 0; i < compiledUnits.size(); i++) {
+                    CompiledUnit cu = (CompiledUnit) compiledUnits.get(i);
+                    if (cu.foundThroughSourceFinder) {
+                        foundUnits.put(cu.sourceFile.getPath(), cu);
+                    } else {
+                        this.storeClassFiles(cu.unitCompiler, cu.sourceFile, cu.classFiles);
+                        unitCount++;
+                    }
                 }
             }
+            for (Iterator<CompiledUnit> it = foundUnits.values().iterator(); it.hasNext();) {
+                CompiledUnit cu = (CompiledUnit) it.next();
+                this.storeClassFiles(cu.unitCompiler, cu.sourceFile, cu.classFiles);
+                unitCount++;
+            }
         } finally {
-            this.benchmark.endReporting("Compiled " + this.parsedCompilationUnits.size() + " compilation unit(s)");
+            for (Future<?> task : tasks) task.cancel(true);
+            if (ownExecutor != null) ownExecutor.shutdown();
+            this.benchmark.endReporting("Compiled " + unitCount + " compilation unit(s)");
+        }
+    }
+
+    /**
+     * Compiles the compilation units of one partition, plus those that are found through the source finder and not
+     * yet claimed by another partition.
+     */
+    private List<CompiledUnit>
+    compilePartition(
+        List<ParsedUnit>         partition,
+        Map<String, ParsedUnit>  inputUnits,
+        Set<String>              claimedSourceFileNames,
+        @Nullable ErrorHandler   compileErrorHandler,
+        @Nullable WarningHandler warningHandler
+    ) throws CompileException {
+
+        List<UnitCompiler> unitCompilers = new ArrayList<UnitCompiler>();
+        IClassLoader       iClassLoader  = new CompilerIClassLoader(
+            this.sourceFinder,      // sourceFinder
+            this.classFileFinder,   // classFileFinder
+            this.iClassLoader,      // parentIClassLoader
+            unitCompilers,          // unitCompilers
+            inputUnits,             // inputUnits
+            claimedSourceFileNames, // claimedSourceFileNames
+            warningHandler,         // warningHandler
+            new Benchmark(false)    // benchmark
+        );
+        for (ParsedUnit pu : partition) {
+            unitCompilers.add(this.newUnitCompiler(pu.abstractCompilationUnit, iClassLoader, pu.compilationMetrics));
+        }
+
+        // The list of unit compilers may grow while they are being compiled.
+        List<CompiledUnit> result = new ArrayList<CompiledUnit>();
+        for (int i = 0; i < unitCompilers.size(); i++) {
+            UnitCompiler unitCompiler = (UnitCompiler) unitCompilers.get(i);
+
+            String fileName = unitCompiler.getAbstractCompilationUnit().optionalFileName;
+            if (fileName == null) throw new InternalCompilerException();
+
+            unitCompiler.setCompileErrorHandler(compileErrorHandler);
+            unitCompiler.setWarningHandler(warningHandler);
+            result.add(new CompiledUnit(
+                unitCompiler,
+                new File(fileName),
+                unitCompiler.compileUnit(this.debugSource, this.debugLines, this.debugVars),
+                i >= partition.size()
+            ));
+        }
+
+        return result;
+    }
+
+    /**
+     * Stores the <var>classFiles</var>, updates the {@link DependencyIndex} and notifies the {@link
+     * CompilationListener}.
+     */
+    private void
+    storeClassFiles(UnitCompiler unitCompiler, File sourceFile, ClassFile[] classFiles)
+    throws CompileException, IOException {
+
+        long begin = System.nanoTime();
+        this.benchmark.beginReporting(
+            "Storing "
+            + classFiles.length
+            + " class file(s) resulting from compilation unit \""
+            + sourceFile
+            + "\""
+        );
+        try {
+            for (ClassFile classFile : classFiles) this.storeClassFile(classFile, sourceFile);
+        } finally {
+            this.benchmark.endReporting();
+        }
+
+        DependencyIndex di = this.dependencyIndex;
+        if (di != null) di.unitCompiled(unitCompiler, classFiles);
+
+        CompilationListener cl = this.compilationListener;
+        CompilationMetrics  cm = unitCompiler.getCompilationMetrics();
+        if (cl != null && cm != null) {
+            cm.storeNanos += System.nanoTime() - begin;
+            cl.compilationUnitCompiled(cm);
+        }
+    }
+
+    /**
+     * Waits for the <var>task</var> to complete, and rethrows the exception that it threw, if any.
+     */
+    private static Object
+    get(Future<?> task) throws CompileException, IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException iioe = new InterruptedIOException();
+            iioe.initCause(ie);
+            throw iioe;
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof CompileException) throw (CompileException) cause;
+            if (cause instanceof IOException)      throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error)            throw (Error) cause;
+            throw new InternalCompilerException(null, cause);
+        }
+    }
+
+    @Nullable private static ErrorHandler
+    synchronizedErrorHandler(@Nullable final ErrorHandler delegate) {
+
+        if (delegate == null) return null;
+
+        return new ErrorHandler() {
+
+            @Override public synchronized void
+            handleError(String message, @Nullable Location optionalLocation) throws CompileException {
+                delegate.handleError(message, optionalLocation);
+            }
+        };
+    }
+
+    @Nullable private static WarningHandler
+    synchronizedWarningHandler(@Nullable final WarningHandler delegate) {
+
+        if (delegate == null) return null;
+
+        return new WarningHandler() {
+
+            @Override public synchronized void
+            handleWarning(@Nullable String handle, String message, @Nullable Location optionalLocation)
+            throws CompileException {
+                delegate.handleWarning(handle, message, optionalLocation);
+            }
+        };
+    }
+
+    /**
+     * A compilation unit that was parsed by {@link Compiler#compileConcurrently(Resource[])}.
+     */
+    private static
+    class ParsedUnit {
+
+        final Resource                     resource;
+        final String                       text;
+        final Java.AbstractCompilationUnit abstractCompilationUnit;
+        @Nullable final CompilationMetrics compilationMetrics;
+
+        ParsedUnit(
+            Resource                     resource,
+            String                       text,
+            Java.AbstractCompilationUnit abstractCompilationUnit,
+            @Nullable CompilationMetrics compilationMetrics
+        ) {
+            this.resource                = resource;
+            this.text                    = text;
+            this.abstractCompilationUnit = abstractCompilationUnit;
+            this.compilationMetrics      = compilationMetrics;
+        }
+    }
+
+    /**
+     * The outcome of the compilation of one compilation unit by {@link Compiler#compilePartition(List, Map, Set,
+     * ErrorHandler, WarningHandler)}.
+     */
+    private static
+    class CompiledUnit {
+
+        final UnitCompiler unitCompiler;
+        final File         sourceFile;
+        final ClassFile[]  classFiles;
+        final boolean      foundThroughSourceFinder;
+
+        CompiledUnit(
+            UnitCompiler unitCompiler,
+            File         sourceFile,
+            ClassFile[]  classFiles,
+            boolean      foundThroughSourceFinder
+        ) {
+            this.unitCompiler             = unitCompiler;
+            this.sourceFile               = sourceFile;
+            this.classFiles               = classFiles;
+            this.foundThroughSourceFinder = foundThroughSourceFinder;
         }
     }
 
@@ -311,35 +815,90 @@ class Compiler extends AbstractCompiler {
      *   The <var>inputStream</var> is closed before the method returns.
      * </p>
      *
-     * @return the parsed compilation unit
+     * @param compilationMetrics Receives the scan and parse times, or {@code null}
+     * @return                   the parsed compilation unit
      */
     private Java.AbstractCompilationUnit
     parseAbstractCompilationUnit(
-        String            fileName,
-        InputStream       inputStream,
-        @Nullable Charset encoding
+        String                       fileName,
+        InputStream                  inputStream,
+        @Nullable Charset            encoding,
+        @Nullable CompilationMetrics compilationMetrics
     ) throws CompileException, IOException {
+        String text = Compiler.readString(inputStream, encoding);
+
+        this.benchmark.beginReporting("Parsing \"" + fileName + "\"");
         try {
+            return Compiler.parse(fileName, text, compilationMetrics, this.warningHandler);
+        } finally {
+            this.benchmark.endReporting();
+        }
+    }
 
-            Scanner scanner = new Scanner(
-                fileName,
+    /**
+     * Reads the contents of the <var>inputStream</var>, and closes it.
+     */
+    private static String
+    readString(InputStream inputStream, @Nullable Charset encoding) throws IOException {
+        try {
+            return Cookable.readString(
                 new InputStreamReader(inputStream, encoding != null ? encoding : Charset.defaultCharset())
             );
+        } finally {
+            inputStream.close();
+        }
+    }
 
-            Parser parser = new Parser(scanner);
-            parser.setWarningHandler(this.warningHandler);
+    /**
+     * Parses one compilation unit. Unlike {@link #parseAbstractCompilationUnit(String, InputStream, Charset,
+     * CompilationMetrics)}, this method does not use the {@link Benchmark}, and can thus be called concurrently.
+     *
+     * @param compilationMetrics Receives the scan and parse times, or {@code null}
+     * @param warningHandler     Receives the parser warnings, or {@code null}
+     */
+    private static Java.AbstractCompilationUnit
+    parse(
+        String                       fileName,
+        String                       text,
+        @Nullable CompilationMetrics compilationMetrics,
+        @Nullable WarningHandler     warningHandler
+    ) throws CompileException, IOException {
 
-            this.benchmark.beginReporting("Parsing \"" + fileName + "\"");
-            try {
-                return parser.parseAbstractCompilationUnit();
-            } finally {
-                this.benchmark.endReporting();
-            }
+        Scanner scanner = new Scanner(fileName, text.toCharArray());
+        scanner.setCompilationMetrics(compilationMetrics);
+
+        Parser parser = new Parser(scanner);
+        parser.setWarningHandler(warningHandler);
+
+        if (compilationMetrics != null) compilationMetrics.beginFrontEnd();
+        try {
+            return parser.parseAbstractCompilationUnit();
         } finally {
-            inputStream.close();
+            if (compilationMetrics != null) compilationMetrics.endFrontEnd();
         }
     }
 
+    private UnitCompiler
+    newUnitCompiler(
+        Java.AbstractCompilationUnit abstractCompilationUnit,
+        IClassLoader                 iClassLoader,
+        @Nullable CompilationMetrics compilationMetrics
+    ) {
+        UnitCompiler uc = new UnitCompiler(abstractCompilationUnit, iClassLoader).options(this.options);
+        uc.setCompilationMetrics(compilationMetrics);
+        if (this.targetVersion != -1) uc.setTargetVersion(this.targetVersion);
+        if (this.dependencyIndex != null) uc.setTypeDependencies(new TypeDependencies());
+        return uc;
+    }
+
+    /**
+     * @return {@code null} iff no {@link CompilationListener} is set
+     */
+    @Nullable private CompilationMetrics
+    newCompilationMetrics(String fileName) {
+        return this.compilationListener == null ? null : new CompilationMetrics(fileName);
+    }
+
     /**
      * Constructs the name of a file that could store the byte code of the class with the given name.
      * <p>
@@ -449,6 +1008,12 @@ class Compiler extends AbstractCompiler {
     @Override public void
     setDebugSource(boolean value) { this.debugSource = value; }
 
+    /**
+     * @see UnitCompiler#setTargetVersion(int)
+     */
+    @Override public void
+    setTargetVersion(int version) { this.targetVersion = version; }
+
     @Override public void
     setVerbose(boolean verbose) { this.benchmark = new Benchmark(verbose); }
 
@@ -471,23 +1036,47 @@ class Compiler extends AbstractCompiler {
     private
     class CompilerIClassLoader extends IClassLoader {
 
-        private final ResourceFinder           sourceFinder;
-        @Nullable private final ResourceFinder classFileFinder;
+        private final ResourceFinder                    sourceFinder;
+        @Nullable private final ResourceFinder          classFileFinder;
+        private final List<UnitCompiler>                unitCompilers;
+        private final List<UnitCompiler>                referencedUnitCompilers = new ArrayList<UnitCompiler>();
+        @Nullable private final Map<String, ParsedUnit> inputUnits;
+        @Nullable private final Set<String>             claimedSourceFileNames;
+        @Nullable private final WarningHandler          warningHandler;
+        private final Benchmark                         benchmark;
 
         /**
-         * @param sourceFinder       Where to look for more source files
-         * @param classFileFinder    Where to look for previously generated .class resources, or {@link
-         *                           #FIND_NEXT_TO_SOURCE_FILE}
-         * @param parentIClassLoader {@link IClassLoader} through which {@link IClass}es are to be loaded
+         * @param sourceFinder           Where to look for more source files
+         * @param classFileFinder        Where to look for previously generated .class resources, or {@link
+         *                               #FIND_NEXT_TO_SOURCE_FILE}
+         * @param parentIClassLoader     {@link IClassLoader} through which {@link IClass}es are to be loaded
+         * @param unitCompilers          The compilation units to compile; compilation units that are found through
+         *                               the <var>sourceFinder</var> are appended
+         * @param inputUnits             Compilation units that are compiled by other {@link CompilerIClassLoader}s,
+         *                               by top-level class name; these are parsed once more when they are needed
+         * @param claimedSourceFileNames The names of the source resources that are already being compiled; a source
+         *                               resource that is found through the <var>sourceFinder</var> is only compiled
+         *                               if it can be added to this set; {@code null} means "compile all found source
+         *                               resources"
          */
         CompilerIClassLoader(
-            ResourceFinder           sourceFinder,
-            @Nullable ResourceFinder classFileFinder,
-            IClassLoader             parentIClassLoader
+            ResourceFinder                    sourceFinder,
+            @Nullable ResourceFinder          classFileFinder,
+            IClassLoader                      parentIClassLoader,
+            List<UnitCompiler>                unitCompilers,
+            @Nullable Map<String, ParsedUnit> inputUnits,
+            @Nullable Set<String>             claimedSourceFileNames,
+            @Nullable WarningHandler          warningHandler,
+            Benchmark                         benchmark
         ) {
             super(parentIClassLoader);
-            this.sourceFinder    = sourceFinder;
-            this.classFileFinder = classFileFinder;
+            this.sourceFinder           = sourceFinder;
+            this.classFileFinder        = classFileFinder;
+            this.unitCompilers          = unitCompilers;
+            this.inputUnits             = inputUnits;
+            this.claimedSourceFileNames = claimedSourceFileNames;
+            this.warningHandler         = warningHandler;
+            this.benchmark              = benchmark;
             super.postConstruct();
         }
 
@@ -516,26 +1105,49 @@ class Compiler extends AbstractCompiler {
             }
 
             // Check the already-parsed compilation units.
-            for (int i = 0; i < Compiler.this.parsedCompilationUnits.size(); ++i) {
-                UnitCompiler uc  = (UnitCompiler) Compiler.this.parsedCompilationUnits.get(i);
-                IClass       res = uc.findClass(topLevelClassName);
-                if (res != null) {
-                    if (!className.equals(topLevelClassName)) {
-                        res = uc.findClass(className);
-                        if (res == null) return null;
+            UnitCompiler uc = this.findUnitCompiler(topLevelClassName);
+
+            // Check the compilation units that are compiled by other CompilerIClassLoaders.
+            Map<String, ParsedUnit> iu = this.inputUnits;
+            if (uc == null && iu != null) {
+                ParsedUnit pu = (ParsedUnit) iu.get(topLevelClassName);
+                if (pu != null) {
+                    try {
+                        uc = Compiler.this.newUnitCompiler(
+                            Compiler.parse(pu.resource.getFileName(), pu.text, null, null),
+                            this,
+                            null
+                        );
+                    } catch (IOException ex) {
+                        throw new ClassNotFoundException("Parsing compilation unit \"" + pu.resource + "\"", ex);
+                    } catch (CompileException ex) {
+                        throw new ClassNotFoundException("Parsing compilation unit \"" + pu.resource + "\"", ex);
                     }
-                    this.defineIClass(res);
-                    return res;
+                    this.referencedUnitCompilers.add(uc);
                 }
             }
 
+            if (uc != null) {
+                IClass res = uc.findClass(className);
+                if (res == null) return null;
+                this.defineIClass(res);
+                return res;
+            }
+
+            // In incremental mode, load the classes of the up-to-date compilation units from their class files.
+            ResourceFinder cff = this.classFileFinder;
+            Set<String>    utdcn = Compiler.this.upToDateClassNames;
+            if (utdcn != null && utdcn.contains(className)) {
+                assert cff != null;
+                Resource classFileResource = cff.findResource(ClassFile.getClassFileResourceName(className));
+                if (classFileResource != null) return this.defineIClassFromClassFileResource(classFileResource);
+            }
+
             // Search source path for uncompiled class.
             final Resource sourceResource = this.sourceFinder.findResource(ClassFile.getSourceResourceName(className));
             if (sourceResource == null) return null;
 
             // Find an existing class file.
-            ResourceFinder cff = this.classFileFinder;
-
             Resource classFileResource;
             if (cff != ICompiler.FIND_NEXT_TO_SOURCE_FILE) {
                 assert cff != null;
@@ -564,9 +1176,25 @@ class Compiler extends AbstractCompiler {
         }
 
         /**
-         * Parses the compilation unit stored in the given <var>sourceResource</var>, remembers it in {@code
-         * Compiler.this.parsedCompilationUnits} (it may declare other classes that are needed later), finds the
-         * declaration of the type with the given <var>className</var>, and defines it in the {@link IClassLoader}.
+         * @return The already-parsed compilation unit that declares the top-level class, or {@code null}
+         */
+        @Nullable private UnitCompiler
+        findUnitCompiler(String topLevelClassName) {
+            for (int i = 0; i < this.unitCompilers.size(); ++i) {
+                UnitCompiler uc = (UnitCompiler) this.unitCompilers.get(i);
+                if (uc.findClass(topLevelClassName) != null) return uc;
+            }
+            for (int i = 0; i < this.referencedUnitCompilers.size(); ++i) {
+                UnitCompiler uc = (UnitCompiler) this.referencedUnitCompilers.get(i);
+                if (uc.findClass(topLevelClassName) != null) return uc;
+            }
+            return null;
+        }
+
+        /**
+         * Parses the compilation unit stored in the given <var>sourceResource</var>, remembers it in {@link
+         * #unitCompilers} (it may declare other classes that are needed later), finds the declaration of the type
+         * with the given <var>className</var>, and defines it in the {@link IClassLoader}.
          * <p>
          *   Notice that the compilation unit is not compiled here!
          * </p>
@@ -577,20 +1205,34 @@ class Compiler extends AbstractCompiler {
             // Parse the source file.
             UnitCompiler uc;
             try {
-                Java.AbstractCompilationUnit acu = Compiler.this.parseAbstractCompilationUnit(
-                    sourceResource.getFileName(),                   // fileName
-                    new BufferedInputStream(sourceResource.open()), // inputStream
+                CompilationMetrics cm = Compiler.this.newCompilationMetrics(sourceResource.getFileName());
+
+                String text = Compiler.readString(
+                    new BufferedInputStream(sourceResource.open()),
                     Compiler.this.encoding
                 );
-                uc = new UnitCompiler(acu, this).options(Compiler.this.options);
+
+                Java.AbstractCompilationUnit acu;
+                this.benchmark.beginReporting("Parsing \"" + sourceResource.getFileName() + "\"");
+                try {
+                    acu = Compiler.parse(sourceResource.getFileName(), text, cm, this.warningHandler);
+                } finally {
+                    this.benchmark.endReporting();
+                }
+                uc = Compiler.this.newUnitCompiler(acu, this, cm);
             } catch (IOException ex) {
                 throw new ClassNotFoundException("Parsing compilation unit \"" + sourceResource + "\"", ex);
             } catch (CompileException ex) {
                 throw new ClassNotFoundException("Parsing compilation unit \"" + sourceResource + "\"", ex);
             }
 
-            // Remember compilation unit for later compilation.
-            Compiler.this.parsedCompilationUnits.add(uc);
+            // Remember compilation unit for later compilation, unless another CompilerIClassLoader compiles it.
+            Set<String> csfn = this.claimedSourceFileNames;
+            if (csfn == null || csfn.add(sourceResource.getFileName())) {
+                this.unitCompilers.add(uc);
+            } else {
+                this.referencedUnitCompilers.add(uc);
+            }
 
             // Define the class.
             IClass res = uc.findClass(className);
@@ -613,7 +1255,7 @@ class Compiler extends AbstractCompiler {
          */
         private IClass
         defineIClassFromClassFileResource(Resource classFileResource) throws ClassNotFoundException {
-            Compiler.this.benchmark.beginReporting("Loading class file \"" + classFileResource.getFileName() + "\"");
+            this.benchmark.beginReporting("Loading class file \"" + classFileResource.getFileName() + "\"");
             try {
                 InputStream is = null;
                 ClassFile   cf;
@@ -639,7 +1281,7 @@ class Compiler extends AbstractCompiler {
 
                 return result;
             } finally {
-                Compiler.this.benchmark.endReporting();
+                this.benchmark.endReporting();
             }
         }
     }
@@ -0,0 +1,561 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.util.resource.Resource;
+import org.codehaus.commons.compiler.util.resource.ResourceCreator;
+import org.codehaus.commons.compiler.util.resource.ResourceFinder;
+import org.codehaus.commons.nullanalysis.Nullable;
+import org.codehaus.janino.util.ClassFile;
+
+/**
+ * The index that the {@link Compiler} maintains next to the class files in {@link Compiler#setIncremental(boolean)
+ * incremental mode}. For each compilation unit, it records the time stamp and a digest of the source, the API of the
+ * classes that the compilation unit declares, and the {@link TypeDependencies} of the compilation unit.
+ * <p>
+ *   The API of a class is recorded as one hash code for its "header" (modifiers, supertypes and member types), plus
+ *   one hash code per member name, which covers all non-private fields (including their constant values), methods
+ *   and constructors with that name. Thus a dependent compilation unit needs to be recompiled only if the header or
+ *   one of the members that it actually uses has changed.
+ * </p>
+ */
+final
+class DependencyIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(DependencyIndex.class.getName());
+
+    /**
+     * The name of the resource, relative to the class file directory, where the index is stored.
+     */
+    static final String RESOURCE_NAME = "janino-dependencies.idx";
+
+    private static final int   MAGIC   = 0x4a4e4458; // "JNDX"
+    private static final short VERSION = 1;
+
+    private final String            optionsFingerprint;
+    private final Map<String, Unit> units = new LinkedHashMap<String, Unit>();
+
+    /**
+     * The previous states of the compilation units that were compiled since {@link #beginRound(Collection)}; {@code
+     * null} values mean "the compilation unit was not yet indexed".
+     */
+    private final Map<String, Unit> replacedUnits = new HashMap<String, Unit>();
+
+    /**
+     * The time stamps and digests of the source resources that are compiled in the current round.
+     */
+    private final Map<String, long[]> pendingStamps = new HashMap<String, long[]>();
+
+    private
+    DependencyIndex(String optionsFingerprint) { this.optionsFingerprint = optionsFingerprint; }
+
+    /**
+     * The recorded state of one compilation unit.
+     */
+    private static
+    class Unit {
+
+        final long lastModified;
+        final long digest;
+
+        /**
+         * The names of the classes that the compilation unit declares, mapped to their APIs.
+         */
+        final Map<String, Api> classes = new LinkedHashMap<String, Api>();
+
+        /**
+         * The names of the classes that the compilation unit uses, mapped to the names of the used members.
+         */
+        final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+
+        Unit(long lastModified, long digest) {
+            this.lastModified = lastModified;
+            this.digest       = digest;
+        }
+    }
+
+    /**
+     * The API of one class.
+     */
+    private static
+    class Api {
+
+        final long              header;
+        final Map<String, Long> members = new HashMap<String, Long>();
+
+        Api(long header) { this.header = header; }
+    }
+
+    /**
+     * Loads the index from the class file directory.
+     *
+     * @return An empty index if there is no index, if it is corrupt, or if it was created with different compiler
+     *         options
+     */
+    static DependencyIndex
+    load(ResourceFinder classFileFinder, String optionsFingerprint) {
+
+        Resource r = classFileFinder.findResource(DependencyIndex.RESOURCE_NAME);
+        if (r == null) return new DependencyIndex(optionsFingerprint);
+
+        try {
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(r.open()));
+            try {
+                if (dis.readInt() != DependencyIndex.MAGIC || dis.readShort() != DependencyIndex.VERSION) {
+                    DependencyIndex.LOGGER.log(Level.FINE, "Unknown format of \"{0}\"", r);
+                    return new DependencyIndex(optionsFingerprint);
+                }
+                if (!dis.readUTF().equals(optionsFingerprint)) return new DependencyIndex(optionsFingerprint);
+
+                DependencyIndex result = new DependencyIndex(optionsFingerprint);
+                for (int i = dis.readInt(); i > 0; i--) {
+                    String fileName = dis.readUTF();
+                    Unit   unit     = new Unit(dis.readLong(), dis.readLong());
+                    for (int j = dis.readInt(); j > 0; j--) {
+                        String className = dis.readUTF();
+                        Api    api       = new Api(dis.readLong());
+                        for (int k = dis.readInt(); k > 0; k--) {
+                            String memberName = dis.readUTF();
+                            api.members.put(memberName, Long.valueOf(dis.readLong()));
+                        }
+                        unit.classes.put(className, api);
+                    }
+                    for (int j = dis.readInt(); j > 0; j--) {
+                        String      className = dis.readUTF();
+                        Set<String> names     = new HashSet<String>();
+                        for (int k = dis.readInt(); k > 0; k--) names.add(dis.readUTF());
+                        unit.dependencies.put(className, names);
+                    }
+                    result.units.put(fileName, unit);
+                }
+                return result;
+            } finally {
+                try { dis.close(); } catch (IOException e) {}
+            }
+        } catch (IOException ioe) {
+            DependencyIndex.LOGGER.log(Level.FINE, "Reading \"" + r + "\"", ioe);
+            return new DependencyIndex(optionsFingerprint);
+        }
+    }
+
+    /**
+     * Stores the index in the class file directory. Dependencies on classes that are not declared by any of the
+     * indexed compilation units are not stored.
+     */
+    void
+    store(ResourceCreator classFileCreator) throws IOException {
+
+        Set<String> classNames = this.getClassNames(null);
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+            classFileCreator.createResource(DependencyIndex.RESOURCE_NAME)
+        ));
+        try {
+            dos.writeInt(DependencyIndex.MAGIC);
+            dos.writeShort(DependencyIndex.VERSION);
+            dos.writeUTF(this.optionsFingerprint);
+
+            dos.writeInt(this.units.size());
+            for (Map.Entry<String, Unit> ue : this.units.entrySet()) {
+                Unit unit = (Unit) ue.getValue();
+
+                dos.writeUTF((String) ue.getKey());
+                dos.writeLong(unit.lastModified);
+                dos.writeLong(unit.digest);
+
+                dos.writeInt(unit.classes.size());
+                for (Map.Entry<String, Api> ce : unit.classes.entrySet()) {
+                    Api api = (Api) ce.getValue();
+                    dos.writeUTF((String) ce.getKey());
+                    dos.writeLong(api.header);
+                    dos.writeInt(api.members.size());
+                    for (Map.Entry<String, Long> me : api.members.entrySet()) {
+                        dos.writeUTF((String) me.getKey());
+                        dos.writeLong(((Long) me.getValue()).longValue());
+                    }
+                }
+
+                List<String> dependencies = new ArrayList<String>();
+                for (String className : unit.dependencies.keySet()) {
+                    if (classNames.contains(className)) dependencies.add(className);
+                }
+                dos.writeInt(dependencies.size());
+                for (String className : dependencies) {
+                    Set<String> names = (Set<String>) unit.dependencies.get(className);
+                    dos.writeUTF(className);
+                    dos.writeInt(names.size());
+                    for (String name : names) dos.writeUTF(name);
+                }
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * Forgets the compilation units that are not among the given <var>fileNames</var>.
+     *
+     * @return The names of the classes that these compilation units declared, each mapped to {@link
+     *         TypeDependencies#ALL_MEMBERS}
+     */
+    Map<String, Set<String>>
+    retainUnits(Collection<String> fileNames) {
+
+        Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+        for (String fileName : new ArrayList<String>(this.units.keySet())) {
+            if (fileNames.contains(fileName)) continue;
+
+            Unit unit = (Unit) this.units.remove(fileName);
+            for (String className : unit.classes.keySet()) DependencyIndex.addChange(result, className, null);
+        }
+        return result;
+    }
+
+    /**
+     * A compilation unit is up-to-date iff it was indexed, all its class files exist, and its source resource has the
+     * recorded time stamp or at least the recorded digest.
+     */
+    boolean
+    isUpToDate(Resource sourceResource, ResourceFinder classFileFinder) throws IOException {
+
+        Unit unit = (Unit) this.units.get(sourceResource.getFileName());
+        if (unit == null) return false;
+
+        for (String className : unit.classes.keySet()) {
+            if (classFileFinder.findResource(ClassFile.getClassFileResourceName(className)) == null) return false;
+        }
+
+        return (
+            sourceResource.lastModified() == unit.lastModified
+            || DependencyIndex.digest(sourceResource) == unit.digest
+        );
+    }
+
+    /**
+     * @param excludedFileNames {@code null} means "none"
+     * @return                  The names of all classes that are declared by the indexed compilation units, except
+     *                          those declared by the <var>excludedFileNames</var>
+     */
+    Set<String>
+    getClassNames(@Nullable Collection<String> excludedFileNames) {
+
+        Set<String> result = new HashSet<String>();
+        for (Map.Entry<String, Unit> e : this.units.entrySet()) {
+            if (excludedFileNames != null && excludedFileNames.contains(e.getKey())) continue;
+            result.addAll(((Unit) e.getValue()).classes.keySet());
+        }
+        return result;
+    }
+
+    /**
+     * @param changes           The names of the changed classes, mapped to the names of their changed members, as
+     *                          returned by {@link #endRound()}
+     * @param excludedFileNames These compilation units are not returned, because they were already compiled against
+     *                          the changed classes
+     * @return                  The file names of the compilation units that use any of the <var>changes</var>
+     */
+    Set<String>
+    getDependents(Map<String, Set<String>> changes, Collection<String> excludedFileNames) {
+
+        Set<String> result = new HashSet<String>();
+        if (changes.isEmpty()) return result;
+
+        UNITS:
+        for (Map.Entry<String, Unit> ue : this.units.entrySet()) {
+            String fileName = (String) ue.getKey();
+            if (excludedFileNames.contains(fileName)) continue;
+
+            for (Map.Entry<String, Set<String>> de : ((Unit) ue.getValue()).dependencies.entrySet()) {
+                Set<String> changedNames = (Set<String>) changes.get(de.getKey());
+                if (changedNames == null) continue;
+
+                Set<String> usedNames = (Set<String>) de.getValue();
+                if (
+                    changedNames.contains(TypeDependencies.ALL_MEMBERS)
+                    || usedNames.contains(TypeDependencies.ALL_MEMBERS)
+                    || !DependencyIndex.disjoint(changedNames, usedNames)
+                ) {
+                    result.add(fileName);
+                    continue UNITS;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the time stamps and digests of the <var>sourceResources</var> that are about to be compiled.
+     */
+    void
+    beginRound(Collection<Resource> sourceResources) throws IOException {
+
+        this.pendingStamps.clear();
+        this.replacedUnits.clear();
+        for (Resource sourceResource : sourceResources) {
+            this.pendingStamps.put(
+                sourceResource.getFileName(),
+                new long[] { sourceResource.lastModified(), DependencyIndex.digest(sourceResource) }
+            );
+        }
+    }
+
+    /**
+     * Indexes a compilation unit that was just compiled; compilation units that were not passed to {@link
+     * #beginRound(Collection)} (e.g. those found through the source path) are ignored.
+     */
+    void
+    unitCompiled(UnitCompiler unitCompiler, ClassFile[] classFiles) throws CompileException {
+
+        String fileName = unitCompiler.getAbstractCompilationUnit().optionalFileName;
+        if (fileName == null) return;
+
+        long[] stamp = (long[]) this.pendingStamps.get(fileName);
+        if (stamp == null) return;
+
+        Unit unit = new Unit(stamp[0], stamp[1]);
+
+        // Record the APIs of the declared classes. (Local and anonymous classes have no API.)
+        for (ClassFile cf : classFiles) {
+            String className = cf.getThisClassName();
+            IClass iClass    = unitCompiler.findClass(className);
+            unit.classes.put(className, iClass == null ? new Api(0) : DependencyIndex.getApi(iClass));
+        }
+
+        // Record the used types and members.
+        TypeDependencies td = unitCompiler.getTypeDependencies();
+        if (td != null) {
+            for (Map.Entry<String, Set<String>> e : td.getUsedMembers().entrySet()) {
+                if (!unit.classes.containsKey(e.getKey())) {
+                    unit.dependencies.put((String) e.getKey(), new HashSet<String>((Set<String>) e.getValue()));
+                }
+            }
+        }
+
+        // The declared classes depend on all members of their supertypes, e.g. for overriding and bridge methods.
+        for (ClassFile cf : classFiles) {
+            if (cf.superclass != 0) DependencyIndex.addAllMembersDependency(unit, cf, cf.superclass);
+            for (short interfacE : cf.interfaces) DependencyIndex.addAllMembersDependency(unit, cf, interfacE);
+        }
+
+        Unit previous = (Unit) this.units.put(fileName, unit);
+        if (!this.replacedUnits.containsKey(fileName)) this.replacedUnits.put(fileName, previous);
+    }
+
+    /**
+     * Compares the APIs of the classes that were compiled since {@link #beginRound(Collection)} with their previous
+     * APIs.
+     *
+     * @return The names of the classes with changed APIs, mapped to the names of the changed members; the name {@link
+     *         TypeDependencies#ALL_MEMBERS} indicates that the class no longer exists
+     */
+    Map<String, Set<String>>
+    endRound() {
+
+        Set<String>              classNames = this.getClassNames(null);
+        Map<String, Set<String>> result     = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, Unit> e : this.replacedUnits.entrySet()) {
+            Unit previous = (Unit) e.getValue();
+            if (previous == null) continue;
+
+            Unit current = (Unit) this.units.get(e.getKey());
+            for (Map.Entry<String, Api> ce : previous.classes.entrySet()) {
+                String className = (String) ce.getKey();
+                Api    oldApi    = (Api) ce.getValue();
+                Api    newApi    = (Api) current.classes.get(className);
+
+                if (newApi == null) {
+                    if (!classNames.contains(className)) DependencyIndex.addChange(result, className, null);
+                    continue;
+                }
+
+                if (newApi.header != oldApi.header) {
+                    DependencyIndex.addChange(result, className, TypeDependencies.HEADER);
+                }
+
+                Set<String> memberNames = new HashSet<String>(oldApi.members.keySet());
+                memberNames.addAll(newApi.members.keySet());
+                for (String memberName : memberNames) {
+                    Long oldHash = (Long) oldApi.members.get(memberName);
+                    Long newHash = (Long) newApi.members.get(memberName);
+                    if (oldHash == null ? newHash != null : !oldHash.equals(newHash)) {
+                        DependencyIndex.addChange(result, className, memberName);
+                    }
+                }
+            }
+        }
+
+        this.pendingStamps.clear();
+        this.replacedUnits.clear();
+        return result;
+    }
+
+    /**
+     * @param memberName {@code null} means {@link TypeDependencies#ALL_MEMBERS}
+     */
+    private static void
+    addChange(Map<String, Set<String>> changes, String className, @Nullable String memberName) {
+        Set<String> names = (Set<String>) changes.get(className);
+        if (names == null) changes.put(className, (names = new HashSet<String>()));
+        names.add(memberName == null ? TypeDependencies.ALL_MEMBERS : memberName);
+    }
+
+    private static void
+    addAllMembersDependency(Unit unit, ClassFile classFile, short classIndex) {
+
+        String className = classFile.getConstantClassInfo(classIndex).getName(classFile).replace('/', '.');
+        if (unit.classes.containsKey(className)) return;
+
+        Set<String> names = (Set<String>) unit.dependencies.get(className);
+        if (names == null) unit.dependencies.put(className, (names = new HashSet<String>()));
+        names.add(TypeDependencies.ALL_MEMBERS);
+    }
+
+    private static boolean
+    disjoint(Set<String> s1, Set<String> s2) {
+        for (String s : s1) {
+            if (s2.contains(s)) return false;
+        }
+        return true;
+    }
+
+    private static Api
+    getApi(IClass iClass) throws CompileException {
+
+        // The header.
+        StringBuilder sb = new StringBuilder();
+        sb.append(iClass.getAccess()).append(' ');
+        if (iClass.isInterface()) sb.append("interface ");
+        if (iClass.isAbstract()) sb.append("abstract ");
+        if (iClass.isFinal()) sb.append("final ");
+        IClass superclass = iClass.getSuperclass();
+        if (superclass != null) sb.append("extends ").append(superclass.getDescriptor()).append(' ');
+        for (IClass i : iClass.getInterfaces()) sb.append("implements ").append(i.getDescriptor()).append(' ');
+        String[] memberTypes = new String[iClass.getDeclaredIClasses().length];
+        for (int i = 0; i < memberTypes.length; i++) {
+            memberTypes[i] = iClass.getDeclaredIClasses()[i].getDescriptor();
+        }
+        Arrays.sort(memberTypes);
+        for (String mt : memberTypes) sb.append("member ").append(mt).append(' ');
+
+        Api result = new Api(DependencyIndex.hash(sb));
+
+        // The non-private members, grouped by name.
+        Map<String, List<String>> signatures = new HashMap<String, List<String>>();
+        for (IClass.IField f : iClass.getDeclaredIFields()) {
+            if (f.getAccess() == Access.PRIVATE) continue;
+
+            Object cv = f.getConstantValue();
+            DependencyIndex.addSignature(signatures, f.getName(), (
+                f.getAccess()
+                + (f.isStatic() ? " static " : " ")
+                + f.getType().getDescriptor()
+                + (cv == IClass.NOT_CONSTANT || cv == null ? "" : " = " + cv.getClass().getName() + ":" + cv)
+            ));
+        }
+        for (IClass.IConstructor c : iClass.getDeclaredIConstructors()) {
+            if (c.getAccess() == Access.PRIVATE) continue;
+
+            DependencyIndex.addSignature(signatures, "<init>", (
+                c.getAccess()
+                + " "
+                + c.getDescriptor()
+                + " throws "
+                + Arrays.toString(IClass.getDescriptors(c.getThrownExceptions()))
+            ));
+        }
+        for (IClass.IMethod m : iClass.getDeclaredIMethods()) {
+            if (m.getAccess() == Access.PRIVATE) continue;
+
+            DependencyIndex.addSignature(signatures, m.getName(), (
+                m.getAccess()
+                + (m.isStatic() ? " static" : "")
+                + (m.isAbstract() ? " abstract " : " ")
+                + m.getDescriptor()
+                + " throws "
+                + Arrays.toString(IClass.getDescriptors(m.getThrownExceptions()))
+            ));
+        }
+        for (Map.Entry<String, List<String>> e : signatures.entrySet()) {
+            String[] sa = (String[]) ((List<String>) e.getValue()).toArray(new String[0]);
+            Arrays.sort(sa);
+            result.members.put((String) e.getKey(), Long.valueOf(DependencyIndex.hash(Arrays.toString(sa))));
+        }
+
+        return result;
+    }
+
+    private static void
+    addSignature(Map<String, List<String>> signatures, String name, String signature) {
+        List<String> l = (List<String>) signatures.get(name);
+        if (l == null) signatures.put(name, (l = new ArrayList<String>()));
+        l.add(signature);
+    }
+
+    /**
+     * @return The 64-bit FNV-1a hash of the contents of the <var>resource</var>
+     */
+    static long
+    digest(Resource resource) throws IOException {
+
+        long        result = 0xcbf29ce484222325L;
+        InputStream is     = new BufferedInputStream(resource.open());
+        try {
+            for (int b = is.read(); b != -1; b = is.read()) result = (result ^ b) * 0x100000001b3L;
+        } finally {
+            is.close();
+        }
+        return result;
+    }
+
+    /**
+     * @return The 64-bit FNV-1a hash of the <var>cs</var>
+     */
+    private static long
+    hash(CharSequence cs) {
+        long result = 0xcbf29ce484222325L;
+        for (int i = 0; i < cs.length(); i++) result = (result ^ cs.charAt(i)) * 0x100000001b3L;
+        return result;
+    }
+}
@@ -0,0 +1,648 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.codehaus.commons.nullanalysis.Nullable;
+import org.codehaus.janino.util.ClassFile;
+
+/**
+ * Invokes one particular static method without reflection. Instances are created through {@link
+ * #create(Method)}, which generates, at runtime, a tiny subclass that unboxes the arguments and invokes the method
+ * with an {@code INVOKESTATIC} instruction.
+ * <p>
+ *   Hidden classes (see {@link SimpleCompiler#setHiddenClassHost(Object)}) cannot be referenced by name; methods of
+ *   hidden classes are instead invoked through a {@code java.lang.invoke.MethodHandle}, with an {@code invokeExact()}
+ *   call that the JVM links as directly as an {@code INVOKESTATIC}.
+ * </p>
+ * <p>
+ *   The semantics of {@link #invoke(Object[])} are the same as those of {@link Method#invoke(Object, Object...)
+ *   Method.invoke(null, arguments)}: The arguments are unboxed and widened as necessary, an {@link
+ *   IllegalArgumentException} is thrown if that is not possible, and any exception that the method throws is wrapped
+ *   in an {@link InvocationTargetException}.
+ * </p>
+ * <p>
+ *   The {@code public static} methods of this class exist only for the generated subclasses; client code should not
+ *   invoke them.
+ * </p>
+ */
+public abstract
+class DirectInvoker {
+
+    private static final String DIRECT_INVOKER_FD = Descriptor.fromClassName(DirectInvoker.class.getName());
+    private static final String METHOD_HANDLE_FD  = "Ljava/lang/invoke/MethodHandle;";
+
+    private final int parameterCount;
+
+    protected
+    DirectInvoker(int parameterCount) { this.parameterCount = parameterCount; }
+
+    /**
+     * Invokes the method and boxes its return value.
+     *
+     * @return {@code null} iff the method returns {@code void}
+     */
+    @Nullable public final Object
+    invoke(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.invoke2(this.checkArguments(arguments));
+    }
+
+    /**
+     * Invokes the method and returns its value, which must be convertible to {@code int}.
+     */
+    public final int
+    invokeInt(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.invokeInt2(this.checkArguments(arguments));
+    }
+
+    /**
+     * Invokes the method and returns its value, which must be convertible to {@code long}.
+     */
+    public final long
+    invokeLong(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.invokeLong2(this.checkArguments(arguments));
+    }
+
+    /**
+     * Invokes the method and returns its value, which must be convertible to {@code double}.
+     */
+    public final double
+    invokeDouble(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.invokeDouble2(this.checkArguments(arguments));
+    }
+
+    /**
+     * Invokes the method and returns its value, which must be a {@code boolean} or a {@link Boolean}.
+     */
+    public final boolean
+    invokeBoolean(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.invokeBoolean2(this.checkArguments(arguments));
+    }
+
+    /**
+     * Implemented by the generated subclass.
+     */
+    @Nullable protected abstract Object
+    invoke2(Object[] arguments) throws InvocationTargetException;
+
+    /**
+     * Overridden by the generated subclass iff the method's return type can be widened to {@code int}.
+     */
+    protected int
+    invokeInt2(Object[] arguments) throws InvocationTargetException {
+        return DirectInvoker.toInt(this.invoke2(arguments));
+    }
+
+    /**
+     * Overridden by the generated subclass iff the method's return type can be widened to {@code long}.
+     */
+    protected long
+    invokeLong2(Object[] arguments) throws InvocationTargetException {
+        return DirectInvoker.toLong(this.invoke2(arguments));
+    }
+
+    /**
+     * Overridden by the generated subclass iff the method's return type can be widened to {@code double}.
+     */
+    protected double
+    invokeDouble2(Object[] arguments) throws InvocationTargetException {
+        return DirectInvoker.toDouble(this.invoke2(arguments));
+    }
+
+    /**
+     * Overridden by the generated subclass iff the method's return type is {@code boolean}.
+     */
+    protected boolean
+    invokeBoolean2(Object[] arguments) throws InvocationTargetException {
+        return DirectInvoker.toBoolean(this.invoke2(arguments));
+    }
+
+    private Object[]
+    checkArguments(@Nullable Object[] arguments) {
+
+        if (arguments == null) arguments = new Object[0];
+
+        if (arguments.length != this.parameterCount) {
+            throw new IllegalArgumentException(
+                "Wrong number of arguments; expected "
+                + this.parameterCount
+                + ", got "
+                + arguments.length
+            );
+        }
+
+        return arguments;
+    }
+
+    // SUPPRESS CHECKSTYLE JavadocMethod:9
+    public static boolean
+    toBoolean(@Nullable Object value) {
+        if (value instanceof Boolean) return ((Boolean) value).booleanValue();
+        throw DirectInvoker.cannotConvert(value, "boolean");
+    }
+
+    public static byte
+    toByte(@Nullable Object value) {
+        if (value instanceof Byte) return ((Byte) value).byteValue();
+        throw DirectInvoker.cannotConvert(value, "byte");
+    }
+
+    // SUPPRESS CHECKSTYLE JavadocMethod:9
+    public static short
+    toShort(@Nullable Object value) {
+        if (value instanceof Short) return ((Short) value).shortValue();
+        if (value instanceof Byte)  return ((Byte) value).byteValue();
+        throw DirectInvoker.cannotConvert(value, "short");
+    }
+
+    public static char
+    toChar(@Nullable Object value) {
+        if (value instanceof Character) return ((Character) value).charValue();
+        throw DirectInvoker.cannotConvert(value, "char");
+    }
+
+    // SUPPRESS CHECKSTYLE JavadocMethod:9
+    public static int
+    toInt(@Nullable Object value) {
+        if (value instanceof Integer)   return ((Integer) value).intValue();
+        if (value instanceof Character) return ((Character) value).charValue();
+        if (value instanceof Short)     return ((Short) value).shortValue();
+        if (value instanceof Byte)      return ((Byte) value).byteValue();
+        throw DirectInvoker.cannotConvert(value, "int");
+    }
+
+    public static long
+    toLong(@Nullable Object value) {
+        if (value instanceof Long) return ((Long) value).longValue();
+        return DirectInvoker.toInt(value);
+    }
+
+    // SUPPRESS CHECKSTYLE JavadocMethod:9
+    public static float
+    toFloat(@Nullable Object value) {
+        if (value instanceof Float) return ((Float) value).floatValue();
+        return DirectInvoker.toLong(value);
+    }
+
+    public static double
+    toDouble(@Nullable Object value) {
+        if (value instanceof Double) return ((Double) value).doubleValue();
+        return DirectInvoker.toFloat(value);
+    }
+
+    /**
+     * @return                          The <var>value</var>
+     * @throws IllegalArgumentException The <var>value</var> is neither {@code null} nor an instance of the
+     *                                  <var>type</var>
+     */
+    @Nullable public static Object
+    cast(@Nullable Object value, Class<?> type) {
+        if (value == null || type.isInstance(value)) return value;
+        throw new IllegalArgumentException(
+            "Argument type mismatch; \""
+            + value.getClass().getName()
+            + "\" is not assignable to \""
+            + type.getName()
+            + "\""
+        );
+    }
+
+    private static IllegalArgumentException
+    cannotConvert(@Nullable Object value, String primitiveType) {
+        return new IllegalArgumentException(
+            "Cannot convert "
+            + (value == null ? "null" : "\"" + value.getClass().getName() + "\"")
+            + " to \""
+            + primitiveType
+            + "\""
+        );
+    }
+
+    /**
+     * Generates and loads a subclass of {@link DirectInvoker} for the given <var>method</var>.
+     *
+     * @return {@code null} iff the <var>method</var> cannot be invoked directly, e.g. because it is not {@code static},
+     *         or because its declaring class, its parameter types or its return type are not {@code public}
+     */
+    @Nullable static DirectInvoker
+    create(Method method) {
+
+        Class<?> declaringClass = method.getDeclaringClass();
+
+        ClassLoader parent = declaringClass.getClassLoader();
+        if (parent == null) return null;
+
+        if (!Modifier.isStatic(method.getModifiers())) return null;
+        if (!Modifier.isPublic(method.getModifiers())) return null;
+        if (!DirectInvoker.isAccessible(declaringClass)) return null;
+        if (!DirectInvoker.isAccessible(method.getReturnType())) return null;
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (Class<?> pt : parameterTypes) {
+            if (!DirectInvoker.isAccessible(pt)) return null;
+        }
+
+        // Hidden classes (see "SimpleCompiler.setHiddenClassHost()") cannot be referenced by name, so their methods
+        // are invoked through a method handle.
+        String className    = declaringClass.getName();
+        Object methodHandle = null;
+        if (className.indexOf('/') != -1) {
+            className    = className.substring(0, className.indexOf('/'));
+            methodHandle = HiddenClassLoader.unreflect(method);
+            if (methodHandle == null) return null;
+        }
+        className += "$$DirectInvoker";
+
+        byte[] bytecode = DirectInvoker.generate(className, method, methodHandle != null);
+
+        try {
+            Class<?> c = new InvokerClassLoader(parent, className, bytecode).loadClass(className);
+            if (methodHandle == null) {
+                return (DirectInvoker) c.getConstructor(int.class).newInstance(parameterTypes.length);
+            }
+            return (DirectInvoker) c.getConstructor(
+                int.class,
+                Class.forName("java.lang.invoke.MethodHandle")
+            ).newInstance(parameterTypes.length, methodHandle);
+        } catch (Exception e) {
+            throw new InternalCompilerException("Loading direct invoker for \"" + method + "\"", e);
+        }
+    }
+
+    /**
+     * @return Whether the generated code can reference the <var>type</var> (which it cannot if the type, or any of its
+     *         enclosing types, is not {@code public})
+     */
+    private static boolean
+    isAccessible(Class<?> type) {
+
+        while (type.isArray()) type = type.getComponentType();
+
+        for (Class<?> c = type; c != null; c = c.getDeclaringClass()) {
+            if (!c.isPrimitive() && !Modifier.isPublic(c.getModifiers())) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param viaMethodHandle Whether the invoker invokes the <var>method</var> through the {@code MethodHandle} that
+     *                        is passed to its constructor, rather than with {@code INVOKESTATIC}
+     */
+    private static byte[]
+    generate(String className, Method method, boolean viaMethodHandle) {
+
+        ClassFile cf = new ClassFile(
+            (short) (Mod.PUBLIC | Mod.FINAL | Mod.SUPER), // accessFlags
+            Descriptor.fromClassName(className),          // thisClassFd
+            DirectInvoker.DIRECT_INVOKER_FD,              // superclassFd
+            new String[0]                                 // interfaceFds
+        );
+
+        // The invoker uses no newer JVM features, and version 50 is the highest class file version that does not
+        // require a "StackMapTable" attribute for the exception handler (JVMS8 4.10.1).
+        cf.setVersion(ClassFile.MAJOR_VERSION_JDK_1_6, ClassFile.MINOR_VERSION_JDK_1_6);
+
+        // public <init>(int parameterCount) { super(parameterCount); }
+        //
+        // or
+        //
+        // private final MethodHandle methodHandle;
+        // public <init>(int parameterCount, MethodHandle methodHandle) {
+        //     super(parameterCount);
+        //     this.methodHandle = methodHandle;
+        // }
+        if (!viaMethodHandle) {
+            ClassFile.MethodInfo mi = cf.addMethodInfo(
+                Mod.PUBLIC,
+                "<init>",
+                new MethodDescriptor(Descriptor.VOID, Descriptor.INT)
+            );
+
+            CodeContext cc = DirectInvoker.newCodeContext(mi, 2);
+            cc.write(-1, Opcode.ALOAD_0);
+            cc.write(-1, Opcode.ILOAD_1);
+            cc.write(-1, Opcode.INVOKESPECIAL);
+            cc.writeShort(cf.addConstantMethodrefInfo(DirectInvoker.DIRECT_INVOKER_FD, "<init>", "(I)V"));
+            cc.write(-1, Opcode.RETURN);
+            DirectInvoker.addCodeAttribute(mi, cc);
+        } else {
+            cf.addFieldInfo((short) (Mod.PRIVATE | Mod.FINAL), "methodHandle", DirectInvoker.METHOD_HANDLE_FD, null);
+
+            ClassFile.MethodInfo mi = cf.addMethodInfo(
+                Mod.PUBLIC,
+                "<init>",
+                new MethodDescriptor(Descriptor.VOID, Descriptor.INT, DirectInvoker.METHOD_HANDLE_FD)
+            );
+
+            CodeContext cc = DirectInvoker.newCodeContext(mi, 3);
+            cc.write(-1, Opcode.ALOAD_0);
+            cc.write(-1, Opcode.ILOAD_1);
+            cc.write(-1, Opcode.INVOKESPECIAL);
+            cc.writeShort(cf.addConstantMethodrefInfo(DirectInvoker.DIRECT_INVOKER_FD, "<init>", "(I)V"));
+            cc.write(-1, Opcode.ALOAD_0);
+            cc.write(-1, Opcode.ALOAD_2);
+            cc.write(-1, Opcode.PUTFIELD);
+            cc.writeShort(cf.addConstantFieldrefInfo(
+                Descriptor.fromClassName(className),
+                "methodHandle",
+                DirectInvoker.METHOD_HANDLE_FD
+            ));
+            cc.write(-1, Opcode.RETURN);
+            DirectInvoker.addCodeAttribute(mi, cc);
+        }
+
+        // Implement "invoke2()", and, iff the method returns a primitive value, one or more of "invokeInt2()",
+        // "invokeLong2()", "invokeDouble2()" and "invokeBoolean2()".
+        String returnFd = Descriptor.fromClassName(method.getReturnType().getName());
+        DirectInvoker.generateInvoke(cf, method, "invoke2", Descriptor.JAVA_LANG_OBJECT, viaMethodHandle);
+        if (
+            Descriptor.BYTE.equals(returnFd)
+            || Descriptor.SHORT.equals(returnFd)
+            || Descriptor.CHAR.equals(returnFd)
+            || Descriptor.INT.equals(returnFd)
+        ) {
+            DirectInvoker.generateInvoke(cf, method, "invokeInt2", Descriptor.INT, viaMethodHandle);
+            DirectInvoker.generateInvoke(cf, method, "invokeLong2", Descriptor.LONG, viaMethodHandle);
+            DirectInvoker.generateInvoke(cf, method, "invokeDouble2", Descriptor.DOUBLE, viaMethodHandle);
+        }
+        if (Descriptor.LONG.equals(returnFd)) {
+            DirectInvoker.generateInvoke(cf, method, "invokeLong2", Descriptor.LONG, viaMethodHandle);
+            DirectInvoker.generateInvoke(cf, method, "invokeDouble2", Descriptor.DOUBLE, viaMethodHandle);
+        }
+        if (Descriptor.FLOAT.equals(returnFd) || Descriptor.DOUBLE.equals(returnFd)) {
+            DirectInvoker.generateInvoke(cf, method, "invokeDouble2", Descriptor.DOUBLE, viaMethodHandle);
+        }
+        if (Descriptor.BOOLEAN.equals(returnFd)) {
+            DirectInvoker.generateInvoke(cf, method, "invokeBoolean2", Descriptor.BOOLEAN, viaMethodHandle);
+        }
+
+        return cf.toByteArray();
+    }
+
+    /**
+     * Generates a method that unboxes the elements of its {@code Object[]} parameter, invokes the target
+     * <var>method</var>, and converts its return value to the <var>resultFd</var>.
+     */
+    private static void
+    generateInvoke(
+        ClassFile cf,
+        Method    method,
+        String    invokerMethodName,
+        String    resultFd,
+        boolean   viaMethodHandle
+    ) {
+
+        ClassFile.MethodInfo mi = cf.addMethodInfo(
+            Mod.PROTECTED,
+            invokerMethodName,
+            new MethodDescriptor(resultFd, "[Ljava/lang/Object;")
+        );
+
+        CodeContext cc = DirectInvoker.newCodeContext(mi, 2);
+
+        // Load the method handle.
+        if (viaMethodHandle) {
+            cc.write(-1, Opcode.ALOAD_0);
+            cc.write(-1, Opcode.GETFIELD);
+            cc.writeShort(cf.addConstantFieldrefInfo(
+                Descriptor.fromClassName(cf.getThisClassName()),
+                "methodHandle",
+                DirectInvoker.METHOD_HANDLE_FD
+            ));
+        }
+
+        // Load the arguments.
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> pt   = parameterTypes[i];
+            String   ptFd = Descriptor.fromClassName(pt.getName());
+
+            cc.write(-1, Opcode.ALOAD_1);
+            DirectInvoker.pushInt(cc, i);
+            cc.write(-1, Opcode.AALOAD);
+            if (pt.isPrimitive()) {
+                String mn = "to" + Character.toUpperCase(pt.getName().charAt(0)) + pt.getName().substring(1);
+                DirectInvoker.invokeStatic(cc, DirectInvoker.DIRECT_INVOKER_FD, mn, "(Ljava/lang/Object;)" + ptFd);
+            } else
+            if (pt != Object.class) {
+                DirectInvoker.ldcClass(cc, ptFd);
+                DirectInvoker.invokeStatic(
+                    cc,
+                    DirectInvoker.DIRECT_INVOKER_FD,
+                    "cast",
+                    "(Ljava/lang/Object;Ljava/lang/Class;)Ljava/lang/Object;"
+                );
+                cc.write(-1, Opcode.CHECKCAST);
+                cc.writeShort(cf.addConstantClassInfo(ptFd));
+            }
+        }
+
+        // Invoke the target method.
+        String methodMd = new MethodDescriptor(
+            Descriptor.fromClassName(method.getReturnType().getName()),
+            DirectInvoker.fds(parameterTypes)
+        ).toString();
+        CodeContext.Offset invokeStart = cc.newOffset();
+        if (viaMethodHandle) {
+            cc.write(-1, Opcode.INVOKEVIRTUAL);
+            cc.writeShort(cf.addConstantMethodrefInfo(DirectInvoker.METHOD_HANDLE_FD, "invokeExact", methodMd));
+        } else {
+            DirectInvoker.invokeStatic(
+                cc,
+                Descriptor.fromClassName(method.getDeclaringClass().getName()),
+                method.getName(),
+                methodMd
+            );
+        }
+        CodeContext.Offset invokeEnd = cc.newOffset();
+
+        // Convert the return value.
+        String returnFd = Descriptor.fromClassName(method.getReturnType().getName());
+        if (Descriptor.JAVA_LANG_OBJECT.equals(resultFd)) {
+            if (Descriptor.VOID.equals(returnFd)) {
+                cc.write(-1, Opcode.ACONST_NULL);
+            } else
+            if (Descriptor.isPrimitive(returnFd)) {
+                String wrapperFd = DirectInvoker.wrapperFd(returnFd);
+                DirectInvoker.invokeStatic(cc, wrapperFd, "valueOf", "(" + returnFd + ")" + wrapperFd);
+            }
+            cc.write(-1, Opcode.ARETURN);
+        } else
+        if (Descriptor.LONG.equals(resultFd)) {
+            if (!Descriptor.LONG.equals(returnFd)) cc.write(-1, Opcode.I2L);
+            cc.write(-1, Opcode.LRETURN);
+        } else
+        if (Descriptor.DOUBLE.equals(resultFd)) {
+            if (Descriptor.LONG.equals(returnFd)) {
+                cc.write(-1, Opcode.L2D);
+            } else
+            if (Descriptor.FLOAT.equals(returnFd)) {
+                cc.write(-1, Opcode.F2D);
+            } else
+            if (!Descriptor.DOUBLE.equals(returnFd)) {
+                cc.write(-1, Opcode.I2D);
+            }
+            cc.write(-1, Opcode.DRETURN);
+        } else
+        {
+            cc.write(-1, Opcode.IRETURN);
+        }
+
+        // Wrap any exception that the target method throws in an InvocationTargetException:
+        //    catch (Throwable t) { throw new InvocationTargetException(t); }
+        cc.addExceptionTableEntry(invokeStart, invokeEnd, cc.newOffset(), null);
+        cc.write(-1, Opcode.NEW);
+        cc.writeShort(cf.addConstantClassInfo("Ljava/lang/reflect/InvocationTargetException;"));
+        cc.write(-1, Opcode.DUP_X1);
+        cc.write(-1, Opcode.SWAP);
+        cc.write(-1, Opcode.INVOKESPECIAL);
+        cc.writeShort(cf.addConstantMethodrefInfo(
+            "Ljava/lang/reflect/InvocationTargetException;",
+            "<init>",
+            "(Ljava/lang/Throwable;)V"
+        ));
+        cc.write(-1, Opcode.ATHROW);
+
+        DirectInvoker.addCodeAttribute(mi, cc);
+    }
+
+    /**
+     * @return A {@link CodeContext} for the <var>mi</var>, with <var>localVariableCount</var> single-slot local
+     *         variables ({@code this} and the parameters)
+     */
+    private static CodeContext
+    newCodeContext(ClassFile.MethodInfo mi, int localVariableCount) {
+        CodeContext result = new CodeContext(mi.getClassFile(), mi.getName() + mi.getDescriptor());
+        result.saveLocalVariables();
+        for (int i = 0; i < localVariableCount; i++) result.allocateLocalVariable((short) 1);
+        return result;
+    }
+
+    /**
+     * Computes the maximum stack size of the <var>cc</var>, and adds its code as a "Code" attribute to the
+     * <var>mi</var>.
+     */
+    private static void
+    addCodeAttribute(ClassFile.MethodInfo mi, final CodeContext cc) {
+
+        cc.flowAnalysis(mi.getName());
+
+        mi.addAttribute(new ClassFile.AttributeInfo(mi.getClassFile().addConstantUtf8Info("Code")) {
+
+            @Override protected void
+            storeBody(DataOutputStream dos) throws IOException {
+                cc.storeCodeAttributeBody(dos, (short) 0, (short) 0, (short) 0);
+            }
+        });
+    }
+
+    private static void
+    pushInt(CodeContext cc, int value) {
+        if (value <= 5) {
+            cc.write(-1, (byte) (Opcode.ICONST_0 + value));
+        } else
+        if (value <= Byte.MAX_VALUE) {
+            cc.write(-1, Opcode.BIPUSH, (byte) value);
+        } else
+        {
+            cc.write(-1, Opcode.SIPUSH);
+            cc.writeShort(value);
+        }
+    }
+
+    private static void
+    ldcClass(CodeContext cc, String typeFd) {
+        short index = cc.getClassFile().addConstantClassInfo(typeFd);
+        if ((index & 0xffff) <= 255) {
+            cc.write(-1, Opcode.LDC, (byte) index);
+        } else {
+            cc.write(-1, Opcode.LDC_W);
+            cc.writeShort(index);
+        }
+    }
+
+    private static void
+    invokeStatic(CodeContext cc, String classFd, String methodName, String methodMd) {
+        cc.write(-1, Opcode.INVOKESTATIC);
+        cc.writeShort(cc.getClassFile().addConstantMethodrefInfo(classFd, methodName, methodMd));
+    }
+
+    private static String
+    wrapperFd(String primitiveFd) {
+        switch (primitiveFd.charAt(0)) {
+        case 'Z': return Descriptor.JAVA_LANG_BOOLEAN;
+        case 'B': return Descriptor.JAVA_LANG_BYTE;
+        case 'C': return Descriptor.JAVA_LANG_CHARACTER;
+        case 'S': return Descriptor.JAVA_LANG_SHORT;
+        case 'I': return Descriptor.JAVA_LANG_INTEGER;
+        case 'J': return Descriptor.JAVA_LANG_LONG;
+        case 'F': return Descriptor.JAVA_LANG_FLOAT;
+        case 'D': return Descriptor.JAVA_LANG_DOUBLE;
+        default:  throw new InternalCompilerException(primitiveFd);
+        }
+    }
+
+    private static String[]
+    fds(Class<?>[] types) {
+        String[] result = new String[types.length];
+        for (int i = 0; i < types.length; i++) result[i] = Descriptor.fromClassName(types[i].getName());
+        return result;
+    }
+
+    /**
+     * Defines the generated invoker class, and makes the {@link DirectInvoker} class visible to it, no matter whether
+     * the <var>parent</var> class loader can see it.
+     */
+    private static
+    class InvokerClassLoader extends ClassLoader {
+
+        private final String className;
+        private final byte[] bytecode;
+
+        InvokerClassLoader(ClassLoader parent, String className, byte[] bytecode) {
+            super(parent);
+            this.className = className;
+            this.bytecode  = bytecode;
+        }
+
+        @Override protected synchronized Class<?>
+        loadClass(@Nullable String name, boolean resolve) throws ClassNotFoundException {
+            if (DirectInvoker.class.getName().equals(name)) return DirectInvoker.class;
+            return super.loadClass(name, resolve);
+        }
+
+        @Override protected Class<?>
+        findClass(@Nullable String name) throws ClassNotFoundException {
+            if (!this.className.equals(name)) throw new ClassNotFoundException(name);
+            return super.defineClass(name, this.bytecode, 0, this.bytecode.length);
+        }
+    }
+}
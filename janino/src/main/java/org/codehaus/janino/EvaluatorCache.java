@@ -0,0 +1,217 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.nullanalysis.Nullable;
+
+/**
+ * A bounded, thread-safe cache of the classes generated by {@link ScriptEvaluator}s and {@link
+ * ExpressionEvaluator}s.
+ * <p>
+ *   The cache is keyed on the (normalized) source text and on everything else that influences code generation, i.e.
+ *   the class name, the extended class and implemented interfaces, the default imports, the parent class loader,
+ *   the method names, return types, parameter names and types and thrown exceptions, the debugging flags and the
+ *   {@link JaninoOption}s. When an evaluator with a {@link ScriptEvaluator#setCache(EvaluatorCache) cache} is cooked
+ *   from a string or a {@link java.io.Reader}, and the cache already holds an equivalent compilation, then scanning,
+ *   parsing, compilation and class loading are skipped, and the evaluator binds to the previously generated class.
+ * </p>
+ * <p>
+ *   If two or more threads cook equivalent evaluators at the same time, then only one of them compiles, and the others
+ *   wait for that compilation to complete. Compilations that fail are never cached.
+ * </p>
+ * <p>
+ *   Notice that evaluators that hit the cache share the <em>same</em> generated class, which matters iff the script
+ *   declares static state. Also notice that warnings are reported only by the evaluator that actually compiled the
+ *   code. Evaluators with {@link SimpleCompiler#setPermissions(java.security.Permissions) permissions} bypass the
+ *   cache.
+ * </p>
+ * <p>
+ *   When the number of entries exceeds the configured maximum size, the least recently used slot is evicted.
+ * </p>
+ */
+public
+class EvaluatorCache {
+
+    private final int maxSize;
+
+    // Guarded by "this".
+    private final Map<Object /*key*/, Slot> entries = new LinkedHashMap<Object, Slot>(16, .75F, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override protected boolean
+        removeEldestEntry(@Nullable Map.Entry<Object, Slot> eldest) {
+
+            if (this.size() <= EvaluatorCache.this.maxSize) return false;
+
+            EvaluatorCache.this.evictionCount++;
+            return true;
+        }
+    };
+
+    private long hitCount, missCount, evictionCount;
+
+    /**
+     * @param maxSize The maximum number of cached compilations
+     */
+    public
+    EvaluatorCache(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Produces the generated class for a cache miss.
+     */
+    interface Compilation {
+
+        /**
+         * @return The class that the compilation generated
+         */
+        Class<?> compile() throws CompileException, IOException;
+    }
+
+    /**
+     * Returns the cached class for the given <var>key</var>, or, iff there is none, invokes the
+     * <var>compilation</var> and caches its result. Concurrent invocations with equal keys wait for one single
+     * compilation.
+     */
+    Class<?>
+    get(Object key, Compilation compilation) throws CompileException, IOException {
+
+        for (;;) {
+
+            Slot    slot;
+            boolean owner;
+            synchronized (this) {
+                slot = (Slot) this.entries.get(key);
+                if (slot == null) {
+                    this.entries.put(key, (slot = new Slot()));
+                    this.missCount++;
+                    owner = true;
+                } else {
+                    this.hitCount++;
+                    owner = false;
+                }
+            }
+
+            if (owner) {
+                Class<?> result = null;
+                try {
+                    result = compilation.compile();
+                } finally {
+                    if (result == null) {
+                        synchronized (this) {
+                            if (this.entries.get(key) == slot) this.entries.remove(key);
+                        }
+                    }
+                    slot.set(result);
+                }
+                return result;
+            }
+
+            Class<?> result = slot.await();
+            if (result != null) return result;
+
+            // The compilation in the other thread failed; try again (and probably fail in the same way, but now in
+            // THIS thread, so that the exception is thrown to the right caller).
+        }
+    }
+
+    /**
+     * @return The number of cache lookups that found an existing (or in-flight) compilation
+     */
+    public synchronized long
+    getHitCount() { return this.hitCount; }
+
+    /**
+     * @return The number of cache lookups that required a new compilation
+     */
+    public synchronized long
+    getMissCount() { return this.missCount; }
+
+    /**
+     * @return The number of entries that were evicted because the cache exceeded its maximum size
+     */
+    public synchronized long
+    getEvictionCount() { return this.evictionCount; }
+
+    /**
+     * @return The number of cached compilations
+     */
+    public synchronized int
+    size() { return this.entries.size(); }
+
+    /**
+     * Removes all cached compilations; the hit, miss and eviction counters remain unchanged.
+     */
+    public synchronized void
+    clear() { this.entries.clear(); }
+
+    /**
+     * A cache slot that is either in-flight (i.e. its compilation has not yet completed) or done.
+     */
+    private static
+    class Slot {
+
+        // Guarded by "this".
+        private boolean            done;
+        @Nullable private Class<?> result;
+
+        /**
+         * @param result {@code null} means that the compilation failed
+         */
+        synchronized void
+        set(@Nullable Class<?> result) {
+            this.result = result;
+            this.done   = true;
+            this.notifyAll();
+        }
+
+        /**
+         * Waits until the compilation completes.
+         *
+         * @return {@code null} iff the compilation failed
+         */
+        @Nullable synchronized Class<?>
+        await() {
+            boolean interrupted = false;
+            while (!this.done) {
+                try {
+                    this.wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            return this.result;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.codehaus.commons.nullanalysis.Nullable;
+import org.codehaus.janino.util.ClassFile;
+import org.codehaus.janino.util.ClassFile.ConstantInvokeDynamicInfo;
+import org.codehaus.janino.util.ClassFile.ConstantPoolInfo;
+import org.codehaus.janino.util.ClassFile.ConstantUtf8Info;
+
+/**
+ * Defines a generated class as a <em>hidden class</em> (JRE 15+) through {@code
+ * java.lang.invoke.MethodHandles.Lookup.defineHiddenClass()}, and makes it available under its binary name.
+ * <p>
+ *   This {@link ClassLoader} does not define any classes itself; the hidden class is defined by the class loader of
+ *   the host lookup, and is unloaded as soon as it is no longer reachable.
+ * </p>
+ * <p>
+ *   The {@code java.lang.invoke} API is accessed reflectively, so that JANINO can still be compiled for and run on
+ *   JREs without hidden classes.
+ * </p>
+ *
+ * @see SimpleCompiler#setHiddenClassHost(Object)
+ */
+final
+class HiddenClassLoader extends ClassLoader {
+
+    private final String   className;
+    private final Class<?> clazz;
+
+    private
+    HiddenClassLoader(ClassLoader parent, String className, Class<?> clazz) {
+        super(parent);
+        this.className = className;
+        this.clazz     = clazz;
+    }
+
+    /**
+     * @param hostLookup A {@code java.lang.invoke.MethodHandles.Lookup} with full privilege access, in the same
+     *                   package as the class to define
+     * @param className  The binary name of the class to define
+     * @return           A {@link ClassLoader} that loads the hidden class by its <var>className</var>, and all other
+     *                   classes through the class loader of the <var>hostLookup</var>
+     */
+    static HiddenClassLoader
+    define(Object hostLookup, String className, byte[] bytecode, @Nullable CompilationListener compilationListener) {
+
+        long     begin = System.nanoTime();
+        Class<?> clazz;
+        try {
+            Object hiddenLookup = Reflection.DEFINE_HIDDEN_CLASS.invoke(hostLookup, new Object[] {
+                bytecode,
+                Boolean.FALSE,
+                Array.newInstance(Reflection.CLASS_OPTION_CLASS, 0),
+            });
+            clazz = (Class<?>) Reflection.LOOKUP_CLASS.invoke(hiddenLookup);
+        } catch (InvocationTargetException ite) {
+            Throwable te = ite.getTargetException();
+            if (te instanceof RuntimeException) throw (RuntimeException) te;
+            if (te instanceof Error) throw (Error) te;
+            throw new InternalCompilerException("Defining hidden class \"" + className + "\"", te);
+        } catch (IllegalAccessException iae) {
+            throw new InternalCompilerException("Defining hidden class \"" + className + "\"", iae);
+        }
+
+        if (compilationListener != null) {
+            compilationListener.classDefined(className, bytecode.length, System.nanoTime() - begin);
+        }
+
+        return new HiddenClassLoader(HiddenClassLoader.getLookupClass(hostLookup).getClassLoader(), className, clazz);
+    }
+
+    /**
+     * A hidden class cannot be referenced by its name, not even by itself: Only its {@code this_class} constant
+     * resolves to the hidden class. Thus, a class that mentions its own type in a field or method descriptor (e.g.
+     * {@code static SC inst;} or {@code void meth(SC sc)}) fails verification, and a class that uses {@code
+     * invokedynamic} (i.e. a lambda expression or a method reference) fails when the call site is linked.
+     *
+     * @return Whether the class with the given <var>className</var> and <var>bytecode</var> does neither
+     */
+    static boolean
+    canDefine(String className, byte[] bytecode) {
+
+        ClassFile cf;
+        try {
+            cf = new ClassFile(new ByteArrayInputStream(bytecode));
+        } catch (IOException ioe) {
+            return false;
+        }
+
+        String fd = 'L' + className.replace('.', '/') + ';';
+        for (int i = 1, size = cf.getConstantPoolSize(); i < size; i++) {
+            ConstantPoolInfo cpi = cf.getConstantPoolInfo((short) i);
+            if (cpi instanceof ConstantInvokeDynamicInfo) return false;
+            if (cpi instanceof ConstantUtf8Info && ((ConstantUtf8Info) cpi).getString().indexOf(fd) != -1) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return A {@code java.lang.invoke.MethodHandle} for the given public <var>method</var> of a public hidden
+     *         class, or {@code null} iff the method is not accessible through {@code MethodHandles.publicLookup()}
+     */
+    @Nullable static Object
+    unreflect(Method method) {
+
+        Method publicLookup = Reflection.PUBLIC_LOOKUP;
+        Method unreflect    = Reflection.UNREFLECT;
+        if (publicLookup == null || unreflect == null) return null;
+
+        try {
+            return unreflect.invoke(publicLookup.invoke(null), method);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether the running JRE supports hidden classes
+     */
+    static boolean
+    isAvailable() { return Reflection.DEFINE_HIDDEN_CLASS != null; }
+
+    /**
+     * @return The {@code lookupClass()} of the given {@code java.lang.invoke.MethodHandles.Lookup}
+     * @throws IllegalArgumentException The <var>lookup</var> is not a {@code MethodHandles.Lookup}
+     */
+    static Class<?>
+    getLookupClass(Object lookup) {
+
+        if (Reflection.LOOKUP_CLASS == null || !Reflection.LOOKUP_CLASS.getDeclaringClass().isInstance(lookup)) {
+            throw new IllegalArgumentException("\"" + lookup + "\" is not a \"java.lang.invoke.MethodHandles.Lookup\"");
+        }
+
+        try {
+            return (Class<?>) Reflection.LOOKUP_CLASS.invoke(lookup);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override protected synchronized Class<?>
+    loadClass(@Nullable String name, boolean resolve) throws ClassNotFoundException {
+        if (this.className.equals(name)) return this.clazz;
+        return super.loadClass(name, resolve);
+    }
+
+    /**
+     * Lazily looks up the reflection objects.
+     */
+    private static final
+    class Reflection {
+
+        /**
+         * {@code java.lang.invoke.MethodHandles.Lookup.ClassOption}, or {@code null} iff the running JRE does not
+         * support hidden classes.
+         */
+        @Nullable static final Class<?> CLASS_OPTION_CLASS;
+
+        /**
+         * {@code java.lang.invoke.MethodHandles.Lookup.defineHiddenClass(byte[], boolean, ClassOption...)}, or {@code
+         * null}.
+         */
+        @Nullable static final Method DEFINE_HIDDEN_CLASS;
+
+        /**
+         * {@code java.lang.invoke.MethodHandles.Lookup.lookupClass()}, or {@code null} iff the running JRE does not
+         * have {@code java.lang.invoke} (JRE 6).
+         */
+        @Nullable static final Method LOOKUP_CLASS;
+
+        /**
+         * {@code java.lang.invoke.MethodHandles.publicLookup()}, or {@code null} iff the running JRE does not have
+         * {@code java.lang.invoke} (JRE 6).
+         */
+        @Nullable static final Method PUBLIC_LOOKUP;
+
+        /**
+         * {@code java.lang.invoke.MethodHandles.Lookup.unreflect(Method)}, or {@code null} iff the running JRE does
+         * not have {@code java.lang.invoke} (JRE 6).
+         */
+        @Nullable static final Method UNREFLECT;
+
+        static {
+            Class<?> classOptionClass  = null;
+            Method   defineHiddenClass = null;
+            Method   lookupClass       = null;
+            Method   publicLookup      = null;
+            Method   unreflect         = null;
+            try {
+                Class<?> lookupClassClass = Class.forName("java.lang.invoke.MethodHandles$Lookup");
+                lookupClass  = lookupClassClass.getMethod("lookupClass");
+                publicLookup = Class.forName("java.lang.invoke.MethodHandles").getMethod("publicLookup");
+                unreflect    = lookupClassClass.getMethod("unreflect", Method.class);
+
+                classOptionClass  = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+                defineHiddenClass = lookupClassClass.getMethod(
+                    "defineHiddenClass",
+                    byte[].class,
+                    boolean.class,
+                    Array.newInstance(classOptionClass, 0).getClass()
+                );
+            } catch (Exception e) {
+                classOptionClass  = null;
+                defineHiddenClass = null;
+            }
+            CLASS_OPTION_CLASS  = classOptionClass;
+            DEFINE_HIDDEN_CLASS = defineHiddenClass;
+            LOOKUP_CLASS        = lookupClass;
+            PUBLIC_LOOKUP       = publicLookup;
+            UNREFLECT           = unreflect;
+        }
+    }
+}
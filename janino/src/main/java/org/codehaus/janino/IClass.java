@@ -48,6 +48,11 @@ import org.codehaus.commons.nullanalysis.Nullable;
  *   'JLS7' means a reference to the <a href="http://docs.oracle.com/javase/specs/">Java Language Specification, Java
  *   SE 7 Edition</a>.
  * </p>
+ * <p>
+ *   The lazily computed properties are cached in a thread-safe manner, and all threads observe the identical cached
+ *   objects, because {@link IClass}es of JDK types are shared by concurrent compilations (see {@link
+ *   ClassLoaderIClassLoader}).
+ * </p>
  */
 public abstract
 class IClass {
@@ -142,11 +147,16 @@ class IClass {
      */
     public final IConstructor[]
     getDeclaredIConstructors() {
-        if (this.declaredIConstructorsCache != null) return this.declaredIConstructorsCache;
+        IConstructor[] result = this.declaredIConstructorsCache;
+        if (result != null) return result;
 
-        return (this.declaredIConstructorsCache = this.getDeclaredIConstructors2());
+        result = this.getDeclaredIConstructors2();
+        synchronized (this) {
+            if (this.declaredIConstructorsCache != null) return this.declaredIConstructorsCache;
+            return (this.declaredIConstructorsCache = result);
+        }
     }
-    @Nullable private IConstructor[] declaredIConstructorsCache;
+    @Nullable private volatile IConstructor[] declaredIConstructorsCache;
 
     /**
      * The uncached version of {@link #getDeclaredIConstructors()} which must be implemented by derived classes.
@@ -162,10 +172,16 @@ class IClass {
      */
     public final IMethod[]
     getDeclaredIMethods() {
-        if (this.declaredIMethodsCache != null) return this.declaredIMethodsCache;
-        return (this.declaredIMethodsCache = this.getDeclaredIMethods2());
+        IMethod[] result = this.declaredIMethodsCache;
+        if (result != null) return result;
+
+        result = this.getDeclaredIMethods2();
+        synchronized (this) {
+            if (this.declaredIMethodsCache != null) return this.declaredIMethodsCache;
+            return (this.declaredIMethodsCache = result);
+        }
     }
-    @Nullable private IMethod[] declaredIMethodsCache;
+    @Nullable private volatile IMethod[] declaredIMethodsCache;
 
     /**
      * The uncached version of {@link #getDeclaredIMethods()} which must be implemented by derived classes.
@@ -215,13 +231,19 @@ class IClass {
                     me.setValue(l.toArray(new IMethod[l.size()]));
                 }
             }
-            this.declaredIMethodCache = dimc;
+            synchronized (this) {
+                if (this.declaredIMethodCache != null) {
+                    dimc = this.declaredIMethodCache;
+                } else {
+                    this.declaredIMethodCache = dimc;
+                }
+            }
         }
 
         IMethod[] methods = (IMethod[]) dimc.get(methodName);
         return methods == null ? IClass.NO_IMETHODS : methods;
     }
-    @Nullable private Map<String /*methodName*/, Object /*IMethod-or-List<IMethod>*/> declaredIMethodCache;
+    @Nullable private volatile Map<String /*methodName*/, Object /*IMethod-or-List<IMethod>*/> declaredIMethodCache;
 
     /**
      * Returns all methods declared in the class or interface, its superclasses and its superinterfaces.
@@ -231,13 +253,18 @@ class IClass {
     public final IMethod[]
     getIMethods() throws CompileException {
 
-        if (this.iMethodCache != null) return this.iMethodCache;
+        IMethod[] result = this.iMethodCache;
+        if (result != null) return result;
 
         List<IMethod> iMethods = new ArrayList<IMethod>();
         this.getIMethods(iMethods);
-        return (this.iMethodCache = (IMethod[]) iMethods.toArray(new IMethod[iMethods.size()]));
+        result = (IMethod[]) iMethods.toArray(new IMethod[iMethods.size()]);
+        synchronized (this) {
+            if (this.iMethodCache != null) return this.iMethodCache;
+            return (this.iMethodCache = result);
+        }
     }
-    @Nullable private IMethod[] iMethodCache;
+    @Nullable private volatile IMethod[] iMethodCache;
 
     private void
     getIMethods(List<IMethod> result) throws CompileException {
@@ -340,13 +367,17 @@ class IClass {
      */
     private Map<String /*fieldName*/, IField>
     getDeclaredIFieldsCache() {
-        if (this.declaredIFieldsCache != null) return this.declaredIFieldsCache;
+        Map<String /*fieldName*/, IField> m = this.declaredIFieldsCache;
+        if (m != null) return m;
 
         IField[] fields = this.getDeclaredIFields2();
 
-        Map<String /*fieldName*/, IField> m = new LinkedHashMap<String, IClass.IField>();
+        m = new LinkedHashMap<String, IClass.IField>();
         for (IField f : fields) m.put(f.getName(), f);
-        return (this.declaredIFieldsCache = m);
+        synchronized (this) {
+            if (this.declaredIFieldsCache != null) return this.declaredIFieldsCache;
+            return (this.declaredIFieldsCache = m);
+        }
     }
 
     /**
@@ -364,7 +395,7 @@ class IClass {
     protected void
     clearIFieldCaches() { this.declaredIFieldsCache = null; }
 
-    @Nullable private Map<String /*fieldName*/, IField> declaredIFieldsCache;
+    @Nullable private volatile Map<String /*fieldName*/, IField> declaredIFieldsCache;
 
     /**
      * Uncached version of {@link #getDeclaredIFields()}.
@@ -386,10 +417,16 @@ class IClass {
      */
     public final IClass[]
     getDeclaredIClasses() throws CompileException {
-        if (this.declaredIClassesCache != null) return this.declaredIClassesCache;
-        return (this.declaredIClassesCache = this.getDeclaredIClasses2());
+        IClass[] result = this.declaredIClassesCache;
+        if (result != null) return result;
+
+        result = this.getDeclaredIClasses2();
+        synchronized (this) {
+            if (this.declaredIClassesCache != null) return this.declaredIClassesCache;
+            return (this.declaredIClassesCache = result);
+        }
     }
-    @Nullable private IClass[] declaredIClassesCache;
+    @Nullable private volatile IClass[] declaredIClassesCache;
 
     /**
      * @return The member types of this type
@@ -401,13 +438,17 @@ class IClass {
      */
     @Nullable public final IClass
     getDeclaringIClass() throws CompileException {
-        if (!this.declaringIClassIsCached) {
-            this.declaringIClassCache    = this.getDeclaringIClass2();
+        if (this.declaringIClassIsCached) return this.declaringIClassCache;
+
+        IClass result = this.getDeclaringIClass2();
+        synchronized (this) {
+            if (this.declaringIClassIsCached) return this.declaringIClassCache;
+            this.declaringIClassCache    = result;
             this.declaringIClassIsCached = true;
+            return result;
         }
-        return this.declaringIClassCache;
     }
-    private boolean          declaringIClassIsCached;
+    private volatile boolean declaringIClassIsCached;
     @Nullable private IClass declaringIClassCache;
 
     /**
@@ -430,10 +471,15 @@ class IClass {
     getOuterIClass() throws CompileException {
         if (this.outerIClassIsCached) return this.outerIClassCache;
 
-        this.outerIClassIsCached = true;
-        return (this.outerIClassCache = this.getOuterIClass2());
+        IClass result = this.getOuterIClass2();
+        synchronized (this) {
+            if (this.outerIClassIsCached) return this.outerIClassCache;
+            this.outerIClassCache    = result;
+            this.outerIClassIsCached = true;
+            return result;
+        }
     }
-    private boolean          outerIClassIsCached;
+    private volatile boolean outerIClassIsCached;
     @Nullable private IClass outerIClassCache;
 
     /**
@@ -459,10 +505,14 @@ class IClass {
                 null
             );
         }
-        this.superclassIsCached = true;
-        return (this.superclassCache = sc);
+        synchronized (this) {
+            if (this.superclassIsCached) return this.superclassCache;
+            this.superclassCache    = sc;
+            this.superclassIsCached = true;
+            return sc;
+        }
     }
-    private boolean          superclassIsCached;
+    private volatile boolean superclassIsCached;
     @Nullable private IClass superclassCache;
 
     /**
@@ -492,9 +542,10 @@ class IClass {
      */
     public final IClass[]
     getInterfaces() throws CompileException {
-        if (this.interfacesCache != null) return this.interfacesCache;
+        IClass[] is = this.interfacesCache;
+        if (is != null) return is;
 
-        IClass[] is = this.getInterfaces2();
+        is = this.getInterfaces2();
         for (IClass ii : is) {
             if (ii.implementsInterface(this)) {
                 throw new CompileException(
@@ -503,9 +554,12 @@ class IClass {
                 );
             }
         }
-        return (this.interfacesCache = is);
+        synchronized (this) {
+            if (this.interfacesCache != null) return this.interfacesCache;
+            return (this.interfacesCache = is);
+        }
     }
-    @Nullable private IClass[] interfacesCache;
+    @Nullable private volatile IClass[] interfacesCache;
 
     /**
      * @see #getInterfaces()
@@ -524,10 +578,11 @@ class IClass {
      */
     public final String
     getDescriptor() {
-        if (this.descriptorCache != null) return this.descriptorCache;
+        String result = this.descriptorCache;
+        if (result != null) return result;
         return (this.descriptorCache = this.getDescriptor2());
     }
-    @Nullable private String descriptorCache;
+    @Nullable private volatile String descriptorCache;
 
     /**
      * @return The field descriptor for the type as defined by JVMS 4.3.2.
@@ -580,11 +635,15 @@ class IClass {
     getComponentType() {
         if (this.componentTypeIsCached) return this.componentTypeCache;
 
-        this.componentTypeCache    = this.getComponentType2();
-        this.componentTypeIsCached = true;
-        return this.componentTypeCache;
+        IClass result = this.getComponentType2();
+        synchronized (this) {
+            if (this.componentTypeIsCached) return this.componentTypeCache;
+            this.componentTypeCache    = result;
+            this.componentTypeIsCached = true;
+            return result;
+        }
     }
-    private boolean          componentTypeIsCached;
+    private volatile boolean componentTypeIsCached;
     @Nullable private IClass componentTypeCache;
 
     /**
@@ -816,7 +875,10 @@ class IClass {
      */
     IClass[]
     findMemberType(@Nullable String optionalName) throws CompileException {
-        IClass[] res = (IClass[]) this.memberTypeCache.get(optionalName);
+        IClass[] res;
+        synchronized (this.memberTypeCache) {
+            res = (IClass[]) this.memberTypeCache.get(optionalName);
+        }
         if (res == null) {
 
             // Notice: A type may be added multiply to the result set because we are in its scope
@@ -825,7 +887,14 @@ class IClass {
             this.findMemberType(optionalName, s);
             res = s.isEmpty() ? IClass.ZERO_ICLASSES : (IClass[]) s.toArray(new IClass[s.size()]);
 
-            this.memberTypeCache.put(optionalName, res);
+            synchronized (this.memberTypeCache) {
+                IClass[] prev = (IClass[]) this.memberTypeCache.get(optionalName);
+                if (prev != null) {
+                    res = prev;
+                } else {
+                    this.memberTypeCache.put(optionalName, res);
+                }
+            }
         }
 
         return res;
@@ -880,10 +949,16 @@ class IClass {
      */
     public final IAnnotation[]
     getIAnnotations() throws CompileException {
-        if (this.iAnnotationsCache != null) return this.iAnnotationsCache;
-        return (this.iAnnotationsCache = this.getIAnnotations2());
+        IAnnotation[] result = this.iAnnotationsCache;
+        if (result != null) return result;
+
+        result = this.getIAnnotations2();
+        synchronized (this) {
+            if (this.iAnnotationsCache != null) return this.iAnnotationsCache;
+            return (this.iAnnotationsCache = result);
+        }
     }
-    @Nullable private IAnnotation[] iAnnotationsCache;
+    @Nullable private volatile IAnnotation[] iAnnotationsCache;
 
     /**
      * @throws CompileException
@@ -926,20 +1001,6 @@ class IClass {
     public abstract
     class IInvocable implements IMember {
 
-        private boolean argsNeedAdjust;
-
-        /**
-         * TODO
-         */
-        public void
-        setArgsNeedAdjust(boolean newVal) { this.argsNeedAdjust = newVal; }
-
-        /**
-         * TODO
-         */
-        public boolean
-        argsNeedAdjust() { return this.argsNeedAdjust; }
-
         /**
          * @return Whether this invocable is 'variable arity', i.e. its last parameter has an ellipsis ('...') after
          *         the type
@@ -955,10 +1016,11 @@ class IClass {
          */
         public final IClass[]
         getParameterTypes() throws CompileException {
-            if (this.parameterTypesCache != null) return this.parameterTypesCache;
+            IClass[] result = this.parameterTypesCache;
+            if (result != null) return result;
             return (this.parameterTypesCache = this.getParameterTypes2());
         }
-        @Nullable private IClass[] parameterTypesCache;
+        @Nullable private volatile IClass[] parameterTypesCache;
 
         /**
          * Opposed to the {@link Constructor}, there is no magic "{@code this$0}" parameter.
@@ -978,10 +1040,11 @@ class IClass {
          */
         public final MethodDescriptor
         getDescriptor() throws CompileException {
-            if (this.descriptorCache != null) return this.descriptorCache;
+            MethodDescriptor result = this.descriptorCache;
+            if (result != null) return result;
             return (this.descriptorCache = this.getDescriptor2());
         }
-        @Nullable private MethodDescriptor descriptorCache;
+        @Nullable private volatile MethodDescriptor descriptorCache;
 
         /**
          * Uncached implementation of {@link #getDescriptor()}.
@@ -994,10 +1057,11 @@ class IClass {
          */
         public final IClass[]
         getThrownExceptions() throws CompileException {
-            if (this.thrownExceptionsCache != null) return this.thrownExceptionsCache;
+            IClass[] result = this.thrownExceptionsCache;
+            if (result != null) return result;
             return (this.thrownExceptionsCache = this.getThrownExceptions2());
         }
-        @Nullable private IClass[] thrownExceptionsCache;
+        @Nullable private volatile IClass[] thrownExceptionsCache;
 
         /**
          * @return The types thrown by this constructor or method
@@ -27,10 +27,11 @@
 package org.codehaus.janino;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,6 +41,7 @@ import org.codehaus.commons.compiler.util.resource.ResourceFinder;
 import org.codehaus.commons.nullanalysis.Nullable;
 import org.codehaus.janino.IClass.IConstructor;
 import org.codehaus.janino.IClass.IMethod;
+import org.codehaus.janino.util.resource.IndexedPathResourceFinder;
 import org.codehaus.janino.util.resource.JarDirectoriesResourceFinder;
 import org.codehaus.janino.util.resource.PathResourceFinder;
 
@@ -283,56 +285,92 @@ class IClassLoader {
             if (res != null) return res;
         }
 
-        // We need to synchronize here because "unloadableIClasses" and "loadedIClasses" are unsynchronized
-        // containers. Also, "findIClass()" is not thread safe.
-        IClass result;
+        // Fast path: Class already loaded, or could not be loaded before? (No locking required, because the maps are
+        // concurrent.)
+        IClass result = (IClass) this.loadedIClasses.get(fieldDescriptor);
+        if (result != null) return result;
+        if (this.unloadableIClasses.contains(fieldDescriptor)) return null;
 
-        synchronized (this) {
+        // We need to synchronize here because "findIClass()" is not necessarily thread safe. Parallel capable
+        // IClassLoaders lock only the descriptor, so that other types can be loaded at the same time.
+        if (this.parallelCapable) {
+            Object lock = new Object();
+            Object prev = this.descriptorLocks.putIfAbsent(fieldDescriptor, lock);
+            if (prev != null) lock = prev;
 
-            // Class could not be loaded before?
-            if (this.unloadableIClasses.contains(fieldDescriptor)) return null;
+            synchronized (lock) {
+                result = this.loadIClass2(fieldDescriptor);
+            }
+        } else {
+            synchronized (this) {
+                result = this.loadIClass2(fieldDescriptor);
+            }
+        }
 
-            // Class already loaded?
-            result = (IClass) this.loadedIClasses.get(fieldDescriptor);
-            if (result != null) return result;
+        IClassLoader.LOGGER.exiting(null, "loadIClass", result);
+        return result;
+    }
+
+    /**
+     * Loads an array type or, through {@link #findIClass(String)}, a class or interface type. The caller must hold
+     * the lock for the <var>fieldDescriptor</var>.
+     */
+    @Nullable private IClass
+    loadIClass2(String fieldDescriptor) throws ClassNotFoundException {
 
-            // Special handling for array types.
-            if (Descriptor.isArrayReference(fieldDescriptor)) {
+        // Class could not be loaded before?
+        if (this.unloadableIClasses.contains(fieldDescriptor)) return null;
 
-                // Load the component type.
-                IClass componentIClass = this.loadIClass(
-                    Descriptor.getComponentDescriptor(fieldDescriptor)
-                );
-                if (componentIClass == null) return null;
+        // Class already loaded?
+        IClass result = (IClass) this.loadedIClasses.get(fieldDescriptor);
+        if (result != null) return result;
 
-                // Now get and define the array type.
-                IClass arrayIClass = componentIClass.getArrayIClass(this.TYPE_java_lang_Object);
-                this.loadedIClasses.put(fieldDescriptor, arrayIClass);
-                return arrayIClass;
-            }
+        // Special handling for array types.
+        if (Descriptor.isArrayReference(fieldDescriptor)) {
 
-            // Load the class through the {@link #findIClass(String)} method implemented by the derived class.
-            // By contract, {@link findIClass(String)} <em>must</em> invoke {@link #defineIClass(IClass)}!
-            IClassLoader.LOGGER.log(Level.FINE, "About to call \"findIClass({0})\"", fieldDescriptor);
+            // Load the component type.
+            IClass componentIClass = this.loadIClass(
+                Descriptor.getComponentDescriptor(fieldDescriptor)
+            );
+            if (componentIClass == null) return null;
+
+            // Now get and define the array type.
+            IClass arrayIClass = componentIClass.getArrayIClass(this.TYPE_java_lang_Object);
+            this.loadedIClasses.put(fieldDescriptor, arrayIClass);
+            return arrayIClass;
+        }
+
+        // Load the class through the {@link #findIClass(String)} method implemented by the derived class.
+        // By contract, {@link findIClass(String)} <em>must</em> invoke {@link #defineIClass(IClass)}!
+        IClassLoader.LOGGER.log(Level.FINE, "About to call \"findIClass({0})\"", fieldDescriptor);
+        LoadStatistics ls    = IClassLoader.loadStatistics();
+        long           begin = System.nanoTime();
+        ls.depth++;
+        try {
             result = this.findIClass(fieldDescriptor);
-            if (result == null) {
-                if (this.loadedIClasses.containsKey(fieldDescriptor)) {
-                    throw new InternalCompilerException((
-                        "\"findIClass(\""
-                        + fieldDescriptor
-                        + "\")\" called \"defineIClass()\", but returned null!?"
-                    ));
-                }
-                this.unloadableIClasses.add(fieldDescriptor);
-                return null;
-            }
-            if (!this.loadedIClasses.containsKey(fieldDescriptor)) {
+        } finally {
+
+            // A nested load (e.g. when "findIClass()" delegates to another IClassLoader) is already included in the
+            // time of the outermost load.
+            if (--ls.depth == 0) ls.nanos += System.nanoTime() - begin;
+        }
+        if (result == null) {
+            if (this.loadedIClasses.containsKey(fieldDescriptor)) {
                 throw new InternalCompilerException((
                     "\"findIClass(\""
                     + fieldDescriptor
-                    + "\")\" did not call \"defineIClass()\"!?"
+                    + "\")\" called \"defineIClass()\", but returned null!?"
                 ));
             }
+            this.unloadableIClasses.add(fieldDescriptor);
+            return null;
+        }
+        if (!this.loadedIClasses.containsKey(fieldDescriptor)) {
+            throw new InternalCompilerException((
+                "\"findIClass(\""
+                + fieldDescriptor
+                + "\")\" did not call \"defineIClass()\"!?"
+            ));
         }
 
         if (!result.getDescriptor().equalsIgnoreCase(fieldDescriptor)) {
@@ -345,10 +383,50 @@ class IClassLoader {
             );
         }
 
-        IClassLoader.LOGGER.exiting(null, "loadIClass", result);
+        if (ls.depth == 0) ls.count++;
         return result;
     }
 
+    /**
+     * @return The number of types that the current thread loaded through {@link #findIClass(String)} so far, through
+     *         any {@link IClassLoader}; nested loads are not counted
+     */
+    public static int
+    getIClassLoadCount() { return IClassLoader.loadStatistics().count; }
+
+    /**
+     * @return The time (in nanoseconds) that the current thread spent in {@link #findIClass(String)} so far, through
+     *         any {@link IClassLoader}
+     */
+    public static long
+    getIClassLoadNanos() { return IClassLoader.loadStatistics().nanos; }
+
+    private static LoadStatistics
+    loadStatistics() {
+        LoadStatistics result = (LoadStatistics) IClassLoader.LOAD_STATISTICS.get();
+        if (result == null) IClassLoader.LOAD_STATISTICS.set((result = new LoadStatistics()));
+        return result;
+    }
+
+    /**
+     * Enables the concurrent loading of different types through {@link #loadIClass(String)}; the derived class's
+     * constructor should call this method iff its {@link #findIClass(String)} is thread-safe (similar to {@link
+     * ClassLoader}{@code .registerAsParallelCapable()}).
+     * <p>
+     *   Without this, {@link #findIClass(String)} is never called from more than one thread at a time. With this, it
+     *   is never called from more than one thread at a time <em>for the same descriptor</em>. Either way, the lookup of
+     *   types that are already loaded requires no locking at all.
+     * </p>
+     */
+    protected final void
+    registerAsParallelCapable() { this.parallelCapable = true; }
+
+    /**
+     * @return Whether {@link #registerAsParallelCapable()} was called
+     */
+    public final boolean
+    isParallelCapable() { return this.parallelCapable; }
+
     /**
      * Finds a new {@link IClass} by descriptor and calls {@link #defineIClass(IClass)}.
      * <p>
@@ -371,8 +449,9 @@ class IClassLoader {
      *   Notice that this method is never called for array types.
      * </p>
      * <p>
-     *   Notice that this method is never called from more than one thread at a time. In other words, implementations
-     *   of this method need not be thread-safe.
+     *   Notice that this method is never called from more than one thread at a time (unless this {@link IClassLoader}
+     *   is {@link #registerAsParallelCapable() parallel capable}). In other words, implementations of this method need
+     *   not be thread-safe.
      * </p>
      *
      * @return                        {@code null} if a class with that descriptor could not be found
@@ -428,7 +507,7 @@ class IClassLoader {
             ? StringUtil.parsePath(System.getProperty("java.ext.dirs"))
             : optionalExtDirs
         );
-        final ResourceFinder classPathResourceFinder = new PathResourceFinder(classPath);
+        final ResourceFinder classPathResourceFinder = new IndexedPathResourceFinder(classPath);
 
         // We can load classes through "ResourceFinderIClassLoader"s, which means
         // they are read into "ClassFile" objects, or we can load classes through
@@ -451,7 +530,28 @@ class IClassLoader {
         return icl;
     }
 
-    private final IClassLoader                       parentIClassLoader;
-    private final Map<String /*descriptor*/, IClass> loadedIClasses     = new HashMap<String, IClass>();
-    private final Set<String /*descriptor*/>         unloadableIClasses = new HashSet<String>();
+    private final IClassLoader parentIClassLoader;
+    private boolean            parallelCapable;
+
+    /**
+     * Counted per thread and not per {@link IClassLoader}, because concurrent compilations share parent {@link
+     * IClassLoader}s, and must not see each other's type loading.
+     */
+    private static final ThreadLocal<LoadStatistics> LOAD_STATISTICS = new ThreadLocal<LoadStatistics>();
+
+    private static final
+    class LoadStatistics {
+        int  count;
+        long nanos;
+        int  depth;
+    }
+
+    private final Map<String /*descriptor*/, IClass> loadedIClasses = new ConcurrentHashMap<String, IClass>();
+
+    private final Set<String /*descriptor*/>
+    unloadableIClasses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // Only used iff "parallelCapable"; one lock object per descriptor that was ever loaded or attempted to load.
+    private final ConcurrentMap<String /*descriptor*/, Object /*lock*/>
+    descriptorLocks = new ConcurrentHashMap<String, Object>();
 }
@@ -0,0 +1,707 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.Location;
+import org.codehaus.commons.nullanalysis.Nullable;
+import org.codehaus.janino.Java.AbstractCompilationUnit;
+import org.codehaus.janino.Java.BlockStatement;
+import org.codehaus.janino.Java.CompilationUnit;
+import org.codehaus.janino.Java.ConstructorDeclarator;
+import org.codehaus.janino.Java.EnumDeclaration;
+import org.codehaus.janino.Java.FieldDeclaration;
+import org.codehaus.janino.Java.Initializer;
+import org.codehaus.janino.Java.Locatable;
+import org.codehaus.janino.Java.MemberTypeDeclaration;
+import org.codehaus.janino.Java.MethodDeclarator;
+import org.codehaus.janino.Java.Modifier;
+import org.codehaus.janino.Java.NamedClassDeclaration;
+import org.codehaus.janino.Java.PackageMemberClassDeclaration;
+import org.codehaus.janino.Java.PackageMemberTypeDeclaration;
+import org.codehaus.janino.Java.Type;
+import org.codehaus.janino.util.DeepCopier;
+
+/**
+ * Parses a compilation unit, and re-parses it <em>incrementally</em> after each text edit.
+ * <p>
+ *   The bodies of the top-level class declarations are split into "chunks", i.e. member declarations. After an
+ *   edit, only the chunks that the edit touches are re-scanned and re-parsed; the declarations of all other chunks
+ *   are re-used, with their {@link Location}s adjusted. Edits outside of a class body (e.g. of an import
+ *   declaration or a class header), edits that change the structure of a class body beyond the edited member
+ *   declarations, and syntax errors cause a complete re-parse.
+ * </p>
+ * <p>
+ *   Each invocation of {@link #parse()} and {@link #edit(int, int, String)} returns a new AST, so the caller may
+ *   compile and modify it without affecting subsequent edits.
+ * </p>
+ */
+public
+class IncrementalParser {
+
+    @Nullable private final String optionalFileName;
+    private char[]                 text;
+
+    /**
+     * The class bodies of the {@link #text}; empty iff the text must be split anew.
+     */
+    private final List<ClassBody> classBodies = new ArrayList<ClassBody>();
+
+    public
+    IncrementalParser(@Nullable String optionalFileName, String text) {
+        this.optionalFileName = optionalFileName;
+        this.text             = text.toCharArray();
+    }
+
+    /**
+     * @return The current text, i.e. the initial text with all edits applied
+     */
+    public String
+    getText() { return new String(this.text); }
+
+    /**
+     * Parses the current text from scratch.
+     */
+    public AbstractCompilationUnit
+    parse() throws CompileException, IOException {
+
+        this.classBodies.clear();
+        if (!IncrementalParser.containsUnicodeEscape(this.text, 0, this.text.length)) {
+            try {
+                this.split();
+            } catch (CompileException ce) {
+
+                // The text has no valid class body structure; the complete parse will report the error.
+                this.classBodies.clear();
+            }
+        }
+
+        return this.assemble();
+    }
+
+    /**
+     * Replaces <var>removedLength</var> characters at <var>offset</var> with the <var>insertedText</var>, and parses
+     * the new text, re-using as much as possible of the preceding parse.
+     *
+     * @return The AST of the new text
+     */
+    public AbstractCompilationUnit
+    edit(int offset, int removedLength, String insertedText) throws CompileException, IOException {
+
+        char[] oldText = this.text;
+        if (offset < 0 || removedLength < 0 || offset + removedLength > oldText.length) {
+            throw new IndexOutOfBoundsException(
+                "offset=" + offset + ", removedLength=" + removedLength + ", length=" + oldText.length
+            );
+        }
+
+        int    insertedLength = insertedText.length();
+        char[] newText        = new char[oldText.length - removedLength + insertedLength];
+        System.arraycopy(oldText, 0, newText, 0, offset);
+        insertedText.getChars(0, insertedLength, newText, offset);
+        System.arraycopy(
+            oldText,
+            offset + removedLength,
+            newText,
+            offset + insertedLength,
+            oldText.length - offset - removedLength
+        );
+        this.text = newText;
+
+        // The edit may introduce a Unicode escape only in the inserted text or where it joins the rest of the text.
+        ClassBody cb = this.findClassBody(offset, offset + removedLength);
+        if (cb == null || IncrementalParser.containsUnicodeEscape(newText, offset - 1, offset + insertedLength + 1)) {
+            return this.parse();
+        }
+
+        try {
+            this.resplit(cb, offset, removedLength, insertedLength);
+        } catch (CompileException ce) {
+            return this.parse();
+        }
+
+        return this.assemble();
+    }
+
+    /**
+     * @return The class body that contains the range from <var>from</var> to <var>to</var>, or {@code null}
+     */
+    @Nullable private ClassBody
+    findClassBody(int from, int to) {
+        for (ClassBody cb : this.classBodies) {
+            if (cb.start <= from && to <= cb.end) return cb;
+        }
+        return null;
+    }
+
+    /**
+     * Splits the {@link #text} into {@link #classBodies} and their {@link Chunk}s. The bodies of interface, enum and
+     * annotation type declarations are not split.
+     */
+    private void
+    split() throws CompileException, IOException {
+
+        MemberScanner ms = new MemberScanner(new Scanner(this.optionalFileName, this.text), 0);
+
+        int     typeDeclarationIndex = -1;
+        int     parenthesisDepth     = 0;
+        boolean isClass              = false;
+        for (;;) {
+            Token t = ms.read();
+
+            if (t.type == TokenType.END_OF_INPUT) return;
+
+            if (t.type == TokenType.KEYWORD && parenthesisDepth == 0) {
+                if ("class".equals(t.value)) {
+                    typeDeclarationIndex++;
+                    isClass = true;
+                } else
+                if ("interface".equals(t.value) || "enum".equals(t.value)) {
+                    typeDeclarationIndex++;
+                    isClass = false;
+                }
+            } else
+            if (t.type == TokenType.OPERATOR) {
+                if ("(".equals(t.value)) {
+                    parenthesisDepth++;
+                } else
+                if (")".equals(t.value)) {
+                    parenthesisDepth--;
+                } else
+                if ("{".equals(t.value) && parenthesisDepth == 0) {
+                    if (!isClass) {
+                        ms.skipBlock();
+                        continue;
+                    }
+
+                    ClassBody cb = new ClassBody(typeDeclarationIndex, ms.offset + 1);
+                    for (int from = cb.start;;) {
+                        int to = ms.nextMember();
+                        if (to == -1) break;
+                        cb.chunks.add(new Chunk(from, to));
+                        from = to;
+                    }
+                    cb.end = ms.offset;
+                    this.classBodies.add(cb);
+                    isClass = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-splits the part of the class body <var>cb</var> that was affected by an edit, and adjusts the offsets of all
+     * subsequent chunks and class bodies.
+     *
+     * @throws CompileException The edit changed the structure of the text beyond the class body
+     */
+    private void
+    resplit(ClassBody cb, int offset, int removedLength, int insertedLength) throws CompileException, IOException {
+
+        char[]      text   = this.text;
+        List<Chunk> chunks = cb.chunks;
+        int         delta  = insertedLength - removedLength;
+
+        // Find the first chunk that ends at or after the edit.
+        int k = 0;
+        while (k < chunks.size() && ((Chunk) chunks.get(k)).end < offset) k++;
+        int start = k == 0 ? cb.start : ((Chunk) chunks.get(k - 1)).end;
+
+        int newEnd = cb.end + delta;
+        MemberScanner ms = new MemberScanner(
+            new Scanner(this.optionalFileName, Arrays.copyOfRange(text, start, newEnd + 1)),
+            start
+        );
+
+        // Where the preceding member declaration ends with "}", the split depends on the first token of this one.
+        if (start > cb.start && text[start - 1] == '}' && !MemberScanner.isMemberStart(ms.peek())) {
+            throw new CompileException("Member declaration continues", null);
+        }
+
+        // Scan member declarations until a member boundary re-synchronizes with a boundary of the preceding split.
+        List<Chunk> newChunks = new ArrayList<Chunk>();
+        int         j         = chunks.size() - 1;
+        for (int from = start;;) {
+            int to = ms.nextMember();
+            if (to == -1) {
+                if (ms.offset != newEnd) throw new CompileException("Class body ends prematurely", null);
+                j = chunks.size() - 1;
+                break;
+            }
+            newChunks.add(new Chunk(from, to));
+            from = to;
+
+            if (to >= offset + insertedLength) {
+                j = k;
+                while (j < chunks.size() && ((Chunk) chunks.get(j)).end + delta < to) j++;
+                if (j < chunks.size() && ((Chunk) chunks.get(j)).end + delta == to) break;
+            }
+        }
+
+        chunks.subList(k, Math.min(j + 1, chunks.size())).clear();
+        chunks.addAll(k, newChunks);
+        for (int i = k + newChunks.size(); i < chunks.size(); i++) ((Chunk) chunks.get(i)).shift(delta);
+        cb.end = newEnd;
+
+        for (ClassBody cb2 : this.classBodies) {
+            if (cb2.start > cb.start) cb2.shift(delta);
+        }
+    }
+
+    /**
+     * Parses the {@link #text}, re-using the declarations of all chunks that were parsed before. Falls back to a
+     * complete parse iff that fails.
+     */
+    private AbstractCompilationUnit
+    assemble() throws CompileException, IOException {
+
+        if (!this.classBodies.isEmpty()) {
+            try {
+                return this.assemble2();
+            } catch (CompileException ce) {
+                // Fall back to a complete parse.
+            }
+        }
+
+        // Parse the text as a whole, which reports any syntax error exactly like a non-incremental parse. If that
+        // succeeds nevertheless, then the split did not match the class bodies as the parser sees them.
+        AbstractCompilationUnit result = (
+            new Parser(new Scanner(this.optionalFileName, this.text)).parseAbstractCompilationUnit()
+        );
+        this.classBodies.clear();
+        return result;
+    }
+
+    private AbstractCompilationUnit
+    assemble2() throws CompileException, IOException {
+
+        char[] text = this.text;
+
+        // Parse the "skeleton", i.e. the text with all class bodies blanked out. Preserving the line breaks and tabs
+        // keeps the locations of all tokens outside the class bodies.
+        char[] skeleton = (char[]) text.clone();
+        for (ClassBody cb : this.classBodies) {
+            for (int i = cb.start; i < cb.end; i++) {
+                char c = skeleton[i];
+                if (c != '\r' && c != '\n' && c != '\t') skeleton[i] = ' ';
+            }
+        }
+        AbstractCompilationUnit result = (
+            new Parser(new Scanner(this.optionalFileName, skeleton)).parseAbstractCompilationUnit()
+        );
+        if (!(result instanceof CompilationUnit)) throw new CompileException("Modular compilation unit", null);
+        PackageMemberTypeDeclaration[] pmtds = ((CompilationUnit) result).getPackageMemberTypeDeclarations();
+
+        // Now add copies of the member declarations to the (empty) class declarations. While doing so, compute the
+        // current line and column number of the token that precedes each chunk, exactly like the scanner does.
+        int offset       = 0;
+        int lineNumber   = 1;
+        int columnNumber = 0;
+        for (ClassBody cb : this.classBodies) {
+
+            if (cb.typeDeclarationIndex >= pmtds.length) throw new CompileException("Type declaration missing", null);
+            PackageMemberTypeDeclaration pmtd = pmtds[cb.typeDeclarationIndex];
+            if (!(pmtd instanceof PackageMemberClassDeclaration) || pmtd instanceof EnumDeclaration) {
+                throw new CompileException("Class declaration expected", null);
+            }
+            PackageMemberClassDeclaration pmcd = (PackageMemberClassDeclaration) pmtd;
+
+            for (Chunk chunk : cb.chunks) {
+
+                for (; offset < chunk.start - 1; offset++) {
+                    char c = text[offset];
+                    if (c == '\r' || (c == '\n' && (offset == 0 || text[offset - 1] != '\r'))) {
+                        lineNumber++;
+                        columnNumber = 0;
+                    } else
+                    if (c == '\t') {
+                        columnNumber = columnNumber - columnNumber % 8 + 8;
+                    } else
+                    if (c != '\n') {
+                        columnNumber++;
+                    }
+                }
+
+                // Re-parse the chunk if it was not yet parsed, or if it moved horizontally and has a TAB in its first
+                // line, which would change the column numbers irregularly.
+                NamedClassDeclaration declarations = chunk.declarations;
+                if (declarations == null || (
+                    columnNumber != chunk.columnNumber
+                    && IncrementalParser.hasTabInFirstLine(text, chunk.start - 1, chunk.end)
+                )) {
+                    declarations = this.parseChunk(chunk, pmcd.getName(), lineNumber, columnNumber);
+                }
+
+                DeepCopier copier = (
+                    lineNumber == chunk.lineNumber && columnNumber == chunk.columnNumber
+                    ? new DeepCopier()
+                    : new RelocatingDeepCopier(
+                        chunk.lineNumber,                   // firstLineNumber
+                        lineNumber - chunk.lineNumber,      // lineNumberDelta
+                        columnNumber - chunk.columnNumber   // columnNumberDelta
+                    )
+                );
+                for (BlockStatement vdoi : declarations.variableDeclaratorsAndInitializers) {
+                    if (vdoi instanceof FieldDeclaration) {
+                        pmcd.addFieldDeclaration(copier.copyFieldDeclaration((FieldDeclaration) vdoi));
+                    } else
+                    {
+                        pmcd.addInitializer(copier.copyInitializer((Initializer) vdoi));
+                    }
+                }
+                for (ConstructorDeclarator cd : declarations.constructors) {
+                    pmcd.addConstructor(copier.copyConstructorDeclarator(cd));
+                }
+                for (MethodDeclarator md : declarations.getMethodDeclarations()) {
+                    pmcd.addDeclaredMethod(copier.copyMethodDeclarator(md));
+                }
+                for (MemberTypeDeclaration mtd : declarations.getMemberTypeDeclarations()) {
+                    pmcd.addMemberTypeDeclaration(copier.copyMemberTypeDeclaration(mtd));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses the member declarations of the <var>chunk</var> into a scratch class declaration, which is never
+     * handed out, but only copied.
+     * <p>
+     *   Parsing starts with the token that precedes the chunk ("<code>{</code>", "<code>;</code>" or
+     *   "<code>}</code>"), because the parser uses the location of the <em>previous</em> token for some AST
+     *   elements.
+     * </p>
+     *
+     * @param lineNumber   The line number of the token that precedes the chunk
+     * @param columnNumber The column number <em>before</em> the token that precedes the chunk
+     */
+    private NamedClassDeclaration
+    parseChunk(Chunk chunk, String className, int lineNumber, int columnNumber) throws CompileException, IOException {
+
+        chunk.declarations = null;
+
+        Parser parser = new Parser(new Scanner(
+            this.optionalFileName,                                     // optionalFileName
+            Arrays.copyOfRange(this.text, chunk.start - 1, chunk.end), // source
+            lineNumber,                                                // initialLineNumber
+            columnNumber                                               // initialColumnNumber
+        ));
+
+        NamedClassDeclaration result = new PackageMemberClassDeclaration(
+            Location.NOWHERE, // location
+            null,             // optionalDocComment
+            new Modifier[0],  // modifiers
+            className,        // name
+            null,             // optionalTypeParameters
+            null,             // optionalExtendedType
+            new Type[0]       // implementedTypes
+        );
+        parser.read();
+        while (!parser.peek(TokenType.END_OF_INPUT)) parser.parseClassBodyDeclaration(result);
+
+        chunk.declarations = result;
+        chunk.lineNumber   = lineNumber;
+        chunk.columnNumber = columnNumber;
+        return result;
+    }
+
+    /**
+     * @return Whether the characters between <var>from</var> and <var>to</var>, or up to the first line break, contain
+     *         a TAB
+     */
+    private static boolean
+    hasTabInFirstLine(char[] text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text[i];
+            if (c == '\t') return true;
+            if (c == '\r' || c == '\n') return false;
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether the characters between <var>from</var> and <var>to</var> (clipped to the <var>text</var>)
+     *         contain a backslash followed by a "u", which is the (conservative) condition for having to process
+     *         Unicode escapes
+     */
+    private static boolean
+    containsUnicodeEscape(char[] text, int from, int to) {
+        for (int i = Math.max(from, 0), n = Math.min(to, text.length) - 1; i < n; i++) {
+            if (text[i] == '\\' && text[i + 1] == 'u') return true;
+        }
+        return false;
+    }
+
+    /**
+     * The body of a top-level class declaration.
+     */
+    private static
+    class ClassBody {
+
+        /**
+         * The index of the class declaration within the package member type declarations.
+         */
+        final int typeDeclarationIndex;
+
+        /**
+         * The offset of the character after the opening brace.
+         */
+        int start;
+
+        /**
+         * The offset of the closing brace.
+         */
+        int end;
+
+        /**
+         * The member declarations, in ascending order and without gaps; the first chunk starts at {@link #start}.
+         */
+        final List<Chunk> chunks = new ArrayList<Chunk>();
+
+        ClassBody(int typeDeclarationIndex, int start) {
+            this.typeDeclarationIndex = typeDeclarationIndex;
+            this.start                = start;
+        }
+
+        void
+        shift(int delta) {
+            this.start += delta;
+            this.end   += delta;
+            for (Chunk chunk : this.chunks) chunk.shift(delta);
+        }
+    }
+
+    /**
+     * A piece of a class body that consists of exactly one member declaration (or an empty declaration), preceded
+     * by white space and comments.
+     */
+    private static
+    class Chunk {
+
+        /**
+         * The offset of the first character of the chunk.
+         */
+        int start;
+
+        /**
+         * The offset of the character after the chunk, i.e. after the closing ";" or "}".
+         */
+        int end;
+
+        /**
+         * The parsed member declarations, or {@code null} iff the chunk was not yet parsed.
+         */
+        @Nullable NamedClassDeclaration declarations;
+
+        /**
+         * The line and column number from which the {@link #declarations} were parsed; see {@link
+         * IncrementalParser#parseChunk(Chunk, String, int, int)}.
+         */
+        int lineNumber;
+        int columnNumber;
+
+        Chunk(int start, int end) {
+            this.start = start;
+            this.end   = end;
+        }
+
+        void
+        shift(int delta) {
+            this.start += delta;
+            this.end   += delta;
+        }
+    }
+
+    /**
+     * A {@link DeepCopier} that moves all locations by a number of lines, and the locations on the first line also
+     * by a number of columns.
+     */
+    private static
+    class RelocatingDeepCopier extends DeepCopier {
+
+        private final int firstLineNumber;
+        private final int lineNumberDelta;
+        private final int columnNumberDelta;
+
+        RelocatingDeepCopier(int firstLineNumber, int lineNumberDelta, int columnNumberDelta) {
+            this.firstLineNumber   = firstLineNumber;
+            this.lineNumberDelta   = lineNumberDelta;
+            this.columnNumberDelta = columnNumberDelta;
+        }
+
+        @Override public Location
+        copyLocation(Locatable subject) {
+            Location l          = subject.getLocation();
+            int      lineNumber = l.getLineNumber();
+            return new Location(
+                l.getFileName(),
+                lineNumber + this.lineNumberDelta,
+                (
+                    lineNumber == this.firstLineNumber
+                    ? l.getColumnNumber() + this.columnNumberDelta
+                    : l.getColumnNumber()
+                )
+            );
+        }
+    }
+
+    /**
+     * Reads the tokens of a text (skipping comments) and determines the boundaries of member declarations.
+     */
+    private static
+    class MemberScanner {
+
+        private final Scanner scanner;
+
+        /**
+         * The offset of the scanner's first character within the text.
+         */
+        private final int base;
+
+        @Nullable private Token nextToken;
+        private int             nextOffset;
+
+        /**
+         * The offset of the token most recently returned by {@link #read()}.
+         */
+        int offset;
+
+        MemberScanner(Scanner scanner, int base) {
+            (this.scanner = scanner).setIgnoreWhiteSpace(true);
+            this.base = base;
+        }
+
+        Token
+        read() throws CompileException, IOException {
+
+            Token result = this.nextToken;
+            if (result != null) {
+                this.nextToken = null;
+                this.offset    = this.nextOffset;
+                return result;
+            }
+
+            result      = this.produce();
+            this.offset = this.base + this.scanner.tokenOffset();
+            return result;
+        }
+
+        Token
+        peek() throws CompileException, IOException {
+
+            Token result = this.nextToken;
+            if (result != null) return result;
+
+            result          = (this.nextToken = this.produce());
+            this.nextOffset = this.base + this.scanner.tokenOffset();
+            return result;
+        }
+
+        private Token
+        produce() throws CompileException, IOException {
+            for (;;) {
+                Token t = this.scanner.produce();
+                if (t.type != TokenType.C_PLUS_PLUS_STYLE_COMMENT && t.type != TokenType.C_STYLE_COMMENT) return t;
+            }
+        }
+
+        /**
+         * Skips the rest of a block, up to and including its closing brace.
+         */
+        void
+        skipBlock() throws CompileException, IOException {
+            for (int depth = 1; depth > 0;) {
+                Token t = this.read();
+                if (t.type == TokenType.END_OF_INPUT) throw new CompileException("Unexpected end-of-input", null);
+                if (t.type == TokenType.OPERATOR) {
+                    if ("{".equals(t.value)) {
+                        depth++;
+                    } else
+                    if ("}".equals(t.value)) {
+                        depth--;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Scans the next member declaration of a class body. A member declaration ends with a ";" at the top level of
+         * the class body, or with a "}" that returns to the top level, unless the next token continues the
+         * declaration, e.g. "{@code .}" or "{@code ;}" after an anonymous class declaration or an array initializer.
+         *
+         * @return The offset of the character after the member declaration, or -1 iff the closing brace of the class
+         *         body was scanned instead
+         */
+        int
+        nextMember() throws CompileException, IOException {
+            boolean empty = true;
+            for (int depth = 1;;) {
+                Token t = this.read();
+                if (t.type == TokenType.END_OF_INPUT) throw new CompileException("Unexpected end-of-input", null);
+                if (t.type == TokenType.OPERATOR) {
+                    if ("{".equals(t.value)) {
+                        depth++;
+                    } else
+                    if ("}".equals(t.value)) {
+                        if (--depth == 0) {
+                            if (!empty) throw new CompileException("Incomplete member declaration", null);
+                            return -1;
+                        }
+                        if (depth == 1) {
+                            int result = this.offset + 1;
+                            if (MemberScanner.isMemberStart(this.peek())) return result;
+                        }
+                    } else
+                    if (";".equals(t.value) && depth == 1) {
+                        return this.offset + 1;
+                    }
+                }
+                empty = false;
+            }
+        }
+
+        /**
+         * @return Whether the <var>token</var>, following a "}" that returns to the top level of a class body, starts
+         *         a new member declaration (or closes the class body)
+         */
+        static boolean
+        isMemberStart(Token token) {
+            return (
+                token.type != TokenType.OPERATOR
+                || "@".equals(token.value)
+                || "<".equals(token.value)
+                || "{".equals(token.value)
+                || "}".equals(token.value)
+            );
+        }
+    }
+}
@@ -47,4 +47,34 @@ enum JaninoOption {
      * Contrary to the JLS, allow <em>any</em> expression as a resource in a TRY-with-resources statement.
      */
     EXPRESSIONS_IN_TRY_WITH_RESOURCES_ALLOWED,
+
+    /**
+     * For class file version 53 (Java 9) and higher, compile string concatenation into INVOKEDYNAMIC instructions
+     * that are bootstrapped by {@code java.lang.invoke.StringConcatFactory.makeConcatWithConstants()} (like JAVAC
+     * does), instead of {@code String.concat()} and {@code StringBuilder.append()} invocations.
+     */
+    INDY_STRING_CONCATENATION,
+
+    /**
+     * If the estimated bytecode size of a method body exceeds the JVM's {@code HugeMethodLimit} (8000 bytes), then
+     * move runs of its top-level statements into synthetic {@code private} helper methods. This keeps big generated
+     * methods below the 64 KB limit of the JVM, and makes them eligible for JIT compilation.
+     * <p>
+     *   Local variable declarations, local class declarations, statements that contain a {@code return} statement,
+     *   and the last statement of the body stay in place. The local variables that a run uses are passed to the
+     *   helper method as arguments; a run that assigns more than one of these variables is not moved.
+     * </p>
+     */
+    SPLIT_LARGE_METHODS,
+
+    /**
+     * Before the code of a method is written to the class file, apply a set of local optimizations to its bytecode:
+     * Branches to GOTOs and GOTOs to RETURNs are shortcut, conditional branches on constants are folded, redundant
+     * boxing/unboxing, push/pop and store/load pairs are removed, as well as GOTOs to the next instruction and
+     * unreachable code.
+     * <p>
+     *   This makes the generated code smaller (and the JIT's job easier), but costs some compilation time.
+     * </p>
+     */
+    PEEPHOLE_OPTIMIZATION,
 }
@@ -3430,6 +3430,20 @@ class Java {
          * begins.
          */
         @Nullable CodeContext.Offset finallyOffset;
+
+        /**
+         * Non-{@code null} while the body and the CATCH clauses of a TRY statement with a FINALLY clause are being
+         * compiled into a class file that must not use JSR and RET (version 51 and higher); then the FINALLY clause
+         * is inlined wherever the TRY statement is left.
+         */
+        @Nullable BlockStatement inlinedFinally;
+
+        /**
+         * The code ranges where {@link #inlinedFinally} was inlined for a BREAK, CONTINUE or RETURN statement, as
+         * alternating start and end offsets. Exceptions thrown there must be caught neither by this TRY statement nor
+         * by the TRY statements it encloses.
+         */
+        final List<CodeContext.Offset> inlinedFinallyRanges = new ArrayList<CodeContext.Offset>();
     }
 
     /**
@@ -5989,10 +6003,10 @@ class Java {
             if (this.type != null) buf.append(", ").append(this.type);
 
             Offset s = this.start;
-            if (s != null) buf.append(", start offset ").append(s.offset);
+            if (s != null) buf.append(", start offset ").append(s.getOffset());
 
             Offset e = this.end;
-            if (e != null) buf.append(", end offset ").append(e.offset);
+            if (e != null) buf.append(", end offset ").append(e.getOffset());
 
             buf.append(")");
 
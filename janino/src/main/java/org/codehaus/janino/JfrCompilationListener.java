@@ -0,0 +1,182 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.commons.nullanalysis.Nullable;
+
+/**
+ * A {@link CompilationListener} that emits JDK Flight Recorder events: "{@code org.codehaus.janino.CompilationUnit}"
+ * for each compiled compilation unit, and "{@code org.codehaus.janino.ClassDefinition}" for each defined class.
+ * <p>
+ *   The events are created through the {@code jdk.jfr.EventFactory} API, which is accessed reflectively, so that
+ *   JANINO can still be compiled for and run on JREs without JFR (e.g. JRE 8 and older).
+ * </p>
+ */
+public
+class JfrCompilationListener implements CompilationListener {
+
+    private final Object compilationUnitEventFactory;
+    private final Object classDefinitionEventFactory;
+
+    private final Constructor<?> annotationElementConstructor;
+    private final Constructor<?> valueDescriptorConstructor;
+    private final Method         newEventMethod;
+    private final Method         isEnabledMethod;
+    private final Method         setMethod;
+    private final Method         commitMethod;
+
+    /**
+     * @throws UnsupportedOperationException The running JRE does not support JFR events
+     */
+    public
+    JfrCompilationListener() {
+        try {
+            Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptorClass   = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactoryClass      = Class.forName("jdk.jfr.EventFactory");
+            Class<?> eventClass             = Class.forName("jdk.jfr.Event");
+
+            this.annotationElementConstructor = annotationElementClass.getConstructor(Class.class, Object.class);
+            this.valueDescriptorConstructor   = valueDescriptorClass.getConstructor(
+                Class.class,
+                String.class,
+                List.class
+            );
+            this.newEventMethod  = eventFactoryClass.getMethod("newEvent");
+            this.isEnabledMethod = eventClass.getMethod("isEnabled");
+            this.setMethod       = eventClass.getMethod("set", int.class, Object.class);
+            this.commitMethod    = eventClass.getMethod("commit");
+
+            Method createMethod = eventFactoryClass.getMethod("create", List.class, List.class);
+
+            this.compilationUnitEventFactory = createMethod.invoke(null, new Object[] {
+                this.eventAnnotations("org.codehaus.janino.CompilationUnit", "Janino Compilation Unit"),
+                Arrays.asList(new Object[] {
+                    this.field(String.class, "fileName",             "File Name",             null),
+                    this.field(long.class,   "scanTime",             "Scan Time",             "jdk.jfr.Timespan"),
+                    this.field(long.class,   "parseTime",            "Parse Time",            "jdk.jfr.Timespan"),
+                    this.field(long.class,   "typeResolutionTime",   "Type Resolution Time",  "jdk.jfr.Timespan"),
+                    this.field(long.class,   "codeGenerationTime",   "Code Generation Time",  "jdk.jfr.Timespan"),
+                    this.field(long.class,   "relocationTime",       "Relocation Time",       "jdk.jfr.Timespan"),
+                    this.field(long.class,   "storeTime",            "Store Time",            "jdk.jfr.Timespan"),
+                    this.field(int.class,    "iClassesLoaded",       "IClasses Loaded",       null),
+                    this.field(int.class,    "classFiles",           "Class Files",           null),
+                    this.field(int.class,    "bytecodeSize",         "Bytecode Size",         "jdk.jfr.DataAmount"),
+                    this.field(int.class,    "constantPoolSize",     "Constant Pool Size",    null),
+                    this.field(int.class,    "relocationIterations", "Relocation Iterations", null),
+                }),
+            });
+
+            this.classDefinitionEventFactory = createMethod.invoke(null, new Object[] {
+                this.eventAnnotations("org.codehaus.janino.ClassDefinition", "Janino Class Definition"),
+                Arrays.asList(new Object[] {
+                    this.field(String.class, "className",     "Class Name",      null),
+                    this.field(int.class,    "classFileSize", "Class File Size", "jdk.jfr.DataAmount"),
+                    this.field(long.class,   "defineTime",    "Define Time",     "jdk.jfr.Timespan"),
+                }),
+            });
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("JDK Flight Recorder events are not available", e);
+        }
+    }
+
+    @Override public void
+    compilationUnitCompiled(CompilationMetrics metrics) {
+        this.commit(this.compilationUnitEventFactory, new Object[] {
+            metrics.getFileName(),
+            metrics.getScanNanos(),
+            metrics.getParseNanos(),
+            metrics.getTypeResolutionNanos(),
+            metrics.getCodeGenerationNanos(),
+            metrics.getRelocationNanos(),
+            metrics.getStoreNanos(),
+            metrics.getIClassesLoaded(),
+            metrics.getClassFileCount(),
+            metrics.getBytecodeSize(),
+            metrics.getConstantPoolSize(),
+            metrics.getRelocationIterations(),
+        });
+    }
+
+    @Override public void
+    classDefined(String className, int classFileSize, long nanos) {
+        this.commit(this.classDefinitionEventFactory, new Object[] { className, classFileSize, nanos });
+    }
+
+    private void
+    commit(Object eventFactory, Object[] values) {
+        try {
+            Object event = this.newEventMethod.invoke(eventFactory);
+            if (!((Boolean) this.isEnabledMethod.invoke(event)).booleanValue()) return;
+            for (int i = 0; i < values.length; i++) this.setMethod.invoke(event, new Object[] { i, values[i] });
+            this.commitMethod.invoke(event);
+        } catch (Exception e) {
+            throw new InternalCompilerException("Committing JFR event", e);
+        }
+    }
+
+    private List<Object>
+    eventAnnotations(String name, String label) throws Exception {
+        List<Object> result = new ArrayList<Object>();
+        result.add(this.annotationElement("jdk.jfr.Name", name));
+        result.add(this.annotationElement("jdk.jfr.Label", label));
+        result.add(this.annotationElement("jdk.jfr.Category", new String[] { "Janino" }));
+        result.add(this.annotationElement("jdk.jfr.StackTrace", false));
+        return result;
+    }
+
+    /**
+     * @param unitAnnotation {@code "jdk.jfr.Timespan"} (nanoseconds), {@code "jdk.jfr.DataAmount"} (bytes), or
+     *                       {@code null}
+     */
+    private Object
+    field(Class<?> type, String name, String label, @Nullable String unitAnnotation) throws Exception {
+
+        List<Object> annotations = new ArrayList<Object>();
+        annotations.add(this.annotationElement("jdk.jfr.Label", label));
+        if ("jdk.jfr.Timespan".equals(unitAnnotation)) {
+            annotations.add(this.annotationElement("jdk.jfr.Timespan", "NANOSECONDS"));
+        } else
+        if ("jdk.jfr.DataAmount".equals(unitAnnotation)) {
+            annotations.add(this.annotationElement("jdk.jfr.DataAmount", "BYTES"));
+        }
+
+        return this.valueDescriptorConstructor.newInstance(new Object[] { type, name, annotations });
+    }
+
+    private Object
+    annotationElement(String annotationClassName, Object value) throws Exception {
+        return this.annotationElementConstructor.newInstance(new Object[] {
+            Class.forName(annotationClassName),
+            value,
+        });
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.codehaus.commons.nullanalysis.Nullable;
+
+/**
+ * A persistent cache of the bytecode generated by {@link ClassBodyEvaluator}s, {@link ScriptEvaluator}s and {@link
+ * ExpressionEvaluator}s, which survives JVM restarts.
+ * <p>
+ *   The cache maps a hash of the cook inputs (the normalized source text plus all settings that influence code
+ *   generation) to the generated class files. When an evaluator with a {@link
+ *   ClassBodyEvaluator#setPersistentCache(PersistentEvaluatorCache) persistent cache} is cooked from a string or a
+ *   {@link java.io.Reader}, and the cache holds bytecode for the same inputs, then scanning, parsing and code
+ *   generation are skipped, and the cached class files are defined directly.
+ * </p>
+ * <p>
+ *   All data is stored in one single, append-only file, which is memory-mapped for reading (in windows of up to 64 MB,
+ *   so that the file may grow beyond 2 GB). The file starts with a header that identifies the file
+ *   format and the JANINO version that wrote it; if the header does not match, then the file is discarded. Each
+ *   record carries a CRC32 checksum; a record with a bad checksum (e.g. because the JVM crashed while it was written)
+ *   and all following records are discarded.
+ * </p>
+ * <p>
+ *   Notice that the hash does not (and cannot) cover the classes that the scripts <em>reference</em>; if these change
+ *   incompatibly, then the cache file must be deleted. Also notice that a cache file must not be shared by two or more
+ *   concurrently running JVMs.
+ * </p>
+ */
+public
+class PersistentEvaluatorCache implements Closeable {
+
+    private static final int MAGIC          = 0x4A4E4243; // "JNBC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HASH_LENGTH    = 32;         // SHA-256
+    private static final int MAP_SIZE       = 64 << 20;
+
+    private final File             file;
+    private final RandomAccessFile raf;
+    private final FileChannel      channel;
+
+    /**
+     * The position where the next record will be appended.
+     */
+    private long end;
+
+    /**
+     * Maps a region of the file, starting at {@link #mapPosition}; see {@link #map(long, int)}.
+     */
+    @Nullable private MappedByteBuffer map;
+    private long                       mapPosition;
+
+    /**
+     * Maps the hex representation of the record key to the position of the record.
+     */
+    private final Map<String /*key*/, Long /*position*/> index = new HashMap<String, Long>();
+
+    private long hitCount, missCount;
+
+    /**
+     * Opens the given cache file, or creates it iff it does not exist.
+     */
+    public
+    PersistentEvaluatorCache(File file) throws IOException {
+        this.file    = file;
+        this.raf     = new RandomAccessFile(file, "rw");
+        this.channel = this.raf.getChannel();
+
+        boolean ok = false;
+        try {
+            this.load();
+            ok = true;
+        } finally {
+            if (!ok) this.raf.close();
+        }
+    }
+
+    /**
+     * Validates the header, and indexes all records up to the first invalid one.
+     * <p>
+     *   The file is read without memory-mapping it, because some platforms (e.g. WINDOWS) cannot truncate a file while
+     *   a mapping of it exists, and a {@link MappedByteBuffer} is only unmapped when it is garbage-collected.
+     * </p>
+     */
+    private void
+    load() throws IOException {
+
+        byte[] header = PersistentEvaluatorCache.header();
+
+        long size = this.channel.size();
+        if (size < header.length || !Arrays.equals(header, this.read(0, header.length))) {
+
+            // New file, or written by a different JANINO version.
+            this.channel.truncate(0);
+            this.channel.write(ByteBuffer.wrap(header), 0);
+            this.end = header.length;
+            return;
+        }
+
+        long pos = header.length;
+        for (;;) {
+
+            // Record := int bodyLength, long crc32, byte[bodyLength] body
+            if (size - pos < 12) break;
+            ByteBuffer recordHeader = ByteBuffer.wrap(this.read(pos, 12));
+            int        bodyLength   = recordHeader.getInt();
+            long       crc          = recordHeader.getLong();
+            if (bodyLength < PersistentEvaluatorCache.HASH_LENGTH || bodyLength > size - pos - 12) break;
+
+            byte[] body = this.read(pos + 12, bodyLength);
+            if (PersistentEvaluatorCache.crc(body) != crc) break;
+
+            this.index.put(PersistentEvaluatorCache.hex(body, 0, PersistentEvaluatorCache.HASH_LENGTH), pos);
+            pos += 12 + bodyLength;
+        }
+
+        // Discard any trailing, incomplete or corrupt records.
+        if (pos < size) this.channel.truncate(pos);
+        this.end = pos;
+    }
+
+    /**
+     * @return The class files that were cached for the given key, or {@code null}
+     */
+    @Nullable synchronized Map<String /*className*/, byte[] /*bytecode*/>
+    get(byte[] key) throws IOException {
+
+        Long pos = (Long) this.index.get(PersistentEvaluatorCache.hex(key, 0, key.length));
+        if (pos == null) {
+            this.missCount++;
+            return null;
+        }
+        this.hitCount++;
+
+        // Body := byte[32] key, int classCount, { short n, byte[n] className, int length, byte[length] bytecode }
+        int        bodyLength = this.map(pos, 12).getInt();
+        ByteBuffer bb         = this.map(pos + 12, bodyLength);
+        bb.position(bb.position() + PersistentEvaluatorCache.HASH_LENGTH);
+
+        int                 classCount = bb.getInt();
+        Map<String, byte[]> result     = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < classCount; i++) {
+            byte[] className = new byte[bb.getShort() & 0xffff];
+            bb.get(className);
+            byte[] bytecode = new byte[bb.getInt()];
+            bb.get(bytecode);
+            result.put(new String(className, "UTF-8"), bytecode);
+        }
+        return result;
+    }
+
+    /**
+     * Appends the given class files to the cache file, unless the cache already holds class files for the
+     * <var>key</var>.
+     */
+    synchronized void
+    put(byte[] key, Map<String /*className*/, byte[] /*bytecode*/> classes) throws IOException {
+
+        String hexKey = PersistentEvaluatorCache.hex(key, 0, key.length);
+        if (this.index.containsKey(hexKey)) return;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream      dos  = new DataOutputStream(baos);
+        dos.write(key);
+        dos.writeInt(classes.size());
+        for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+            String className = (String) e.getKey();
+            byte[] bytecode  = (byte[]) e.getValue();
+            byte[] ba        = className.getBytes("UTF-8");
+            dos.writeShort(ba.length);
+            dos.write(ba);
+            dos.writeInt(bytecode.length);
+            dos.write(bytecode);
+        }
+        dos.flush();
+        byte[] body = baos.toByteArray();
+
+        ByteBuffer record = ByteBuffer.allocate(12 + body.length);
+        record.putInt(body.length);
+        record.putLong(PersistentEvaluatorCache.crc(body));
+        record.put(body);
+        record.flip();
+
+        long pos = this.end;
+        while (record.hasRemaining()) pos += this.channel.write(record, pos);
+
+        this.index.put(hexKey, this.end);
+        this.end = pos;
+    }
+
+    /**
+     * Re-uses the current mapping iff it covers the requested region; otherwise maps a new window of up to {@value
+     * #MAP_SIZE} bytes, starting at <var>position</var>.
+     *
+     * @return A buffer that contains exactly the requested region, positioned at its start
+     */
+    private ByteBuffer
+    map(long position, int length) throws IOException {
+
+        MappedByteBuffer map = this.map;
+        if (
+            map == null
+            || position < this.mapPosition
+            || position + length > this.mapPosition + map.capacity()
+        ) {
+            long size = Math.max(length, Math.min(PersistentEvaluatorCache.MAP_SIZE, this.end - position));
+            this.map         = (map = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+            this.mapPosition = position;
+        }
+
+        ByteBuffer result = map.duplicate();
+        result.position((int) (position - this.mapPosition));
+        result.limit(result.position() + length);
+        return result;
+    }
+
+    /**
+     * @return The number of cached compilations
+     */
+    public synchronized int
+    size() { return this.index.size(); }
+
+    /**
+     * @return The number of lookups that found cached bytecode
+     */
+    public synchronized long
+    getHitCount() { return this.hitCount; }
+
+    /**
+     * @return The number of lookups that did not find cached bytecode
+     */
+    public synchronized long
+    getMissCount() { return this.missCount; }
+
+    /**
+     * Forces all appended records to the storage device.
+     */
+    public synchronized void
+    flush() throws IOException { this.channel.force(false); }
+
+    @Override public synchronized void
+    close() throws IOException {
+        this.map = null;
+        this.raf.close();
+    }
+
+    @Override public String
+    toString() { return this.file.toString(); }
+
+    /**
+     * Computes a hash over the given cache key elements. {@link Class}es are represented by their names, {@link
+     * List}s by their elements, and {@link ClassLoader}s are ignored (because they cannot be represented persistently).
+     */
+    static byte[]
+    hash(List<Object> keyElements) {
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new InternalCompilerException("SHA-256", nsae);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            PersistentEvaluatorCache.write(keyElements, new DataOutputStream(baos));
+        } catch (IOException ioe) {
+            throw new InternalCompilerException("SNO: IOException despite ByteArrayOutputStream", ioe);
+        }
+
+        return md.digest(baos.toByteArray());
+    }
+
+    private static void
+    write(@Nullable Object keyElement, DataOutputStream dos) throws IOException {
+
+        if (keyElement == null) {
+            dos.writeByte('N');
+            return;
+        }
+
+        if (keyElement instanceof ClassLoader) return;
+
+        if (keyElement instanceof Class) {
+            dos.writeByte('C');
+            dos.writeUTF(((Class<?>) keyElement).getName());
+            return;
+        }
+
+        if (keyElement instanceof List) {
+            List<?> l = (List<?>) keyElement;
+            dos.writeByte('L');
+            dos.writeInt(l.size());
+            for (Object o : l) PersistentEvaluatorCache.write(o, dos);
+            return;
+        }
+
+        if (keyElement instanceof String) {
+
+            // Notice: "DataOutputStream.writeUTF()" is limited to 65535 bytes.
+            byte[] ba = ((String) keyElement).getBytes("UTF-8");
+            dos.writeByte('S');
+            dos.writeInt(ba.length);
+            dos.write(ba);
+            return;
+        }
+
+        dos.writeByte('O');
+        dos.writeUTF(keyElement.toString());
+    }
+
+    private static byte[]
+    header() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream      dos  = new DataOutputStream(baos);
+        try {
+            dos.writeInt(PersistentEvaluatorCache.MAGIC);
+            dos.writeInt(PersistentEvaluatorCache.FORMAT_VERSION);
+            dos.writeUTF(PersistentEvaluatorCache.janinoVersion());
+            dos.flush();
+        } catch (IOException ioe) {
+            throw new InternalCompilerException("SNO: IOException despite ByteArrayOutputStream", ioe);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * @return The implementation version from the JAR manifest; or, iff there is none (e.g. when JANINO is loaded from
+     *         a class directory), a checksum of the {@link UnitCompiler} class file, so that a changed code generator
+     *         invalidates the cache file
+     */
+    private static String
+    janinoVersion() {
+
+        Package pkg     = PersistentEvaluatorCache.class.getPackage();
+        String  version = pkg == null ? null : pkg.getImplementationVersion();
+        if (version != null) return version;
+
+        InputStream is = UnitCompiler.class.getResourceAsStream("UnitCompiler.class");
+        if (is == null) return "unknown";
+        try {
+            try {
+                CRC32  crc    = new CRC32();
+                byte[] buffer = new byte[8192];
+                for (;;) {
+                    int n = is.read(buffer);
+                    if (n == -1) break;
+                    crc.update(buffer, 0, n);
+                }
+                return "dev-" + Long.toHexString(crc.getValue());
+            } finally {
+                is.close();
+            }
+        } catch (IOException ioe) {
+            return "unknown";
+        }
+    }
+
+    private byte[]
+    read(long position, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(length);
+        while (bb.hasRemaining()) {
+            if (this.channel.read(bb, position + bb.position()) == -1) break;
+        }
+        return bb.array();
+    }
+
+    private static long
+    crc(byte[] ba) {
+        CRC32 crc = new CRC32();
+        crc.update(ba);
+        return crc.getValue();
+    }
+
+    private static String
+    hex(byte[] ba, int offset, int length) {
+        StringBuilder sb = new StringBuilder(2 * length);
+        for (int i = offset; i < offset + length; i++) {
+            sb.append(Character.forDigit((ba[i] >> 4) & 15, 16)).append(Character.forDigit(ba[i] & 15, 16));
+        }
+        return sb.toString();
+    }
+}
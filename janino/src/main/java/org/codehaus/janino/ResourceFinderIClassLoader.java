@@ -27,18 +27,23 @@
 package org.codehaus.janino;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.codehaus.commons.compiler.util.resource.Resource;
 import org.codehaus.commons.compiler.util.resource.ResourceFinder;
 import org.codehaus.commons.nullanalysis.Nullable;
 import org.codehaus.janino.util.ClassFile;
+import org.codehaus.janino.util.resource.ByteBufferResources;
 
 
 /**
  * This {@link org.codehaus.janino.IClassLoader} loads IClasses through a a {@link
  * org.codehaus.commons.compiler.util.resource.ResourceFinder} that designates {@link
  * org.codehaus.janino.util.ClassFile}s.
+ * <p>
+ *   The class files are loaded with {@link ClassFile#ClassFile(ByteBuffer)}, so only those attributes are decoded
+ *   that the {@link ClassFileIClass} actually requires, e.g. no "Code" attributes.
+ * </p>
  */
 public
 class ResourceFinderIClassLoader extends IClassLoader {
@@ -59,24 +64,16 @@ class ResourceFinderIClassLoader extends IClassLoader {
         Resource classFileResource = this.resourceFinder.findResource(ClassFile.getClassFileResourceName(className));
         if (classFileResource == null) return null;
 
-        // Open the class file resource.
-        InputStream is;
+        // Read the class file; a ByteBufferResource can provide its contents without copying.
+        ByteBuffer bb;
         try {
-            is = classFileResource.open();
-        } catch (IOException ex) {
-            throw new ClassNotFoundException("Opening resource \"" + classFileResource.getFileName() + "\"", ex);
-        }
-
-        // Load the IClass from the class file.
-        ClassFile cf;
-        try {
-            cf = new ClassFile(is);
+            bb = ByteBufferResources.getContents(classFileResource);
         } catch (IOException e) {
             throw new ClassNotFoundException("Reading resource \"" + classFileResource.getFileName() + "\"", e);
-        } finally {
-            try { is.close(); } catch (IOException e) {}
         }
-        IClass iClass = new ClassFileIClass(cf, this);
+
+        // Load the IClass from the class file.
+        IClass iClass = new ClassFileIClass(new ClassFile(bb), this);
         this.defineIClass(iClass);
         return iClass;
     }
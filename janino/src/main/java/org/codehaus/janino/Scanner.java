@@ -26,6 +26,7 @@
 
 package org.codehaus.janino;
 
+import java.io.CharArrayReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
@@ -33,6 +34,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -206,13 +208,7 @@ class Scanner {
         // recommended for source code level debugging purposes.
         if (optionalFileName == null && Boolean.getBoolean(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_ENABLE)) {
 
-            String  dirName = System.getProperty(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_DIR);
-            boolean keep    = Boolean.getBoolean(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_KEEP);
-
-            File dir           = dirName == null ? null : new File(dirName);
-            File temporaryFile = File.createTempFile("janino", ".java", dir);
-
-            if (!keep) temporaryFile.deleteOnExit();
+            File temporaryFile = Scanner.createSourceDebuggingFile();
 
             in = new TeeReader(
                 in,                            // in
@@ -224,10 +220,109 @@ class Scanner {
 
         this.optionalFileName     = optionalFileName;
         this.in                   = new UnicodeUnescapeReader(in);
+        this.buffer               = null;
+        this.nextCharLineNumber   = initialLineNumber;
+        this.nextCharColumnNumber = initialColumnNumber;
+    }
+
+    /**
+     * Creates a {@link Scanner} that reads directly from a character array, which is much faster than reading through
+     * a {@link Reader}. The <var>source</var> must not be modified while the scanner is in use.
+     */
+    public
+    Scanner(@Nullable String optionalFileName, char[] source) throws IOException {
+        this(
+            optionalFileName, // optionalFileName
+            source,           // source
+            1,                // initialLineNumber
+            0                 // initialColumnNumber
+        );
+    }
+
+    /**
+     * Creates a {@link Scanner} that reads from a copy of the given character sequence, and counts lines and columns
+     * from non-default initial values.
+     *
+     * @see #Scanner(String, char[], int, int)
+     */
+    public
+    Scanner(
+        @Nullable String optionalFileName,
+        CharSequence     source,
+        int              initialLineNumber,        // "1" is a good idea
+        int              initialColumnNumber       // "0" is a good idea
+    ) throws IOException {
+        this(optionalFileName, source.toString().toCharArray(), initialLineNumber, initialColumnNumber);
+    }
+
+    /**
+     * Creates a {@link Scanner} that reads directly from a character array, and counts lines and columns from
+     * non-default initial values. The <var>source</var> must not be modified while the scanner is in use.
+     * <p>
+     *   Iff the <var>source</var> contains no Unicode escapes (JLS7 3.3), then the scanner processes the characters
+     *   in place, without the overhead of a {@link Reader} and a {@link UnicodeUnescapeReader}.
+     * </p>
+     */
+    public
+    Scanner(
+        @Nullable String optionalFileName,
+        char[]           source,
+        int              initialLineNumber,        // "1" is a good idea
+        int              initialColumnNumber       // "0" is a good idea
+    ) throws IOException {
+
+        // See "Scanner(String, Reader, int, int)".
+        if (optionalFileName == null && Boolean.getBoolean(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_ENABLE)) {
+
+            File temporaryFile = Scanner.createSourceDebuggingFile();
+
+            Writer w = new FileWriter(temporaryFile);
+            try {
+                w.write(source);
+            } finally {
+                w.close();
+            }
+            optionalFileName = temporaryFile.getAbsolutePath();
+        }
+
+        this.optionalFileName = optionalFileName;
+        if (Scanner.containsUnicodeEscape(source)) {
+            this.in     = new UnicodeUnescapeReader(new CharArrayReader(source));
+            this.buffer = null;
+        } else {
+            this.in     = null;
+            this.buffer = source;
+        }
         this.nextCharLineNumber   = initialLineNumber;
         this.nextCharColumnNumber = initialColumnNumber;
     }
 
+    private static File
+    createSourceDebuggingFile() throws IOException {
+
+        String  dirName = System.getProperty(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_DIR);
+        boolean keep    = Boolean.getBoolean(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_KEEP);
+
+        File dir           = dirName == null ? null : new File(dirName);
+        File temporaryFile = File.createTempFile("janino", ".java", dir);
+
+        if (!keep) temporaryFile.deleteOnExit();
+
+        return temporaryFile;
+    }
+
+    /**
+     * @return Whether the <var>source</var> contains a backslash followed by a "u", which is the (conservative)
+     *         condition for having to process Unicode escapes
+     */
+    private static boolean
+    containsUnicodeEscape(char[] source) {
+        for (int i = 0, n = source.length - 1; i < n; i++) {
+            if (source[i] == '\\' && source[i + 1] == 'u') return true;
+        }
+        return false;
+    }
+
     /**
      * If <var>value</var> is {@code true}, then white space in the input stream is <em>ignored</em>, rather than
      * scanned as a {@link TokenType#WHITE_SPACE} token. Since white space is typically quite numerous, this
@@ -236,6 +331,15 @@ class Scanner {
     public void
     setIgnoreWhiteSpace(boolean value) { this.ignoreWhiteSpace = value; }
 
+    /**
+     * Iff <var>compilationMetrics</var> is not {@code null}, then the time spent in {@link #produce()} is added to
+     * its scan time.
+     */
+    void
+    setCompilationMetrics(@Nullable CompilationMetrics compilationMetrics) {
+        this.compilationMetrics = compilationMetrics;
+    }
+
     /**
      * @return The file name optionally passed to the constructor
      */
@@ -250,7 +354,10 @@ class Scanner {
      *             close the underlying {@link InputStream} or {@link Reader} itself
      */
     @Deprecated public void
-    close() throws IOException { this.in.close(); }
+    close() throws IOException {
+        Reader in = this.in;
+        if (in != null) in.close();
+    }
 
     /**
      * @return The {@link Location} of the previously read (or peeked) token.
@@ -258,16 +365,28 @@ class Scanner {
     public Location
     location() { return new Location(this.optionalFileName, this.tokenLineNumber, this.tokenColumnNumber); }
 
+    /**
+     * @return In buffer mode, the index of the first character of the previously read (or peeked) token
+     */
+    int
+    tokenOffset() { return this.tokenStart; }
+
     private Token
     token(TokenType type, String value) {
         return new Token(this.optionalFileName, this.tokenLineNumber, this.tokenColumnNumber, type, value);
     }
 
     /**
-     * Holds the characters of the currently scanned token.
+     * In {@link Reader} mode, holds the characters of the currently scanned token.
      */
     private final StringBuilder sb = new StringBuilder();
 
+    /**
+     * In {@link Reader} mode, a scratch buffer for looking up the characters of the current token in the {@link
+     * #symbolTable}.
+     */
+    private char[] symbolCharacters = new char[32];
+
     /**
      * Produces and returns the next token. Notice that end-of-input is <em>not</em> signalized with a {@code null}
      * product, but by an {@link TokenType#END_OF_INPUT}-type token.
@@ -275,43 +394,112 @@ class Scanner {
     public Token
     produce() throws CompileException, IOException {
 
+        CompilationMetrics cm = this.compilationMetrics;
+        if (cm == null) return this.produce2();
+
+        long begin = System.nanoTime();
+        try {
+            return this.produce2();
+        } finally {
+            cm.scanNanos += System.nanoTime() - begin;
+        }
+    }
+
+    private Token
+    produce2() throws CompileException, IOException {
+
         if (this.peek() == -1) return this.token(TokenType.END_OF_INPUT, "end-of-input");
 
         // Funny... the JLS calls it "white space", and the JRE calls it "whitespace"!?
-        if (this.ignoreWhiteSpace && Character.isWhitespace(this.peek())) {
-            do {
-                this.read();
-                if (this.peek() == -1) return this.token(TokenType.END_OF_INPUT, "end-of-input");
-            } while (Character.isWhitespace(this.peek()));
+        if (this.ignoreWhiteSpace && Scanner.isWhiteSpace(this.peek())) {
+            this.readWhiteSpace();
+            if (this.peek() == -1) return this.token(TokenType.END_OF_INPUT, "end-of-input");
+        }
+
+        // In buffer mode, the position is computed only at the beginning of each token.
+        if (this.buffer != null) {
+            this.advancePosition(this.bufferOffset + 1);
+            this.tokenStart = this.bufferOffset;
+        } else {
+            this.sb.setLength(0);
         }
 
         this.tokenLineNumber   = this.nextCharLineNumber;
         this.tokenColumnNumber = this.nextCharColumnNumber;
 
-        this.sb.setLength(0);
+        TokenType tokenType = this.scan();
+
+        // Identifiers, keywords and operators are very frequent and very repetitive, so they are mapped to canonical
+        // strings through the symbol table. Notice that keywords and operators map to INTERNED strings, so that they
+        // can be reference-compared.
+        String tokenValue;
+        if (tokenType == TokenType.IDENTIFIER) {
+            tokenValue = this.symbol();
+            if (tokenValue == "true" || tokenValue == "false") { // SUPPRESS CHECKSTYLE StringLiteralEquality
+                tokenType = TokenType.BOOLEAN_LITERAL;
+            } else
+            if (tokenValue == "null") { // SUPPRESS CHECKSTYLE StringLiteralEquality
+                tokenType = TokenType.NULL_LITERAL;
+            } else
+            if (Scanner.JAVA_KEYWORDS.contains(tokenValue)) {
+                tokenType = TokenType.KEYWORD;
+            }
+        } else
+        if (tokenType == TokenType.OPERATOR) {
+            tokenValue = this.symbol();
+        } else
+        {
+            char[] b = this.buffer;
+            tokenValue = (
+                b != null
+                ? new String(b, this.tokenStart, this.bufferOffset - this.tokenStart)
+                : this.sb.toString()
+            );
+        }
 
-        TokenType tokenType  = this.scan();
-        String    tokenValue = this.sb.toString();
+        return this.token(tokenType, tokenValue);
+    }
 
-        // We want to be able to use REFERENCE EQUALITY for these...
-        if (
-            tokenType == TokenType.KEYWORD
-            || tokenType == TokenType.BOOLEAN_LITERAL
-            || tokenType == TokenType.NULL_LITERAL
-            || tokenType == TokenType.OPERATOR
-        ) tokenValue = tokenValue.intern();
+    /**
+     * @return The canonical string for the characters of the current token
+     */
+    private String
+    symbol() {
 
-        return this.token(tokenType, tokenValue);
+        char[] b = this.buffer;
+        if (b != null) return this.symbolTable.get(b, this.tokenStart, this.bufferOffset - this.tokenStart);
+
+        int    length = this.sb.length();
+        char[] ca     = this.symbolCharacters;
+        if (ca.length < length) ca = (this.symbolCharacters = new char[Math.max(length, 2 * ca.length)]);
+        this.sb.getChars(0, length, ca, 0);
+
+        return this.symbolTable.get(ca, 0, length);
+    }
+
+    /**
+     * @return Whether the characters of the current token, followed by the next character, form an operator
+     */
+    private boolean
+    isOperatorContinued() throws CompileException, IOException {
+
+        int c = this.peek();
+        if (c == -1) return false;
+
+        char[] b = this.buffer;
+        if (b == null) return Scanner.JAVA_OPERATORS.contains(this.sb.toString() + (char) c);
+
+        // The operators are in the symbol table, so anything that is not in there is not an operator.
+        String s = this.symbolTable.find(b, this.tokenStart, this.bufferOffset + 1 - this.tokenStart);
+        return s != null && Scanner.JAVA_OPERATORS.contains(s);
     }
 
     private TokenType
     scan() throws CompileException, IOException {
 
         // Whitespace token?
-        if (Character.isWhitespace(this.peek())) {
-            do {
-                this.read();
-            } while (this.peek() != -1 && Character.isWhitespace(this.peek()));
+        if (Scanner.isWhiteSpace(this.peek())) {
+            this.readWhiteSpace();
             return TokenType.WHITE_SPACE;
         }
 
@@ -346,24 +534,17 @@ class Scanner {
             return TokenType.OPERATOR; // E.g. "/"
         }
 
-        // Scan identifier.
-        if (Character.isJavaIdentifierStart((char) this.peek())) {
+        // Scan identifier, keyword, boolean literal or null literal; "produce()" tells them apart.
+        if (Scanner.isJavaIdentifierStart(this.peek())) {
             this.read();
-            while (Character.isJavaIdentifierPart((char) this.peek())) this.read();
-            String s = this.sb.toString();
-            if ("true".equals(s))  return TokenType.BOOLEAN_LITERAL;
-            if ("false".equals(s)) return TokenType.BOOLEAN_LITERAL;
-            if ("null".equals(s))  return TokenType.NULL_LITERAL;
-
-            if (Scanner.JAVA_KEYWORDS.contains(s)) return TokenType.KEYWORD;
-
+            this.readJavaIdentifierParts();
             return TokenType.IDENTIFIER;
         }
 
         // Scan numeric literal.
         if (
-            Character.isDigit((char) this.peek())
-            || (this.peek() == '.' && Character.isDigit(this.peekButOne())) // .999
+            Scanner.isDigit(this.peek())
+            || (this.peek() == '.' && Scanner.isDigit(this.peekButOne())) // .999
         ) return this.scanNumericLiteral();
 
         // Scan string literal.
@@ -388,10 +569,14 @@ class Scanner {
         }
 
         // Scan operator (including what Java calls "separators").
-        if (Scanner.JAVA_OPERATORS.contains(String.valueOf((char) this.peek()))) {
+        if (Scanner.isSingleCharacterOperator(this.peek())) {
+            this.read();
+            return TokenType.OPERATOR;
+        }
+        if (Scanner.isOperator(this.peek())) {
             do {
                 this.read();
-            } while (Scanner.JAVA_OPERATORS.contains(this.sb.toString() + (char) this.peek()));
+            } while (this.isOperatorContinued());
             return TokenType.OPERATOR;
         }
 
@@ -619,6 +804,104 @@ class Scanner {
     private static boolean
     isBinaryDigit(int c) { return c == '0' || c == '1'; }
 
+    /**
+     * Equivalent with {@link Character#isWhitespace(int)}, but table-driven for ASCII characters.
+     */
+    private static boolean
+    isWhiteSpace(int c) {
+        return (
+            c >= 0 && c < 128
+            ? (Scanner.ASCII_CHARACTER_CLASSES[c] & Scanner.WHITE_SPACE) != 0
+            : Character.isWhitespace(c)
+        );
+    }
+
+    /**
+     * Equivalent with {@link Character#isJavaIdentifierStart(char)}, but table-driven for ASCII characters.
+     */
+    private static boolean
+    isJavaIdentifierStart(int c) {
+        return (
+            c >= 0 && c < 128
+            ? (Scanner.ASCII_CHARACTER_CLASSES[c] & Scanner.JAVA_IDENTIFIER_START) != 0
+            : Character.isJavaIdentifierStart((char) c)
+        );
+    }
+
+    /**
+     * Equivalent with {@link Character#isJavaIdentifierPart(char)}, but table-driven for ASCII characters.
+     */
+    private static boolean
+    isJavaIdentifierPart(int c) {
+        return (
+            c >= 0 && c < 128
+            ? (Scanner.ASCII_CHARACTER_CLASSES[c] & Scanner.JAVA_IDENTIFIER_PART) != 0
+            : Character.isJavaIdentifierPart((char) c)
+        );
+    }
+
+    /**
+     * Equivalent with {@link Character#isDigit(char)}, but table-driven for ASCII characters.
+     */
+    private static boolean
+    isDigit(int c) {
+        return (
+            c >= 0 && c < 128
+            ? (Scanner.ASCII_CHARACTER_CLASSES[c] & Scanner.DIGIT) != 0
+            : Character.isDigit((char) c)
+        );
+    }
+
+    /**
+     * @return Whether <var>c</var> is an operator (or separator), and no other operator begins with <var>c</var>
+     */
+    private static boolean
+    isOperator(int c) {
+        return c >= 0 && c < 128 && (Scanner.ASCII_CHARACTER_CLASSES[c] & Scanner.OPERATOR) != 0;
+    }
+
+    /**
+     * @return Whether <var>c</var> is an operator (or separator), and no other operator begins with <var>c</var>
+     */
+    private static boolean
+    isSingleCharacterOperator(int c) {
+        return c >= 0 && c < 128 && (Scanner.ASCII_CHARACTER_CLASSES[c] & Scanner.SINGLE_CHARACTER_OPERATOR) != 0;
+    }
+
+    /**
+     * Consumes all white space characters up to the next non-white-space character or end-of-input.
+     */
+    private void
+    readWhiteSpace() throws CompileException, IOException {
+
+        char[] b = this.buffer;
+        if (b != null) {
+            int end = this.bufferOffset;
+            while (end < b.length && Scanner.isWhiteSpace(b[end])) end++;
+            this.bufferOffset = end;
+            return;
+        }
+
+        while (Scanner.isWhiteSpace(this.peek())) this.read();
+    }
+
+    /**
+     * Consumes all Java identifier part characters up to the next other character or end-of-input.
+     */
+    private void
+    readJavaIdentifierParts() throws CompileException, IOException {
+
+        char[] b = this.buffer;
+        if (b != null) {
+            int end = this.bufferOffset;
+            while (end < b.length && Scanner.isJavaIdentifierPart(b[end])) end++;
+            this.bufferOffset = end;
+            return;
+        }
+
+        while (Scanner.isJavaIdentifierPart(this.peek())) this.read();
+    }
+
     /**
      * Scans the next literal character into a {@link StringBuilder}.
      */
@@ -673,6 +956,10 @@ class Scanner {
      */
     private int
     peek() throws CompileException, IOException {
+
+        char[] b = this.buffer;
+        if (b != null) return this.bufferOffset < b.length ? b[this.bufferOffset] : -1;
+
         if (this.nextChar != -1) return this.nextChar;
         try {
             return (this.nextChar = this.internalRead());
@@ -694,6 +981,10 @@ class Scanner {
      */
     private int
     peekButOne() throws CompileException, IOException {
+
+        char[] b = this.buffer;
+        if (b != null) return this.bufferOffset + 1 < b.length ? b[this.bufferOffset + 1] : -1;
+
         if (this.nextButOneChar != -1) return this.nextButOneChar;
         this.peek();
         try {
@@ -711,6 +1002,12 @@ class Scanner {
     private char
     read() throws CompileException, IOException {
 
+        char[] b = this.buffer;
+        if (b != null) {
+            if (this.bufferOffset >= b.length) throw new CompileException("Unexpected end-of-input", this.location());
+            return b[this.bufferOffset++];
+        }
+
         this.peek();
 
         if (this.nextChar == -1) throw new CompileException("Unexpected end-of-input", this.location());
@@ -732,6 +1029,14 @@ class Scanner {
     private boolean
     peekRead(int expected) throws CompileException, IOException {
 
+        char[] b = this.buffer;
+        if (b != null) {
+            if (this.bufferOffset >= b.length) return expected == -1;
+            if (b[this.bufferOffset] != expected) return false;
+            this.bufferOffset++;
+            return true;
+        }
+
         if (this.peek() == expected) {
             if (this.nextChar != -1) this.sb.append((char) this.nextChar);
             this.nextChar       = this.nextButOneChar;
@@ -750,6 +1055,14 @@ class Scanner {
     private boolean
     peekRead(String expectedCharacters) throws CompileException, IOException {
 
+        char[] b = this.buffer;
+        if (b != null) {
+            if (this.bufferOffset >= b.length) return false;
+            if (expectedCharacters.indexOf(b[this.bufferOffset]) == -1) return false;
+            this.bufferOffset++;
+            return true;
+        }
+
         if (this.peek() == -1) return false;
 
         if (expectedCharacters.indexOf((char) this.nextChar) == -1) return false;
@@ -765,18 +1078,44 @@ class Scanner {
     private int
     internalRead() throws IOException, CompileException {
 
+        Reader in = this.in;
+        assert in != null;
+
         int result;
         try {
-            result = this.in.read();
+            result = in.read();
         } catch (UnicodeUnescapeException ex) {
             throw new CompileException(ex.getMessage(), this.location(), ex);
         }
-        if (result == '\r') {
+        this.updatePosition(result);
+
+        return result;
+    }
+
+    /**
+     * In buffer mode, updates the line and column number through the character at index <var>end</var>{@code - 1}.
+     */
+    private void
+    advancePosition(int end) {
+
+        char[] b = this.buffer;
+        assert b != null;
+
+        for (int i = this.positionOffset; i < end; i++) this.updatePosition(b[i]);
+        this.positionOffset = end;
+    }
+
+    /**
+     * Updates the line and column number for the given character <var>c</var>.
+     */
+    private void
+    updatePosition(int c) {
+        if (c == '\r') {
             ++this.nextCharLineNumber;
             this.nextCharColumnNumber = 0;
             this.crLfPending          = true;
         } else
-        if (result == '\n') {
+        if (c == '\n') {
             if (this.crLfPending) {
                 this.crLfPending = false;
             } else {
@@ -784,7 +1123,7 @@ class Scanner {
                 this.nextCharColumnNumber = 0;
             }
         } else
-        if (result == '\t') {
+        if (c == '\t') {
             this.nextCharColumnNumber = this.nextCharColumnNumber - this.nextCharColumnNumber % 8 + 8;
             this.crLfPending          = false;
         } else
@@ -792,18 +1131,47 @@ class Scanner {
             ++this.nextCharColumnNumber;
             this.crLfPending = false;
         }
-
-        return result;
     }
 
     @Nullable private final String optionalFileName;
-    private final Reader           in;
-    private boolean                ignoreWhiteSpace;
-    private int                    nextChar       = -1;
-    private int                    nextButOneChar = -1;
-    private boolean                crLfPending;
-    private int                    nextCharLineNumber;
-    private int                    nextCharColumnNumber;
+
+    /**
+     * The character source, or {@code null} in buffer mode.
+     */
+    @Nullable private final Reader in;
+
+    /**
+     * In buffer mode, the characters to scan, otherwise {@code null}.
+     */
+    @Nullable private final char[] buffer;
+
+    /**
+     * In buffer mode, the index of the next character to scan.
+     */
+    private int bufferOffset;
+
+    /**
+     * In buffer mode, the index of the first character that {@link #nextCharLineNumber} and {@link
+     * #nextCharColumnNumber} do not yet reflect.
+     */
+    private int positionOffset;
+
+    /**
+     * In buffer mode, the index of the first character of the current token.
+     */
+    private int tokenStart;
+
+    /**
+     * Maps the identifiers, keywords and operators to canonical strings.
+     */
+    private final SymbolTable symbolTable = new SymbolTable(Scanner.KEYWORDS_AND_OPERATORS);
+
+    private boolean ignoreWhiteSpace;
+    private int     nextChar       = -1;
+    private int     nextButOneChar = -1;
+    private boolean crLfPending;
+    private int     nextCharLineNumber;
+    private int     nextCharColumnNumber;
 
     /**
      * Line number of the previously produced token (typically starting at one).
@@ -816,6 +1184,30 @@ class Scanner {
      */
     private int tokenColumnNumber;
 
+    @Nullable private CompilationMetrics compilationMetrics;
+
+    private static final int WHITE_SPACE               = 1;
+    private static final int JAVA_IDENTIFIER_START     = 2;
+    private static final int JAVA_IDENTIFIER_PART      = 4;
+    private static final int DIGIT                     = 8;
+    private static final int OPERATOR                  = 16;
+    private static final int SINGLE_CHARACTER_OPERATOR = 32;
+
+    /**
+     * The character classes ({@link #WHITE_SPACE}, {@link #JAVA_IDENTIFIER_START}, ...) of the ASCII characters.
+     */
+    private static final byte[] ASCII_CHARACTER_CLASSES = new byte[128];
+    static {
+        for (char c = 0; c < 128; c++) {
+            int cc = 0;
+            if (Character.isWhitespace(c))          cc |= Scanner.WHITE_SPACE;
+            if (Character.isJavaIdentifierStart(c)) cc |= Scanner.JAVA_IDENTIFIER_START;
+            if (Character.isJavaIdentifierPart(c))  cc |= Scanner.JAVA_IDENTIFIER_PART;
+            if (Character.isDigit(c))               cc |= Scanner.DIGIT;
+            Scanner.ASCII_CHARACTER_CLASSES[c] = (byte) cc;
+        }
+    }
+
     private static final Set<String> JAVA_KEYWORDS = new HashSet<String>(Arrays.asList(
 
         // SUPPRESS CHECKSTYLE WrapMethod:16
@@ -852,4 +1244,38 @@ class Scanner {
         "+",  "-",  "*",  "/",  "&",  "|",  "^",  "%",  "<<",  ">>",  ">>>",
         "+=", "-=", "*=", "/=", "&=", "|=", "^=", "%=", "<<=", ">>=", ">>>=" // SUPPRESS CHECKSTYLE Wrap
     ));
+    static {
+
+        for (String operator : Scanner.JAVA_OPERATORS) {
+            if (operator.length() != 1) continue;
+
+            char c = operator.charAt(0);
+            Scanner.ASCII_CHARACTER_CLASSES[c] = (byte) (Scanner.ASCII_CHARACTER_CLASSES[c] | Scanner.OPERATOR);
+
+            // Mark the operators that are not the prefix of a longer operator, e.g. "(" and ";", but not "+" or ":".
+            boolean isPrefix = false;
+            for (String operator2 : Scanner.JAVA_OPERATORS) {
+                if (operator2.length() > 1 && operator2.charAt(0) == c) isPrefix = true;
+            }
+
+            if (!isPrefix) {
+                Scanner.ASCII_CHARACTER_CLASSES[c] = (byte) (
+                    Scanner.ASCII_CHARACTER_CLASSES[c] | Scanner.SINGLE_CHARACTER_OPERATOR
+                );
+            }
+        }
+    }
+
+    /**
+     * The initial contents of each scanner's symbol table: The keywords, the operators, the boolean literals and the
+     * null literal, all of which are interned strings.
+     */
+    private static final SymbolTable KEYWORDS_AND_OPERATORS = new SymbolTable();
+    static {
+        for (String keyword : Scanner.JAVA_KEYWORDS)   Scanner.KEYWORDS_AND_OPERATORS.add(keyword);
+        for (String operator : Scanner.JAVA_OPERATORS) Scanner.KEYWORDS_AND_OPERATORS.add(operator);
+        Scanner.KEYWORDS_AND_OPERATORS.add("true");
+        Scanner.KEYWORDS_AND_OPERATORS.add("false");
+        Scanner.KEYWORDS_AND_OPERATORS.add("null");
+    }
 }
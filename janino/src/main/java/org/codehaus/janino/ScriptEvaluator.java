@@ -126,6 +126,11 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
 
         @Nullable private Method result; // null=uncooked
 
+        // Created lazily by "getInvoker()". Notice that a race condition between threads is benign; it only causes
+        // redundant creation, or the occasional reflective invocation.
+        @Nullable private DirectInvoker invoker;
+        private boolean                 invokerCreated;
+
         Script(String methodName) { this.methodName = methodName; }
 
         /**
@@ -137,6 +142,22 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
             if (this.result != null) return this.result;
             throw new IllegalStateException("Script is not yet cooked");
         }
+
+        /**
+         * @return                       A {@link DirectInvoker} for the generated method, or {@code null} iff the
+         *                               generated method must be invoked through reflection
+         * @throws IllegalStateException The {@link ScriptEvaluator} has not yet be cooked
+         */
+        @Nullable DirectInvoker
+        getInvoker() {
+
+            if (this.invokerCreated) return this.invoker;
+
+            DirectInvoker result = DirectInvoker.create(this.getResult());
+            this.invoker        = result;
+            this.invokerCreated = true;
+            return result;
+        }
     }
 
     /**
@@ -145,6 +166,8 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
      */
     @Nullable private Script[] scripts;
 
+    @Nullable private EvaluatorCache cache;
+
     /**
      * @throws IllegalArgumentException <var>count</var> is different from previous invocations of
      *                                  this method
@@ -583,8 +606,37 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
         for (int i = 0; i < thrownExceptions.length; i++) this.getScript(i).thrownExceptions = thrownExceptions[i];
     }
 
+    /**
+     * Configures an {@link EvaluatorCache} that is consulted whenever this evaluator is cooked from a {@link String}
+     * or a {@link Reader}; notice that {@link #cook(Scanner)} and {@link #cook(Parser[])} never use the cache.
+     *
+     * @param optionalCache {@code null} means "no caching" (the default)
+     */
+    public void
+    setCache(@Nullable EvaluatorCache optionalCache) { this.cache = optionalCache; }
+
+    @Override void
+    addCacheKeyElements(List<Object> result) {
+        super.addCacheKeyElements(result);
+        assert this.scripts != null;
+        for (Script es : this.scripts) {
+            result.add(es.overrideMethod);
+            result.add(es.staticMethod);
+            result.add(es.returnType);
+            result.add(es.methodName);
+            result.add(Arrays.asList(es.parameterNames.clone()));
+            result.add(Arrays.asList(es.parameterTypes.clone()));
+            result.add(Arrays.asList(es.thrownExceptions.clone()));
+        }
+    }
+
     // ---------------------------------------------------------------
 
+    @Override public final void
+    cook(@Nullable String optionalFileName, Reader r) throws CompileException, IOException {
+        this.cook(optionalFileName == null ? null : new String[] { optionalFileName }, new Reader[] { r });
+    }
+
     @Override public final void
     cook(String[] strings) throws CompileException { this.cook(null, strings); }
 
@@ -615,16 +667,90 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
      * </p>
      */
     @Override public final void
-    cook(@Nullable String[] optionalFileNames, Reader[] readers) throws CompileException, IOException {
+    cook(@Nullable final String[] optionalFileNames, Reader[] readers) throws CompileException, IOException {
 
         if (optionalFileNames != null) this.setScriptCount(optionalFileNames.length);
         this.setScriptCount(readers.length);
 
-        Scanner[] scanners = new Scanner[readers.length];
-        for (int i = 0; i < readers.length; ++i) {
-            scanners[i] = new Scanner(optionalFileNames == null ? null : optionalFileNames[i], readers[i]);
+        final EvaluatorCache cache = this.cache;
+        if (!this.isCacheable() || (cache == null && this.getPersistentCache() == null)) {
+            Scanner[] scanners = new Scanner[readers.length];
+            for (int i = 0; i < readers.length; ++i) {
+                scanners[i] = new Scanner(
+                    optionalFileNames == null ? null : optionalFileNames[i],
+                    Cookable.readString(readers[i]).toCharArray()
+                );
+            }
+            this.cook(scanners);
+            return;
+        }
+
+        final String[] scripts = new String[readers.length];
+        for (int i = 0; i < readers.length; i++) scripts[i] = ClassBodyEvaluator.readNormalized(readers[i]);
+
+        final List<Object> key = new ArrayList<Object>();
+        this.addCacheKeyElements(key);
+        key.add(optionalFileNames == null ? null : Arrays.asList(optionalFileNames.clone()));
+        key.add(Arrays.asList(scripts));
+
+        if (cache == null) {
+            this.cook(key, optionalFileNames, scripts);
+            return;
+        }
+
+        final boolean[] cooked = new boolean[1];
+        Class<?> c = cache.get(key, new EvaluatorCache.Compilation() {
+
+            @Override public Class<?>
+            compile() throws CompileException, IOException {
+                ScriptEvaluator.this.cook(key, optionalFileNames, scripts);
+                cooked[0] = true;
+                return ScriptEvaluator.this.getMethod(0).getDeclaringClass();
+            }
+        });
+
+        // Cache hit?
+        if (!cooked[0]) {
+            this.setResult(c.getClassLoader());
+            this.getScriptMethods(c);
+        }
+    }
+
+    /**
+     * Cooks the given <var>scripts</var>; iff a {@link #setPersistentCache(PersistentEvaluatorCache) persistent cache}
+     * is configured, then uses the bytecode cached under the <var>key</var>, or stores the generated bytecode there.
+     */
+    private void
+    cook(List<Object> key, @Nullable String[] optionalFileNames, String[] scripts)
+    throws CompileException, IOException {
+
+        PersistentEvaluatorCache pc = this.getPersistentCache();
+
+        byte[] hash = null;
+        if (pc != null) {
+            hash = PersistentEvaluatorCache.hash(key);
+
+            Map<String /*className*/, byte[] /*bytecode*/> classes = pc.get(hash);
+            if (classes != null) {
+                this.cook(classes);
+                this.getScriptMethods(this.loadGeneratedClass());
+                return;
+            }
+        }
+
+        Scanner[] scanners = new Scanner[scripts.length];
+        for (int i = 0; i < scripts.length; ++i) {
+            scanners[i] = new Scanner(
+                optionalFileNames == null ? null : optionalFileNames[i],
+                scripts[i].toCharArray()
+            );
         }
         this.cook(scanners);
+
+        if (pc != null) {
+            assert hash != null;
+            pc.put(hash, this.getBytecodes());
+        }
     }
 
     @Override public final void
@@ -657,6 +783,8 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
 
         this.setScriptCount(scanners.length);
 
+        this.startCompilationMetrics(scanners);
+
         Parser[] parsers = new Parser[scanners.length];
         for (int i = 0; i < scanners.length; ++i) parsers[i] = new Parser(scanners[i]);
 
@@ -724,14 +852,27 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
     cook2(CompilationUnit compilationUnit) throws CompileException {
 
         // Compile and load the compilation unit.
-        final Class<?> c = this.compileToClass(compilationUnit);
+        this.getScriptMethods(this.compileToClass(compilationUnit));
+    }
+
+    /**
+     * Gets the script methods from the given, generated class, and makes them available through {@link
+     * #getMethod(int)}.
+     */
+    private void
+    getScriptMethods(Class<?> c) {
 
         // Find the script methods by name and parameter types.
         assert this.scripts != null;
         int count = this.scripts.length;
 
         // Clear the generated methods.
-        for (int i = 0; i < count; ++i) this.getScript(i).result = null;
+        for (int i = 0; i < count; ++i) {
+            Script es = this.getScript(i);
+            es.result         = null;
+            es.invoker        = null;
+            es.invokerCreated = false;
+        }
 
         // "Class.getDeclaredMethod(name, parameterTypes)" is slow when the class declares MANY methods (say, in
         // the thousands). So let's use "Class.getDeclaredMethods()" instead.
@@ -793,10 +934,22 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
     @Override @Nullable public Object
     evaluate(@Nullable Object[] arguments) throws InvocationTargetException { return this.evaluate(0, arguments); }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     *   Iff the generated method is static, then, on the first invocation, a small invoker class is generated that
+     *   invokes the method directly instead of through {@link Method#invoke(Object, Object...)}; this makes all
+     *   subsequent invocations much faster.
+     * </p>
+     */
     @Override @Nullable public Object
     evaluate(int idx, @Nullable Object[] arguments) throws InvocationTargetException {
 
-        Method method = this.getMethod(idx);
+        Script        es      = this.getScript(idx);
+        DirectInvoker invoker = es.getInvoker();
+        if (invoker != null) return invoker.invoke(arguments);
+
+        Method method = es.getResult();
 
         try {
             return method.invoke(null, arguments);
@@ -805,6 +958,82 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
         }
     }
 
+    /**
+     * Like {@link #evaluate(Object[])}, but, iff the generated method returns a primitive value, avoids the boxing of
+     * that value.
+     *
+     * @throws IllegalArgumentException The method's return value cannot be converted to {@code int} by an identity or
+     *                                  a widening primitive conversion
+     */
+    public int
+    evaluateInt(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.evaluateInt(0, arguments);
+    }
+
+    /**
+     * @see #evaluateInt(Object[])
+     */
+    public int
+    evaluateInt(int idx, @Nullable Object[] arguments) throws InvocationTargetException {
+        DirectInvoker invoker = this.getScript(idx).getInvoker();
+        if (invoker != null) return invoker.invokeInt(arguments);
+        return DirectInvoker.toInt(this.evaluate(idx, arguments));
+    }
+
+    /**
+     * @see #evaluateInt(Object[])
+     */
+    public long
+    evaluateLong(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.evaluateLong(0, arguments);
+    }
+
+    /**
+     * @see #evaluateInt(Object[])
+     */
+    public long
+    evaluateLong(int idx, @Nullable Object[] arguments) throws InvocationTargetException {
+        DirectInvoker invoker = this.getScript(idx).getInvoker();
+        if (invoker != null) return invoker.invokeLong(arguments);
+        return DirectInvoker.toLong(this.evaluate(idx, arguments));
+    }
+
+    /**
+     * @see #evaluateInt(Object[])
+     */
+    public double
+    evaluateDouble(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.evaluateDouble(0, arguments);
+    }
+
+    /**
+     * @see #evaluateInt(Object[])
+     */
+    public double
+    evaluateDouble(int idx, @Nullable Object[] arguments) throws InvocationTargetException {
+        DirectInvoker invoker = this.getScript(idx).getInvoker();
+        if (invoker != null) return invoker.invokeDouble(arguments);
+        return DirectInvoker.toDouble(this.evaluate(idx, arguments));
+    }
+
+    /**
+     * @see #evaluateInt(Object[])
+     */
+    public boolean
+    evaluateBoolean(@Nullable Object[] arguments) throws InvocationTargetException {
+        return this.evaluateBoolean(0, arguments);
+    }
+
+    /**
+     * @see #evaluateInt(Object[])
+     */
+    public boolean
+    evaluateBoolean(int idx, @Nullable Object[] arguments) throws InvocationTargetException {
+        DirectInvoker invoker = this.getScript(idx).getInvoker();
+        if (invoker != null) return invoker.invokeBoolean(arguments);
+        return DirectInvoker.toBoolean(this.evaluate(idx, arguments));
+    }
+
     @Override public Method
     getMethod() { return this.getMethod(0); }
 
@@ -1128,7 +1357,9 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
     @Override public <T> Object
     createFastEvaluator(Reader reader, Class<T> interfaceToImplement, String[] parameterNames)
     throws CompileException, IOException {
-        return this.createFastEvaluator(new Scanner(null, reader), interfaceToImplement, parameterNames);
+        this.setUpFastEvaluator(interfaceToImplement, parameterNames);
+        this.cook(reader);
+        return this.instantiateFastEvaluator();
     }
 
     @Override public <T> Object
@@ -1155,6 +1386,17 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
     public Object
     createFastEvaluator(Scanner scanner, Class<?> interfaceToImplement, String[] parameterNames)
     throws CompileException, IOException {
+        this.setUpFastEvaluator(interfaceToImplement, parameterNames);
+        this.cook(scanner);
+        return this.instantiateFastEvaluator();
+    }
+
+    /**
+     * Configures this evaluator such that the generated method implements the single method of the given
+     * <var>interfaceToImplement</var>.
+     */
+    private void
+    setUpFastEvaluator(Class<?> interfaceToImplement, String[] parameterNames) {
         if (!interfaceToImplement.isInterface()) {
             throw new InternalCompilerException("\"" + interfaceToImplement + "\" is not an interface");
         }
@@ -1185,7 +1427,13 @@ class ScriptEvaluator extends ClassBodyEvaluator implements IScriptEvaluator {
         this.setMethodName(methodToImplement.getName());
         this.setParameters(parameterNames, methodToImplement.getParameterTypes());
         this.setThrownExceptions(methodToImplement.getExceptionTypes());
-        this.cook(scanner);
+    }
+
+    /**
+     * @return A new instance of the generated class
+     */
+    private Object
+    instantiateFastEvaluator() {
         Class<?> c = this.getMethod().getDeclaringClass();
         try {
             return c.newInstance();
@@ -36,6 +36,7 @@ import java.security.Permissions;
 import java.security.PrivilegedAction;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -66,17 +67,27 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
     @Nullable private ClassLoaderIClassLoader classLoaderIClassLoader;
 
     @Nullable private ClassLoader    result;
+    @Nullable private Map<String /*className*/, byte[] /*bytecode*/> bytecodes;
     @Nullable private ErrorHandler   optionalCompileErrorHandler;
     @Nullable private WarningHandler optionalWarningHandler;
 
     private boolean debugSource = Boolean.getBoolean(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_ENABLE);
     private boolean debugLines  = this.debugSource;
     private boolean debugVars   = this.debugSource;
+    private int     targetVersion = -1;
 
     @Nullable private Permissions permissions;
 
+    @Nullable private Object   hiddenClassHost;
+    @Nullable private Class<?> hiddenClassHostClass;
+
     private EnumSet<JaninoOption> options = EnumSet.noneOf(JaninoOption.class);
 
+    @Nullable private CompilationListener compilationListener;
+
+    // Set while a compilation unit is scanned, parsed and compiled, iff a compilation listener is set.
+    @Nullable private CompilationMetrics compilationMetrics;
+
     public static void // SUPPRESS CHECKSTYLE JavadocMethod
     main(String[] args) throws Exception {
         if (args.length >= 1 && "-help".equals(args[0])) {
@@ -196,13 +207,70 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
         this.debugVars   = debugVars;
     }
 
+    /**
+     * Iff set, then the generated class is not loaded through a new {@link ClassLoader}, but defined as a <em>hidden
+     * class</em> (JRE 15+), in the same run-time package as the <var>hostLookup</var>'s lookup class. Hidden classes
+     * are unloaded as soon as they are no longer reachable, and save the memory and bookkeeping of a class loader per
+     * compilation.
+     * <p>
+     *   This also sets the parent class loader to the class loader of the lookup class, because the hidden class can
+     *   only reference the types that are visible there.
+     * </p>
+     * <p>
+     *   Compilation units that yield more than one class (e.g. because they declare anonymous or member classes), or
+     *   that declare their class in a different package, or compilations with {@link #setPermissions(Permissions)
+     *   permissions}, are still loaded through a new {@link ClassLoader}.
+     * </p>
+     * <p>
+     *   Because a hidden class cannot be referenced by its name, the same applies to classes that mention their own
+     *   type in a field or method descriptor (e.g. {@code static SC inst = new SC();} or a parameter of type {@code
+     *   SC}), and to classes that contain lambda expressions or method references.
+     * </p>
+     *
+     * @param hostLookup                     A {@code java.lang.invoke.MethodHandles.Lookup} with full privilege
+     *                                       access (e.g. {@code MethodHandles.lookup()}), or {@code null} to switch
+     *                                       back to a new class loader per compilation
+     * @throws IllegalArgumentException      The <var>hostLookup</var> is not a {@code MethodHandles.Lookup}
+     * @throws UnsupportedOperationException The running JRE does not support hidden classes
+     */
+    public void
+    setHiddenClassHost(@Nullable Object hostLookup) {
+
+        if (hostLookup == null) {
+            this.hiddenClassHost      = null;
+            this.hiddenClassHostClass = null;
+            return;
+        }
+
+        Class<?> hostClass = HiddenClassLoader.getLookupClass(hostLookup);
+        if (!HiddenClassLoader.isAvailable()) {
+            throw new UnsupportedOperationException("Hidden classes are not available");
+        }
+
+        this.hiddenClassHost      = hostLookup;
+        this.hiddenClassHostClass = hostClass;
+        this.setParentClassLoader(hostClass.getClassLoader());
+    }
+
+    /**
+     * @return The lookup class of the {@link #setHiddenClassHost(Object) hidden class host}, or {@code null}
+     */
+    @Nullable Class<?>
+    getHiddenClassHostClass() { return this.hiddenClassHostClass; }
+
+    /**
+     * @see UnitCompiler#setTargetVersion(int)
+     */
+    @Override public void
+    setTargetVersion(int version) { this.targetVersion = version; }
+
     /**
      * Scans, parses and compiles a given compilation unit from the given {@link Reader}. After completion, {@link
      * #getClassLoader()} returns a {@link ClassLoader} that allows for access to the compiled classes.
      */
-    @Override public final void
+    @Override public void
     cook(@Nullable String optionalFileName, Reader r) throws CompileException, IOException {
-        this.cook(new Scanner(optionalFileName, r));
+        this.cook(new Scanner(optionalFileName, Cookable.readString(r).toCharArray()));
     }
 
     /**
@@ -211,6 +279,7 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
      */
     public void
     cook(Scanner scanner) throws CompileException, IOException {
+        this.startCompilationMetrics(scanner);
         this.compileToClassLoader(new Parser(scanner).parseAbstractCompilationUnit());
     }
 
@@ -222,22 +291,37 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
 
         SimpleCompiler.LOGGER.entering(null, "cook", abstractCompilationUnit);
 
-        ClassFile[] classFiles;
-
-        IClassLoader icl = (this.classLoaderIClassLoader = new ClassLoaderIClassLoader(this.parentClassLoader));
+        CompilationListener cl = this.compilationListener;
+        CompilationMetrics  cm = this.compilationMetrics;
+        if (cm == null && cl != null) {
+            this.compilationMetrics = (cm = new CompilationMetrics(abstractCompilationUnit.optionalFileName));
+        }
         try {
+            if (cm != null) cm.endFrontEnd();
+
+            ClassFile[] classFiles;
 
-            // Compile compilation unit to class files.
-            UnitCompiler unitCompiler = new UnitCompiler(abstractCompilationUnit, icl).options(this.options);
-            unitCompiler.setCompileErrorHandler(this.optionalCompileErrorHandler);
-            unitCompiler.setWarningHandler(this.optionalWarningHandler);
+            IClassLoader icl = (this.classLoaderIClassLoader = new ClassLoaderIClassLoader(this.parentClassLoader));
+            try {
 
-            classFiles = unitCompiler.compileUnit(this.debugSource, this.debugLines, this.debugVars);
+                // Compile compilation unit to class files.
+                UnitCompiler unitCompiler = new UnitCompiler(abstractCompilationUnit, icl).options(this.options);
+                unitCompiler.setCompileErrorHandler(this.optionalCompileErrorHandler);
+                unitCompiler.setWarningHandler(this.optionalWarningHandler);
+                unitCompiler.setCompilationMetrics(cm);
+                if (this.targetVersion != -1) unitCompiler.setTargetVersion(this.targetVersion);
+
+                classFiles = unitCompiler.compileUnit(this.debugSource, this.debugLines, this.debugVars);
+            } finally {
+                this.classLoaderIClassLoader = null;
+            }
+
+            this.cook(classFiles);
         } finally {
-            this.classLoaderIClassLoader = null;
+            this.compilationMetrics = null;
         }
 
-        this.cook(classFiles);
+        if (cl != null && cm != null) cl.compilationUnitCompiled(cm);
     }
 
     /**
@@ -248,11 +332,15 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
     cook(ClassFile[] classFiles) {
 
         // Convert the class files to bytes and store them in a Map.
+        long                                                 begin   = System.nanoTime();
         final Map<String /*className*/, byte[] /*bytecode*/> classes = new HashMap<String, byte[]>();
         for (ClassFile cf : classFiles) {
             classes.put(cf.getThisClassName(), cf.toByteArray());
         }
 
+        CompilationMetrics cm = this.compilationMetrics;
+        if (cm != null) cm.storeNanos += System.nanoTime() - begin;
+
         this.cook(classes);
     }
 
@@ -265,10 +353,29 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
     public void
     cook(final Map<String /*className*/, byte[] /*bytecode*/> classes) {
 
+        // Define the generated class as a hidden class, if possible.
+        Object   hch  = this.hiddenClassHost;
+        Class<?> hchc = this.hiddenClassHostClass;
+        if (hch != null && hchc != null && classes.size() == 1 && this.permissions == null) {
+            Map.Entry<String, byte[]> e = (Map.Entry<String, byte[]>) classes.entrySet().iterator().next();
+
+            String className = (String) e.getKey();
+            byte[] bytecode  = (byte[]) e.getValue();
+            if (
+                SimpleCompiler.packageOf(className).equals(SimpleCompiler.packageOf(hchc.getName()))
+                && HiddenClassLoader.canDefine(className, bytecode)
+            ) {
+                this.result    = HiddenClassLoader.define(hch, className, bytecode, this.compilationListener);
+                this.bytecodes = classes;
+                return;
+            }
+        }
+
         // Create a ClassLoader that loads the generated classes.
-        ClassLoader cl = (ClassLoader) AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+        ByteArrayClassLoader
+        cl = (ByteArrayClassLoader) AccessController.doPrivileged(new PrivilegedAction<ByteArrayClassLoader>() {
 
-            @Override public ClassLoader
+            @Override public ByteArrayClassLoader
             run() {
                 return new ByteArrayClassLoader(
                     classes,                              // classes
@@ -276,11 +383,67 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
                 );
             }
         });
+        cl.setCompilationListener(this.compilationListener);
 
         // Apply any configured permissions.
         if (this.permissions != null) Sandbox.confine(cl, this.permissions);
 
-        this.result = cl;
+        this.result    = cl;
+        this.bytecodes = classes;
+    }
+
+    private static String
+    packageOf(String className) {
+        int idx = className.lastIndexOf('.');
+        return idx == -1 ? "" : className.substring(0, idx);
+    }
+
+    /**
+     * @return The bytecodes that were defined by the last {@link #cook(Map)}
+     */
+    Map<String /*className*/, byte[] /*bytecode*/>
+    getBytecodes() {
+        Map<String, byte[]> result = this.bytecodes;
+        if (result == null) throw new IllegalStateException("Must only be called after \"cook()\"");
+        return result;
+    }
+
+    /**
+     * Makes a class loader that was created by an equivalent compilation, e.g. one that was found in an {@link
+     * EvaluatorCache}, the result of this compiler.
+     */
+    void
+    setResult(ClassLoader result) { this.result = result; }
+
+    /**
+     * @return The class loader that was created by the last {@code cook()}
+     */
+    ClassLoader
+    getResult() { return this.assertCooked(); }
+
+    /**
+     * @return Whether the result of this compiler may be shared with other, equivalent compilers
+     * @see    EvaluatorCache
+     */
+    boolean
+    isCacheable() { return this.permissions == null; }
+
+    /**
+     * Adds to the <var>result</var> all the settings of this compiler that influence the generated code. Derived
+     * classes that have more such settings must override this method.
+     *
+     * @see EvaluatorCache
+     */
+    void
+    addCacheKeyElements(List<Object> result) {
+        result.add(this.getClass());
+        result.add(this.parentClassLoader);
+        result.add(this.debugSource);
+        result.add(this.debugLines);
+        result.add(this.debugVars);
+        result.add(this.targetVersion);
+        result.add(EnumSet.copyOf(this.options));
+        result.add(this.hiddenClassHostClass);
     }
 
     @Override public ClassLoader
@@ -329,6 +492,35 @@ class SimpleCompiler extends Cookable implements ISimpleCompiler {
         this.optionalWarningHandler = optionalWarningHandler;
     }
 
+    /**
+     * Installs a {@link CompilationListener} that receives the metrics of all future compilations, and is notified
+     * whenever a generated class is defined.
+     *
+     * @param compilationListener {@code null} to disable the collection of metrics
+     * @see                       JfrCompilationListener
+     */
+    public void
+    setCompilationListener(@Nullable CompilationListener compilationListener) {
+        this.compilationListener = compilationListener;
+    }
+
+    /**
+     * Iff a {@link CompilationListener} is set, starts collecting the {@link CompilationMetrics} of the compilation
+     * unit that is about to be scanned by the given <var>scanners</var>, parsed, and then compiled through {@link
+     * #cook(Java.AbstractCompilationUnit)}.
+     */
+    final void
+    startCompilationMetrics(Scanner... scanners) {
+
+        if (this.compilationListener == null) return;
+
+        CompilationMetrics cm = new CompilationMetrics(scanners.length == 0 ? null : scanners[0].getFileName());
+        for (Scanner scanner : scanners) scanner.setCompilationMetrics(cm);
+        cm.beginFrontEnd();
+
+        this.compilationMetrics = cm;
+    }
+
     /**
      * @return A reference to the currently effective compilation options; changes to it take
      *         effect immediately
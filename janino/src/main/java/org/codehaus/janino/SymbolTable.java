@@ -0,0 +1,155 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import org.codehaus.commons.nullanalysis.Nullable;
+
+/**
+ * A compiler-local replacement for {@link String#intern()}: Maps character sequences to canonical {@link String}s,
+ * and creates a new {@link String} only for a character sequence that it has not seen before.
+ * <p>
+ *   Notice that a {@link String} that was {@link #add(String) added} is canonical in <em>this</em> table; iff it is
+ *   also an {@link String#intern() interned} string (e.g. a string literal), then the character sequences it maps
+ *   can be reference-compared with other interned strings.
+ * </p>
+ * <p>
+ *   Instances are not thread-safe.
+ * </p>
+ */
+final
+class SymbolTable {
+
+    private String[] symbols;
+    private int      size;
+
+    SymbolTable() { this.symbols = new String[64]; }
+
+    /**
+     * Creates a copy of the given symbol table.
+     */
+    SymbolTable(SymbolTable that) {
+        this.symbols = new String[that.symbols.length];
+        System.arraycopy(that.symbols, 0, this.symbols, 0, that.symbols.length);
+        this.size = that.size;
+    }
+
+    /**
+     * @return The canonical {@link String} for the given character sequence; creates and adds one iff there is none
+     */
+    String
+    get(char[] ca, int offset, int length) {
+
+        int h = SymbolTable.hashCode(ca, offset, length);
+
+        String result = this.find(ca, offset, length, h);
+        if (result != null) return result;
+
+        result = new String(ca, offset, length);
+        this.add2(result, h);
+        return result;
+    }
+
+    /**
+     * @return The canonical {@link String} for the given character sequence, or {@code null} iff there is none
+     */
+    @Nullable String
+    find(char[] ca, int offset, int length) {
+        return this.find(ca, offset, length, SymbolTable.hashCode(ca, offset, length));
+    }
+
+    /**
+     * Makes the given string canonical, unless an equal string is canonical already.
+     *
+     * @return The canonical {@link String} that equals the given string
+     */
+    String
+    add(String s) {
+
+        char[] ca     = s.toCharArray();
+        String result = this.find(ca, 0, ca.length, s.hashCode());
+        if (result != null) return result;
+
+        this.add2(s, s.hashCode());
+        return s;
+    }
+
+    @Nullable private String
+    find(char[] ca, int offset, int length, int hashCode) {
+
+        String[] symbols = this.symbols;
+        int      mask    = symbols.length - 1;
+
+        for (int i = hashCode & mask;; i = (i + 1) & mask) {
+            String s = symbols[i];
+            if (s == null) return null;
+            if (s.hashCode() == hashCode && SymbolTable.equals(s, ca, offset, length)) return s;
+        }
+    }
+
+    private void
+    add2(String s, int hashCode) {
+
+        // Keep the load factor at or below 50%, so that the linear probing remains fast.
+        if (2 * (this.size + 1) > this.symbols.length) {
+            String[] oldSymbols = this.symbols;
+            this.symbols = new String[2 * oldSymbols.length];
+            for (int i = 0; i < oldSymbols.length; i++) {
+                String s2 = oldSymbols[i];
+                if (s2 != null) this.insert(s2, s2.hashCode());
+            }
+        }
+
+        this.insert(s, hashCode);
+        this.size++;
+    }
+
+    private void
+    insert(String s, int hashCode) {
+        String[] symbols = this.symbols;
+        int      mask    = symbols.length - 1;
+        int      i       = hashCode & mask;
+        while (symbols[i] != null) i = (i + 1) & mask;
+        symbols[i] = s;
+    }
+
+    /**
+     * @return The same value as {@link String#hashCode()} for the given character sequence
+     */
+    private static int
+    hashCode(char[] ca, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) h = 31 * h + ca[i];
+        return h;
+    }
+
+    private static boolean
+    equals(String s, char[] ca, int offset, int length) {
+        if (s.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != ca[offset + i]) return false;
+        }
+        return true;
+    }
+}
@@ -118,7 +118,8 @@ interface TokenStream {
      * Verifies that the type of the next token is the <var>expected</var>, and consumes the token.
      *
      * @return                  The value of the next token; an {@link String#intern() interned} String iff the token
-     *                          represents an identifier, {@code true}, {@code false}, {@code null}, or an operator
+     *                          represents a keyword, {@code true}, {@code false}, {@code null}, or an operator (but
+     *                          <em>not</em> for identifiers)
      * @throws CompileException The next token's type is not the <var>expected</var>
      */
     String
@@ -152,8 +153,8 @@ interface TokenStream {
     /**
      * Checks whether the type of the next token is the <var>suspected</var>; if so, consumes the token.
      *
-     * @return The value of the next token; an {@link String#intern() interned} String iff the token represents an
-     *         identifier, {@code true}, {@code false}, {@code null}, or an operator
+     * @return The value of the next token; an {@link String#intern() interned} String iff the token represents a
+     *         keyword, {@code true}, {@code false}, {@code null}, or an operator (but <em>not</em> for identifiers)
      */
     @Nullable String
     peekRead(TokenType suspected) throws CompileException, IOException;
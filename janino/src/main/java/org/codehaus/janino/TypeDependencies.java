@@ -0,0 +1,124 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.commons.compiler.CompileException;
+
+/**
+ * The types and members that one compilation unit uses, as recorded by the {@link UnitCompiler} while it resolves
+ * names; see {@link UnitCompiler#setTypeDependencies(TypeDependencies)}.
+ */
+public
+class TypeDependencies {
+
+    /**
+     * Special member name that designates the "header" of a type, i.e. its modifiers, its supertypes and the names of
+     * its member types.
+     */
+    public static final String HEADER = "";
+
+    /**
+     * Special member name that designates all members of a type, e.g. because the compilation unit declares a
+     * subtype of it.
+     */
+    public static final String ALL_MEMBERS = "*";
+
+    private final Map<IClass, Set<String>> usedMembers = new HashMap<IClass, Set<String>>();
+
+    /**
+     * Notices that the compilation unit uses the <var>type</var> by name, or as the type of an expression.
+     */
+    void
+    typeUsed(IClass type) { this.memberUsed(type, TypeDependencies.HEADER); }
+
+    /**
+     * Notices that the compilation unit looks up members named <var>name</var> in the <var>type</var>.
+     *
+     * @param name A field or method name, {@code "<init>"}, {@link #HEADER} or {@link #ALL_MEMBERS}
+     */
+    void
+    memberUsed(IClass type, String name) {
+
+        while (type.isArray()) {
+            IClass ct = type.getComponentType();
+            assert ct != null;
+            type = ct;
+        }
+        if (type.isPrimitive()) return;
+
+        Set<String> names = (Set<String>) this.usedMembers.get(type);
+        if (names == null) this.usedMembers.put(type, (names = new HashSet<String>()));
+        names.add(name);
+    }
+
+    /**
+     * Members are looked up not only in the type itself, but also in its supertypes. Therefore a member that is used
+     * through a type counts as used through all of its supertypes, too. Also, the use of any member of a type implies
+     * the use of the {@link #HEADER}s of the type and its supertypes.
+     *
+     * @return The names of the used types, mapped to the names of their used members
+     */
+    public Map<String, Set<String>>
+    getUsedMembers() throws CompileException {
+
+        Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+        for (Map.Entry<IClass, Set<String>> e : this.usedMembers.entrySet()) {
+
+            Set<IClass> hierarchy = new LinkedHashSet<IClass>();
+            TypeDependencies.addHierarchy((IClass) e.getKey(), hierarchy);
+
+            for (IClass type : hierarchy) {
+                String      className = Descriptor.toClassName(type.getDescriptor());
+                Set<String> names     = (Set<String>) result.get(className);
+                if (names == null) {
+                    result.put(className, (names = new HashSet<String>()));
+                    names.add(TypeDependencies.HEADER);
+                }
+                names.addAll((Set<String>) e.getValue());
+            }
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static void
+    addHierarchy(IClass type, Set<IClass> result) throws CompileException {
+
+        if (!result.add(type)) return;
+
+        IClass superclass = type.getSuperclass();
+        if (superclass != null) TypeDependencies.addHierarchy(superclass, result);
+
+        for (IClass interfacE : type.getInterfaces()) TypeDependencies.addHierarchy(interfacE, result);
+    }
+}
@@ -37,6 +37,9 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -85,6 +88,7 @@ import org.codehaus.janino.Java.Assignment;
 import org.codehaus.janino.Java.Atom;
 import org.codehaus.janino.Java.BinaryOperation;
 import org.codehaus.janino.Java.Block;
+import org.codehaus.janino.Java.BlockLambdaBody;
 import org.codehaus.janino.Java.BlockStatement;
 import org.codehaus.janino.Java.BooleanLiteral;
 import org.codehaus.janino.Java.BooleanRvalue;
@@ -112,6 +116,7 @@ import org.codehaus.janino.Java.EmptyStatement;
 import org.codehaus.janino.Java.EnclosingScopeOfTypeDeclaration;
 import org.codehaus.janino.Java.EnumConstant;
 import org.codehaus.janino.Java.EnumDeclaration;
+import org.codehaus.janino.Java.ExpressionLambdaBody;
 import org.codehaus.janino.Java.ExpressionStatement;
 import org.codehaus.janino.Java.FieldAccess;
 import org.codehaus.janino.Java.FieldAccessExpression;
@@ -119,10 +124,13 @@ import org.codehaus.janino.Java.FieldDeclaration;
 import org.codehaus.janino.Java.FloatingPointLiteral;
 import org.codehaus.janino.Java.ForEachStatement;
 import org.codehaus.janino.Java.ForStatement;
+import org.codehaus.janino.Java.FormalLambdaParameters;
 import org.codehaus.janino.Java.FunctionDeclarator;
 import org.codehaus.janino.Java.FunctionDeclarator.FormalParameter;
 import org.codehaus.janino.Java.FunctionDeclarator.FormalParameters;
+import org.codehaus.janino.Java.IdentifierLambdaParameters;
 import org.codehaus.janino.Java.IfStatement;
+import org.codehaus.janino.Java.InferredLambdaParameters;
 import org.codehaus.janino.Java.Initializer;
 import org.codehaus.janino.Java.InnerClassDeclaration;
 import org.codehaus.janino.Java.Instanceof;
@@ -211,9 +219,11 @@ import org.codehaus.janino.Visitor.ImportVisitor;
 import org.codehaus.janino.Visitor.LvalueVisitor;
 import org.codehaus.janino.Visitor.RvalueVisitor;
 import org.codehaus.janino.Visitor.TypeDeclarationVisitor;
+import org.codehaus.janino.util.AbstractTraverser;
 import org.codehaus.janino.util.Annotatable;
 import org.codehaus.janino.util.ClassFile;
 import org.codehaus.janino.util.ClassFile.ClassFileException;
+import org.codehaus.janino.util.DeepCopier;
 import org.codehaus.janino.util.Numbers;
 import org.codehaus.janino.util.Objects;
 
@@ -282,6 +292,70 @@ class UnitCompiler {
 
     private static final Pattern LOOKS_LIKE_TYPE_PARAMETER = Pattern.compile("\\p{javaUpperCase}+");
 
+    private static final String JAVA_LANG_INVOKE_LAMBDAMETAFACTORY = "Ljava/lang/invoke/LambdaMetafactory;";
+
+    /**
+     * The descriptor of {@code LambdaMetafactory.metafactory(Lookup, String, MethodType, MethodType, MethodHandle,
+     * MethodType)}.
+     */
+    private static final MethodDescriptor METAFACTORY_MD = new MethodDescriptor(
+        "Ljava/lang/invoke/CallSite;",
+        "Ljava/lang/invoke/MethodHandles$Lookup;",
+        Descriptor.JAVA_LANG_STRING,
+        "Ljava/lang/invoke/MethodType;",
+        "Ljava/lang/invoke/MethodType;",
+        "Ljava/lang/invoke/MethodHandle;",
+        "Ljava/lang/invoke/MethodType;"
+    );
+
+    /**
+     * The descriptor of {@code LambdaMetafactory.altMetafactory(Lookup, String, MethodType, Object...)}.
+     */
+    private static final MethodDescriptor ALT_METAFACTORY_MD = new MethodDescriptor(
+        "Ljava/lang/invoke/CallSite;",
+        "Ljava/lang/invoke/MethodHandles$Lookup;",
+        Descriptor.JAVA_LANG_STRING,
+        "Ljava/lang/invoke/MethodType;",
+        "[" + Descriptor.JAVA_LANG_OBJECT
+    );
+
+    /**
+     * The value of {@code LambdaMetafactory.FLAG_BRIDGES}.
+     */
+    private static final int LAMBDA_METAFACTORY_FLAG_BRIDGES = 4;
+
+    private static final String JAVA_LANG_INVOKE_STRINGCONCATFACTORY = "Ljava/lang/invoke/StringConcatFactory;";
+
+    /**
+     * The descriptor of {@code StringConcatFactory.makeConcatWithConstants(Lookup, String, MethodType, String,
+     * Object...)}.
+     */
+    private static final MethodDescriptor MAKE_CONCAT_WITH_CONSTANTS_MD = new MethodDescriptor(
+        "Ljava/lang/invoke/CallSite;",
+        "Ljava/lang/invoke/MethodHandles$Lookup;",
+        Descriptor.JAVA_LANG_STRING,
+        "Ljava/lang/invoke/MethodType;",
+        Descriptor.JAVA_LANG_STRING,
+        "[" + Descriptor.JAVA_LANG_OBJECT
+    );
+
+    /**
+     * The maximum number of parameter slots of a call site that is bootstrapped by {@code StringConcatFactory}.
+     */
+    private static final int MAX_INDY_CONCAT_ARG_SLOTS = 200;
+
+    /**
+     * With {@link JaninoOption#SPLIT_LARGE_METHODS}, method bodies and the helper methods that they are split into are
+     * kept below this estimated bytecode size, which is the JVM's default {@code HugeMethodLimit}.
+     */
+    private static final int SPLIT_METHOD_SIZE = 8000;
+
+    /**
+     * The average number of bytecode bytes that one AST node compiles into, for the purpose of estimating the
+     * size of a method body.
+     */
+    private static final int ESTIMATED_BYTES_PER_AST_NODE = 2;
+
     private EnumSet<JaninoOption> options = EnumSet.noneOf(JaninoOption.class);
 
     public
@@ -306,6 +380,21 @@ class UnitCompiler {
         return this;
     }
 
+    /**
+     * Sets the Java version of the generated class files, e.g. 8 for class file version 52.0. The default is 6.
+     * <p>
+     *   For versions 7 and higher, "StackMapTable" attributes are generated, and FINALLY clauses are inlined, because
+     *   the JSR and RET instructions are no longer allowed.
+     * </p>
+     *
+     * @throws IllegalArgumentException <var>version</var> is less than 6 or greater than 17
+     */
+    public void
+    setTargetVersion(int version) {
+        if (version < 6 || version > 17) throw new IllegalArgumentException("Unsupported target version " + version);
+        this.targetVersion = version;
+    }
+
     /**
      * @return The {@link AbstractCompilationUnit} that this {@link UnitCompiler} compiles
      */
@@ -327,6 +416,14 @@ class UnitCompiler {
             throw new IllegalStateException("\"UnitCompiler.compileUnit()\" is not reentrant");
         }
         final List<ClassFile> gcfs = (this.generatedClassFiles = new ArrayList<ClassFile>());
+
+        // Remember where the counters stand, so that the metrics of *this* compilation can be computed. (The type
+        // loading counters are per thread, so that concurrent compilations do not count each other's type loading.)
+        CompilationMetrics cm              = this.compilationMetrics;
+        long               begin           = cm == null ? 0 : System.nanoTime();
+        int                iClassLoadCount = cm == null ? 0 : IClassLoader.getIClassLoadCount();
+        long               iClassLoadNanos = cm == null ? 0 : IClassLoader.getIClassLoadNanos();
+        long               relocationNanos = cm == null ? 0 : cm.relocationNanos;
         try {
 
             this.abstractCompilationUnit.accept(new AbstractCompilationUnitVisitor<Void, CompileException>() {
@@ -344,7 +441,25 @@ class UnitCompiler {
                     + "\""
                 ), null);
             }
-            return (ClassFile[]) gcfs.toArray(new ClassFile[gcfs.size()]);
+
+            ClassFile[] result = (ClassFile[]) gcfs.toArray(new ClassFile[gcfs.size()]);
+
+            if (cm != null) {
+                long typeResolutionNanos = IClassLoader.getIClassLoadNanos() - iClassLoadNanos;
+
+                cm.typeResolutionNanos += typeResolutionNanos;
+                cm.codeGenerationNanos += (
+                    System.nanoTime()
+                    - begin
+                    - typeResolutionNanos
+                    - (cm.relocationNanos - relocationNanos)
+                );
+                cm.iClassesLoaded      += IClassLoader.getIClassLoadCount() - iClassLoadCount;
+                cm.classFileCount      += result.length;
+                for (ClassFile cf : result) cm.constantPoolSize += cf.getConstantPoolSize();
+            }
+
+            return result;
         } finally {
             this.generatedClassFiles = null;
         }
@@ -463,6 +578,7 @@ class UnitCompiler {
     private void
     compile2(AbstractClassDeclaration cd) throws CompileException {
         IClass iClass = this.resolve(cd);
+        this.compiledClasses.put(iClass.getDescriptor(), iClass);
 
         // Check that all methods of the non-abstract class are implemented.
         if (!(cd instanceof NamedClassDeclaration && ((NamedClassDeclaration) cd).isAbstract())) {
@@ -500,6 +616,7 @@ class UnitCompiler {
                 superclass != null ? superclass.getDescriptor() : null, // superclassFD
                 IClass.getDescriptors(iClass.getInterfaces())           // interfaceFDs
             );
+            this.setClassFileVersion(cf);
         }
 
         // Add class annotations with retention != SOURCE.
@@ -984,6 +1101,17 @@ class UnitCompiler {
         }
     }
 
+    /**
+     * Sets the version of the <var>classFile</var> according to {@link #setTargetVersion(int)}.
+     */
+    private void
+    setClassFileVersion(ClassFile classFile) {
+        classFile.setVersion(
+            (short) (ClassFile.MAJOR_VERSION_JDK_1_6 + this.targetVersion - 6), // majorVersion
+            (short) 0                                                          // minorVersion
+        );
+    }
+
     private void
     compile2(InterfaceDeclaration id) throws CompileException {
 
@@ -1010,6 +1138,7 @@ class UnitCompiler {
             Descriptor.JAVA_LANG_OBJECT, // superclassFD
             interfaceDescriptors         // interfaceFDs
         );
+        this.setClassFileVersion(cf);
 
         // Add interface annotations with retention != SOURCE.
         this.compileAnnotations(id.getAnnotations(), cf, cf);
@@ -1991,6 +2120,8 @@ class UnitCompiler {
                         }
                         String constantName = identifiers[0];
 
+                        this.memberUsed(switchExpressionType, TypeDependencies.ALL_MEMBERS);
+
                         int ordinal = 0;
                         for (IField f : switchExpressionType.getDeclaredIFields()) {
                             if (f.getAccess() != Access.PUBLIC || !f.isStatic()) continue;
@@ -2245,11 +2376,11 @@ class UnitCompiler {
             }
         }
 
-        this.leaveStatements(
+        if (!this.leaveStatements(
             bs.getEnclosingScope(),              // from
             brokenStatement.getEnclosingScope(), // to
             null                                 // optionalStackValueType
-        );
+        )) return false;
         this.writeBranch(bs, Opcode.GOTO, this.getWhereToBreak(brokenStatement));
         return false;
     }
@@ -2309,17 +2440,17 @@ class UnitCompiler {
             }
         }
 
+        if (!this.leaveStatements(
+            cs.getEnclosingScope(),                 // from
+            continuedStatement.getEnclosingScope(), // to
+            null                                    // optionalStackValueType
+        )) return false;
+
         Offset wtc = continuedStatement.whereToContinue;
         if (wtc == null) {
             wtc = (continuedStatement.whereToContinue = this.getCodeContext().new Offset());
         }
 
-        this.leaveStatements(
-            cs.getEnclosingScope(),                 // from
-            continuedStatement.getEnclosingScope(), // to
-            null                                    // optionalStackValueType
-        );
-
         this.writeBranch(cs, Opcode.GOTO, wtc);
 
         return false;
@@ -2385,9 +2516,9 @@ class UnitCompiler {
 
             IClass fieldType = this.getType(fd.type);
             if (initializer instanceof Rvalue) {
-                Rvalue rvalue          = (Rvalue) initializer;
-                IClass initializerType = this.compileGetValue(rvalue);
+                Rvalue rvalue = (Rvalue) initializer;
                 fieldType = fieldType.getArrayIClass(vd.brackets, this.iClassLoader.TYPE_java_lang_Object);
+                IClass initializerType = this.compileGetValue(rvalue, fieldType);
                 this.assignmentConversion(
                     fd,                           // locatable
                     initializerType,              // sourceType
@@ -2580,10 +2711,10 @@ class UnitCompiler {
                 if (oi instanceof Rvalue) {
                     Rvalue rhs = (Rvalue) oi;
                     this.assignmentConversion(
-                        lvds,                      // locatable
-                        this.compileGetValue(rhs), // sourceType
-                        lv.type,                   // targetType
-                        this.getConstantValue(rhs) // optionalConstantValue
+                        lvds,                               // locatable
+                        this.compileGetValue(rhs, lv.type), // sourceType
+                        lv.type,                            // targetType
+                        this.getConstantValue(rhs)          // optionalConstantValue
                     );
                 } else
                 if (oi instanceof ArrayInitializer) {
@@ -2637,12 +2768,11 @@ class UnitCompiler {
         IClass returnType = this.getReturnType(enclosingFunction);
         if (returnType == IClass.VOID) {
             if (orv != null) this.compileError("Method must not return a value", rs.getLocation());
-            this.leaveStatements(
+            if (this.leaveStatements(
                 rs.getEnclosingScope(), // from
                 enclosingFunction,      // to
                 null                    // optionalStackValueType
-            );
-            this.writeOpcode(rs, Opcode.RETURN);
+            )) this.writeOpcode(rs, Opcode.RETURN);
             return false;
         }
 
@@ -2650,7 +2780,7 @@ class UnitCompiler {
             this.compileError("Method must return a value", rs.getLocation());
             return false;
         }
-        IClass type = this.compileGetValue(orv);
+        IClass type = this.compileGetValue(orv, returnType);
         this.assignmentConversion(
             rs,                        // locatable
             type,                      // sourceType
@@ -2658,12 +2788,11 @@ class UnitCompiler {
             this.getConstantValue(orv) // optionalConstantValue
         );
 
-        this.leaveStatements(
+        if (this.leaveStatements(
             rs.getEnclosingScope(), // from
             enclosingFunction,      // to
             returnType              // optionalStackValueType
-        );
-        this.writeOpcode(rs, Opcode.IRETURN + UnitCompiler.ilfda(returnType));
+        )) this.writeOpcode(rs, Opcode.IRETURN + UnitCompiler.ilfda(returnType));
         return false;
     }
 
@@ -2702,14 +2831,16 @@ class UnitCompiler {
 
             // Generate the exception handler.
             CodeContext.Offset here = this.getCodeContext().newOffset();
-            this.getCodeContext().addExceptionTableEntry(
+            if (this.addExceptionTableEntries(
+                ss,              // scope
                 beginningOfBody, // startPC
                 here,            // endPC
                 here,            // handlerPC
                 null             // catchTypeFD
-            );
-            this.leave(ss, this.iClassLoader.TYPE_java_lang_Throwable);
-            this.writeOpcode(ss, Opcode.ATHROW);
+            )) {
+                this.leave(ss, this.iClassLoader.TYPE_java_lang_Throwable);
+                this.writeOpcode(ss, Opcode.ATHROW);
+            }
 
             // Unlock monitor object.
             if (canCompleteNormally) {
@@ -2968,6 +3099,11 @@ class UnitCompiler {
 
         if (finallY == null) {
             canCompleteNormally = this.compileTryCatch(ts, compileBody, beginningOfBody, afterStatement);
+        } else
+        if (this.getCodeContext().getClassFile().getMajorVersion() >= ClassFile.MAJOR_VERSION_JDK_1_7) {
+
+            // JSR and RET must not appear in class files of version 51 and higher (JVMS8 4.9.1).
+            canCompleteNormally = this.compileTryCatchInlinedFinally(ts, compileBody, finallY, beginningOfBody);
         } else {
 
             // Compile a TRY statement *with* a FINALLY clause.
@@ -3061,6 +3197,128 @@ class UnitCompiler {
         return canCompleteNormally;
     }
 
+    /**
+     * Generates code for a TRY statement with a FINALLY clause, where the FINALLY clause is inlined wherever the body
+     * or a CATCH clause completes, instead of being compiled into a JSR/RET subroutine.
+     *
+     * @return Whether the code can complete normally
+     */
+    private boolean
+    compileTryCatchInlinedFinally(
+        TryStatement             ts,
+        Compilable2              compileBody,
+        BlockStatement           finallY,
+        final CodeContext.Offset beginningOfBody
+    ) throws CompileException {
+
+        // The body and the CATCH clauses branch to here when they complete normally.
+        final CodeContext.Offset beforeFinally = this.getCodeContext().new Offset();
+
+        // Compile the body and the CATCH clauses; BREAK, CONTINUE and RETURN statements inline the FINALLY clause
+        // through "leave()".
+        boolean canCompleteNormally;
+        ts.inlinedFinally = finallY;
+        ts.inlinedFinallyRanges.clear();
+        try {
+            canCompleteNormally = this.compileTryCatch(ts, compileBody, beginningOfBody, beforeFinally);
+        } finally {
+            ts.inlinedFinally = null;
+        }
+
+        // Generate the "catch (Throwable) {" clause that executes the FINALLY clause and rethrows the exception.
+        CodeContext.Offset here = this.getCodeContext().newOffset();
+        if (this.addExceptionTableEntries(
+            ts,              // scope
+            beginningOfBody, // startPC
+            here,            // endPC
+            here,            // handlerPC
+            null             // catchTypeFD
+        )) {
+            this.getCodeContext().saveLocalVariables();
+            try {
+
+                // Save the exception object in an anonymous local variable.
+                short evi = this.getCodeContext().allocateLocalVariable((short) 1);
+                this.store(
+                    finallY,                                    // locatable
+                    this.iClassLoader.TYPE_java_lang_Throwable, // lvType
+                    evi                                         // lvIndex
+                );
+                if (this.compile(finallY)) {
+                    this.load(
+                        finallY,                                    // locatable
+                        this.iClassLoader.TYPE_java_lang_Throwable, // type
+                        evi                                         // index
+                    );
+                    this.writeOpcode(finallY, Opcode.ATHROW);
+                }
+            } finally {
+                this.getCodeContext().restoreLocalVariables();
+            }
+        }
+
+        if (!canCompleteNormally) return false;
+
+        beforeFinally.set();
+        return this.compile(finallY);
+    }
+
+    /**
+     * Adds exception table entries for the code between <var>startPc</var> and <var>endPc</var>, except where a
+     * FINALLY clause of the <var>scope</var> or of an enclosing TRY statement was inlined (see {@link
+     * TryStatement#inlinedFinallyRanges}); that code must not be covered by the exception handler.
+     *
+     * @param scope The statement that the exception handler belongs to
+     * @return      Whether any code is covered, i.e. whether at least one exception table entry was added
+     */
+    private boolean
+    addExceptionTableEntries(
+        Scope              scope,
+        CodeContext.Offset startPc,
+        CodeContext.Offset endPc,
+        CodeContext.Offset handlerPc,
+        @Nullable String   catchTypeFd
+    ) {
+
+        // Collect the excluded ranges (alternating start and end offsets), ordered by their start offsets.
+        List<CodeContext.Offset> excludedRanges = new ArrayList<CodeContext.Offset>();
+        for (Scope s = scope; s instanceof Statement || s instanceof CatchClause; s = s.getEnclosingScope()) {
+            if (!(s instanceof TryStatement)) continue;
+            List<CodeContext.Offset> ranges = ((TryStatement) s).inlinedFinallyRanges;
+            for (int j = 0; j < ranges.size(); j += 2) {
+                CodeContext.Offset start = (CodeContext.Offset) ranges.get(j);
+
+                int i = excludedRanges.size();
+                while (
+                    i > 0
+                    && ((CodeContext.Offset) excludedRanges.get(i - 2)).getOffset() > start.getOffset()
+                ) i -= 2;
+                excludedRanges.add(i, start);
+                excludedRanges.add(i + 1, ranges.get(j + 1));
+            }
+        }
+
+        boolean            result = false;
+        CodeContext.Offset from   = startPc;
+        for (int i = 0; i < excludedRanges.size(); i += 2) {
+            CodeContext.Offset excludedStart = (CodeContext.Offset) excludedRanges.get(i);
+            CodeContext.Offset excludedEnd   = (CodeContext.Offset) excludedRanges.get(i + 1);
+            if (excludedStart.getOffset() >= endPc.getOffset()) break;
+            if (excludedEnd.getOffset() <= from.getOffset()) continue;
+            if (excludedStart.getOffset() > from.getOffset()) {
+                this.getCodeContext().addExceptionTableEntry(from, excludedStart, handlerPc, catchTypeFd);
+                result = true;
+            }
+            from = excludedEnd;
+        }
+        if (from.getOffset() < endPc.getOffset()) {
+            this.getCodeContext().addExceptionTableEntry(from, endPc, handlerPc, catchTypeFd);
+            result = true;
+        }
+
+        return result;
+    }
+
     /**
      * Generates code for a TRY statement without resources and without a FINALLY clause.
      *
@@ -3102,7 +3360,7 @@ class UnitCompiler {
             this.writeBranch(tryStatement, Opcode.GOTO, afterStatement);
         }
 
-        if (beginningOfBody.offset != afterBody.offset) { // Avoid zero-length exception table entries.
+        if (beginningOfBody.getOffset() != afterBody.getOffset()) { // Avoid zero-length exception table entries.
             this.getCodeContext().saveLocalVariables();
             try {
                 for (int i = 0; i < tryStatement.catchClauses.size(); ++i) {
@@ -3132,12 +3390,13 @@ class UnitCompiler {
                         // Kludge: Treat the exception variable like a local variable of the catch clause body.
                         this.getLocalVariable(catchClause.catchParameter).setSlot(exceptionVarSlot);
 
-                        this.getCodeContext().addExceptionTableEntry(
+                        if (!this.addExceptionTableEntries(
+                            tryStatement,                       // scope
                             beginningOfBody,                    // startPC
                             afterBody,                          // endPC
                             this.getCodeContext().newOffset(),  // handlerPC
                             caughtExceptionType.getDescriptor() // catchTypeFD
-                        );
+                        )) continue;
                         this.store(
                             catchClause,         // locatable
                             caughtExceptionType, // lvType
@@ -3152,6 +3411,7 @@ class UnitCompiler {
                             if (
                                 i < tryStatement.catchClauses.size() - 1
                                 || tryStatement.finallyOffset != null
+                                || tryStatement.inlinedFinally != null
                             ) this.writeBranch(catchClause, Opcode.GOTO, afterStatement);
                         }
                     } finally {
@@ -3418,6 +3678,11 @@ class UnitCompiler {
                 this.compileError("Method must have a body", fd.getLocation());
                 return;
             }
+            if (
+                this.options.contains(JaninoOption.SPLIT_LARGE_METHODS)
+                && fd instanceof MethodDeclarator
+                && !this.splitMethods.contains(fd)
+            ) oss = this.splitLargeMethod((MethodDeclarator) fd, oss);
             if (this.compileStatements(oss)) {
                 if (this.getReturnType(fd) != IClass.VOID) {
                     this.compileError("Method must return a value", fd.getLocation());
@@ -3432,12 +3697,32 @@ class UnitCompiler {
         // Don't continue code attribute generation if we had compile errors.
         if (this.compileErrorCount > 0) return;
 
+        if (this.options.contains(JaninoOption.PEEPHOLE_OPTIMIZATION)) codeContext.optimize();
+
         // Fix up and reallocate as needed.
-        codeContext.fixUpAndRelocate();
+        CompilationMetrics cm = this.compilationMetrics;
+        if (cm == null) {
+            codeContext.fixUpAndRelocate();
+        } else {
+            long begin = System.nanoTime();
+            cm.relocationIterations += codeContext.fixUpAndRelocate();
+            cm.relocationNanos      += System.nanoTime() - begin;
+            cm.bytecodeSize         += codeContext.getCodeSize();
+        }
 
         // Do flow analysis.
         try {
             codeContext.flowAnalysis(fd.toString());
+
+            // Class files of version 51 and higher require "StackMapTable" attributes (JVMS8 4.10.1).
+            if (classFile.getMajorVersion() >= ClassFile.MAJOR_VERSION_JDK_1_7) {
+                codeContext.generateStackMapFrames(
+                    mi.getAccessFlags(),                      // accessFlags
+                    mi.getName(),                             // methodName
+                    new MethodDescriptor(mi.getDescriptor()), // methodDescriptor
+                    this.classFinder                          // iClassFinder
+                );
+            }
         } catch (RuntimeException re) {
             UnitCompiler.LOGGER.log(Level.FINE, "*** FLOW ANALYSIS", re);
 
@@ -3477,6 +3762,311 @@ class UnitCompiler {
         });
     }
 
+    /**
+     * Moves runs of top-level statements of the <var>md</var> into synthetic {@code private} helper methods, iff
+     * the estimated bytecode size of the <var>statements</var> exceeds {@link #SPLIT_METHOD_SIZE}. Each run is
+     * replaced with an invocation of its helper method; the local variables that the run uses are passed as
+     * arguments, and the one local variable that the run may assign is returned by the helper method.
+     *
+     * @return The statements to compile instead of the <var>statements</var>
+     * @see JaninoOption#SPLIT_LARGE_METHODS
+     */
+    private List<? extends BlockStatement>
+    splitLargeMethod(MethodDeclarator md, List<? extends BlockStatement> statements) throws CompileException {
+
+        // The statements of the class initializer are field declarations and initializers, which cannot be moved
+        // into another method.
+        if (
+            "<clinit>".equals(md.name)
+            || statements.size() < 2
+            || md.getOptionalTypeParameters() != null
+            || !(md.getDeclaringType() instanceof AbstractClassDeclaration)
+        ) return statements;
+
+        List<StatementSummary> summaries = new ArrayList<StatementSummary>();
+        int                    totalSize = 0;
+        for (BlockStatement bs : statements) {
+            StatementSummary ss = UnitCompiler.summarize(bs);
+            summaries.add(ss);
+            totalSize += ss.estimatedSize;
+        }
+        if (totalSize <= UnitCompiler.SPLIT_METHOD_SIZE) return statements;
+
+        // The local variables that are in scope before the current statement; notice that "bs.localVariables"
+        // includes the variables that a FOR or FOREACH statement declares itself.
+        Map<String, LocalVariable> scope = md.localVariables;
+        assert scope != null;
+
+        List<BlockStatement> result              = new ArrayList<BlockStatement>();
+        List<BlockStatement> run                 = new ArrayList<BlockStatement>();
+        Set<String>          runLocals           = new LinkedHashSet<String>();
+        Set<String>          runAssignedLocals   = new HashSet<String>();
+        int                  runSize             = 0;
+        Set<String>          uninitializedLocals = new HashSet<String>();
+        boolean              canSplit            = true;
+        for (int i = 0; i < statements.size(); i++) {
+            BlockStatement   bs = (BlockStatement) statements.get(i);
+            StatementSummary ss = (StatementSummary) summaries.get(i);
+
+            // A local class may be referenced by the following statements, which thus must stay in place.
+            if (bs instanceof LocalClassDeclarationStatement) canSplit = false;
+
+            boolean movable = (
+                canSplit
+                && i < statements.size() - 1
+                && !ss.returns
+                && !(bs instanceof LocalVariableDeclarationStatement)
+                && !(bs instanceof LocalClassDeclarationStatement)
+            );
+
+            Set<String> locals         = new LinkedHashSet<String>();
+            Set<String> assignedLocals = new HashSet<String>();
+            for (String name : ss.referencedNames) {
+                if (!scope.containsKey(name)) continue;
+                if (uninitializedLocals.contains(name)) movable = false;
+                locals.add(name);
+                if (ss.assignedNames.contains(name)) assignedLocals.add(name);
+            }
+            if (assignedLocals.size() > 1) movable = false;
+
+            if (!run.isEmpty()) {
+                Set<String> allAssignedLocals = new HashSet<String>(runAssignedLocals);
+                allAssignedLocals.addAll(assignedLocals);
+                if (
+                    !movable
+                    || allAssignedLocals.size() > 1
+                    || runSize + ss.estimatedSize > UnitCompiler.SPLIT_METHOD_SIZE
+                ) {
+                    result.add(this.moveToSplitMethod(md, run, scope, runLocals, runAssignedLocals));
+                    run.clear();
+                    runLocals.clear();
+                    runAssignedLocals.clear();
+                    runSize = 0;
+                }
+            }
+
+            if (movable) {
+                run.add(bs);
+                runLocals.addAll(locals);
+                runAssignedLocals.addAll(assignedLocals);
+                runSize += ss.estimatedSize;
+            } else {
+                result.add(bs);
+            }
+
+            if (bs instanceof LocalVariableDeclarationStatement) {
+                LocalVariableDeclarationStatement lvds = (LocalVariableDeclarationStatement) bs;
+                for (VariableDeclarator vd : lvds.variableDeclarators) {
+                    if (vd.optionalInitializer == null) uninitializedLocals.add(vd.name);
+                }
+                scope = lvds.localVariables;
+                assert scope != null;
+            }
+        }
+        if (!run.isEmpty()) result.add(this.moveToSplitMethod(md, run, scope, runLocals, runAssignedLocals));
+
+        return result;
+    }
+
+    /**
+     * Declares a synthetic helper method with a copy of the <var>run</var> of top-level statements of the
+     * <var>md</var>.
+     *
+     * @param scope          The local variables that are in scope before the <var>run</var>
+     * @param locals         The names of the local variables that the <var>run</var> uses
+     * @param assignedLocals The name of the local variable that the <var>run</var> assigns, if any
+     * @return               The statement that invokes the helper method
+     */
+    private BlockStatement
+    moveToSplitMethod(
+        MethodDeclarator           md,
+        List<BlockStatement>       run,
+        Map<String, LocalVariable> scope,
+        Set<String>                locals,
+        Set<String>                assignedLocals
+    ) throws CompileException {
+
+        Statement first = (Statement) run.get(0);
+        Location  loc   = first.getLocation();
+
+        List<FormalParameter> parameters = new ArrayList<FormalParameter>();
+        List<Rvalue>          arguments  = new ArrayList<Rvalue>();
+        LocalVariable         assignedLv = null;
+        for (String name : locals) {
+            LocalVariable lv = (LocalVariable) scope.get(name);
+            if (lv == null) throw new InternalCompilerException("Local variable \"" + name + "\" is not in scope");
+
+            parameters.add(new FormalParameter(
+                loc,                                                                     // location
+                lv.finaL ? UnitCompiler.accessModifiers(loc, "final") : new Modifier[0], // modifiers
+                new SimpleType(loc, lv.type),                                            // type
+                name                                                                     // name
+            ));
+            arguments.add(new LocalVariableAccess(loc, lv));
+            if (assignedLocals.contains(name)) assignedLv = lv;
+        }
+
+        List<BlockStatement> body = new DeepCopier().copyBlockStatements(run);
+        if (assignedLv != null) {
+            String name = (String) assignedLocals.iterator().next();
+            body.add(new ReturnStatement(loc, new AmbiguousName(loc, new String[] { name })));
+        }
+
+        Type[] tes = new Type[md.thrownExceptions.length];
+        for (int i = 0; i < tes.length; i++) {
+            tes[i] = new SimpleType(loc, this.getType(md.thrownExceptions[i]));
+        }
+
+        IClass returnType = assignedLv == null ? IClass.VOID : assignedLv.type;
+
+        MethodDeclarator splitMethod = new MethodDeclarator(
+            loc,                                                   // location
+            null,                                                  // optionalDocComment
+            (                                                      // modifiers
+                md.isStatic()
+                ? UnitCompiler.accessModifiers(loc, "private", "static")
+                : UnitCompiler.accessModifiers(loc, "private")
+            ),
+            null,                                                  // optionalTypeParameters
+            new SimpleType(loc, returnType),                       // type
+            "split$" + md.name + "$" + this.syntheticSplitCount++, // name
+            new FormalParameters(                                  // formalParameters
+                loc,
+                (FormalParameter[]) parameters.toArray(new FormalParameter[parameters.size()]),
+                false
+            ),
+            tes,                                                   // thrownExceptions
+            null,                                                  // defaultValue
+            body                                                   // optionalStatements
+        );
+        AbstractClassDeclaration declaringClass = (AbstractClassDeclaration) md.getDeclaringType();
+        declaringClass.addDeclaredMethod(splitMethod);
+        declaringClass.invalidateMethodCaches();
+        this.splitMethods.add(splitMethod);
+
+        // Invoke the helper method, and assign its result to the local variable that the run assigns.
+        Rvalue invocation = new MethodInvocation(
+            loc,                                                       // location
+            null,                                                      // optionalTarget
+            splitMethod.name,                                          // methodName
+            (Rvalue[]) arguments.toArray(new Rvalue[arguments.size()]) // arguments
+        );
+        if (assignedLv != null) {
+            invocation = new Assignment(loc, new LocalVariableAccess(loc, assignedLv), "=", invocation);
+        }
+
+        ExpressionStatement result = new ExpressionStatement(invocation);
+        result.setEnclosingScope(md);
+        result.localVariables = scope;
+
+        return result;
+    }
+
+    /**
+     * The bytecode size and the local variable usage of a top-level statement, as far as they are relevant for
+     * {@link #splitLargeMethod(MethodDeclarator, List)}.
+     */
+    private static
+    class StatementSummary {
+
+        /**
+         * A rough estimate of the size of the bytecode that the statement compiles into.
+         */
+        int estimatedSize;
+
+        /**
+         * Whether the statement contains a RETURN statement (outside of nested classes and lambda bodies).
+         */
+        boolean returns;
+
+        /**
+         * The first identifiers of all {@link AmbiguousName}s within the statement; a superset of the names of the
+         * local variables that the statement uses.
+         */
+        final Set<String> referencedNames = new HashSet<String>();
+
+        /**
+         * The names that the statement assigns or increments or decrements.
+         */
+        final Set<String> assignedNames = new HashSet<String>();
+    }
+
+    private static StatementSummary
+    summarize(BlockStatement bs) {
+
+        final StatementSummary result = new StatementSummary();
+
+        new AbstractTraverser<RuntimeException>() {
+
+            int nesting;
+
+            @Override public void
+            traverseLocated(Located l) { result.estimatedSize += UnitCompiler.ESTIMATED_BYTES_PER_AST_NODE; }
+
+            @Override public void
+            traverseAmbiguousName(AmbiguousName an) {
+                result.referencedNames.add(an.identifiers[0]);
+                super.traverseAmbiguousName(an);
+            }
+
+            @Override public void
+            traverseAssignment(Assignment a) {
+                Rvalue lhs = a.lhs;
+                while (lhs instanceof ParenthesizedExpression) lhs = ((ParenthesizedExpression) lhs).value;
+                if (lhs instanceof AmbiguousName && ((AmbiguousName) lhs).n == 1) {
+                    result.assignedNames.add(((AmbiguousName) lhs).identifiers[0]);
+                }
+                super.traverseAssignment(a);
+            }
+
+            @Override public void
+            traverseCrement(Crement c) {
+                Rvalue operand = c.operand;
+                while (operand instanceof ParenthesizedExpression) operand = ((ParenthesizedExpression) operand).value;
+                if (operand instanceof AmbiguousName && ((AmbiguousName) operand).n == 1) {
+                    result.assignedNames.add(((AmbiguousName) operand).identifiers[0]);
+                }
+                super.traverseCrement(c);
+            }
+
+            @Override public void
+            traverseReturnStatement(ReturnStatement rs) {
+                if (this.nesting == 0) result.returns = true;
+                super.traverseReturnStatement(rs);
+            }
+
+            @Override public void
+            traverseAnonymousClassDeclaration(AnonymousClassDeclaration acd) {
+                this.nesting++;
+                super.traverseAnonymousClassDeclaration(acd);
+                this.nesting--;
+            }
+
+            @Override public void
+            traverseLocalClassDeclaration(LocalClassDeclaration lcd) {
+                this.nesting++;
+                super.traverseLocalClassDeclaration(lcd);
+                this.nesting--;
+            }
+
+            @Override public void
+            traverseLambdaExpression(LambdaExpression le) {
+                this.nesting++;
+                UnitCompiler.traverseLambdaBody(le, this);
+                this.nesting--;
+                super.traverseLambdaExpression(le);
+            }
+
+            @Override public void
+            traverseMethodReference(MethodReference mr) {
+                this.visitAtom(mr.lhs);
+                super.traverseMethodReference(mr);
+            }
+        }.visitBlockStatement(bs);
+
+        return result;
+    }
+
     /**
      * Makes the variable name and class name Constant Pool names used by local variables.
      */
@@ -3837,11 +4427,12 @@ class UnitCompiler {
     compile2(Assignment a) throws CompileException {
         if (a.operator == "=") { // SUPPRESS CHECKSTYLE StringLiteralEquality
             this.compileContext(a.lhs);
+            IClass lhsType = this.getType(a.lhs);
             this.assignmentConversion(
-                a,                           // locatable
-                this.compileGetValue(a.rhs), // sourceType
-                this.getType(a.lhs),         // targetType
-                this.getConstantValue(a.rhs) // optionalConstantValue
+                a,                                    // locatable
+                this.compileGetValue(a.rhs, lhsType), // sourceType
+                lhsType,                              // targetType
+                this.getConstantValue(a.rhs)          // optionalConstantValue
             );
             this.compileSet(a.lhs);
             return;
@@ -4525,46 +5116,968 @@ class UnitCompiler {
         return this.compileGet(this.toRvalueOrCompileException(this.reclassify(an)));
     }
 
-    private IClass
-    compileGet2(LocalVariableAccess lva) { return this.load(lva, lva.localVariable); }
+    private IClass
+    compileGet2(LocalVariableAccess lva) { return this.load(lva, lva.localVariable); }
+
+    private IClass
+    compileGet2(FieldAccess fa) throws CompileException {
+        this.checkAccessible(fa.field, fa.getEnclosingScope(), fa.getLocation());
+        this.getfield(fa, fa.field);
+        return fa.field.getType();
+    }
+
+    private IClass
+    compileGet2(ArrayLength al) {
+        this.writeOpcode(al, Opcode.ARRAYLENGTH);
+        return IClass.INT;
+    }
+
+    private IClass
+    compileGet2(ThisReference tr) throws CompileException {
+        this.referenceThis(tr);
+        return this.getIClass(tr);
+    }
+
+    private IClass
+    compileGet2(LambdaExpression le) throws CompileException { return this.compileFunctionalExpression(le); }
+
+    private IClass
+    compileGet2(MethodReference mr) throws CompileException { return this.compileFunctionalExpression(mr); }
+
+    private IClass
+    compileGet2(ClassInstanceCreationReference cicr) throws CompileException {
+        return this.compileFunctionalExpression(cicr);
+    }
+
+    private IClass
+    compileGet2(ArrayCreationReference acr) throws CompileException { return this.compileFunctionalExpression(acr); }
+
+    /**
+     * Compiles a lambda expression or a method reference into an INVOKEDYNAMIC instruction that is bootstrapped by
+     * {@code java.lang.invoke.LambdaMetafactory}, like JAVAC does. The body of the lambda expression is compiled
+     * into a private synthetic "{@code lambda$<n>}" method of the enclosing class; method references are first
+     * desugared into equivalent lambda expressions.
+     */
+    private IClass
+    compileFunctionalExpression(Rvalue fe) throws CompileException {
+
+        IClass targetType = this.getType(fe);
+
+        ClassFile cf = this.getCodeContext().getClassFile();
+        if (cf.getMajorVersion() < ClassFile.MAJOR_VERSION_JDK_1_8) {
+            throw UnitCompiler.compileException(
+                fe,
+                "Lambda expressions and method references require class file version 52 (Java 8) or higher"
+            );
+        }
+
+        IMethod[] fims = this.getFunctionalInterfaceMethods(targetType);
+        if (fims == null) {
+            throw UnitCompiler.compileException(fe, "\"" + targetType + "\" is not a functional interface");
+        }
+        IMethod sam = fims[0];
+
+        SyntheticLambda sl = (SyntheticLambda) this.syntheticLambdas.get(fe);
+        if (sl == null) this.syntheticLambdas.put(fe, (sl = this.makeSyntheticLambda(fe, sam)));
+
+        MethodDeclarator md          = sl.methodDeclarator;
+        String           declaringFd = this.resolve(md.getDeclaringType()).getDescriptor();
+        MethodDescriptor implMd      = this.toIMethod(md).getDescriptor();
+        List<String>     capturedFds = new ArrayList<String>();
+
+        // Push the captured values onto the operand stack.
+        if (!md.isStatic()) {
+            this.referenceThis(fe);
+            capturedFds.add(declaringFd);
+        }
+        Rvalue br = sl.boundReceiver;
+        if (br != null) {
+            capturedFds.add(this.compileGetValue(br).getDescriptor());
+
+            // JLS8 15.13.3: "If the method reference expression has the form ExpressionName::Identifier or
+            // Primary::Identifier, [...] if the subexpression evaluates to null, a NullPointerException is raised".
+            this.writeOpcode(fe, Opcode.DUP);
+            this.writeOpcode(fe, Opcode.INVOKEVIRTUAL);
+            this.writeConstantMethodrefInfo(
+                Descriptor.JAVA_LANG_OBJECT,                                     // classFd
+                "getClass",                                                      // methodName
+                new MethodDescriptor(Descriptor.JAVA_LANG_CLASS, new String[0]) // methodMd
+            );
+            this.writeOpcode(fe, Opcode.POP);
+        }
+        for (LocalVariable lv : sl.capturedVariables) {
+            this.load(fe, lv);
+            capturedFds.add(lv.type.getDescriptor());
+        }
+
+        // The trailing parameters of the implementation method are those of the lambda expression.
+        MethodDescriptor samMd           = sam.getDescriptor();
+        String[]         instantiatedFds = new String[samMd.parameterFds.length];
+        System.arraycopy(
+            implMd.parameterFds,                                 // src
+            implMd.parameterFds.length - instantiatedFds.length, // srcPos
+            instantiatedFds,                                     // dest
+            0,                                                   // destPos
+            instantiatedFds.length                               // length
+        );
+        MethodDescriptor instantiatedMd = new MethodDescriptor(samMd.returnFd, instantiatedFds);
+
+        // Notice that "compile(FunctionDeclarator)" converts private instance methods into static methods with an
+        // extra parameter and a "$" appended to the name.
+        short implMethodHandle = cf.addConstantMethodHandleInfo(
+            ClassFile.ConstantMethodHandleInfo.REF_invokeStatic, // referenceKind
+            cf.addConstantMethodrefInfo(                         // referenceIndex
+                declaringFd,
+                md.isStatic() ? md.name : md.name + '$',
+                (md.isStatic() ? implMd : implMd.prependParameter(declaringFd)).toString()
+            )
+        );
+
+        List<Short> bootstrapArguments = new ArrayList<Short>();
+        bootstrapArguments.add(cf.addConstantMethodTypeInfo(samMd));
+        bootstrapArguments.add(implMethodHandle);
+        bootstrapArguments.add(cf.addConstantMethodTypeInfo(instantiatedMd));
+
+        String           bootstrapMethodName;
+        MethodDescriptor bootstrapMethodMd;
+        if (fims.length == 1) {
+            bootstrapMethodName = "metafactory";
+            bootstrapMethodMd   = UnitCompiler.METAFACTORY_MD;
+        } else {
+
+            // The functional interface has more than one abstract method (because of erasure), so the lambda object
+            // must implement bridges.
+            bootstrapMethodName = "altMetafactory";
+            bootstrapMethodMd   = UnitCompiler.ALT_METAFACTORY_MD;
+            bootstrapArguments.add(cf.addConstantIntegerInfo(UnitCompiler.LAMBDA_METAFACTORY_FLAG_BRIDGES));
+            bootstrapArguments.add(cf.addConstantIntegerInfo(fims.length - 1));
+            for (int i = 1; i < fims.length; i++) {
+                bootstrapArguments.add(cf.addConstantMethodTypeInfo(fims[i].getDescriptor()));
+            }
+        }
+
+        short[] bas = new short[bootstrapArguments.size()];
+        for (int i = 0; i < bas.length; i++) bas[i] = (Short) bootstrapArguments.get(i);
+
+        short bootstrapMethodAttrIndex = cf.addBootstrapMethod(
+            cf.addConstantMethodHandleInfo( // bootstrapMethodRef
+                ClassFile.ConstantMethodHandleInfo.REF_invokeStatic,
+                cf.addConstantMethodrefInfo(
+                    UnitCompiler.JAVA_LANG_INVOKE_LAMBDAMETAFACTORY,
+                    bootstrapMethodName,
+                    bootstrapMethodMd.toString()
+                )
+            ),
+            bas                             // bootstrapArguments
+        );
+
+        this.writeOpcode(fe, Opcode.INVOKEDYNAMIC);
+        this.getCodeContext().writeShort(cf.addConstantInvokeDynamicInfo(
+            bootstrapMethodAttrIndex, // bootstrapMethodAttrIndex
+            sam.getName(),            // methodName
+            new MethodDescriptor(     // methodMd
+                targetType.getDescriptor(),
+                (String[]) capturedFds.toArray(new String[capturedFds.size()])
+            )
+        ));
+        this.getCodeContext().writeShort(0);
+
+        return targetType;
+    }
+
+    /**
+     * Determines the abstract methods of a functional interface (JLS8 9.8). Because JANINO erases all generic types,
+     * a functional interface may have more than one abstract method, e.g. "{@code int compare(Object, Object)}" and
+     * "{@code int compare(String, String)}"; all of these must be override-equivalent, and one of them must be more
+     * specific than all the others.
+     *
+     * @return The most specific abstract method, followed by the other abstract methods (which must be bridged), or
+     *         {@code null} iff <var>type</var> is not a functional interface
+     */
+    @Nullable private IMethod[]
+    getFunctionalInterfaceMethods(IClass type) throws CompileException {
+
+        if (!type.isInterface()) return null;
+
+        this.memberUsed(type, TypeDependencies.ALL_MEMBERS);
+
+        List<IMethod> abstractMethods = new ArrayList<IMethod>();
+        for (IMethod m : type.getIMethods()) {
+            if (!m.isAbstract()) continue;
+
+            // Abstract methods that override public methods of "java.lang.Object" do not count (JLS8 9.8).
+            if (this.iClassLoader.TYPE_java_lang_Object.findIMethod(m.getName(), m.getParameterTypes()) != null) {
+                continue;
+            }
+
+            abstractMethods.add(m);
+        }
+        if (abstractMethods.isEmpty()) return null;
+
+        String name  = ((IMethod) abstractMethods.get(0)).getName();
+        int    arity = ((IMethod) abstractMethods.get(0)).getParameterTypes().length;
+        for (IMethod m : abstractMethods) {
+            if (!m.getName().equals(name) || m.getParameterTypes().length != arity) return null;
+        }
+
+        CANDIDATES:
+        for (IMethod candidate : abstractMethods) {
+            for (IMethod m : abstractMethods) {
+                if (!UnitCompiler.isReturnAndParameterTypeAssignable(m, candidate)) continue CANDIDATES;
+            }
+
+            List<IMethod> result = new ArrayList<IMethod>();
+            result.add(candidate);
+            for (IMethod m : abstractMethods) {
+                if (!m.getDescriptor().equals(candidate.getDescriptor())) result.add(m);
+            }
+            return (IMethod[]) result.toArray(new IMethod[result.size()]);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Whether the return type and the parameter types of <var>from</var> are assignable to those of
+     *         <var>to</var>, i.e. whether <var>to</var> can be bridged to <var>from</var>
+     */
+    private static boolean
+    isReturnAndParameterTypeAssignable(IMethod to, IMethod from) throws CompileException {
+
+        if (!UnitCompiler.isIdenticalOrAssignable(to.getReturnType(), from.getReturnType())) return false;
+
+        IClass[] toPts   = to.getParameterTypes();
+        IClass[] fromPts = from.getParameterTypes();
+        for (int i = 0; i < toPts.length; i++) {
+            if (!UnitCompiler.isIdenticalOrAssignable(toPts[i], fromPts[i])) return false;
+        }
+
+        return true;
+    }
+
+    private static boolean
+    isIdenticalOrAssignable(IClass to, IClass from) throws CompileException {
+        return to == from || (!to.isPrimitive() && !from.isPrimitive() && to.isAssignableFrom(from));
+    }
+
+    /**
+     * Generates the synthetic method that implements the given lambda expression or method reference, and adds it
+     * to the enclosing class declaration; it is compiled later, together with the "regular" methods.
+     */
+    private SyntheticLambda
+    makeSyntheticLambda(Rvalue fe, IMethod sam) throws CompileException {
+
+        final Location loc = fe.getLocation();
+
+        // Determine the enclosing type body declaration, and whether it is a static context.
+        Scope s = fe.getEnclosingScope();
+        while (!(s instanceof TypeBodyDeclaration)) {
+            if (s instanceof CompilationUnit) {
+                throw UnitCompiler.compileException(fe, "Lambda expression or method reference outside of a type body");
+            }
+            s = s.getEnclosingScope();
+        }
+        TypeBodyDeclaration tbd = (TypeBodyDeclaration) s;
+        TypeDeclaration     td  = tbd.getDeclaringType();
+        if (!(td instanceof AbstractClassDeclaration)) {
+            throw UnitCompiler.compileException(fe, "Lambda expressions and method references in interfaces NYI");
+        }
+        boolean isStatic = UnitCompiler.isStaticContext(tbd);
+
+        IClass[] samPts = sam.getParameterTypes();
+
+        // Desugar method references into lambda expressions.
+        LambdaExpression le;
+        Rvalue           boundReceiver     = null;
+        IClass           boundReceiverType = null;
+        if (fe instanceof LambdaExpression) {
+            le = (LambdaExpression) fe;
+        } else
+        {
+            String[] names = new String[samPts.length];
+            Rvalue[] args  = new Rvalue[samPts.length];
+            for (int i = 0; i < samPts.length; i++) {
+                names[i] = "p$" + i;
+                args[i]  = new AmbiguousName(loc, new String[] { names[i] });
+            }
+
+            Rvalue body;
+            if (fe instanceof MethodReference) {
+                MethodReference mr = (MethodReference) fe;
+
+                Rvalue lhsRvalue = mr.lhs.toRvalue();
+                if (lhsRvalue != null) {
+                    lhsRvalue.setEnclosingScope(fe.getEnclosingScope());
+                } else {
+                    mr.lhs.toTypeOrCompileException().setEnclosingScope(fe.getEnclosingScope());
+                }
+
+                if (this.isType(mr.lhs)) {
+                    IClass t = this.getType(mr.lhs.toTypeOrCompileException());
+
+                    // "Type::staticMethod" => "Type.staticMethod(p$0, p$1, ...)".
+                    List<IMethod> staticMethods = UnitCompiler.getIMethods(t, mr.methodName, samPts.length, true);
+                    if (!staticMethods.isEmpty() || samPts.length == 0) {
+                        body = new MethodInvocation(
+                            loc,                                                // location
+                            new SimpleType(loc, t),                             // optionalTarget
+                            mr.methodName,                                      // methodName
+                            this.adaptArguments(args, 0, samPts, staticMethods) // arguments
+                        );
+                    } else
+
+                    // "Type::instanceMethod" => "((Type) p$0).instanceMethod(p$1, ...)".
+                    {
+                        List<IMethod> instanceMethods = UnitCompiler.getIMethods(
+                            t,
+                            mr.methodName,
+                            samPts.length - 1,
+                            false
+                        );
+                        body = new MethodInvocation(
+                            loc,                                                  // location
+                            (                                                     // optionalTarget
+                                t.isAssignableFrom(samPts[0])
+                                ? args[0]
+                                : new Cast(loc, new SimpleType(loc, t), args[0])
+                            ),
+                            mr.methodName,                                        // methodName
+                            this.adaptArguments(args, 1, samPts, instanceMethods) // arguments
+                        );
+                    }
+                } else
+
+                // "expression::method" => "rec$.method(p$0, p$1, ...)", with the expression evaluated only once.
+                {
+                    boundReceiver     = mr.lhs.toRvalueOrCompileException();
+                    boundReceiverType = this.getType(boundReceiver);
+                    body              = new MethodInvocation(
+                        loc,                                             // location
+                        new AmbiguousName(loc, new String[] { "rec$" }), // optionalTarget
+                        mr.methodName,                                   // methodName
+                        this.adaptArguments(                             // arguments
+                            args,
+                            0,
+                            samPts,
+                            UnitCompiler.getIMethods(boundReceiverType, mr.methodName, samPts.length, false)
+                        )
+                    );
+                }
+            } else
+            if (fe instanceof ClassInstanceCreationReference) {
+                ClassInstanceCreationReference cicr = (ClassInstanceCreationReference) fe;
+
+                // "Type::new" => "new Type(p$0, p$1, ...)".
+                cicr.type.setEnclosingScope(fe.getEnclosingScope());
+                IClass t = this.getType(cicr.type);
+                this.memberUsed(t, "<init>");
+
+                List<IConstructor> constructors = new ArrayList<IConstructor>();
+                for (IConstructor c : t.getDeclaredIConstructors()) {
+                    if (c.getParameterTypes().length == samPts.length) constructors.add(c);
+                }
+
+                body = new NewClassInstance(
+                    loc,                                               // location
+                    null,                                              // optionalQualification
+                    new SimpleType(loc, t),                            // type
+                    this.adaptArguments(args, 0, samPts, constructors) // arguments
+                );
+            } else
+            {
+                ArrayCreationReference acr = (ArrayCreationReference) fe;
+
+                // "Type[]::new" => "new Type[p$0]".
+                if (samPts.length != 1) {
+                    throw UnitCompiler.compileException(
+                        fe,
+                        "Array creation reference requires a function type with exactly one parameter"
+                    );
+                }
+                acr.type.setEnclosingScope(fe.getEnclosingScope());
+                IClass componentType = this.getType(acr.type).getComponentType();
+                assert componentType != null;
+
+                Rvalue length = args[0];
+                if (!samPts[0].isPrimitive()) {
+                    length = new Cast(loc, new SimpleType(loc, this.iClassLoader.TYPE_java_lang_Integer), length);
+                }
+
+                body = new NewArray(
+                    loc,                                // location
+                    new SimpleType(loc, componentType), // type
+                    new Rvalue[] { length },            // dimExprs
+                    0                                   // dims
+                );
+            }
+
+            le = new LambdaExpression(loc, new InferredLambdaParameters(names), new ExpressionLambdaBody(body));
+        }
+
+        // Determine the parameters of the lambda expression; their types are those of the function type, unless
+        // declared explicitly.
+        FormalParameter[] lambdaParameters;
+        boolean           variableArity = false;
+        if (le.parameters instanceof FormalLambdaParameters) {
+            FormalParameters fps = ((FormalLambdaParameters) le.parameters).formalParameters;
+            lambdaParameters = fps.parameters;
+            variableArity    = fps.variableArity;
+        } else
+        {
+            String[] names = (
+                le.parameters instanceof IdentifierLambdaParameters
+                ? new String[] { ((IdentifierLambdaParameters) le.parameters).identifier }
+                : ((InferredLambdaParameters) le.parameters).names
+            );
+            lambdaParameters = new FormalParameter[names.length];
+            for (int i = 0; i < names.length && i < samPts.length; i++) {
+                lambdaParameters[i] = new FormalParameter(
+                    loc,                            // location
+                    new Modifier[0],                // modifiers
+                    new SimpleType(loc, samPts[i]), // type
+                    names[i]                        // name
+                );
+            }
+        }
+        if (lambdaParameters.length != samPts.length) {
+            throw UnitCompiler.compileException(
+                fe,
+                "Lambda expression has "
+                + lambdaParameters.length
+                + " parameter(s), but the function type \""
+                + sam
+                + "\" has "
+                + samPts.length
+            );
+        }
+
+        // Determine the local variables that the lambda expression captures (JLS8 15.27.2).
+        List<LocalVariable>   capturedVariables = new ArrayList<LocalVariable>();
+        List<FormalParameter> parameters        = new ArrayList<FormalParameter>();
+        if (boundReceiverType != null) {
+            parameters.add(new FormalParameter(
+                loc,                                        // location
+                UnitCompiler.accessModifiers(loc, "final"), // modifiers
+                new SimpleType(loc, boundReceiverType),     // type
+                "rec$"                                      // name
+            ));
+        }
+        if (fe instanceof LambdaExpression) {
+            for (Entry<String, LocalVariable> e : UnitCompiler.getReferencedLocalVariables(le).entrySet()) {
+                String        name = (String) e.getKey();
+                LocalVariable lv   = (LocalVariable) e.getValue();
+
+                if (!lv.finaL && !UnitCompiler.isEffectivelyFinal(lv, tbd)) {
+                    this.compileError(
+                        "Local variable \""
+                        + name
+                        + "\" is used in a lambda expression, but is neither final nor effectively final",
+                        loc
+                    );
+                }
+
+                capturedVariables.add(lv);
+                parameters.add(new FormalParameter(
+                    loc,                                        // location
+                    UnitCompiler.accessModifiers(loc, "final"), // modifiers
+                    new SimpleType(loc, lv.type),               // type
+                    name                                        // name
+                ));
+            }
+        }
+        parameters.addAll(Arrays.asList(lambdaParameters));
+
+        // Determine the body of the synthetic method.
+        List<BlockStatement> statements;
+        if (le.body instanceof BlockLambdaBody) {
+            statements = Collections.<BlockStatement>singletonList(((BlockLambdaBody) le.body).block);
+        } else
+        {
+            Rvalue expression = ((ExpressionLambdaBody) le.body).expression;
+            statements = Collections.<BlockStatement>singletonList(
+                sam.getReturnType() == IClass.VOID
+                ? new ExpressionStatement(expression)
+                : new ReturnStatement(loc, expression)
+            );
+        }
+
+        IClass[] thrownExceptions = sam.getThrownExceptions();
+        Type[]   tes              = new Type[thrownExceptions.length];
+        for (int i = 0; i < tes.length; i++) tes[i] = new SimpleType(loc, thrownExceptions[i]);
+
+        MethodDeclarator md = new MethodDeclarator(
+            loc,                                       // location
+            null,                                      // optionalDocComment
+            (                                          // modifiers
+                isStatic
+                ? UnitCompiler.accessModifiers(loc, "private", "static")
+                : UnitCompiler.accessModifiers(loc, "private")
+            ),
+            null,                                      // optionalTypeParameters
+            new SimpleType(loc, sam.getReturnType()),  // type
+            "lambda$" + this.syntheticLambdaCount++,   // name
+            new FormalParameters(                      // formalParameters
+                loc,
+                (FormalParameter[]) parameters.toArray(new FormalParameter[parameters.size()]),
+                variableArity
+            ),
+            tes,                                       // thrownExceptions
+            null,                                      // defaultValue
+            statements                                 // optionalStatements
+        );
+        ((AbstractClassDeclaration) td).addDeclaredMethod(md);
+
+        // Explicitly declared parameter types must match those of the function type.
+        for (int i = 0; i < samPts.length; i++) {
+            IClass pt = this.getType(lambdaParameters[i].type);
+            if (pt != samPts[i] && (pt.isPrimitive() || !samPts[i].isAssignableFrom(pt))) {
+                this.compileError(
+                    "Type \""
+                    + pt
+                    + "\" of lambda parameter \""
+                    + lambdaParameters[i].name
+                    + "\" is incompatible with \""
+                    + samPts[i]
+                    + "\"",
+                    lambdaParameters[i].getLocation()
+                );
+            }
+        }
+
+        return new SyntheticLambda(
+            md,
+            boundReceiver,
+            (LocalVariable[]) capturedVariables.toArray(new LocalVariable[capturedVariables.size()])
+        );
+    }
+
+    /**
+     * @return The methods of the <var>type</var> with the given name, arity and staticness
+     */
+    private static List<IMethod>
+    getIMethods(IClass type, String methodName, int arity, boolean statiC) throws CompileException {
+        List<IMethod> result = new ArrayList<IMethod>();
+        for (IMethod m : type.getIMethods()) {
+            if (
+                m.getName().equals(methodName)
+                && m.getParameterTypes().length == arity
+                && m.isStatic() == statiC
+            ) result.add(m);
+        }
+        return result;
+    }
+
+    /**
+     * Iff there is exactly one invocation candidate, then casts the arguments of a desugared method reference to
+     * its parameter types, because JANINO infers the types of the lambda parameters from the <em>erased</em> function
+     * type.
+     *
+     * @param args   The arguments, starting at index <var>offset</var>
+     * @param samPts The types of <var>args</var>
+     */
+    private Rvalue[]
+    adaptArguments(Rvalue[] args, int offset, IClass[] samPts, List<? extends IInvocable> candidates)
+    throws CompileException {
+
+        Rvalue[] result = new Rvalue[args.length - offset];
+        for (int i = 0; i < result.length; i++) {
+            Rvalue arg = args[offset + i];
+            if (candidates.size() == 1) {
+                IClass pt = ((IInvocable) candidates.get(0)).getParameterTypes()[i];
+                IClass at = samPts[offset + i];
+                if (!at.isPrimitive() && !pt.isAssignableFrom(at)) {
+                    IClass ct = pt.isPrimitive() ? this.isBoxingConvertible(pt) : pt;
+                    if (ct != null) arg = new Cast(arg.getLocation(), new SimpleType(arg.getLocation(), ct), arg);
+                }
+            }
+            result[i] = arg;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The local variables of the enclosing scopes that the body of the lambda expression (including nested
+     *         lambda expressions, method references and local and anonymous classes) refers to, keyed by their names
+     */
+    private static Map<String, LocalVariable>
+    getReferencedLocalVariables(LambdaExpression le) {
+
+        final Map<String, LocalVariable> result = new LinkedHashMap<String, LocalVariable>();
+
+        new LocalVariableResolver() {
+
+            @Override public void
+            traverseAmbiguousName(AmbiguousName an) {
+                LocalVariable lv = this.resolve(an);
+                if (lv != null && !result.containsKey(an.identifiers[0])) result.put(an.identifiers[0], lv);
+                super.traverseAmbiguousName(an);
+            }
+        }.traverseLambdaExpression(le);
+
+        return result;
+    }
+
+    /**
+     * Approximates JLS8 4.12.4: A local variable or parameter that is declared with an initializer is "effectively
+     * final" iff it is never assigned. One that is declared without an initializer is effectively final iff it is
+     * assigned only through simple assignments. (Without a definite unassignment analysis, JANINO cannot verify that
+     * the variable is unassigned before each of these.)
+     *
+     * @param tbd The type body declaration that declares <var>lv</var>
+     */
+    private static boolean
+    isEffectivelyFinal(final LocalVariable lv, TypeBodyDeclaration tbd) {
+
+        final boolean[] declaredWithoutInitializer = new boolean[1];
+        final boolean[] simplyAssigned             = new boolean[1];
+        final boolean[] otherwiseModified          = new boolean[1];
+        new LocalVariableResolver() {
+
+            @Override public void
+            traverseLocalVariableDeclarationStatement(LocalVariableDeclarationStatement lvds) {
+                Map<String, LocalVariable> lvs = lvds.localVariables;
+                for (VariableDeclarator vd : lvds.variableDeclarators) {
+                    if (vd.optionalInitializer == null && lvs != null && lvs.get(vd.name) == lv) {
+                        declaredWithoutInitializer[0] = true;
+                    }
+                }
+                super.traverseLocalVariableDeclarationStatement(lvds);
+            }
+
+            @Override public void
+            traverseAssignment(Assignment a) {
+                if (this.isAccessOf(a.lhs, lv)) {
+                    if (a.operator == "=") { // SUPPRESS CHECKSTYLE StringLiteralEquality
+                        simplyAssigned[0] = true;
+                    } else {
+                        otherwiseModified[0] = true;
+                    }
+                }
+                super.traverseAssignment(a);
+            }
+
+            @Override public void
+            traverseCrement(Crement c) {
+                if (this.isAccessOf(c.operand, lv)) otherwiseModified[0] = true;
+                super.traverseCrement(c);
+            }
+        }.visitTypeBodyDeclaration(tbd);
+
+        return !otherwiseModified[0] && (!simplyAssigned[0] || declaredWithoutInitializer[0]);
+    }
+
+    /**
+     * Traverses an AST subtree and resolves simple names to the {@link LocalVariable}s that they designate.
+     * <p>
+     *   The statements in the bodies of lambda expressions and of local and anonymous classes get their local
+     *   variable maps only when these bodies are compiled. Therefore the traverser keeps track of the variables,
+     *   parameters and fields that these bodies declare, and resolves all other names against the local variable
+     *   map of the statement that encloses the outermost such body.
+     * </p>
+     */
+    private static
+    class LocalVariableResolver extends AbstractTraverser<RuntimeException> {
+
+        /**
+         * The names declared in the scopes within the current lambda or class body, innermost scope first.
+         */
+        private final LinkedList<Set<String>> scopes = new LinkedList<Set<String>>();
+
+        /**
+         * The nesting depth of lambda and class bodies; zero iff the local variable maps are available.
+         */
+        private int nesting;
+
+        /**
+         * The statement that encloses the outermost lambda or class body.
+         */
+        @Nullable private BlockStatement outerStatement;
+
+        /**
+         * @return The local variable that the first identifier of <var>an</var> designates, or {@code null}
+         */
+        @Nullable protected LocalVariable
+        resolve(AmbiguousName an) {
+            String name = an.identifiers[0];
+
+            if (this.nesting == 0) {
+                BlockStatement bs = LocalVariableResolver.enclosingBlockStatement(an.getEnclosingScope());
+                return bs == null ? null : bs.findLocalVariable(name);
+            }
+
+            for (Set<String> declaredNames : this.scopes) {
+                if (declaredNames.contains(name)) return null;
+            }
+            return this.outerStatement == null ? null : this.outerStatement.findLocalVariable(name);
+        }
+
+        /**
+         * @return Whether <var>rv</var> is a simple name that designates the local variable <var>lv</var>
+         */
+        protected boolean
+        isAccessOf(Rvalue rv, LocalVariable lv) {
+            while (rv instanceof ParenthesizedExpression) rv = ((ParenthesizedExpression) rv).value;
+            return (
+                rv instanceof AmbiguousName
+                && ((AmbiguousName) rv).identifiers.length == 1
+                && this.resolve((AmbiguousName) rv) == lv
+            );
+        }
+
+        @Override public void
+        traverseLambdaExpression(LambdaExpression le) {
+            this.enterBody(le.getEnclosingScope());
+
+            if (le.parameters instanceof IdentifierLambdaParameters) {
+                this.declare(((IdentifierLambdaParameters) le.parameters).identifier);
+            } else
+            if (le.parameters instanceof InferredLambdaParameters) {
+                for (String name : ((InferredLambdaParameters) le.parameters).names) this.declare(name);
+            } else
+            {
+                for (FormalParameter fp : ((FormalLambdaParameters) le.parameters).formalParameters.parameters) {
+                    this.declare(fp.name);
+                }
+            }
+            UnitCompiler.traverseLambdaBody(le, this);
+
+            this.leaveBody();
+            super.traverseLambdaExpression(le);
+        }
+
+        @Override public void
+        traverseMethodReference(MethodReference mr) {
+            this.visitAtom(mr.lhs);
+            super.traverseMethodReference(mr);
+        }
+
+        @Override public void
+        traverseAnonymousClassDeclaration(AnonymousClassDeclaration acd) {
+            this.enterBody(acd.getEnclosingScope());
+            super.traverseAnonymousClassDeclaration(acd);
+            this.leaveBody();
+        }
+
+        @Override public void
+        traverseLocalClassDeclaration(LocalClassDeclaration lcd) {
+            this.enterBody(lcd.getEnclosingScope());
+            super.traverseLocalClassDeclaration(lcd);
+            this.leaveBody();
+        }
+
+        @Override public void
+        traverseClassDeclaration(AbstractClassDeclaration cd) {
+            this.enterScope();
+            for (BlockStatement bs : cd.variableDeclaratorsAndInitializers) {
+                if (!(bs instanceof FieldDeclaration)) continue;
+                for (VariableDeclarator vd : ((FieldDeclaration) bs).variableDeclarators) this.declare(vd.name);
+            }
+            super.traverseClassDeclaration(cd);
+            this.leaveScope();
+        }
+
+        @Override public void
+        traverseConstructorDeclarator(ConstructorDeclarator cd) {
+            this.enterScope();
+            for (FormalParameter fp : cd.formalParameters.parameters) this.declare(fp.name);
+            super.traverseConstructorDeclarator(cd);
+            this.leaveScope();
+        }
+
+        @Override public void
+        traverseFunctionDeclarator(FunctionDeclarator fd) {
+            this.enterScope();
+            for (FormalParameter fp : fd.formalParameters.parameters) this.declare(fp.name);
+            super.traverseFunctionDeclarator(fd);
+            this.leaveScope();
+        }
+
+        @Override public void
+        traverseBlock(Block b) {
+            this.enterScope();
+            super.traverseBlock(b);
+            this.leaveScope();
+        }
+
+        @Override public void
+        traverseForStatement(ForStatement fs) {
+            this.enterScope();
+            super.traverseForStatement(fs);
+            this.leaveScope();
+        }
+
+        @Override public void
+        traverseForEachStatement(ForEachStatement fes) {
+            this.enterScope();
+            this.declare(fes.currentElement.name);
+            super.traverseForEachStatement(fes);
+            this.leaveScope();
+        }
+
+        @Override public void
+        traverseSwitchStatement(SwitchStatement ss) {
+            this.enterScope();
+            super.traverseSwitchStatement(ss);
+            this.leaveScope();
+        }
+
+        @Override public void
+        traverseTryStatement(TryStatement ts) {
+
+            // Resource variables are in scope in the resource specification and the body, but not in the CATCH
+            // clauses.
+            this.enterScope();
+            for (TryStatement.Resource r : ts.resources) {
+                if (r instanceof LocalVariableDeclaratorResource) {
+                    this.traverseLocalVariableDeclaratorResource((LocalVariableDeclaratorResource) r);
+                    this.declare(((LocalVariableDeclaratorResource) r).variableDeclarator.name);
+                } else
+                {
+                    this.traverseVariableAccessResource((VariableAccessResource) r);
+                }
+            }
+            this.visitBlockStatement(ts.body);
+            this.leaveScope();
+
+            for (CatchClause cc : ts.catchClauses) {
+                this.enterScope();
+                this.declare(cc.catchParameter.name);
+                this.visitBlockStatement(cc.body);
+                this.leaveScope();
+            }
+            if (ts.finallY != null) this.visitBlockStatement(ts.finallY);
+            this.traverseStatement(ts);
+        }
+
+        @Override public void
+        traverseLocalVariableDeclarationStatement(LocalVariableDeclarationStatement lvds) {
+            for (VariableDeclarator vd : lvds.variableDeclarators) this.declare(vd.name);
+            super.traverseLocalVariableDeclarationStatement(lvds);
+        }
+
+        private void
+        enterBody(@Nullable Scope enclosingScope) {
+            if (this.nesting++ == 0) {
+                this.outerStatement = LocalVariableResolver.enclosingBlockStatement(enclosingScope);
+            }
+            this.enterScope();
+        }
+
+        private void
+        leaveBody() {
+            this.leaveScope();
+            if (--this.nesting == 0) this.outerStatement = null;
+        }
+
+        // Outside of lambda and class bodies, scopes are not tracked, because the local variable maps are available.
+
+        private void
+        enterScope() { if (this.nesting > 0) this.scopes.addFirst(new HashSet<String>()); }
+
+        private void
+        leaveScope() { if (this.nesting > 0) this.scopes.removeFirst(); }
+
+        private void
+        declare(String name) { if (this.nesting > 0) ((Set<String>) this.scopes.getFirst()).add(name); }
+
+        @Nullable private static BlockStatement
+        enclosingBlockStatement(@Nullable Scope s) {
+            while (s != null && !(s instanceof BlockStatement)) {
+                if (s instanceof TypeBodyDeclaration || s instanceof CompilationUnit) return null;
+                s = s.getEnclosingScope();
+            }
+            return (BlockStatement) s;
+        }
+    }
+
+    private static <EX extends Throwable> void
+    traverseLambdaBody(LambdaExpression le, AbstractTraverser<EX> traverser) throws EX {
+        if (le.body instanceof BlockLambdaBody) {
+            traverser.visitBlockStatement(((BlockLambdaBody) le.body).block);
+        } else
+        {
+            traverser.visitAtom(((ExpressionLambdaBody) le.body).expression);
+        }
+    }
+
+    /**
+     * @return Whether the lambda expression or method reference <var>fe</var> is "potentially compatible" with the
+     *         <var>targetType</var> (JLS8 15.12.2.1)
+     */
+    private boolean
+    isPotentiallyCompatible(Rvalue fe, IClass targetType) throws CompileException {
+
+        IMethod[] fims = this.getFunctionalInterfaceMethods(targetType);
+        if (fims == null) return false;
+        IMethod sam = fims[0];
+
+        if (fe instanceof ArrayCreationReference) return sam.getParameterTypes().length == 1;
+
+        if (!(fe instanceof LambdaExpression)) return true;
+        LambdaExpression le = (LambdaExpression) fe;
 
-    private IClass
-    compileGet2(FieldAccess fa) throws CompileException {
-        this.checkAccessible(fa.field, fa.getEnclosingScope(), fa.getLocation());
-        this.getfield(fa, fa.field);
-        return fa.field.getType();
-    }
+        int arity;
+        if (le.parameters instanceof IdentifierLambdaParameters) {
+            arity = 1;
+        } else
+        if (le.parameters instanceof InferredLambdaParameters) {
+            arity = ((InferredLambdaParameters) le.parameters).names.length;
+        } else
+        {
+            arity = ((FormalLambdaParameters) le.parameters).formalParameters.parameters.length;
+        }
+        if (arity != sam.getParameterTypes().length) return false;
 
-    private IClass
-    compileGet2(ArrayLength al) {
-        this.writeOpcode(al, Opcode.ARRAYLENGTH);
-        return IClass.INT;
-    }
+        boolean isVoid = sam.getReturnType() == IClass.VOID;
 
-    private IClass
-    compileGet2(ThisReference tr) throws CompileException {
-        this.referenceThis(tr);
-        return this.getIClass(tr);
-    }
+        // An expression body is compatible with a void function type only if it is a statement expression.
+        if (le.body instanceof ExpressionLambdaBody) {
+            if (!isVoid) return true;
+            Rvalue e = ((ExpressionLambdaBody) le.body).expression;
+            return (
+                e instanceof Assignment
+                || e instanceof Crement
+                || e instanceof MethodInvocation
+                || e instanceof SuperclassMethodInvocation
+                || e instanceof NewClassInstance
+                || e instanceof NewAnonymousClassInstance
+            );
+        }
 
-    @SuppressWarnings("static-method") private IClass
-    compileGet2(LambdaExpression le) throws CompileException {
-        throw UnitCompiler.compileException(le, "Compilation of lambda expression NYI");
-    }
+        // A block body is "void-compatible" iff every return statement has no expression, and "value-compatible" iff
+        // it cannot complete normally and every return statement has an expression. (The latter is approximated by
+        // checking the last statement.)
+        final boolean[] hasReturnWithValue    = new boolean[1];
+        final boolean[] hasReturnWithoutValue = new boolean[1];
+        Block           block                 = ((BlockLambdaBody) le.body).block;
+        new AbstractTraverser<RuntimeException>() {
 
-    @SuppressWarnings("static-method") private IClass
-    compileGet2(MethodReference mr) throws CompileException {
-        throw UnitCompiler.compileException(mr, "Compilation of method reference NYI");
-    }
+            @Override public void
+            traverseReturnStatement(ReturnStatement rs) {
+                if (rs.optionalReturnValue != null) {
+                    hasReturnWithValue[0] = true;
+                } else {
+                    hasReturnWithoutValue[0] = true;
+                }
+            }
 
-    @SuppressWarnings("static-method") private IClass
-    compileGet2(ClassInstanceCreationReference cicr) throws CompileException {
-        throw UnitCompiler.compileException(cicr, "Compilation of class instance creation reference NYI");
-    }
+            // Do not descend into anonymous and local classes.
+            @Override public void
+            traverseAnonymousClassDeclaration(AnonymousClassDeclaration acd) {}
 
-    @SuppressWarnings("static-method") private IClass
-    compileGet2(ArrayCreationReference acr) throws CompileException {
-        throw UnitCompiler.compileException(acr, "Compilation of array creation reference NYI");
+            @Override public void
+            traverseLocalClassDeclarationStatement(LocalClassDeclarationStatement lcds) {}
+        }.visitBlockStatement(block);
+
+        if (isVoid) return !hasReturnWithValue[0];
+
+        if (hasReturnWithoutValue[0]) return false;
+        if (hasReturnWithValue[0]) return true;
+        return (
+            !block.statements.isEmpty()
+            && block.statements.get(block.statements.size() - 1) instanceof ThrowStatement
+        );
     }
 
     private IClass
@@ -4619,8 +6132,8 @@ class UnitCompiler {
     compileGet2(Assignment a) throws CompileException {
         if (a.operator == "=") { // SUPPRESS CHECKSTYLE StringLiteralEquality
             int    lhsCs   = this.compileContext(a.lhs);
-            IClass rhsType = this.compileGetValue(a.rhs);
             IClass lhsType = this.getType(a.lhs);
+            IClass rhsType = this.compileGetValue(a.rhs, lhsType);
             Object rhsCv   = this.getConstantValue(a.rhs);
             this.assignmentConversion(a, rhsType, lhsType, rhsCv);
             this.dupx(a, lhsType, lhsCs);
@@ -5012,7 +6525,7 @@ class UnitCompiler {
 
         // JLS7 5.5 Casting Conversion.
         IClass tt = this.getType(c.targetType);
-        IClass vt = this.compileGetValue(c.value);
+        IClass vt = this.compileGetValue(c.value, tt);
         if (
             this.tryIdentityConversion(vt, tt)
             || this.tryWideningPrimitiveConversion(c, vt, tt)
@@ -5149,7 +6662,7 @@ class UnitCompiler {
         IClass[]  parameterTypes = iMethod.getParameterTypes();
         Rvalue[]  adjustedArgs   = null;
         final int actualSize     = mi.arguments.length;
-        if (iMethod.isVarargs() && iMethod.argsNeedAdjust()) {
+        if (iMethod.isVarargs() && this.varargsArgsNeedAdjust.contains(iMethod)) {
             adjustedArgs = new Rvalue[parameterTypes.length];
             Rvalue[]       lastArgs = new Rvalue[actualSize - parameterTypes.length + 1];
             final Location loc      = mi.getLocation();
@@ -5174,10 +6687,10 @@ class UnitCompiler {
 
         for (int i = 0; i < adjustedArgs.length; ++i) {
             this.assignmentConversion(
-                mi,                                    // location
-                this.compileGetValue(adjustedArgs[i]), // sourceType
-                parameterTypes[i],                     // targetType
-                this.getConstantValue(adjustedArgs[i]) // optionalConstantValue
+                mi,                                                       // location
+                this.compileGetValue(adjustedArgs[i], parameterTypes[i]), // sourceType
+                parameterTypes[i],                                        // targetType
+                this.getConstantValue(adjustedArgs[i])                    // optionalConstantValue
             );
         }
 
@@ -5325,10 +6838,10 @@ class UnitCompiler {
         IClass[] parameterTypes = iMethod.getParameterTypes();
         for (int i = 0; i < scmi.arguments.length; ++i) {
             this.assignmentConversion(
-                scmi,                                    // locatable
-                this.compileGetValue(scmi.arguments[i]), // sourceType
-                parameterTypes[i],                       // targetType
-                this.getConstantValue(scmi.arguments[i]) // optionalConstantValue
+                scmi,                                                       // locatable
+                this.compileGetValue(scmi.arguments[i], parameterTypes[i]), // sourceType
+                parameterTypes[i],                                          // targetType
+                this.getConstantValue(scmi.arguments[i])                    // optionalConstantValue
             );
         }
 
@@ -5447,6 +6960,7 @@ class UnitCompiler {
         IClass sc = this.resolve(acd).getSuperclass();
         assert sc != null;
 
+        this.memberUsed(sc, "<init>");
         IClass.IConstructor[] superclassIConstructors = sc.getDeclaredIConstructors();
         if (superclassIConstructors.length == 0) {
             throw new InternalCompilerException("SNO: Superclass has no constructors");
@@ -5640,10 +7154,10 @@ class UnitCompiler {
             if (aiorv instanceof Rvalue) {
                 Rvalue rv = (Rvalue) aiorv;
                 this.assignmentConversion(
-                    ai,                       // locatable
-                    this.compileGetValue(rv), // sourceType
-                    ct,                       // targetType
-                    this.getConstantValue(rv) // optionalConstantValue
+                    ai,                           // locatable
+                    this.compileGetValue(rv, ct), // sourceType
+                    ct,                           // targetType
+                    this.getConstantValue(rv)     // optionalConstantValue
                 );
             } else
             if (aiorv instanceof ArrayInitializer) {
@@ -5684,6 +7198,40 @@ class UnitCompiler {
         return this.compileGet(rv);
     }
 
+    /**
+     * Like {@link #compileGetValue(Rvalue)}, but iff <var>rv</var> is a lambda expression or a method reference,
+     * then <var>targetType</var> becomes its type (JLS8 15.27.3, 15.13.2).
+     */
+    private IClass
+    compileGetValue(Rvalue rv, IClass targetType) throws CompileException {
+        this.setTargetType(rv, targetType);
+        return this.compileGetValue(rv);
+    }
+
+    private void
+    setTargetType(Rvalue rv, IClass targetType) {
+        if (rv instanceof ParenthesizedExpression) {
+            this.setTargetType(((ParenthesizedExpression) rv).value, targetType);
+        } else
+        if (rv instanceof ConditionalExpression) {
+            this.setTargetType(((ConditionalExpression) rv).mhs, targetType);
+            this.setTargetType(((ConditionalExpression) rv).rhs, targetType);
+        } else
+        if (UnitCompiler.isFunctionalExpression(rv)) {
+            this.functionalExpressionTargetTypes.put(rv, targetType);
+        }
+    }
+
+    private static boolean
+    isFunctionalExpression(Rvalue rv) {
+        return (
+            rv instanceof LambdaExpression
+            || rv instanceof MethodReference
+            || rv instanceof ClassInstanceCreationReference
+            || rv instanceof ArrayCreationReference
+        );
+    }
+
     // -------------------- Rvalue.getConstantValue() -----------------
 
     /**
@@ -6359,53 +7907,97 @@ class UnitCompiler {
      *   #leave(BlockStatement, IClass)} that require a specific operand stack state (e.g. an empty operand stack for
      *   JSR).
      * </p>
+     *
+     * @return Whether the code after the statement is reachable; {@code false} iff an inlined FINALLY clause cannot
+     *         complete normally
      */
-    private void
-    leave(BlockStatement bs, @Nullable final IClass optionalStackValueType) {
-        BlockStatementVisitor<Void, RuntimeException> bsv = new BlockStatementVisitor<Void, RuntimeException>() {
+    private boolean
+    leave(BlockStatement bs, @Nullable final IClass optionalStackValueType) throws CompileException {
+        BlockStatementVisitor<Boolean, CompileException>
+        bsv = new BlockStatementVisitor<Boolean, CompileException>() {
 
             // SUPPRESS CHECKSTYLE LineLengthCheck:23
-            @Override @Nullable public Void visitInitializer(Initializer i)                                                { UnitCompiler.this.leave2(i,    optionalStackValueType); return null; }
-            @Override @Nullable public Void visitFieldDeclaration(FieldDeclaration fd)                                     { UnitCompiler.this.leave2(fd,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitLabeledStatement(LabeledStatement ls)                                     { UnitCompiler.this.leave2(ls,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitBlock(Block b)                                                            { UnitCompiler.this.leave2(b,    optionalStackValueType); return null; }
-            @Override @Nullable public Void visitExpressionStatement(ExpressionStatement es)                               { UnitCompiler.this.leave2(es,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitIfStatement(IfStatement is)                                               { UnitCompiler.this.leave2(is,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitForStatement(ForStatement fs)                                             { UnitCompiler.this.leave2(fs,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitForEachStatement(ForEachStatement fes)                                    { UnitCompiler.this.leave2(fes,  optionalStackValueType); return null; }
-            @Override @Nullable public Void visitWhileStatement(WhileStatement ws)                                         { UnitCompiler.this.leave2(ws,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitTryStatement(TryStatement ts)                                             { UnitCompiler.this.leave2(ts,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitSwitchStatement(SwitchStatement ss)                                       { UnitCompiler.this.leave2(ss,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitSynchronizedStatement(SynchronizedStatement ss)                           { UnitCompiler.this.leave2(ss,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitDoStatement(DoStatement ds)                                               { UnitCompiler.this.leave2(ds,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitLocalVariableDeclarationStatement(LocalVariableDeclarationStatement lvds) { UnitCompiler.this.leave2(lvds, optionalStackValueType); return null; }
-            @Override @Nullable public Void visitReturnStatement(ReturnStatement rs)                                       { UnitCompiler.this.leave2(rs,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitThrowStatement(ThrowStatement ts)                                         { UnitCompiler.this.leave2(ts,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitBreakStatement(BreakStatement bs)                                         { UnitCompiler.this.leave2(bs,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitContinueStatement(ContinueStatement cs)                                   { UnitCompiler.this.leave2(cs,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitAssertStatement(AssertStatement as)                                       { UnitCompiler.this.leave2(as,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitEmptyStatement(EmptyStatement es)                                         { UnitCompiler.this.leave2(es,   optionalStackValueType); return null; }
-            @Override @Nullable public Void visitLocalClassDeclarationStatement(LocalClassDeclarationStatement lcds)       { UnitCompiler.this.leave2(lcds, optionalStackValueType); return null; }
-            @Override @Nullable public Void visitAlternateConstructorInvocation(AlternateConstructorInvocation aci)        { UnitCompiler.this.leave2(aci,  optionalStackValueType); return null; }
-            @Override @Nullable public Void visitSuperConstructorInvocation(SuperConstructorInvocation sci)                { UnitCompiler.this.leave2(sci,  optionalStackValueType); return null; }
+            @Override public Boolean visitInitializer(Initializer i)                                                { return UnitCompiler.this.leave2(i,    optionalStackValueType); }
+            @Override public Boolean visitFieldDeclaration(FieldDeclaration fd)                                     { return UnitCompiler.this.leave2(fd,   optionalStackValueType); }
+            @Override public Boolean visitLabeledStatement(LabeledStatement ls)                                     { return UnitCompiler.this.leave2(ls,   optionalStackValueType); }
+            @Override public Boolean visitBlock(Block b)                                                            { return UnitCompiler.this.leave2(b,    optionalStackValueType); }
+            @Override public Boolean visitExpressionStatement(ExpressionStatement es)                               { return UnitCompiler.this.leave2(es,   optionalStackValueType); }
+            @Override public Boolean visitIfStatement(IfStatement is)                                               { return UnitCompiler.this.leave2(is,   optionalStackValueType); }
+            @Override public Boolean visitForStatement(ForStatement fs)                                             { return UnitCompiler.this.leave2(fs,   optionalStackValueType); }
+            @Override public Boolean visitForEachStatement(ForEachStatement fes)                                    { return UnitCompiler.this.leave2(fes,  optionalStackValueType); }
+            @Override public Boolean visitWhileStatement(WhileStatement ws)                                         { return UnitCompiler.this.leave2(ws,   optionalStackValueType); }
+            @Override public Boolean visitTryStatement(TryStatement ts) throws CompileException                     { return UnitCompiler.this.leave2(ts,   optionalStackValueType); }
+            @Override public Boolean visitSwitchStatement(SwitchStatement ss)                                       { return UnitCompiler.this.leave2(ss,   optionalStackValueType); }
+            @Override public Boolean visitSynchronizedStatement(SynchronizedStatement ss)                           { return UnitCompiler.this.leave2(ss,   optionalStackValueType); }
+            @Override public Boolean visitDoStatement(DoStatement ds)                                               { return UnitCompiler.this.leave2(ds,   optionalStackValueType); }
+            @Override public Boolean visitLocalVariableDeclarationStatement(LocalVariableDeclarationStatement lvds) { return UnitCompiler.this.leave2(lvds, optionalStackValueType); }
+            @Override public Boolean visitReturnStatement(ReturnStatement rs)                                       { return UnitCompiler.this.leave2(rs,   optionalStackValueType); }
+            @Override public Boolean visitThrowStatement(ThrowStatement ts)                                         { return UnitCompiler.this.leave2(ts,   optionalStackValueType); }
+            @Override public Boolean visitBreakStatement(BreakStatement bs)                                         { return UnitCompiler.this.leave2(bs,   optionalStackValueType); }
+            @Override public Boolean visitContinueStatement(ContinueStatement cs)                                   { return UnitCompiler.this.leave2(cs,   optionalStackValueType); }
+            @Override public Boolean visitAssertStatement(AssertStatement as)                                       { return UnitCompiler.this.leave2(as,   optionalStackValueType); }
+            @Override public Boolean visitEmptyStatement(EmptyStatement es)                                         { return UnitCompiler.this.leave2(es,   optionalStackValueType); }
+            @Override public Boolean visitLocalClassDeclarationStatement(LocalClassDeclarationStatement lcds)       { return UnitCompiler.this.leave2(lcds, optionalStackValueType); }
+            @Override public Boolean visitAlternateConstructorInvocation(AlternateConstructorInvocation aci)        { return UnitCompiler.this.leave2(aci,  optionalStackValueType); }
+            @Override public Boolean visitSuperConstructorInvocation(SuperConstructorInvocation sci)                { return UnitCompiler.this.leave2(sci,  optionalStackValueType); }
         };
-        bs.accept(bsv);
+
+        Boolean result = (Boolean) bs.accept(bsv);
+
+        assert result != null;
+        return result;
     }
 
-    private void
-    leave2(BlockStatement bs, @Nullable IClass optionalStackValueType) {}
+    private boolean
+    leave2(BlockStatement bs, @Nullable IClass optionalStackValueType) { return true; }
 
-    private void
+    private boolean
     leave2(SynchronizedStatement ss, @Nullable IClass optionalStackValueType) {
         this.load(ss, this.iClassLoader.TYPE_java_lang_Object, ss.monitorLvIndex);
         this.writeOpcode(ss, Opcode.MONITOREXIT);
+        return true;
     }
 
-    private void
-    leave2(TryStatement ts, @Nullable IClass optionalStackValueType) {
+    private boolean
+    leave2(TryStatement ts, @Nullable IClass optionalStackValueType) throws CompileException {
+
+        BlockStatement inlinedFinally = ts.inlinedFinally;
+        if (inlinedFinally != null) {
+            this.getCodeContext().saveLocalVariables();
+            try {
+                short sv = 0;
+
+                // Save the operand, because an exception handler in the FINALLY clause would clear the operand stack.
+                if (optionalStackValueType != null) {
+                    sv = this.getCodeContext().allocateLocalVariable(
+                        Descriptor.size(optionalStackValueType.getDescriptor())
+                    );
+                    this.store(ts, optionalStackValueType, sv);
+                }
+
+                // Notice: A BREAK, CONTINUE or RETURN statement in the FINALLY clause must not inline it again.
+                CodeContext.Offset beginningOfFinally = this.getCodeContext().newOffset();
+                boolean            canCompleteNormally;
+                ts.inlinedFinally = null;
+                try {
+                    canCompleteNormally = this.compile(inlinedFinally);
+                } finally {
+                    ts.inlinedFinally = inlinedFinally;
+                }
+                ts.inlinedFinallyRanges.add(beginningOfFinally);
+                ts.inlinedFinallyRanges.add(this.getCodeContext().newOffset());
+
+                if (!canCompleteNormally) return false;
+
+                if (optionalStackValueType != null) this.load(ts, optionalStackValueType, sv);
+            } finally {
+                this.getCodeContext().restoreLocalVariables();
+            }
+            return true;
+        }
 
         Offset fo = ts.finallyOffset;
-        if (fo == null) return;
+        if (fo == null) return true;
 
         this.getCodeContext().saveLocalVariables();
         try {
@@ -6428,6 +8020,7 @@ class UnitCompiler {
         } finally {
             this.getCodeContext().restoreLocalVariables();
         }
+        return true;
     }
 
     // ---------------- Lvalue.compileSet() -----------------
@@ -6924,24 +8517,49 @@ class UnitCompiler {
         return this.getIClass(tr);
     }
 
-    @SuppressWarnings("static-method") private IClass
-    getType2(LambdaExpression le) throws CompileException {
-        throw UnitCompiler.compileException(le, "Compilation of lambda expression NYI");
-    }
+    private IClass
+    getType2(LambdaExpression le) throws CompileException { return this.getFunctionalExpressionType(le); }
 
-    @SuppressWarnings("static-method") private IClass
-    getType2(MethodReference mr) throws CompileException {
-        throw UnitCompiler.compileException(mr, "Compilation of method reference NYI");
-    }
+    private IClass
+    getType2(MethodReference mr) throws CompileException { return this.getFunctionalExpressionType(mr); }
 
-    @SuppressWarnings("static-method") private IClass
+    private IClass
     getType2(ClassInstanceCreationReference cicr) throws CompileException {
-        throw UnitCompiler.compileException(cicr, "Compilation of class instance creation reference NYI");
+        return this.getFunctionalExpressionType(cicr);
     }
 
-    @SuppressWarnings("static-method") private IClass
-    getType2(ArrayCreationReference acr) throws CompileException {
-        throw UnitCompiler.compileException(acr, "Compilation of array creation reference NYI");
+    private IClass
+    getType2(ArrayCreationReference acr) throws CompileException { return this.getFunctionalExpressionType(acr); }
+
+    /**
+     * The type of a lambda expression or a method reference is the target type of the assignment, invocation or
+     * casting context that it appears in (JLS8 15.27.3, 15.13.2).
+     */
+    private IClass
+    getFunctionalExpressionType(Rvalue fe) throws CompileException {
+
+        IClass result = (IClass) this.functionalExpressionTargetTypes.get(fe);
+        if (result != null) return result;
+
+        throw UnitCompiler.compileException(
+            fe,
+            "\"" + fe + "\" is not in an assignment, invocation or casting context"
+        );
+    }
+
+    /**
+     * Like {@link #getType(Rvalue)}, but for lambda expressions and method references, which have no type of their
+     * own, returns a placeholder {@link IClass} that is only compatible with functional interfaces.
+     */
+    private IClass
+    getArgumentType(Rvalue argument) throws CompileException {
+
+        Rvalue rv = argument;
+        while (rv instanceof ParenthesizedExpression) rv = ((ParenthesizedExpression) rv).value;
+
+        if (UnitCompiler.isFunctionalExpression(rv)) return new FunctionalExpressionIClass(rv);
+
+        return this.getType(argument);
     }
 
     private IClass
@@ -7650,14 +9268,17 @@ class UnitCompiler {
      * Statements that jump out of blocks ({@code return}, {@code break}, {@code continue}) must call this method to
      * make sure that the {@code finally} clauses of all {@code try ... catch} and {@code synchronized} statements are
      * executed.
+     *
+     * @return Whether the code after the left statements is reachable, i.e. the jump must be generated
      */
-    private void
-    leaveStatements(Scope from, Scope to, @Nullable IClass optionalStackValueType) {
+    private boolean
+    leaveStatements(Scope from, Scope to, @Nullable IClass optionalStackValueType) throws CompileException {
         for (Scope s = from; s != to; s = s.getEnclosingScope()) {
             if (s instanceof BlockStatement) {
-                this.leave((BlockStatement) s, optionalStackValueType);
+                if (!this.leave((BlockStatement) s, optionalStackValueType)) return false;
             }
         }
+        return true;
     }
 
     /**
@@ -7887,9 +9508,6 @@ class UnitCompiler {
         Iterator<Rvalue> operands
     ) throws CompileException {
 
-        // Convert the first operand (which is already on the operand stack) to "String".
-        this.stringConversion(locatable, type);
-
         // Compute list of operands and merge consecutive constant operands.
         List<Rvalue> tmp = new ArrayList<Rvalue>();
         for (Rvalue nextOperand = secondOperand; nextOperand != null;) {
@@ -7935,6 +9553,17 @@ class UnitCompiler {
         // At this point "tmp" contains an optimized sequence of Strings (representing constant portions) and Rvalues
         // (non-constant portions).
 
+        if (
+            this.options.contains(JaninoOption.INDY_STRING_CONCATENATION)
+            && this.getCodeContext().getClassFile().getMajorVersion() >= ClassFile.MAJOR_VERSION_JDK_1_9
+        ) {
+            this.compileIndyStringConcatenation(locatable, type, tmp);
+            return this.iClassLoader.TYPE_java_lang_String;
+        }
+
+        // Convert the first operand (which is already on the operand stack) to "String".
+        this.stringConversion(locatable, type);
+
         if (tmp.size() <= UnitCompiler.STRING_CONCAT_LIMIT - 1) {
 
             // String concatenation through "a.concat(b).concat(c)".
@@ -7979,6 +9608,122 @@ class UnitCompiler {
         return this.iClassLoader.TYPE_java_lang_String;
     }
 
+    /**
+     * Compiles a string concatenation into INVOKEDYNAMIC instructions that are bootstrapped by {@code
+     * StringConcatFactory.makeConcatWithConstants()}. The constant operands go into the "recipe". If the operands
+     * exceed the parameter slots of one call site, then the concatenation is split, and the result of each call
+     * site becomes the first operand of the next.
+     *
+     * @param type     The type of the first operand, which is already on the stack
+     * @param operands The following operands, with consecutive constant operands merged
+     */
+    private void
+    compileIndyStringConcatenation(Locatable locatable, IClass type, List<Rvalue> operands) throws CompileException {
+        ClassFile cf = this.getCodeContext().getClassFile();
+
+        StringBuilder recipe       = new StringBuilder("\1");
+        List<String>  parameterFds = new ArrayList<String>();
+        List<Short>   constants    = new ArrayList<Short>();
+
+        String firstOperandFd = this.stringConcatenationParameterFd(type);
+        parameterFds.add(firstOperandFd);
+        int slots = Descriptor.size(firstOperandFd);
+
+        for (Rvalue operand : operands) {
+
+            Object cv = this.getConstantValue(operand);
+            if (cv != UnitCompiler.NOT_CONSTANT) {
+
+                // Constant operands that contain the recipe's tag characters, or would make the recipe too long
+                // for a CONSTANT_Utf8_info, must be passed as separate constants.
+                String s = String.valueOf(cv);
+                if (s.indexOf('\1') == -1 && s.indexOf('\2') == -1 && recipe.length() + s.length() < 65536 / 3) {
+                    recipe.append(s);
+                } else {
+                    recipe.append('\2');
+                    constants.add(cf.addConstantStringInfo(s));
+                }
+                continue;
+            }
+
+            String operandFd = this.stringConcatenationParameterFd(this.getType(operand));
+            if (slots + Descriptor.size(operandFd) > UnitCompiler.MAX_INDY_CONCAT_ARG_SLOTS) {
+                this.invokeMakeConcatWithConstants(locatable, recipe.toString(), parameterFds, constants);
+
+                recipe.setLength(0);
+                recipe.append('\1');
+                parameterFds.clear();
+                parameterFds.add(Descriptor.JAVA_LANG_STRING);
+                constants.clear();
+                slots = 1;
+            }
+
+            this.compileGetValue(operand);
+            recipe.append('\1');
+            parameterFds.add(operandFd);
+            slots += Descriptor.size(operandFd);
+        }
+
+        this.invokeMakeConcatWithConstants(locatable, recipe.toString(), parameterFds, constants);
+    }
+
+    /**
+     * @return The descriptor of the call site parameter for a string concatenation operand of the given type
+     */
+    private String
+    stringConcatenationParameterFd(IClass type) {
+        return (
+            type == IClass.VOID ? Descriptor.JAVA_LANG_OBJECT : // The type of the NULL literal.
+            type.isPrimitive() || type == this.iClassLoader.TYPE_java_lang_String ? type.getDescriptor() :
+            Descriptor.JAVA_LANG_OBJECT
+        );
+    }
+
+    /**
+     * Writes an INVOKEDYNAMIC instruction that concatenates the values on the operand stack, as described by the
+     * <var>recipe</var>.
+     *
+     * @param recipe       See {@code StringConcatFactory.makeConcatWithConstants()}
+     * @param parameterFds The types of the values on the operand stack
+     * @param constants    The constant pool indexes of the strings that the {@code '\2'} tags of the recipe refer to
+     */
+    private void
+    invokeMakeConcatWithConstants(
+        Locatable    locatable,
+        String       recipe,
+        List<String> parameterFds,
+        List<Short>  constants
+    ) {
+        ClassFile cf = this.getCodeContext().getClassFile();
+
+        short[] bas = new short[1 + constants.size()];
+        bas[0] = cf.addConstantStringInfo(recipe);
+        for (int i = 0; i < constants.size(); i++) bas[i + 1] = (Short) constants.get(i);
+
+        short bootstrapMethodAttrIndex = cf.addBootstrapMethod(
+            cf.addConstantMethodHandleInfo( // bootstrapMethodRef
+                ClassFile.ConstantMethodHandleInfo.REF_invokeStatic,
+                cf.addConstantMethodrefInfo(
+                    UnitCompiler.JAVA_LANG_INVOKE_STRINGCONCATFACTORY,
+                    "makeConcatWithConstants",
+                    UnitCompiler.MAKE_CONCAT_WITH_CONSTANTS_MD.toString()
+                )
+            ),
+            bas                             // bootstrapArguments
+        );
+
+        this.writeOpcode(locatable, Opcode.INVOKEDYNAMIC);
+        this.getCodeContext().writeShort(cf.addConstantInvokeDynamicInfo(
+            bootstrapMethodAttrIndex,  // bootstrapMethodAttrIndex
+            "makeConcatWithConstants", // methodName
+            new MethodDescriptor(      // methodMd
+                Descriptor.JAVA_LANG_STRING,
+                (String[]) parameterFds.toArray(new String[parameterFds.size()])
+            )
+        ));
+        this.getCodeContext().writeShort(0);
+    }
+
     /**
      * Helper interface for string conversion.
      */
@@ -8020,6 +9765,7 @@ class UnitCompiler {
         Rvalue[]         arguments
     ) throws CompileException {
         // Find constructors.
+        this.memberUsed(targetClass, "<init>");
         IClass.IConstructor[] iConstructors = targetClass.getDeclaredIConstructors();
         if (iConstructors.length == 0) {
             throw new InternalCompilerException(
@@ -8212,7 +9958,7 @@ class UnitCompiler {
         Rvalue[] adjustedArgs   = null;
         IClass[] parameterTypes = iConstructor.getParameterTypes();
         int      actualSize     = arguments.length;
-        if (iConstructor.isVarargs() && iConstructor.argsNeedAdjust()) {
+        if (iConstructor.isVarargs() && this.varargsArgsNeedAdjust.contains(iConstructor)) {
             adjustedArgs = new Rvalue[parameterTypes.length];
             Rvalue[] lastArgs = new Rvalue[actualSize - parameterTypes.length + 1];
             for (int i = 0, j = parameterTypes.length - 1; i < lastArgs.length; ++i, ++j) {
@@ -8233,10 +9979,10 @@ class UnitCompiler {
 
         for (int i = 0; i < arguments.length; ++i) {
             this.assignmentConversion(
-                locatable,                          // locatable
-                this.compileGetValue(arguments[i]), // sourceType
-                parameterTypes[i],                  // targetType
-                this.getConstantValue(arguments[i]) // optionalConstantValue
+                locatable,                                             // locatable
+                this.compileGetValue(arguments[i], parameterTypes[i]), // sourceType
+                parameterTypes[i],                                     // targetType
+                this.getConstantValue(arguments[i])                    // optionalConstantValue
             );
         }
 
@@ -8568,6 +10314,7 @@ class UnitCompiler {
             }
         }
 
+        this.typeUsed(lhsType);
         IClass[] classes = lhsType.getDeclaredIClasses();
         for (final IClass memberType : classes) {
             String name = Descriptor.toClassName(memberType.getDescriptor());
@@ -8609,7 +10356,9 @@ class UnitCompiler {
         if (res != null) return res;
 
         try {
-            return this.iClassLoader.loadIClass(Descriptor.fromClassName(className));
+            res = this.iClassLoader.loadIClass(Descriptor.fromClassName(className));
+            if (res != null) this.typeUsed(res);
+            return res;
         } catch (ClassNotFoundException ex) {
             // SUPPRESS CHECKSTYLE AvoidHidingCause
             if (ex.getException() instanceof CompileException) throw (CompileException) ex.getException();
@@ -8951,6 +10700,8 @@ class UnitCompiler {
     importStatic(IClass declaringIClass, String simpleName, Collection<Object> result, Location location)
     throws CompileException {
 
+        this.memberUsed(declaringIClass, simpleName);
+
         // Member type?
         for (IClass memberIClass : declaringIClass.findMemberType(simpleName)) {
             if (memberIClass.getDeclaringIClass() == declaringIClass) result.add(memberIClass);
@@ -9195,6 +10946,8 @@ class UnitCompiler {
     @Nullable private IClass.IMethod
     findIMethod(IClass targetType, Invocation invocation) throws CompileException {
 
+        this.memberUsed(targetType, invocation.methodName);
+
         // Get all methods.
         List<IClass.IMethod> ms = new ArrayList<IClass.IMethod>();
         this.getIMethods(targetType, invocation.methodName, ms);
@@ -9210,18 +10963,20 @@ class UnitCompiler {
         if (ms.size() == 0) return null;
 
         // Determine arguments' types, choose the most specific method.
-        return (IClass.IMethod) this.findMostSpecificIInvocable(
+        IClass.IMethod result = (IClass.IMethod) this.findMostSpecificIInvocable(
             invocation,                                                   // locatable
             (IClass.IMethod[]) ms.toArray(new IClass.IMethod[ms.size()]), // iInvocables
             invocation.arguments,                                         // arguments
             invocation.getEnclosingScope()                                // contextScope
         );
+        this.typeUsed(result.getReturnType());
+        return result;
     }
 
     private IMethod
     fakeIMethod(IClass targetType, final String name, Rvalue[] arguments) throws CompileException {
         final IClass[] pts = new IClass[arguments.length];
-        for (int i = 0; i < arguments.length; ++i) pts[i] = this.getType(arguments[i]);
+        for (int i = 0; i < arguments.length; ++i) pts[i] = this.getArgumentType(arguments[i]);
         return targetType.new IMethod() {
             @Override public IAnnotation[] getAnnotations()       { return new IAnnotation[0]; }
             @Override public Access        getAccess()            { return Access.PUBLIC;      }
@@ -9324,7 +11079,7 @@ class UnitCompiler {
         // Determine arguments' types.
         final IClass[] argumentTypes = new IClass[arguments.length];
         for (int i = 0; i < arguments.length; ++i) {
-            argumentTypes[i] = this.getType(arguments[i]);
+            argumentTypes[i] = this.getArgumentType(arguments[i]);
         }
 
         // Determine most specific invocable WITHOUT boxing.
@@ -9481,7 +11236,11 @@ class UnitCompiler {
 
                 // Varargs has lower priority.
                 if (isVarargs) {
-                    ii.setArgsNeedAdjust(argsNeedAdjust);
+                    if (argsNeedAdjust) {
+                        this.varargsArgsNeedAdjust.add(ii);
+                    } else {
+                        this.varargsArgsNeedAdjust.remove(ii);
+                    }
                     varargApplicables.add(ii);
                 } else {
                     applicableIInvocables.add(ii);
@@ -9693,6 +11452,13 @@ class UnitCompiler {
         boolean boxingPermitted
     ) throws CompileException {
 
+        // JLS8 15.12.2.1: A lambda expression or a method reference is "potentially compatible" with a functional
+        // interface type.
+        if (sourceType instanceof FunctionalExpressionIClass) {
+            Rvalue fe = ((FunctionalExpressionIClass) sourceType).functionalExpression;
+            return this.isPotentiallyCompatible(fe, targetType);
+        }
+
         // 5.3 Identity conversion.
         if (sourceType == targetType) return true;
 
@@ -11945,9 +13711,14 @@ class UnitCompiler {
     @Nullable private IClass.IField
     findIField(IClass iClass, String name, Location location) throws CompileException {
 
+        this.memberUsed(iClass, name);
+
         // Search for a field with the given name in the current class.
         IClass.IField f = iClass.getDeclaredIField(name);
-        if (f != null) return f;
+        if (f != null) {
+            this.typeUsed(f.getType());
+            return f;
+        }
 
         // Examine superclass.
         {
@@ -11984,6 +13755,7 @@ class UnitCompiler {
      */
     @Nullable private IClass
     findMemberType(IClass iClass, String name, Location location) throws CompileException {
+        this.typeUsed(iClass);
         IClass[] types = iClass.findMemberType(name);
         if (types.length == 0) return null;
         if (types.length == 1) return types[0];
@@ -12098,6 +13870,48 @@ class UnitCompiler {
         this.optionalWarningHandler = optionalWarningHandler;
     }
 
+    /**
+     * Iff <var>compilationMetrics</var> is not {@code null}, then {@link #compileUnit(boolean, boolean, boolean)}
+     * adds the metrics of the compilation (type resolution, code generation, relocation, sizes) to it.
+     */
+    public void
+    setCompilationMetrics(@Nullable CompilationMetrics compilationMetrics) {
+        this.compilationMetrics = compilationMetrics;
+    }
+
+    /**
+     * @return The {@link CompilationMetrics} previously set with {@link #setCompilationMetrics(CompilationMetrics)},
+     *         or {@code null}
+     */
+    @Nullable public CompilationMetrics
+    getCompilationMetrics() { return this.compilationMetrics; }
+
+    /**
+     * Iff <var>typeDependencies</var> is not {@code null}, then {@link #compileUnit(boolean, boolean, boolean)} records
+     * in it the types and members that the compilation unit uses.
+     */
+    public void
+    setTypeDependencies(@Nullable TypeDependencies typeDependencies) { this.typeDependencies = typeDependencies; }
+
+    /**
+     * @return The {@link TypeDependencies} previously set with {@link #setTypeDependencies(TypeDependencies)}, or
+     *         {@code null}
+     */
+    @Nullable public TypeDependencies
+    getTypeDependencies() { return this.typeDependencies; }
+
+    private void
+    typeUsed(IClass type) {
+        TypeDependencies td = this.typeDependencies;
+        if (td != null) td.typeUsed(type);
+    }
+
+    private void
+    memberUsed(IClass type, String name) {
+        TypeDependencies td = this.typeDependencies;
+        if (td != null) td.memberUsed(type, name);
+    }
+
     @Nullable private CodeContext
     replaceCodeContext(@Nullable CodeContext newCodeContext) {
         CodeContext oldCodeContext = this.codeContext;
@@ -12319,6 +14133,69 @@ class UnitCompiler {
         @Override public IAnnotation[] getAnnotations()   { return new IAnnotation[0];        }
     }
 
+    /**
+     * The synthetic method that implements a lambda expression or a method reference, plus the values that the
+     * lambda object captures.
+     */
+    private static final
+    class SyntheticLambda {
+
+        final MethodDeclarator methodDeclarator;
+
+        /**
+         * The "{@code expression}" of an "{@code expression::method}" method reference, or {@code null}.
+         */
+        @Nullable final Rvalue boundReceiver;
+
+        final LocalVariable[] capturedVariables;
+
+        SyntheticLambda(
+            MethodDeclarator methodDeclarator,
+            @Nullable Rvalue boundReceiver,
+            LocalVariable[]  capturedVariables
+        ) {
+            this.methodDeclarator  = methodDeclarator;
+            this.boundReceiver     = boundReceiver;
+            this.capturedVariables = capturedVariables;
+        }
+    }
+
+    /**
+     * The placeholder type of a lambda expression or method reference while it is an argument of a method
+     * invocation and the method is not yet determined; see {@link #getArgumentType(Rvalue)}.
+     */
+    private static final
+    class FunctionalExpressionIClass extends IClass {
+
+        final Rvalue functionalExpression;
+
+        FunctionalExpressionIClass(Rvalue functionalExpression) { this.functionalExpression = functionalExpression; }
+
+        @Override @Nullable protected IClass getComponentType2()         { return null;                        } // SUPPRESS CHECKSTYLE LineLength:17
+        @Override protected IClass[]         getDeclaredIClasses2()      { return new IClass[0];               }
+        @Override protected IConstructor[]   getDeclaredIConstructors2() { return new IConstructor[0];         }
+        @Override protected IField[]         getDeclaredIFields2()       { return new IField[0];               }
+        @Override protected IMethod[]        getDeclaredIMethods2()      { return new IMethod[0];              }
+        @Override @Nullable protected IClass getDeclaringIClass2()       { return null;                        }
+        @Override protected String           getDescriptor2()            { return Descriptor.JAVA_LANG_OBJECT; }
+        @Override protected IClass[]         getInterfaces2()            { return new IClass[0];               }
+        @Override @Nullable protected IClass getOuterIClass2()           { return null;                        }
+        @Override @Nullable protected IClass getSuperclass2()            { return null;                        }
+        @Override public boolean             isAbstract()                { return false;                       }
+        @Override public boolean             isArray()                   { return false;                       }
+        @Override public boolean             isFinal()                   { return true;                        }
+        @Override public boolean             isEnum()                    { return false;                       }
+        @Override public boolean             isInterface()               { return false;                       }
+        @Override public boolean             isPrimitive()               { return false;                       }
+        @Override public boolean             isPrimitiveNumeric()        { return false;                       }
+        @Override public Access              getAccess()                 { return Access.PUBLIC;               }
+
+        @Override public String
+        toString() {
+            return this.functionalExpression instanceof LambdaExpression ? "lambda expression" : "method reference";
+        }
+    }
+
     private static String
     last(String[] sa) {
         if (sa.length == 0) throw new IllegalArgumentException("SNO: Empty string array");
@@ -12484,10 +14361,47 @@ class UnitCompiler {
     // Used for elaborate warning handling.
     @Nullable private WarningHandler optionalWarningHandler;
 
+    @Nullable private CompilationMetrics compilationMetrics;
+    @Nullable private TypeDependencies   typeDependencies;
+
     private final AbstractCompilationUnit abstractCompilationUnit;
 
     private final IClassLoader iClassLoader;
 
+    /**
+     * The variable-arity {@link IInvocable}s for which the most recent overload resolution found that the trailing
+     * arguments must be wrapped in an array. (Kept here and not in the {@link IInvocable}, because {@link IClass}es
+     * of JDK types are shared among concurrent compilations.)
+     */
+    private final Set<IInvocable> varargsArgsNeedAdjust = new HashSet<IInvocable>();
+
+    /**
+     * The target types of the lambda expressions and method references that appear in assignment, invocation and
+     * casting contexts (JLS8 15.27.3, 15.13.2).
+     */
+    private final Map<Rvalue, IClass> functionalExpressionTargetTypes = new HashMap<Rvalue, IClass>();
+
+    /**
+     * The synthetic methods that were generated for lambda expressions and method references. (Notice that the same
+     * expression may be compiled more than once, e.g. by {@link #fakeCompile(Rvalue)}.)
+     */
+    private final Map<Rvalue, SyntheticLambda> syntheticLambdas = new HashMap<Rvalue, SyntheticLambda>();
+
+    /**
+     * The number of "{@code lambda$<n>}" methods generated so far.
+     */
+    private int syntheticLambdaCount;
+
+    /**
+     * The number of "{@code split$<method>$<n>}" methods generated so far.
+     */
+    private int syntheticSplitCount;
+
+    /**
+     * The helper methods that {@link #splitLargeMethod(MethodDeclarator, List)} declared; these are not split again.
+     */
+    private final Set<MethodDeclarator> splitMethods = new HashSet<MethodDeclarator>();
+
     /**
      * Non-{@code null} while {@link #compileUnit(boolean, boolean, boolean)} is executing.
      */
@@ -12496,4 +14410,40 @@ class UnitCompiler {
     private boolean debugSource;
     private boolean debugLines;
     private boolean debugVars;
+
+    /**
+     * @see #setTargetVersion(int)
+     */
+    private int targetVersion = 6;
+
+    /**
+     * The classes compiled so far, including the local and anonymous ones, which {@link #findClass(String)} does not
+     * find; keyed by field descriptor.
+     */
+    private final Map<String, IClass> compiledClasses = new HashMap<String, IClass>();
+
+    /**
+     * Finds the classes that {@link CodeContext#generateStackMapFrames(short, String, MethodDescriptor,
+     * CodeContext.IClassFinder)} needs to merge reference types.
+     */
+    private final CodeContext.IClassFinder classFinder = new CodeContext.IClassFinder() {
+
+        @Override @Nullable public IClass
+        findIClass(String fieldDescriptor) {
+
+            IClass result = (IClass) UnitCompiler.this.compiledClasses.get(fieldDescriptor);
+            if (result != null) return result;
+
+            result = UnitCompiler.this.findClass(Descriptor.toClassName(fieldDescriptor));
+            if (result != null) return result;
+
+            try {
+                result = UnitCompiler.this.iClassLoader.loadIClass(fieldDescriptor);
+                if (result != null) UnitCompiler.this.typeUsed(result);
+                return result;
+            } catch (ClassNotFoundException cnfe) {
+                return null;
+            }
+        }
+    };
 }
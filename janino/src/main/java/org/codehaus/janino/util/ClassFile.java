@@ -34,6 +34,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -50,7 +54,7 @@ import org.codehaus.janino.Mod;
  * An object that implements the Java "class file" format.
  * <p>
  *   {@link #ClassFile(InputStream)} reads bytecode from an {@link InputStream} and creates a {@link ClassFile} object
- *   from it.
+ *   from it. {@link #ClassFile(ByteBuffer)} does the same, but decodes the attributes only on demand.
  * </p>
  * <p>
  *   {@link #store(OutputStream)} generates JVM bytecode which is suitable for being processed by a Java
@@ -83,19 +87,13 @@ class ClassFile implements Annotatable {
     public
     ClassFile(short accessFlags, String thisClassFd, @Nullable String superclassFd, String[] interfaceFds) {
 
-        // Must not set these to "..._1_7", because then the JVM insists on a StackMapTable (JVMS9 4.7.4), which
-        // JANINO currently does not produce:
-        //
-        //    java.lang.VerifyError: Expecting a stackmap frame at branch target 13
-        //
-        // ("jre -noverify" removes that requirement, but we cannot force our users to run their JVMs with that
-        // option.)
+        // Version 50 is the highest version for which the JVM does not insist on a StackMapTable (JVMS9 4.7.4).
+        // Higher versions can be configured through "setVersion()"; then the code generator must produce the
+        // "StackMapTable" attributes, and must not use the JSR and RET instructions.
         this.majorVersion  = ClassFile.MAJOR_VERSION_JDK_1_6;
         this.minorVersion  = ClassFile.MINOR_VERSION_JDK_1_6;
 
-        this.constantPool  = new ArrayList<ConstantPoolInfo>();
-        this.constantPool.add(null); // Add fake "0" index entry.
-        this.constantPoolMap = new HashMap<ConstantPoolInfo, Short>();
+        this.constantPool  = new ConstantPool();
 
         // Some sanity checks on the access flags, according to JVMS8 4.1.
         if ((accessFlags & Mod.INTERFACE) != 0) {
@@ -164,17 +162,23 @@ class ClassFile implements Annotatable {
     @Nullable private AttributeInfo
     findAttribute(List<AttributeInfo> attributes, String attributeName) throws ClassFormatError {
 
-        Short nameIndex = (Short) this.constantPoolMap.get(new ConstantUtf8Info(attributeName));
-        if (nameIndex == null) return null;
+        int nameIndex = this.constantPool.findUtf8(attributeName);
+        if (nameIndex == 0) return null;
 
-        AttributeInfo result = null;
-        for (AttributeInfo ai : attributes) {
-            if (ai.nameIndex == nameIndex) {
-                if (result != null) throw new ClassFileException("Duplicate \"" + attributeName + "\" attribute");
-                result = ai;
+        // Notice: Compare only the name indexes, so that attributes of a lazily loaded class file are not decoded.
+        int result = -1;
+        for (int i = 0; i < attributes.size(); i++) {
+            short ani = (
+                attributes instanceof LazyAttributeList
+                ? ((LazyAttributeList) attributes).getNameIndex(i)
+                : ((AttributeInfo) attributes.get(i)).nameIndex
+            );
+            if ((0xffff & ani) == nameIndex) {
+                if (result != -1) throw new ClassFileException("Duplicate \"" + attributeName + "\" attribute");
+                result = i;
             }
         }
-        return result;
+        return result == -1 ? null : (AttributeInfo) attributes.get(result);
     }
 
     /**
@@ -288,9 +292,8 @@ class ClassFile implements Annotatable {
 //            );
 //        }
 
-        this.constantPool    = new ArrayList<ConstantPoolInfo>();
-        this.constantPoolMap = new HashMap<ConstantPoolInfo, Short>();
-        this.loadConstantPool(dis);                                                // constant_pool_count, constant_pool
+        this.constantPool = new ConstantPool();
+        this.constantPool.load(dis);                                               // constant_pool_count, constant_pool
 
         this.accessFlags  = dis.readShort();                                       // access_flags
         this.thisClass    = dis.readShort();                                       // this_class
@@ -302,6 +305,46 @@ class ClassFile implements Annotatable {
         this.attributes  = Collections.unmodifiableList(this.loadAttributes(dis)); // attributes_count, attributes
     }
 
+    /**
+     * Creates a {@link ClassFile} object from the "class file" data between the <var>buffer</var>'s position and its
+     * limit; the <var>buffer</var> is typically a memory-mapped file, or wraps a byte array. In contrast with {@link
+     * #ClassFile(InputStream)}, the constant pool is copied in one bulk operation, and the attributes of the class,
+     * its fields and its methods (most notably the "Code" attributes) are neither copied nor decoded until they are
+     * retrieved. Hence, the <var>buffer</var>'s contents must not be changed afterwards. The <var>buffer</var>'s
+     * position remains unchanged.
+     * <p>
+     *   If the {@link ClassFile} is created with this constructor, then most modifying operations lead to a {@link
+     *   UnsupportedOperationException}, including the addition of attributes.
+     * </p>
+     */
+    public
+    ClassFile(ByteBuffer buffer) {
+        ByteBuffer bb = (ByteBuffer) buffer.duplicate();
+        bb.order(ByteOrder.BIG_ENDIAN);
+
+        try {
+            int magic = bb.getInt();                                             // magic
+            if (magic != ClassFile.CLASS_FILE_MAGIC) throw new ClassFileException("Invalid magic number");
+
+            this.minorVersion = bb.getShort();                                   // minor_version
+            this.majorVersion = bb.getShort();                                   // major_version
+
+            this.constantPool = new ConstantPool();
+            this.constantPool.load(bb);                                          // constant_pool_count, constant_pool
+
+            this.accessFlags  = bb.getShort();                                   // access_flags
+            this.thisClass    = bb.getShort();                                   // this_class
+            this.superclass   = bb.getShort();                                   // super_class
+            this.interfaces   = ClassFile.readShortArray(bb);                    // interfaces_count, interfaces
+
+            this.fieldInfos  = Collections.unmodifiableList(this.loadFields(bb));  // fields_count, fields
+            this.methodInfos = Collections.unmodifiableList(this.loadMethods(bb)); // methods_count, methods
+            this.attributes  = this.loadAttributes(bb);                            // attributes_count, attributes
+        } catch (BufferUnderflowException bue) {
+            throw new ClassFileException("Unexpected end of class file", bue);
+        }
+    }
+
     /**
      * @return The fully qualified name of this class, e.g. "pkg1.pkg2.Outer$Inner"
      */
@@ -351,7 +394,7 @@ class ClassFile implements Annotatable {
             throw new ClassFileException("\"" + Descriptor.toString(typeFd) + "\" is neither a class nor an array");
         }
 
-        return this.addToConstantPool(new ConstantClassInfo(this.addConstantUtf8Info(s)));
+        return this.checkConstantPoolSize(this.constantPool.addClass(this.addConstantUtf8Info(s)));
     }
 
     /**
@@ -362,7 +405,7 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantFieldrefInfo(String classFd, String fieldName, String fieldFd) {
-        return this.addToConstantPool(new ConstantFieldrefInfo(
+        return this.checkConstantPoolSize(this.constantPool.addFieldref(
             this.addConstantClassInfo(classFd),
             this.addConstantNameAndTypeInfo(fieldName, fieldFd)
         ));
@@ -376,7 +419,7 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantMethodrefInfo(String classFd, String methodName, String methodMd) {
-        return this.addToConstantPool(new ConstantMethodrefInfo(
+        return this.checkConstantPoolSize(this.constantPool.addMethodref(
             this.addConstantClassInfo(classFd),
             this.addConstantNameAndTypeInfo(methodName, methodMd)
         ));
@@ -390,12 +433,93 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantInterfaceMethodrefInfo(String classFd, String methodName, String methodMd) {
-        return this.addToConstantPool(new ConstantInterfaceMethodrefInfo(
+        return this.checkConstantPoolSize(this.constantPool.addInterfaceMethodref(
             this.addConstantClassInfo(classFd),
             this.addConstantNameAndTypeInfo(methodName, methodMd)
         ));
     }
 
+    /**
+     * Adds a "CONSTANT_MethodHandle_info" structure to the class file.
+     *
+     * @param referenceKind  One of the {@code REF_*} constants of {@link ConstantMethodHandleInfo}
+     * @param referenceIndex The index of a {@link ConstantFieldrefInfo}, {@link ConstantMethodrefInfo} or {@link
+     *                       ConstantInterfaceMethodrefInfo}
+     * @see                  JVMS8 4.4.8
+     */
+    public short
+    addConstantMethodHandleInfo(byte referenceKind, short referenceIndex) {
+        return this.checkConstantPoolSize(this.constantPool.addMethodHandle(referenceKind, referenceIndex));
+    }
+
+    /**
+     * Adds a "CONSTANT_MethodType_info" structure to the class file.
+     *
+     * @see JVMS8 4.4.9
+     */
+    public short
+    addConstantMethodTypeInfo(MethodDescriptor methodMd) {
+        return this.checkConstantPoolSize(
+            this.constantPool.addMethodType(this.addConstantUtf8Info(methodMd.toString()))
+        );
+    }
+
+    /**
+     * Adds a "CONSTANT_InvokeDynamic_info" structure to the class file.
+     *
+     * @param bootstrapMethodAttrIndex The index of the bootstrap method, as returned by {@link
+     *                                 #addBootstrapMethod(short, short[])}
+     * @see                            JVMS8 4.4.10
+     */
+    public short
+    addConstantInvokeDynamicInfo(short bootstrapMethodAttrIndex, String methodName, MethodDescriptor methodMd) {
+        return this.checkConstantPoolSize(this.constantPool.addInvokeDynamic(
+            bootstrapMethodAttrIndex,
+            this.addConstantNameAndTypeInfo(methodName, methodMd.toString())
+        ));
+    }
+
+    /**
+     * Creates a {@code BootstrapMethods} attribute if it does not exist, then adds an entry to it, unless an equal
+     * entry exists already.
+     *
+     * @param bootstrapMethodRef        The index of a {@link ConstantMethodHandleInfo}
+     * @param bootstrapArguments        Indexes of {@link ConstantPoolInfo}s that are loadable with LDC
+     * @return                          The index of the new (or already existing) entry within the {@code
+     *                                  BootstrapMethods} attribute
+     */
+    public short
+    addBootstrapMethod(short bootstrapMethodRef, short[] bootstrapArguments) {
+
+        BootstrapMethodsAttribute bma = this.getBootstrapMethodsAttribute();
+        if (bma == null) {
+            bma = new BootstrapMethodsAttribute(this.addConstantUtf8Info("BootstrapMethods"));
+            this.attributes.add(bma);
+        }
+
+        BootstrapMethodsAttribute.BootstrapMethod
+        bm = new BootstrapMethodsAttribute.BootstrapMethod(bootstrapMethodRef, bootstrapArguments);
+
+        List<BootstrapMethodsAttribute.BootstrapMethod> bms = bma.getBootstrapMethods();
+
+        int idx = bms.indexOf(bm);
+        if (idx == -1) {
+            idx = bms.size();
+            bms.add(bm);
+        }
+        return (short) idx;
+    }
+
+    /**
+     * Finds the {@code BootstrapMethods} attribute of this class file.
+     *
+     * @return {@code null} if this class has no "BootstrapMethods" attribute
+     */
+    @Nullable public BootstrapMethodsAttribute
+    getBootstrapMethodsAttribute() {
+        return (BootstrapMethodsAttribute) this.findAttribute(this.attributes, "BootstrapMethods");
+    }
+
     /**
      * Adds a "CONSTANT_String_info" structure to the class file.
      *
@@ -404,7 +528,7 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantStringInfo(String string) {
-        return this.addToConstantPool(new ConstantStringInfo(this.addConstantUtf8Info(string)));
+        return this.checkConstantPoolSize(this.constantPool.addString(this.addConstantUtf8Info(string)));
     }
 
     /**
@@ -415,7 +539,7 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantIntegerInfo(final int value) {
-        return this.addToConstantPool(new ConstantIntegerInfo(value));
+        return this.checkConstantPoolSize(this.constantPool.addInteger(value));
     }
 
     /**
@@ -426,7 +550,7 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantFloatInfo(final float value) {
-        return this.addToConstantPool(new ConstantFloatInfo(value));
+        return this.checkConstantPoolSize(this.constantPool.addFloat(value));
     }
 
     /**
@@ -437,7 +561,7 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantLongInfo(final long value) {
-        return this.addToConstantPool(new ConstantLongInfo(value));
+        return this.checkConstantPoolSize(this.constantPool.addLong(value));
     }
 
     /**
@@ -448,7 +572,7 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantDoubleInfo(final double value) {
-        return this.addToConstantPool(new ConstantDoubleInfo(value));
+        return this.checkConstantPoolSize(this.constantPool.addDouble(value));
     }
 
     /**
@@ -459,7 +583,7 @@ class ClassFile implements Annotatable {
      */
     private short
     addConstantNameAndTypeInfo(String name, String descriptor) {
-        return this.addToConstantPool(new ConstantNameAndTypeInfo(
+        return this.checkConstantPoolSize(this.constantPool.addNameAndType(
             this.addConstantUtf8Info(name),
             this.addConstantUtf8Info(descriptor)
         ));
@@ -474,7 +598,7 @@ class ClassFile implements Annotatable {
      */
     public short
     addConstantUtf8Info(final String s) {
-        return this.addToConstantPool(new ConstantUtf8Info(s));
+        return this.checkConstantPoolSize(this.constantPool.addUtf8(s));
     }
 
     /**
@@ -509,25 +633,14 @@ class ClassFile implements Annotatable {
     }
 
     /**
-     * Adds an entry to the constant pool and returns its index, or, if an equal entry already exists in the constant
-     * pool, returns the index of that entry.
+     * Checks for constant pool overflow after an entry was added to the constant pool, or an equal entry was found.
+     *
+     * @param index The index of the new or existing entry
+     * @return      The <var>index</var>
      */
     private short
-    addToConstantPool(ConstantPoolInfo cpi) {
-
-        // Check whether an equal entry already exists.
-        Short index = (Short) this.constantPoolMap.get(cpi);
-        if (index != null) return index.shortValue();
-
-        // The current size of the constant pool is the index of the new entry.
-        final short res = (short) this.constantPool.size();
-
-        // Add one or two entries to the constant pool.
-        this.constantPool.add(cpi);
-        if (cpi.isWide()) this.constantPool.add(null);
-
-        // Check for constant pool overflow.
-        if (this.constantPool.size() > 0xFFFF) {
+    checkConstantPoolSize(short index) {
+        if (this.constantPool.getSize() > 0xFFFF) {
             throw new ClassFileException(
                 "Constant pool for class "
                 + this.getThisClassName()
@@ -535,10 +648,7 @@ class ClassFile implements Annotatable {
             );
         }
 
-        // Also put the new entry into the "constantPoolMap" for fast access.
-        this.constantPoolMap.put(cpi, res);
-
-        return res;
+        return index;
     }
 
     /**
@@ -605,7 +715,7 @@ class ClassFile implements Annotatable {
      * @return The (read-only) constant pool entry indexed by <var>index</var>
      */
     public ConstantPoolInfo
-    getConstantPoolInfo(short index) { return (ConstantPoolInfo) this.constantPool.get(0xffff & index); }
+    getConstantPoolInfo(short index) { return this.constantPool.get(index); }
 
     /**
      * @return The (read-only) constant class info indexed by <var>index</var>
@@ -673,7 +783,7 @@ class ClassFile implements Annotatable {
      * @return The size of the constant pool
      */
     public int
-    getConstantPoolSize() { return this.constantPool.size(); }
+    getConstantPoolSize() { return this.constantPool.getSize(); }
 
     /**
      * Shorthand for {@code getConstantUtf8Info(index).s}.
@@ -705,24 +815,13 @@ class ClassFile implements Annotatable {
     }
 
     /**
-     * u2 constant_pool_count, constant_pool[constant_pool_count]
+     * u2 length, u2[length]
      */
-    private void
-    loadConstantPool(DataInputStream dis) throws IOException {
-        this.constantPool.clear();
-        this.constantPoolMap.clear();
-
-        int constantPoolCount = dis.readUnsignedShort(); // constant_pool_count
-        this.constantPool.add(null);
-        for (int i = 1; i < constantPoolCount; ++i) {
-            ConstantPoolInfo cpi = ConstantPoolInfo.loadConstantPoolInfo(dis);
-            this.constantPool.add(cpi);
-            this.constantPoolMap.put(cpi, (short) i);
-            if (cpi.isWide()) {
-                this.constantPool.add(null);
-                ++i;
-            }
-        }
+    private static short[]
+    readShortArray(ByteBuffer bb) {
+        short[] result = new short[0xffff & bb.getShort()];
+        for (int i = 0; i < result.length; ++i) result[i] = bb.getShort();
+        return result;
     }
 
     /**
@@ -745,6 +844,26 @@ class ClassFile implements Annotatable {
         return result;
     }
 
+    /**
+     * u2 fields_count, fields[fields_count]
+     */
+    private List<FieldInfo>
+    loadFields(ByteBuffer bb) {
+
+        List<FieldInfo> result = new ArrayList<FieldInfo>();
+
+        for (int i = 0xffff & bb.getShort(); i > 0; i--) { // fields_count
+            result.add(new FieldInfo(                      // fields[field_count]
+                bb.getShort(),          // access_flags
+                bb.getShort(),          // name_index
+                bb.getShort(),          // descriptor_index
+                this.loadAttributes(bb) // attributes_count, attributes[attributes_count]
+            ));
+        }
+
+        return result;
+    }
+
     /**
      * u2 methods_count, methods[methods_count]
      */
@@ -767,6 +886,87 @@ class ClassFile implements Annotatable {
         return attributes;
     }
 
+    /**
+     * u2 methods_count, methods[methods_count]
+     */
+    private List<MethodInfo>
+    loadMethods(ByteBuffer bb) {
+        int              methodsCount = 0xffff & bb.getShort();
+        List<MethodInfo> methods      = new ArrayList<MethodInfo>(methodsCount);
+        for (int i = 0; i < methodsCount; ++i) {
+            methods.add(new MethodInfo(
+                bb.getShort(),          // access_flags
+                bb.getShort(),          // name_index
+                bb.getShort(),          // descriptor_index
+                this.loadAttributes(bb) // attributes_count, attributes[attributes_count]
+            ));
+        }
+        return methods;
+    }
+
+    /**
+     * u2 attributes_count, attributes[attributes_count]; only skips the attributes, and returns a {@link
+     * LazyAttributeList}.
+     */
+    private List<AttributeInfo>
+    loadAttributes(ByteBuffer bb) {
+        int[] offsets = new int[0xffff & bb.getShort()];
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = bb.position();
+
+            bb.getShort();                                   // attribute_name_index
+            int attributeLength = bb.getInt();               // attribute_length
+            if (attributeLength < 0 || attributeLength > bb.remaining()) throw new BufferUnderflowException();
+            bb.position(bb.position() + attributeLength);    // info
+        }
+        return new LazyAttributeList(bb, offsets);
+    }
+
+    /**
+     * The attributes of a {@link ClassFile} that was created with {@link #ClassFile(ByteBuffer)}. Each attribute is
+     * decoded when it is retrieved for the first time.
+     */
+    private
+    class LazyAttributeList extends AbstractList<AttributeInfo> {
+
+        private final ByteBuffer      buffer;
+        private final int[]           offsets;
+        private final AttributeInfo[] decoded;
+
+        LazyAttributeList(ByteBuffer buffer, int[] offsets) {
+            this.buffer  = buffer;
+            this.offsets = offsets;
+            this.decoded = new AttributeInfo[offsets.length];
+        }
+
+        /**
+         * @return The "attribute_name_index" of the <var>index</var>th attribute, without decoding it
+         */
+        short
+        getNameIndex(int index) { return this.buffer.getShort(this.offsets[index]); }
+
+        @Override public AttributeInfo
+        get(int index) {
+
+            AttributeInfo result = this.decoded[index];
+            if (result != null) return result;
+
+            int    offset = this.offsets[index];
+            byte[] ba     = new byte[this.buffer.getInt(offset + 2)];
+            ((ByteBuffer) this.buffer.duplicate().position(offset + 6)).get(ba);
+            try {
+                result = ClassFile.this.loadAttribute(this.getNameIndex(index), ba);
+            } catch (IOException ioe) {
+                throw new ClassFileException("Decoding attribute: " + ioe.getMessage(), ioe);
+            }
+
+            return (this.decoded[index] = result);
+        }
+
+        @Override public int
+        size() { return this.offsets.length; }
+    }
+
     /**
      * Writes {@link ClassFile} to an {@link OutputStream}, in "class file" format.
      * <p>
@@ -782,7 +982,7 @@ class ClassFile implements Annotatable {
         dos.writeInt(ClassFile.CLASS_FILE_MAGIC);            // magic
         dos.writeShort(this.minorVersion);                   // minor_version
         dos.writeShort(this.majorVersion);                   // major_version
-        ClassFile.storeConstantPool(dos, this.constantPool); // constant_pool_count, constant_pool[constant_pool_count]
+        this.constantPool.store(dos);                        // constant_pool_count, constant_pool[constant_pool_count]
         dos.writeShort(this.accessFlags);                    // access_flags
         dos.writeShort(this.thisClass);                      // this_class
         dos.writeShort(this.superclass);                     // super_class
@@ -792,19 +992,6 @@ class ClassFile implements Annotatable {
         ClassFile.storeAttributes(dos, this.attributes);     // attributes_count, attributes[attributes_count]
     }
 
-    /**
-     * u2 constant_pool_count, constant_pool[constant_pool_count - 1]
-     */
-    private static void
-    storeConstantPool(DataOutputStream dos, List<ConstantPoolInfo> constantPool) throws IOException {
-        dos.writeShort(constantPool.size());
-        for (int i = 1; i < constantPool.size(); ++i) {
-            ConstantPoolInfo cpi = (ConstantPoolInfo) constantPool.get(i);
-            if (cpi == null) continue; // (Double or Long CPI.)
-            cpi.store(dos);
-        }
-    }
-
     /**
      * u2 count, u2[count]
      */
@@ -939,10 +1126,30 @@ class ClassFile implements Annotatable {
     public static final short MAJOR_VERSION_JDK_1_12 = 56;
     /** Minor version number of a class file that was generated by a Java 1.12-compliant compiler. */
     public static final short MINOR_VERSION_JDK_1_12 = 0;
+    /** Major version number of a class file that was generated by a Java 1.13-compliant compiler. */
+    public static final short MAJOR_VERSION_JDK_1_13 = 57;
+    /** Minor version number of a class file that was generated by a Java 1.13-compliant compiler. */
+    public static final short MINOR_VERSION_JDK_1_13 = 0;
+    /** Major version number of a class file that was generated by a Java 1.14-compliant compiler. */
+    public static final short MAJOR_VERSION_JDK_1_14 = 58;
+    /** Minor version number of a class file that was generated by a Java 1.14-compliant compiler. */
+    public static final short MINOR_VERSION_JDK_1_14 = 0;
+    /** Major version number of a class file that was generated by a Java 1.15-compliant compiler. */
+    public static final short MAJOR_VERSION_JDK_1_15 = 59;
+    /** Minor version number of a class file that was generated by a Java 1.15-compliant compiler. */
+    public static final short MINOR_VERSION_JDK_1_15 = 0;
+    /** Major version number of a class file that was generated by a Java 1.16-compliant compiler. */
+    public static final short MAJOR_VERSION_JDK_1_16 = 60;
+    /** Minor version number of a class file that was generated by a Java 1.16-compliant compiler. */
+    public static final short MINOR_VERSION_JDK_1_16 = 0;
+    /** Major version number of a class file that was generated by a Java 1.17-compliant compiler. */
+    public static final short MAJOR_VERSION_JDK_1_17 = 61;
+    /** Minor version number of a class file that was generated by a Java 1.17-compliant compiler. */
+    public static final short MINOR_VERSION_JDK_1_17 = 0;
 
     private short                        majorVersion;
     private short                        minorVersion;
-    private final List<ConstantPoolInfo> constantPool;
+    private final ConstantPool           constantPool;
 
     /**
      * The access flags of the class.
@@ -983,9 +1190,6 @@ class ClassFile implements Annotatable {
      */
     private final List<AttributeInfo> attributes;
 
-    // Convenience.
-    private final Map<ConstantPoolInfo, Short> constantPoolMap;
-
     /**
      * Base for various the constant pool table entry types.
      */
@@ -1004,60 +1208,6 @@ class ClassFile implements Annotatable {
          * @return Whether this CP entry is "wide" in the sense of JVMS7 4.4.5
          */
         protected abstract boolean isWide();
-
-        private static ConstantPoolInfo
-        loadConstantPoolInfo(DataInputStream dis) throws IOException {
-
-            byte tag = dis.readByte();
-//System.out.println("tag=" + tag);
-            switch (tag) {
-
-            case 7:
-                return new ConstantClassInfo(dis.readShort());
-
-            case 9:
-                return new ConstantFieldrefInfo(dis.readShort(), dis.readShort());
-
-            case 10:
-                return new ConstantMethodrefInfo(dis.readShort(), dis.readShort());
-
-            case 11:
-                return new ConstantInterfaceMethodrefInfo(dis.readShort(), dis.readShort());
-
-            case 8:
-                return new ConstantStringInfo(dis.readShort());
-
-            case 3:
-                return new ConstantIntegerInfo(dis.readInt());
-
-            case 4:
-                return new ConstantFloatInfo(dis.readFloat());
-
-            case 5:
-                return new ConstantLongInfo(dis.readLong());
-
-            case 6:
-                return new ConstantDoubleInfo(dis.readDouble());
-
-            case 12:
-                return new ConstantNameAndTypeInfo(dis.readShort(), dis.readShort());
-
-            case 1:
-                return new ConstantUtf8Info(dis.readUTF());
-
-            case 15:
-                return new ConstantMethodHandleInfo(dis.readByte(), dis.readShort());
-
-            case 16:
-                return new ConstantMethodTypeInfo(dis.readShort());
-
-            case 18:
-                return new ConstantInvokeDynamicInfo(dis.readShort(), dis.readShort());
-
-            default:
-                throw new ClassFileException("Invalid constant pool tag " + tag);
-            }
-        }
     }
 
     /**
@@ -1304,7 +1454,7 @@ class ClassFile implements Annotatable {
     /**
      * See JVMS7 4.4.4.
      */
-    private static
+    static
     class ConstantIntegerInfo extends ConstantValuePoolInfo {
 
         private final int value;
@@ -1338,7 +1488,7 @@ class ClassFile implements Annotatable {
     /**
      * See JVMS7 4.4.4.
      */
-    private static
+    static
     class ConstantFloatInfo extends ConstantValuePoolInfo {
 
         private final float value;
@@ -1372,7 +1522,7 @@ class ClassFile implements Annotatable {
     /**
      * See JVMS7 4.4.5.
      */
-    private static
+    static
     class ConstantLongInfo extends ConstantValuePoolInfo {
 
         private final long value;
@@ -1406,7 +1556,7 @@ class ClassFile implements Annotatable {
     /**
      * See JVMS7 4.4.5.
      */
-    private static
+    static
     class ConstantDoubleInfo extends ConstantValuePoolInfo {
         private final double value;
 
@@ -1545,6 +1695,17 @@ class ClassFile implements Annotatable {
     public static
     class ConstantMethodHandleInfo extends ConstantPoolInfo {
 
+        // SUPPRESS CHECKSTYLE ConstantName:9
+        public static final byte REF_getField         = 1;
+        public static final byte REF_getStatic        = 2;
+        public static final byte REF_putField         = 3;
+        public static final byte REF_putStatic        = 4;
+        public static final byte REF_invokeVirtual    = 5;
+        public static final byte REF_invokeStatic     = 6;
+        public static final byte REF_invokeSpecial    = 7;
+        public static final byte REF_newInvokeSpecial = 8;
+        public static final byte REF_invokeInterface  = 9;
+
         private final byte  referenceKind;
         private final short referenceIndex;
 
@@ -1638,6 +1799,12 @@ class ClassFile implements Annotatable {
         public short getBootstrapMethodAttrIndex() { return this.bootstrapMethodAttrIndex; }
         public short getNameAndTypeIndex()         { return this.nameAndTypeIndex;         }
 
+        /**
+         * @return The {@link ConstantNameAndTypeInfo} of this {@link ConstantInvokeDynamicInfo}
+         */
+        public ConstantNameAndTypeInfo
+        getNameAndType(ClassFile classFile) { return classFile.getConstantNameAndTypeInfo(this.nameAndTypeIndex); }
+
         // Implement ConstantPoolInfo.
 
         @Override public boolean
@@ -1733,6 +1900,14 @@ class ClassFile implements Annotatable {
             return (AttributeInfo[]) this.attributes.toArray(new AttributeInfo[this.attributes.size()]);
         }
 
+        /**
+         * @return The {@code Exceptions} attribute of this method, or {@code null}
+         */
+        @Nullable public ExceptionsAttribute
+        getExceptionsAttribute() {
+            return (ExceptionsAttribute) ClassFile.this.findAttribute(this.attributes, "Exceptions");
+        }
+
         /**
          * Adds the <var>attribute</var> to this method.
          */
@@ -1831,6 +2006,14 @@ class ClassFile implements Annotatable {
             return (AttributeInfo[]) this.attributes.toArray(new AttributeInfo[this.attributes.size()]);
         }
 
+        /**
+         * @return The {@code ConstantValue} attribute of this field, or {@code null}
+         */
+        @Nullable public ConstantValueAttribute
+        getConstantValueAttribute() {
+            return (ConstantValueAttribute) ClassFile.this.findAttribute(this.attributes, "ConstantValue");
+        }
+
         /**
          * Adds the <var>attribute</var> to this field.
          */
@@ -1909,11 +2092,18 @@ class ClassFile implements Annotatable {
     private AttributeInfo
     loadAttribute(DataInputStream dis) throws IOException {
 
-        short attributeNameIndex = dis.readShort(); // attribute_name_index
-        int   attributeLength    = dis.readInt();   // attribute_length
+        short  attributeNameIndex = dis.readShort();                   // attribute_name_index
+        byte[] ba                 = ClassFile.readLengthAndBytes(dis); // attribute_length, info
+
+        return this.loadAttribute(attributeNameIndex, ba);
+    }
+
+    /**
+     * Decodes the "info" <var>ba</var> of one class file attribute.
+     */
+    private AttributeInfo
+    loadAttribute(short attributeNameIndex, final byte[] ba) throws IOException {
 
-        final byte[] ba = new byte[attributeLength];
-        dis.readFully(ba);
         ByteArrayInputStream bais = new ByteArrayInputStream(ba);
         DataInputStream      bdis = new DataInputStream(bais);
 
@@ -1937,6 +2127,9 @@ class ClassFile implements Annotatable {
         if ("SourceFile".equals(attributeName)) {
             result = SourceFileAttribute.loadBody(attributeNameIndex, bdis);
         } else
+        if ("BootstrapMethods".equals(attributeName)) {
+            result = BootstrapMethodsAttribute.loadBody(attributeNameIndex, bdis);
+        } else
         if ("StackMapTable".equals(attributeName)) {
             result = StackMapTableAttribute.loadBody(attributeNameIndex, bdis);
         } else
@@ -1976,6 +2169,89 @@ class ClassFile implements Annotatable {
         return result;
     }
 
+    /**
+     * Representation of a {@code BootstrapMethods} attribute (see JVMS8 4.7.23).
+     */
+    public static
+    class BootstrapMethodsAttribute extends AttributeInfo {
+
+        private final List<BootstrapMethod> bootstrapMethods;
+
+        BootstrapMethodsAttribute(short attributeNameIndex) {
+            super(attributeNameIndex);
+            this.bootstrapMethods = new ArrayList<BootstrapMethod>();
+        }
+
+        BootstrapMethodsAttribute(short attributeNameIndex, BootstrapMethod[] bootstrapMethods) {
+            super(attributeNameIndex);
+            this.bootstrapMethods = new ArrayList<BootstrapMethod>(Arrays.asList(bootstrapMethods));
+        }
+
+        /**
+         * @return The {@link BootstrapMethod}s contained in this attribute
+         */
+        public List<BootstrapMethod>
+        getBootstrapMethods() { return this.bootstrapMethods; }
+
+        private static AttributeInfo
+        loadBody(short attributeNameIndex, DataInputStream dis) throws IOException {
+
+            BootstrapMethod[] bms = new BootstrapMethod[dis.readUnsignedShort()]; // num_bootstrap_methods
+            for (int i = 0; i < bms.length; ++i) {                                // bootstrap_methods
+                bms[i] = new BootstrapMethod(
+                    dis.readShort(),              // bootstrapMethodRef
+                    ClassFile.readShortArray(dis) // bootstrapArguments
+                );
+            }
+            return new BootstrapMethodsAttribute(attributeNameIndex, bms);
+        }
+
+        // Implement "AttributeInfo".
+        @Override protected void
+        storeBody(DataOutputStream dos) throws IOException {
+            dos.writeShort(this.bootstrapMethods.size());
+            for (BootstrapMethod bm : this.bootstrapMethods) {
+                dos.writeShort(bm.bootstrapMethodRef);
+                ClassFile.storeShortArray(dos, bm.bootstrapArguments);
+            }
+        }
+
+        /**
+         * The structure of the {@code bootstrap_methods} array as described in JVMS8 4.7.23.
+         */
+        public static
+        class BootstrapMethod {
+
+            /**
+             * The index of the {@link ConstantMethodHandleInfo} of the bootstrap method.
+             */
+            public final short bootstrapMethodRef;
+
+            /**
+             * The indexes of the constant pool entries of the static arguments.
+             */
+            public final short[] bootstrapArguments;
+
+            public
+            BootstrapMethod(short bootstrapMethodRef, short[] bootstrapArguments) {
+                this.bootstrapMethodRef = bootstrapMethodRef;
+                this.bootstrapArguments = bootstrapArguments;
+            }
+
+            @Override public boolean
+            equals(@Nullable Object o) {
+                return (
+                    o instanceof BootstrapMethod
+                    && ((BootstrapMethod) o).bootstrapMethodRef == this.bootstrapMethodRef
+                    && Arrays.equals(((BootstrapMethod) o).bootstrapArguments, this.bootstrapArguments)
+                );
+            }
+
+            @Override public int
+            hashCode() { return this.bootstrapMethodRef + 31 * Arrays.hashCode(this.bootstrapArguments); }
+        }
+    }
+
     /**
      * Representation of a {@code ConstantValue} attribute (see JVMS 4.7.2).
      */
@@ -2520,6 +2796,7 @@ class ClassFile implements Annotatable {
 
         private final StackMapFrame[] entries;
 
+        public
         StackMapTableAttribute(short attributeNameIndex, StackMapFrame[] entries) {
             super(attributeNameIndex);
             this.entries = entries;
@@ -2833,19 +3110,22 @@ class ClassFile implements Annotatable {
         public static
         class ObjectVariableInfo implements VerificationTypeInfo {
 
-            private final ConstantClassInfo constantClassInfo;
+            /**
+             * The index of the {@code CONSTANT_Class_info} entry in the constant pool.
+             */
+            private final short constantClassInfoIndex;
 
             public
-            ObjectVariableInfo(ConstantClassInfo constantClassInfo) { this.constantClassInfo = constantClassInfo; }
+            ObjectVariableInfo(short constantClassInfoIndex) { this.constantClassInfoIndex = constantClassInfoIndex; }
 
             @Override public void
             store(DataOutputStream dos) throws IOException {
                 dos.writeByte(7);
-                dos.writeShort(this.constantClassInfo.nameIndex);
+                dos.writeShort(this.constantClassInfoIndex);
             }
 
             @Override public String
-            toString() { return this.constantClassInfo.toString(); }
+            toString() { return "object(cpool_index=" + (0xffff & this.constantClassInfoIndex) + ")"; }
         }
 
         /**
@@ -2926,7 +3206,7 @@ class ClassFile implements Annotatable {
             case 4: return new LongVariableInfo();
             case 5: return new NullVariableInfo();
             case 6: return new UninitializedThisVariableInfo();
-            case 7: return new ObjectVariableInfo(new ConstantClassInfo(dis.readShort()));
+            case 7: return new ObjectVariableInfo(dis.readShort());
             case 8: return new UninitializedVariableInfo(dis.readShort());
 
             default: throw new ClassFileException("Invalid verification_type_info tag " + tag);
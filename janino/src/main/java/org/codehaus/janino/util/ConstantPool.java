@@ -0,0 +1,625 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.codehaus.commons.nullanalysis.Nullable;
+import org.codehaus.janino.util.ClassFile.ClassFileException;
+import org.codehaus.janino.util.ClassFile.ConstantClassInfo;
+import org.codehaus.janino.util.ClassFile.ConstantDoubleInfo;
+import org.codehaus.janino.util.ClassFile.ConstantFieldrefInfo;
+import org.codehaus.janino.util.ClassFile.ConstantFloatInfo;
+import org.codehaus.janino.util.ClassFile.ConstantIntegerInfo;
+import org.codehaus.janino.util.ClassFile.ConstantInterfaceMethodrefInfo;
+import org.codehaus.janino.util.ClassFile.ConstantInvokeDynamicInfo;
+import org.codehaus.janino.util.ClassFile.ConstantLongInfo;
+import org.codehaus.janino.util.ClassFile.ConstantMethodHandleInfo;
+import org.codehaus.janino.util.ClassFile.ConstantMethodTypeInfo;
+import org.codehaus.janino.util.ClassFile.ConstantMethodrefInfo;
+import org.codehaus.janino.util.ClassFile.ConstantNameAndTypeInfo;
+import org.codehaus.janino.util.ClassFile.ConstantPoolInfo;
+import org.codehaus.janino.util.ClassFile.ConstantStringInfo;
+import org.codehaus.janino.util.ClassFile.ConstantUtf8Info;
+
+/**
+ * The constant pool of a {@link ClassFile}, in a packed representation: All entries are stored in one growable byte
+ * array, exactly as they appear in the class file, and an open-addressing hash table over the encoded entries
+ * (tag and payload) finds existing entries in constant time. Thus, adding an entry allocates no objects, and
+ * storing the constant pool is a bulk copy.
+ * <p>
+ *   {@link ConstantPoolInfo} objects are only created when an entry is retrieved through {@link #get(short)}, and are
+ *   then cached.
+ * </p>
+ */
+final
+class ConstantPool {
+
+    private static final byte CONSTANT_UTF8                = 1;
+    private static final byte CONSTANT_INTEGER             = 3;
+    private static final byte CONSTANT_FLOAT               = 4;
+    private static final byte CONSTANT_LONG                = 5;
+    private static final byte CONSTANT_DOUBLE              = 6;
+    private static final byte CONSTANT_CLASS               = 7;
+    private static final byte CONSTANT_STRING              = 8;
+    private static final byte CONSTANT_FIELDREF            = 9;
+    private static final byte CONSTANT_METHODREF           = 10;
+    private static final byte CONSTANT_INTERFACE_METHODREF = 11;
+    private static final byte CONSTANT_NAME_AND_TYPE       = 12;
+    private static final byte CONSTANT_METHOD_HANDLE       = 15;
+    private static final byte CONSTANT_METHOD_TYPE         = 16;
+    private static final byte CONSTANT_INVOKE_DYNAMIC      = 18;
+
+    /**
+     * The encoded entries; the first {@link #length} bytes are valid.
+     */
+    private byte[] bytes = new byte[256];
+    private int    length;
+
+    /**
+     * The offsets of the entries in {@link #bytes}, by constant pool index; -1 for index 0 and for the unusable
+     * entries that follow LONG and DOUBLE entries.
+     */
+    private int[] offsets = new int[16];
+
+    /**
+     * The "constant_pool_count", i.e. the index of the next entry.
+     */
+    private int size = 1;
+
+    /**
+     * Open-addressing hash table of constant pool indexes; 0 designates an empty slot. The length is always a power
+     * of two, and the table is never more than half full.
+     */
+    private int[] table = new int[64];
+    private int   entryCount;
+
+    /**
+     * The already decoded entries, by constant pool index.
+     */
+    private ConstantPoolInfo[] cache = new ConstantPoolInfo[16];
+
+    ConstantPool() { this.offsets[0] = -1; }
+
+    /**
+     * @return The "constant_pool_count", i.e. the number of entries plus one
+     */
+    int
+    getSize() { return this.size; }
+
+    /**
+     * Adds a CONSTANT_Utf8_info entry, unless an equal entry exists.
+     *
+     * @return                    The index of the new or existing entry
+     * @throws ClassFileException The modified UTF-8 encoding of <var>s</var> is longer than 65535 bytes
+     */
+    short
+    addUtf8(String s) {
+        int start = this.length;
+        this.encodeUtf8(s);
+        return this.commit(start, false);
+    }
+
+    /**
+     * Does not modify the constant pool, and can thus be called concurrently with other lookups.
+     *
+     * @return The index of the CONSTANT_Utf8_info entry that equals <var>s</var>, or 0
+     */
+    int
+    findUtf8(String s) {
+        byte[] ba  = new byte[3 + 3 * s.length()];
+        int    end = ConstantPool.encodeUtf8(s, ba, 0);
+        return end == -1 ? 0 : this.find(ba, 0, end);
+    }
+
+    short
+    addClass(short nameIndex) { return this.add1(ConstantPool.CONSTANT_CLASS, nameIndex); }
+
+    short
+    addString(short stringIndex) { return this.add1(ConstantPool.CONSTANT_STRING, stringIndex); }
+
+    short
+    addMethodType(short descriptorIndex) { return this.add1(ConstantPool.CONSTANT_METHOD_TYPE, descriptorIndex); }
+
+    short
+    addFieldref(short classIndex, short nameAndTypeIndex) {
+        return this.add2(ConstantPool.CONSTANT_FIELDREF, classIndex, nameAndTypeIndex);
+    }
+
+    short
+    addMethodref(short classIndex, short nameAndTypeIndex) {
+        return this.add2(ConstantPool.CONSTANT_METHODREF, classIndex, nameAndTypeIndex);
+    }
+
+    short
+    addInterfaceMethodref(short classIndex, short nameAndTypeIndex) {
+        return this.add2(ConstantPool.CONSTANT_INTERFACE_METHODREF, classIndex, nameAndTypeIndex);
+    }
+
+    short
+    addNameAndType(short nameIndex, short descriptorIndex) {
+        return this.add2(ConstantPool.CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+    }
+
+    short
+    addInvokeDynamic(short bootstrapMethodAttrIndex, short nameAndTypeIndex) {
+        return this.add2(ConstantPool.CONSTANT_INVOKE_DYNAMIC, bootstrapMethodAttrIndex, nameAndTypeIndex);
+    }
+
+    short
+    addMethodHandle(byte referenceKind, short referenceIndex) {
+        int start = this.length;
+        this.ensureCapacity(4);
+        this.u1(ConstantPool.CONSTANT_METHOD_HANDLE);
+        this.u1(referenceKind);
+        this.u2(referenceIndex);
+        return this.commit(start, false);
+    }
+
+    short
+    addInteger(int value) { return this.add4(ConstantPool.CONSTANT_INTEGER, value); }
+
+    short
+    addFloat(float value) { return this.add4(ConstantPool.CONSTANT_FLOAT, Float.floatToIntBits(value)); }
+
+    short
+    addLong(long value) { return this.add8(ConstantPool.CONSTANT_LONG, value); }
+
+    short
+    addDouble(double value) { return this.add8(ConstantPool.CONSTANT_DOUBLE, Double.doubleToLongBits(value)); }
+
+    /**
+     * @return The entry with the given <var>index</var>, or {@code null} for index 0 and for the unusable entry
+     *         that follows a LONG or DOUBLE entry
+     */
+    @Nullable ConstantPoolInfo
+    get(short index) {
+
+        int i = 0xffff & index;
+        if (i >= this.size) throw new IndexOutOfBoundsException("Constant pool index " + i);
+
+        int offset = this.offsets[i];
+        if (offset == -1) return null;
+
+        ConstantPoolInfo result = this.cache[i];
+        if (result == null) this.cache[i] = (result = this.decode(offset));
+        return result;
+    }
+
+    /**
+     * u2 constant_pool_count, constant_pool[constant_pool_count - 1]
+     */
+    void
+    store(DataOutputStream dos) throws IOException {
+        dos.writeShort(this.size);
+        dos.write(this.bytes, 0, this.length);
+    }
+
+    /**
+     * Reads "constant_pool_count" and "constant_pool" and appends the entries, without merging equal entries.
+     */
+    void
+    load(DataInputStream dis) throws IOException {
+
+        int constantPoolCount = dis.readUnsignedShort(); // constant_pool_count
+        while (this.size < constantPoolCount) {
+            int  start = this.length;
+            byte tag   = dis.readByte();
+
+            int payloadLength;
+            if (tag == ConstantPool.CONSTANT_UTF8) {
+                int utfLength = dis.readUnsignedShort();
+                this.ensureCapacity(3 + utfLength);
+                this.u1(tag);
+                this.u2(utfLength);
+                payloadLength = utfLength;
+            } else {
+                payloadLength = ConstantPool.entryLength(tag, 0) - 1;
+                this.ensureCapacity(1 + payloadLength);
+                this.u1(tag);
+            }
+            dis.readFully(this.bytes, this.length, payloadLength);
+            this.length += payloadLength;
+
+            this.insert(start, ConstantPool.isWide(tag));
+        }
+    }
+
+    /**
+     * Reads "constant_pool_count" and "constant_pool" from the <var>buffer</var>'s current position and appends the
+     * entries, without merging equal entries. Since the packed representation equals the class file format, the
+     * entries are copied in one bulk operation, and are decoded only when they are retrieved.
+     */
+    void
+    load(ByteBuffer buffer) {
+
+        int constantPoolCount = 0xffff & buffer.getShort(); // constant_pool_count
+
+        // Find the end of the constant pool.
+        int start = buffer.position();
+        int end   = start;
+        for (int index = 1; index < constantPoolCount;) {
+            byte tag       = buffer.get(end);
+            int  utfLength = tag == ConstantPool.CONSTANT_UTF8 ? 0xffff & buffer.getShort(end + 1) : 0;
+            end   += ConstantPool.entryLength(tag, utfLength);
+            index += ConstantPool.isWide(tag) ? 2 : 1;
+        }
+
+        this.ensureCapacity(end - start);
+        int offset = this.length;
+        buffer.get(this.bytes, offset, end - start);        // constant_pool[constant_pool_count - 1]
+        this.length += end - start;
+
+        while (this.size < constantPoolCount) {
+            byte tag = this.bytes[offset];
+            this.insert(offset, ConstantPool.isWide(tag));
+            offset += ConstantPool.entryLength(tag, ConstantPool.utfLength(this.bytes, offset));
+        }
+    }
+
+    private short
+    add1(byte tag, short index) {
+        int start = this.length;
+        this.ensureCapacity(3);
+        this.u1(tag);
+        this.u2(index);
+        return this.commit(start, false);
+    }
+
+    private short
+    add2(byte tag, short index1, short index2) {
+        int start = this.length;
+        this.ensureCapacity(5);
+        this.u1(tag);
+        this.u2(index1);
+        this.u2(index2);
+        return this.commit(start, false);
+    }
+
+    private short
+    add4(byte tag, int value) {
+        int start = this.length;
+        this.ensureCapacity(5);
+        this.u1(tag);
+        this.u4(value);
+        return this.commit(start, false);
+    }
+
+    private short
+    add8(byte tag, long value) {
+        int start = this.length;
+        this.ensureCapacity(9);
+        this.u1(tag);
+        this.u4((int) (value >> 32));
+        this.u4((int) value);
+        return this.commit(start, true);
+    }
+
+    /**
+     * Appends a CONSTANT_Utf8_info entry in modified UTF-8 (JVMS7 4.4.7).
+     */
+    private void
+    encodeUtf8(String s) {
+        this.ensureCapacity(3 + 3 * s.length());
+
+        int end = ConstantPool.encodeUtf8(s, this.bytes, this.length);
+        if (end == -1) throw new ClassFileException("String constant too long to store in class file");
+        this.length = end;
+    }
+
+    /**
+     * Encodes a CONSTANT_Utf8_info entry in modified UTF-8 (JVMS7 4.4.7) into <var>ba</var>, which must have room
+     * for {@code 3 + 3 * s.length()} bytes after <var>start</var>.
+     *
+     * @return The offset after the entry, or -1 if its "length" would exceed 65535
+     */
+    private static int
+    encodeUtf8(String s, byte[] ba, int start) {
+
+        ba[start] = ConstantPool.CONSTANT_UTF8;
+
+        int l = start + 3;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                ba[l++] = (byte) c;
+            } else
+            if (c <= 0x07ff) {
+                ba[l++] = (byte) (0xc0 | (c >> 6));
+                ba[l++] = (byte) (0x80 | (c & 0x3f));
+            } else
+            {
+                ba[l++] = (byte) (0xe0 | (c >> 12));
+                ba[l++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                ba[l++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        int utfLength = l - start - 3;
+        if (utfLength > 0xffff) return -1;
+        ba[start + 1] = (byte) (utfLength >> 8);
+        ba[start + 2] = (byte) utfLength;
+        return l;
+    }
+
+    /**
+     * Looks up the entry that was just appended at <var>start</var>; if an equal entry exists, then the appended
+     * entry is removed again, otherwise it becomes a new entry.
+     *
+     * @return The index of the existing or new entry
+     */
+    private short
+    commit(int start, boolean wide) {
+
+        int index = this.find(this.bytes, start, this.length);
+        if (index != 0) {
+            this.length = start;
+            return (short) index;
+        }
+
+        return (short) this.insert(start, wide);
+    }
+
+    /**
+     * @return The index of the entry that equals the encoded entry in <var>ba</var> between <var>start</var> and
+     *         <var>end</var>, or 0
+     */
+    private int
+    find(byte[] ba, int start, int end) {
+
+        byte[] pb   = this.bytes;
+        int    len  = end - start;
+        int    mask = this.table.length - 1;
+        for (int slot = ConstantPool.hash(ba, start, len) & mask;; slot = (slot + 1) & mask) {
+            int index = this.table[slot];
+            if (index == 0) return 0;
+
+            int offset = this.offsets[index];
+            if (ConstantPool.entryLength(pb[offset], ConstantPool.utfLength(pb, offset)) != len) continue;
+
+            int i = 0;
+            while (i < len && pb[offset + i] == ba[start + i]) i++;
+            if (i == len) return index;
+        }
+    }
+
+    /**
+     * Makes the entry that was just appended at <var>start</var> a new entry.
+     *
+     * @return The index of the new entry
+     */
+    private int
+    insert(int start, boolean wide) {
+
+        int index = this.size;
+        int n     = wide ? 2 : 1;
+        if (index + n > this.offsets.length) {
+            int newLength = Math.max(2 * this.offsets.length, index + n);
+
+            int[] no = new int[newLength];
+            System.arraycopy(this.offsets, 0, no, 0, this.size);
+            this.offsets = no;
+
+            ConstantPoolInfo[] nc = new ConstantPoolInfo[newLength];
+            System.arraycopy(this.cache, 0, nc, 0, this.size);
+            this.cache = nc;
+        }
+        this.offsets[index] = start;
+        if (wide) this.offsets[index + 1] = -1;
+        this.size += n;
+
+        if (2 * (this.entryCount + 1) > this.table.length) this.rehash(2 * this.table.length);
+        this.putIntoTable(index);
+        this.entryCount++;
+
+        return index;
+    }
+
+    private void
+    rehash(int tableLength) {
+        this.table = new int[tableLength];
+        for (int index = 1; index < this.size; index++) {
+            if (this.offsets[index] != -1) this.putIntoTable(index);
+        }
+    }
+
+    private void
+    putIntoTable(int index) {
+        int offset = this.offsets[index];
+        int len    = ConstantPool.entryLength(this.bytes[offset], ConstantPool.utfLength(this.bytes, offset));
+        int mask   = this.table.length - 1;
+        int slot   = ConstantPool.hash(this.bytes, offset, len) & mask;
+        while (this.table[slot] != 0) slot = (slot + 1) & mask;
+        this.table[slot] = index;
+    }
+
+    private ConstantPoolInfo
+    decode(int offset) {
+
+        byte[] ba  = this.bytes;
+        byte   tag = ba[offset];
+        switch (tag) {
+
+        case CONSTANT_CLASS:
+            return new ConstantClassInfo(ConstantPool.s2(ba, offset + 1));
+
+        case CONSTANT_FIELDREF:
+            return new ConstantFieldrefInfo(ConstantPool.s2(ba, offset + 1), ConstantPool.s2(ba, offset + 3));
+
+        case CONSTANT_METHODREF:
+            return new ConstantMethodrefInfo(ConstantPool.s2(ba, offset + 1), ConstantPool.s2(ba, offset + 3));
+
+        case CONSTANT_INTERFACE_METHODREF:
+            return new ConstantInterfaceMethodrefInfo(
+                ConstantPool.s2(ba, offset + 1),
+                ConstantPool.s2(ba, offset + 3)
+            );
+
+        case CONSTANT_STRING:
+            return new ConstantStringInfo(ConstantPool.s2(ba, offset + 1));
+
+        case CONSTANT_INTEGER:
+            return new ConstantIntegerInfo(ConstantPool.s4(ba, offset + 1));
+
+        case CONSTANT_FLOAT:
+            return new ConstantFloatInfo(Float.intBitsToFloat(ConstantPool.s4(ba, offset + 1)));
+
+        case CONSTANT_LONG:
+            return new ConstantLongInfo(ConstantPool.s8(ba, offset + 1));
+
+        case CONSTANT_DOUBLE:
+            return new ConstantDoubleInfo(Double.longBitsToDouble(ConstantPool.s8(ba, offset + 1)));
+
+        case CONSTANT_NAME_AND_TYPE:
+            return new ConstantNameAndTypeInfo(ConstantPool.s2(ba, offset + 1), ConstantPool.s2(ba, offset + 3));
+
+        case CONSTANT_UTF8:
+            try {
+                return new ConstantUtf8Info(new DataInputStream(
+                    new ByteArrayInputStream(ba, offset + 1, 2 + ConstantPool.utfLength(ba, offset))
+                ).readUTF());
+            } catch (IOException ioe) {
+                throw new ClassFileException("Invalid modified UTF-8 in constant pool", ioe);
+            }
+
+        case CONSTANT_METHOD_HANDLE:
+            return new ConstantMethodHandleInfo(ba[offset + 1], ConstantPool.s2(ba, offset + 2));
+
+        case CONSTANT_METHOD_TYPE:
+            return new ConstantMethodTypeInfo(ConstantPool.s2(ba, offset + 1));
+
+        case CONSTANT_INVOKE_DYNAMIC:
+            return new ConstantInvokeDynamicInfo(ConstantPool.s2(ba, offset + 1), ConstantPool.s2(ba, offset + 3));
+
+        default:
+            throw new ClassFileException("Invalid constant pool tag " + tag);
+        }
+    }
+
+    /**
+     * @param utfLength Only relevant for CONSTANT_Utf8_info entries
+     * @return          The length of an encoded entry, including the tag
+     */
+    private static int
+    entryLength(byte tag, int utfLength) {
+        switch (tag) {
+
+        case CONSTANT_UTF8:
+            return 3 + utfLength;
+
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+            return 3;
+
+        case CONSTANT_METHOD_HANDLE:
+            return 4;
+
+        case CONSTANT_INTEGER:
+        case CONSTANT_FLOAT:
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE:
+        case CONSTANT_INVOKE_DYNAMIC:
+            return 5;
+
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+            return 9;
+
+        default:
+            throw new ClassFileException("Invalid constant pool tag " + tag);
+        }
+    }
+
+    private static boolean
+    isWide(byte tag) { return tag == ConstantPool.CONSTANT_LONG || tag == ConstantPool.CONSTANT_DOUBLE; }
+
+    /**
+     * @return The "length" of the CONSTANT_Utf8_info entry at <var>offset</var>, or 0 if the entry has a different
+     *         type
+     */
+    private static int
+    utfLength(byte[] ba, int offset) {
+        return ba[offset] == ConstantPool.CONSTANT_UTF8 ? 0xffff & ConstantPool.s2(ba, offset + 1) : 0;
+    }
+
+    private static int
+    hash(byte[] ba, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) h = 31 * h + ba[i];
+        return h ^ (h >>> 16);
+    }
+
+    private void
+    ensureCapacity(int n) {
+        if (this.length + n <= this.bytes.length) return;
+
+        byte[] nb = new byte[Math.max(2 * this.bytes.length, this.length + n)];
+        System.arraycopy(this.bytes, 0, nb, 0, this.length);
+        this.bytes = nb;
+    }
+
+    private void
+    u1(int value) { this.bytes[this.length++] = (byte) value; }
+
+    private void
+    u2(int value) {
+        this.bytes[this.length++] = (byte) (value >> 8);
+        this.bytes[this.length++] = (byte) value;
+    }
+
+    private void
+    u4(int value) {
+        this.bytes[this.length++] = (byte) (value >> 24);
+        this.bytes[this.length++] = (byte) (value >> 16);
+        this.bytes[this.length++] = (byte) (value >> 8);
+        this.bytes[this.length++] = (byte) value;
+    }
+
+    private static short
+    s2(byte[] ba, int offset) { return (short) ((ba[offset] << 8) | (ba[offset + 1] & 0xff)); }
+
+    private static int
+    s4(byte[] ba, int offset) {
+        return (
+            (ba[offset] << 24)
+            | ((ba[offset + 1] & 0xff) << 16)
+            | ((ba[offset + 2] & 0xff) << 8)
+            | (ba[offset + 3] & 0xff)
+        );
+    }
+
+    private static long
+    s8(byte[] ba, int offset) {
+        return ((long) ConstantPool.s4(ba, offset) << 32) | (0xffffffffL & ConstantPool.s4(ba, offset + 4));
+    }
+}
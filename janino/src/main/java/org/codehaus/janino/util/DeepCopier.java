@@ -28,11 +28,16 @@ package org.codehaus.janino.util;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.Location;
 import org.codehaus.commons.nullanalysis.Nullable;
+import org.codehaus.janino.IClass;
 import org.codehaus.janino.InternalCompilerException;
+import org.codehaus.janino.Java.AbstractClassDeclaration;
 import org.codehaus.janino.Java.AbstractCompilationUnit;
 import org.codehaus.janino.Java.AbstractCompilationUnit.ImportDeclaration;
 import org.codehaus.janino.Java.AbstractCompilationUnit.SingleStaticImportDeclaration;
@@ -55,6 +60,7 @@ import org.codehaus.janino.Java.Assignment;
 import org.codehaus.janino.Java.Atom;
 import org.codehaus.janino.Java.BinaryOperation;
 import org.codehaus.janino.Java.Block;
+import org.codehaus.janino.Java.BlockLambdaBody;
 import org.codehaus.janino.Java.BlockStatement;
 import org.codehaus.janino.Java.BooleanLiteral;
 import org.codehaus.janino.Java.BreakStatement;
@@ -76,26 +82,33 @@ import org.codehaus.janino.Java.ElementValueArrayInitializer;
 import org.codehaus.janino.Java.ElementValuePair;
 import org.codehaus.janino.Java.EmptyStatement;
 import org.codehaus.janino.Java.EnumConstant;
+import org.codehaus.janino.Java.ExpressionLambdaBody;
 import org.codehaus.janino.Java.ExpressionStatement;
 import org.codehaus.janino.Java.FieldAccess;
 import org.codehaus.janino.Java.FieldAccessExpression;
 import org.codehaus.janino.Java.FieldDeclaration;
 import org.codehaus.janino.Java.FloatingPointLiteral;
+import org.codehaus.janino.Java.FormalLambdaParameters;
 import org.codehaus.janino.Java.ForEachStatement;
 import org.codehaus.janino.Java.ForStatement;
 import org.codehaus.janino.Java.FunctionDeclarator;
 import org.codehaus.janino.Java.FunctionDeclarator.FormalParameter;
 import org.codehaus.janino.Java.FunctionDeclarator.FormalParameters;
+import org.codehaus.janino.Java.IdentifierLambdaParameters;
 import org.codehaus.janino.Java.IfStatement;
+import org.codehaus.janino.Java.InferredLambdaParameters;
 import org.codehaus.janino.Java.Initializer;
 import org.codehaus.janino.Java.Instanceof;
 import org.codehaus.janino.Java.IntegerLiteral;
 import org.codehaus.janino.Java.LabeledStatement;
+import org.codehaus.janino.Java.LambdaBody;
 import org.codehaus.janino.Java.LambdaExpression;
+import org.codehaus.janino.Java.LambdaParameters;
 import org.codehaus.janino.Java.LocalClassDeclaration;
 import org.codehaus.janino.Java.LocalClassDeclarationStatement;
 import org.codehaus.janino.Java.LocalVariableAccess;
 import org.codehaus.janino.Java.LocalVariableDeclarationStatement;
+import org.codehaus.janino.Java.Locatable;
 import org.codehaus.janino.Java.Lvalue;
 import org.codehaus.janino.Java.MarkerAnnotation;
 import org.codehaus.janino.Java.MemberAnnotationTypeDeclaration;
@@ -176,6 +189,20 @@ class DeepCopier {
     public
     DeepCopier() {}
 
+    /**
+     * The parser shares the qualification of a "{@code a.new Inner()}" expression with its {@link RvalueMemberType};
+     * the copies of these qualifications are shared in the same way, so that both are in the scope of the copied
+     * expression.
+     */
+    private final Map<Rvalue /*subject*/, Rvalue /*copy*/> qualificationCopies = new IdentityHashMap<Rvalue, Rvalue>();
+
+    /**
+     * Determines the location of the copy of the <var>subject</var>. The default implementation returns the
+     * <var>subject</var>'s location unchanged; derived classes may override this method to relocate the copied AST.
+     */
+    public Location
+    copyLocation(Locatable subject) { return subject.getLocation(); }
+
     // ------------------------- Visitors that implement the copying of abstract AST elements
 
     private final Visitor.AbstractCompilationUnitVisitor<AbstractCompilationUnit, CompileException>
@@ -378,6 +405,23 @@ class DeepCopier {
         @Override public TryStatement.Resource visitVariableAccessResource(VariableAccessResource var)                    throws CompileException { return DeepCopier.this.copyVariableAccessResource(var);           }
     };
 
+    private final Visitor.LambdaParametersVisitor<LambdaParameters, CompileException>
+    lambdaParametersCopier = new Visitor.LambdaParametersVisitor<LambdaParameters, CompileException>() {
+
+        // SUPPRESS CHECKSTYLE LineLength:3
+        @Override public LambdaParameters visitIdentifierLambdaParameters(IdentifierLambdaParameters ilp) throws CompileException { return DeepCopier.this.copyIdentifierLambdaParameters(ilp); }
+        @Override public LambdaParameters visitFormalLambdaParameters(FormalLambdaParameters flp)         throws CompileException { return DeepCopier.this.copyFormalLambdaParameters(flp);     }
+        @Override public LambdaParameters visitInferredLambdaParameters(InferredLambdaParameters ilp)     throws CompileException { return DeepCopier.this.copyInferredLambdaParameters(ilp);   }
+    };
+
+    private final Visitor.LambdaBodyVisitor<LambdaBody, CompileException>
+    lambdaBodyCopier = new Visitor.LambdaBodyVisitor<LambdaBody, CompileException>() {
+
+        // SUPPRESS CHECKSTYLE LineLength:2
+        @Override public LambdaBody visitBlockLambdaBody(BlockLambdaBody blb)           throws CompileException { return DeepCopier.this.copyBlockLambdaBody(blb);      }
+        @Override public LambdaBody visitExpressionLambdaBody(ExpressionLambdaBody elb) throws CompileException { return DeepCopier.this.copyExpressionLambdaBody(elb); }
+    };
+
     private final TypeArgumentVisitor<TypeArgument, CompileException>
     typeArgumentCopier = new TypeArgumentVisitor<TypeArgument, CompileException>() {
 
@@ -389,22 +433,24 @@ class DeepCopier {
 
     // ------------------------------ "copy*()" methods on abstract types
 
-    // SUPPRESS CHECKSTYLE LineLengthCheck:15
-    public AbstractCompilationUnit copyAbstractCompilationUnit(AbstractCompilationUnit subject) throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.abstractCompilationUnitCopier)); }
-    public ImportDeclaration       copyImportDeclaration(ImportDeclaration subject)             throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.importCopier));                  }
-    public TypeDeclaration         copyTypeDeclaration(TypeDeclaration subject)                 throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.typeDeclarationCopier));         }
-    public TypeBodyDeclaration     copyTypeBodyDeclaration(TypeBodyDeclaration subject)         throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.typeBodyDeclarationCopier));     }
-    public FunctionDeclarator      copyFunctionDeclarator(FunctionDeclarator subject)           throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.functionDeclaratorCopier));      }
-    public BlockStatement          copyBlockStatement(BlockStatement subject)                   throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.blockStatementCopier));          }
-    public Resource                copyResource(Resource subject)                               throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.resourceCopier));                }
-    public TypeArgument            copyTypeArgument(TypeArgument subject)                       throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.typeArgumentCopier));            }
-    public ConstructorInvocation   copyConstructorInvocation(ConstructorInvocation subject)     throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.constructorInvocationCopier));   }
-    public ElementValue            copyElementValue(ElementValue subject)                       throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.elementValueCopier));            }
-    public Annotation              copyAnnotation(Annotation subject)                           throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.annotationCopier));              }
-    public Rvalue                  copyRvalue(Rvalue subject)                                   throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.rvalueCopier));                  }
-    public Lvalue                  copyLvalue(Lvalue subject)                                   throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.lvalueCopier));                  }
-    public Type                    copyType(Type subject)                                       throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.typeCopier));                    }
-    public Atom                    copyAtom(Atom subject)                                       throws CompileException { return DeepCopier.assertNotNull(subject.accept(this.atomCopier));                    }
+    // SUPPRESS CHECKSTYLE LineLengthCheck:17
+    public AbstractCompilationUnit copyAbstractCompilationUnit(AbstractCompilationUnit subject) throws CompileException { return (AbstractCompilationUnit) DeepCopier.assertNotNull(subject.accept(this.abstractCompilationUnitCopier)); }
+    public ImportDeclaration       copyImportDeclaration(ImportDeclaration subject)             throws CompileException { return (ImportDeclaration) DeepCopier.assertNotNull(subject.accept(this.importCopier));                        }
+    public TypeDeclaration         copyTypeDeclaration(TypeDeclaration subject)                 throws CompileException { return (TypeDeclaration) DeepCopier.assertNotNull(subject.accept(this.typeDeclarationCopier));                 }
+    public TypeBodyDeclaration     copyTypeBodyDeclaration(TypeBodyDeclaration subject)         throws CompileException { return (TypeBodyDeclaration) DeepCopier.assertNotNull(subject.accept(this.typeBodyDeclarationCopier));         }
+    public FunctionDeclarator      copyFunctionDeclarator(FunctionDeclarator subject)           throws CompileException { return (FunctionDeclarator) DeepCopier.assertNotNull(subject.accept(this.functionDeclaratorCopier));           }
+    public BlockStatement          copyBlockStatement(BlockStatement subject)                   throws CompileException { return (BlockStatement) DeepCopier.assertNotNull(subject.accept(this.blockStatementCopier));                   }
+    public Resource                copyResource(Resource subject)                               throws CompileException { return (Resource) DeepCopier.assertNotNull(subject.accept(this.resourceCopier));                               }
+    public TypeArgument            copyTypeArgument(TypeArgument subject)                       throws CompileException { return (TypeArgument) DeepCopier.assertNotNull(subject.accept(this.typeArgumentCopier));                       }
+    public ConstructorInvocation   copyConstructorInvocation(ConstructorInvocation subject)     throws CompileException { return (ConstructorInvocation) DeepCopier.assertNotNull(subject.accept(this.constructorInvocationCopier));     }
+    public ElementValue            copyElementValue(ElementValue subject)                       throws CompileException { return (ElementValue) DeepCopier.assertNotNull(subject.accept(this.elementValueCopier));                       }
+    public Annotation              copyAnnotation(Annotation subject)                           throws CompileException { return (Annotation) DeepCopier.assertNotNull(subject.accept(this.annotationCopier));                           }
+    public Rvalue                  copyRvalue(Rvalue subject)                                   throws CompileException { return (Rvalue) DeepCopier.assertNotNull(subject.accept(this.rvalueCopier));                                   }
+    public Lvalue                  copyLvalue(Lvalue subject)                                   throws CompileException { return (Lvalue) DeepCopier.assertNotNull(subject.accept(this.lvalueCopier));                                   }
+    public Type                    copyType(Type subject)                                       throws CompileException { return (Type) DeepCopier.assertNotNull(subject.accept(this.typeCopier));                                       }
+    public Atom                    copyAtom(Atom subject)                                       throws CompileException { return (Atom) DeepCopier.assertNotNull(subject.accept(this.atomCopier));                                       }
+    public LambdaParameters        copyLambdaParameters(LambdaParameters subject)               throws CompileException { return (LambdaParameters) DeepCopier.assertNotNull(subject.accept(this.lambdaParametersCopier));               }
+    public LambdaBody              copyLambdaBody(LambdaBody subject)                           throws CompileException { return (LambdaBody) DeepCopier.assertNotNull(subject.accept(this.lambdaBodyCopier));                           }
 
     // SUPPRESS CHECKSTYLE LineLengthCheck:3
     public PackageMemberTypeDeclaration copyPackageMemberTypeDeclaration(PackageMemberTypeDeclaration subject) throws CompileException { return (PackageMemberTypeDeclaration) this.copyTypeDeclaration(subject); }
@@ -450,7 +496,7 @@ class DeepCopier {
     public Annotation[]               copyAnnotations(Annotation[] subject)                             throws CompileException { Annotation[]               result = new Annotation[subject.length];                 for (int i = 0; i < result.length; i++) result[i] = this.copyAnnotation(subject[i]);                        return result; }
 
     // SUPPRESS CHECKSTYLE LineLengthCheck:2
-    public Rvalue[]                   copyRvalues(Rvalue[] subject)                                     throws CompileException { return this.copyRvalues(Arrays.asList(subject)).toArray(new Rvalue[0]); }
+    public Rvalue[]                   copyRvalues(Rvalue[] subject)                                     throws CompileException { return (Rvalue[]) this.copyRvalues(Arrays.asList(subject)).toArray(new Rvalue[0]); }
 
     // ------------------------------ "copy*s()" methods for collections
 
@@ -498,37 +544,37 @@ class DeepCopier {
 
     public PackageDeclaration
     copyPackageDeclaration(PackageDeclaration subject) throws CompileException {
-        return new PackageDeclaration(subject.getLocation(), subject.packageName);
+        return new PackageDeclaration(this.copyLocation(subject), subject.packageName);
     }
 
     public ImportDeclaration
     copySingleTypeImportDeclaration(SingleTypeImportDeclaration stid) throws CompileException {
-        return new SingleTypeImportDeclaration(stid.getLocation(), stid.identifiers.clone());
+        return new SingleTypeImportDeclaration(this.copyLocation(stid), (String[]) stid.identifiers.clone());
     }
 
     public ImportDeclaration
     copyTypeImportOnDemandDeclaration(TypeImportOnDemandDeclaration tiodd) throws CompileException {
-        return new TypeImportOnDemandDeclaration(tiodd.getLocation(), tiodd.identifiers.clone());
+        return new TypeImportOnDemandDeclaration(this.copyLocation(tiodd), (String[]) tiodd.identifiers.clone());
     }
 
     public ImportDeclaration
     copySingleStaticImportDeclaration(SingleStaticImportDeclaration stid) throws CompileException {
-        return new SingleStaticImportDeclaration(stid.getLocation(), stid.identifiers.clone());
+        return new SingleStaticImportDeclaration(this.copyLocation(stid), (String[]) stid.identifiers.clone());
     }
 
     public ImportDeclaration
     copyStaticImportOnDemandDeclaration(StaticImportOnDemandDeclaration siodd) throws CompileException {
-        return new StaticImportOnDemandDeclaration(siodd.getLocation(), siodd.identifiers.clone());
+        return new StaticImportOnDemandDeclaration(this.copyLocation(siodd), (String[]) siodd.identifiers.clone());
     }
 
     public AnonymousClassDeclaration
     copyAnonymousClassDeclaration(AnonymousClassDeclaration subject) throws CompileException {
 
         AnonymousClassDeclaration
-        result = new AnonymousClassDeclaration(subject.getLocation(), this.copyType(subject.baseType));
+        result = new AnonymousClassDeclaration(this.copyLocation(subject), this.copyType(subject.baseType));
 
         for (BlockStatement vdoi : subject.variableDeclaratorsAndInitializers) {
-            result.variableDeclaratorsAndInitializers.add(this.copyBlockStatement(vdoi));
+            DeepCopier.addVariableDeclaratorOrInitializer(result, this.copyBlockStatement(vdoi));
         }
         for (ConstructorDeclarator cd : subject.constructors) {
             result.addConstructor(this.copyConstructorDeclarator(cd));
@@ -543,11 +589,28 @@ class DeepCopier {
         return result;
     }
 
+    /**
+     * Adds the copy of a field declaration or initializer to the <var>declaringClass</var>, which also sets its
+     * declaring type.
+     */
+    private static void
+    addVariableDeclaratorOrInitializer(AbstractClassDeclaration declaringClass, BlockStatement vdoi) {
+        if (vdoi instanceof FieldDeclaration) {
+            declaringClass.addFieldDeclaration((FieldDeclaration) vdoi);
+        } else
+        if (vdoi instanceof Initializer) {
+            declaringClass.addInitializer((Initializer) vdoi);
+        } else
+        {
+            declaringClass.variableDeclaratorsAndInitializers.add(vdoi);
+        }
+    }
+
     public LocalClassDeclaration
     copyLocalClassDeclaration(LocalClassDeclaration subject) throws CompileException {
 
         LocalClassDeclaration result = new LocalClassDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name,
@@ -557,7 +620,7 @@ class DeepCopier {
         );
 
         for (BlockStatement vdoi : subject.variableDeclaratorsAndInitializers) {
-            result.variableDeclaratorsAndInitializers.add(this.copyBlockStatement(vdoi));
+            DeepCopier.addVariableDeclaratorOrInitializer(result, this.copyBlockStatement(vdoi));
         }
         for (ConstructorDeclarator cd : subject.constructors) {
             result.addConstructor(this.copyConstructorDeclarator(cd));
@@ -575,7 +638,7 @@ class DeepCopier {
     public TypeDeclaration
     copyPackageMemberClassDeclaration(PackageMemberClassDeclaration subject) throws CompileException {
         PackageMemberClassDeclaration result = new PackageMemberClassDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name,
@@ -584,7 +647,7 @@ class DeepCopier {
             this.copyTypes(subject.implementedTypes)
         );
         for (BlockStatement vdoi : subject.variableDeclaratorsAndInitializers) {
-            result.variableDeclaratorsAndInitializers.add(this.copyBlockStatement(vdoi));
+            DeepCopier.addVariableDeclaratorOrInitializer(result, this.copyBlockStatement(vdoi));
         }
         for (ConstructorDeclarator cd : subject.constructors) {
             result.addConstructor(this.copyConstructorDeclarator(cd));
@@ -602,7 +665,7 @@ class DeepCopier {
     copyMemberInterfaceDeclaration(MemberInterfaceDeclaration subject) throws CompileException {
 
         MemberInterfaceDeclaration result = new MemberInterfaceDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name,
@@ -624,7 +687,7 @@ class DeepCopier {
     copyPackageMemberInterfaceDeclaration(final PackageMemberInterfaceDeclaration subject) throws CompileException {
 
         PackageMemberInterfaceDeclaration result = new PackageMemberInterfaceDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name,
@@ -649,7 +712,7 @@ class DeepCopier {
     copyMemberClassDeclaration(MemberClassDeclaration subject) throws CompileException {
 
         MemberClassDeclaration result = new MemberClassDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name,
@@ -659,7 +722,7 @@ class DeepCopier {
         );
 
         for (BlockStatement vdoi : subject.variableDeclaratorsAndInitializers) {
-            result.variableDeclaratorsAndInitializers.add(this.copyBlockStatement(vdoi));
+            DeepCopier.addVariableDeclaratorOrInitializer(result, this.copyBlockStatement(vdoi));
         }
         for (ConstructorDeclarator cd : subject.constructors) {
             result.addConstructor(this.copyConstructorDeclarator(cd));
@@ -677,13 +740,15 @@ class DeepCopier {
     public ConstructorDeclarator
     copyConstructorDeclarator(ConstructorDeclarator subject) throws CompileException {
         return new ConstructorDeclarator(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             this.copyFormalParameters(subject.formalParameters),
             this.copyTypes(subject.thrownExceptions),
             this.copyOptionalConstructorInvocation(subject.optionalConstructorInvocation),
-            this.copyBlockStatements(DeepCopier.assertNotNull(subject.optionalStatements))
+            this.copyBlockStatements(
+                (List<? extends BlockStatement>) DeepCopier.assertNotNull(subject.optionalStatements)
+            )
         );
     }
 
@@ -691,7 +756,7 @@ class DeepCopier {
     copyInitializer(Initializer subject) throws CompileException {
 
         return new Initializer(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyModifiers(subject.modifiers),
             this.copyBlock(subject.block)
         );
@@ -700,7 +765,7 @@ class DeepCopier {
     public MethodDeclarator
     copyMethodDeclarator(MethodDeclarator subject) throws CompileException {
         return new MethodDeclarator(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             this.copyOptionalTypeParameters(subject.optionalTypeParameters),
@@ -716,7 +781,7 @@ class DeepCopier {
     public FieldDeclaration
     copyFieldDeclaration(FieldDeclaration subject) throws CompileException {
         return new FieldDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.modifiers),
             this.copyType(subject.type),
@@ -727,7 +792,7 @@ class DeepCopier {
     public VariableDeclarator
     copyVariableDeclarator(VariableDeclarator subject) throws CompileException {
         return new VariableDeclarator(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.name,
             subject.brackets,
             this.copyOptionalArrayInitializerOrRvalue(subject.optionalInitializer)
@@ -736,12 +801,12 @@ class DeepCopier {
 
     public BlockStatement
     copyLabeledStatement(LabeledStatement ls) throws CompileException {
-        return new LabeledStatement(ls.getLocation(), ls.label, this.copyStatement(ls.body));
+        return new LabeledStatement(this.copyLocation(ls), ls.label, this.copyStatement(ls.body));
     }
 
     public Block
     copyBlock(Block b) throws CompileException {
-        Block result = new Block(b.getLocation());
+        Block result = new Block(this.copyLocation(b));
         for (BlockStatement bs : b.statements) result.addStatement(this.copyBlockStatement(bs));
         return result;
     }
@@ -754,7 +819,7 @@ class DeepCopier {
     public BlockStatement
     copyIfStatement(IfStatement is) throws CompileException {
         return new IfStatement(
-            is.getLocation(),
+            this.copyLocation(is),
             this.copyRvalue(is.condition),
             this.copyBlockStatement(is.thenStatement),
             this.copyOptionalBlockStatement(is.elseStatement)
@@ -764,7 +829,7 @@ class DeepCopier {
     public BlockStatement
     copyForStatement(ForStatement fs) throws CompileException {
         return new ForStatement(
-            fs.getLocation(),
+            this.copyLocation(fs),
             this.copyOptionalBlockStatement(fs.optionalInit),
             this.copyOptionalRvalue(fs.optionalCondition),
             this.copyOptionalRvalues(fs.optionalUpdate),
@@ -775,7 +840,7 @@ class DeepCopier {
     public BlockStatement
     copyForEachStatement(ForEachStatement fes) throws CompileException {
         return new ForEachStatement(
-            fes.getLocation(),
+            this.copyLocation(fes),
             this.copyFormalParameter(fes.currentElement),
             this.copyRvalue(fes.expression),
             this.copyBlockStatement(fes.body)
@@ -785,7 +850,7 @@ class DeepCopier {
     public BlockStatement
     copyWhileStatement(WhileStatement ws) throws CompileException {
         return new WhileStatement(
-            ws.getLocation(),
+            this.copyLocation(ws),
             this.copyRvalue(ws.condition),
             this.copyBlockStatement(ws.body)
         );
@@ -794,7 +859,7 @@ class DeepCopier {
     public BlockStatement
     copyTryStatement(TryStatement ts) throws CompileException {
         return new TryStatement(
-            ts.getLocation(),
+            this.copyLocation(ts),
             this.copyResources(ts.resources),
             this.copyBlockStatement(ts.body),
             this.copyCatchClauses(ts.catchClauses),
@@ -805,7 +870,7 @@ class DeepCopier {
     public CatchClause
     copyCatchClause(CatchClause subject) throws CompileException {
         return new CatchClause(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyCatchParameter(subject.catchParameter),
             this.copyBlockStatement(subject.body)
         );
@@ -814,7 +879,7 @@ class DeepCopier {
     public BlockStatement
     copySwitchStatement(SwitchStatement subject) throws CompileException {
         return new SwitchStatement(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyRvalue(subject.condition),
             this.copySwitchBlockStatementGroups(subject.sbsgs)
         );
@@ -823,7 +888,7 @@ class DeepCopier {
     public SwitchBlockStatementGroup
     copySwitchBlockStatementGroup(SwitchBlockStatementGroup subject) throws CompileException {
         return new SwitchBlockStatementGroup(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyRvalues(subject.caseLabels),
             subject.hasDefaultLabel,
             this.copyBlockStatements(subject.blockStatements)
@@ -833,7 +898,7 @@ class DeepCopier {
     public BlockStatement
     copySynchronizedStatement(SynchronizedStatement subject) throws CompileException {
         return new SynchronizedStatement(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyRvalue(subject.expression),
             this.copyBlockStatement(subject.body)
         );
@@ -842,7 +907,7 @@ class DeepCopier {
     public BlockStatement
     copyDoStatement(DoStatement subject) throws CompileException {
         return new DoStatement(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyBlockStatement(subject.body),
             this.copyRvalue(subject.condition)
         );
@@ -851,7 +916,7 @@ class DeepCopier {
     public BlockStatement
     copyLocalVariableDeclarationStatement(LocalVariableDeclarationStatement subject) throws CompileException {
         return new LocalVariableDeclarationStatement(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyModifiers(subject.modifiers),
             this.copyType(subject.type),
             this.copyVariableDeclarators(subject.variableDeclarators)
@@ -860,28 +925,28 @@ class DeepCopier {
 
     public BlockStatement
     copyReturnStatement(ReturnStatement subject) throws CompileException {
-        return new ReturnStatement(subject.getLocation(), this.copyOptionalRvalue(subject.optionalReturnValue));
+        return new ReturnStatement(this.copyLocation(subject), this.copyOptionalRvalue(subject.optionalReturnValue));
     }
 
     public BlockStatement
     copyThrowStatement(ThrowStatement subject) throws CompileException {
-        return new ThrowStatement(subject.getLocation(), this.copyRvalue(subject.expression));
+        return new ThrowStatement(this.copyLocation(subject), this.copyRvalue(subject.expression));
     }
 
     public BlockStatement
     copyBreakStatement(BreakStatement subject) throws CompileException {
-        return new BreakStatement(subject.getLocation(), subject.optionalLabel);
+        return new BreakStatement(this.copyLocation(subject), subject.optionalLabel);
     }
 
     public BlockStatement
     copyContinueStatement(ContinueStatement subject) throws CompileException {
-        return new ContinueStatement(subject.getLocation(), subject.optionalLabel);
+        return new ContinueStatement(this.copyLocation(subject), subject.optionalLabel);
     }
 
     public BlockStatement
     copyAssertStatement(AssertStatement subject) throws CompileException {
         return new AssertStatement(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyRvalue(subject.expression1),
             this.copyOptionalRvalue(subject.optionalExpression2)
         );
@@ -889,7 +954,7 @@ class DeepCopier {
 
     public BlockStatement
     copyEmptyStatement(EmptyStatement subject) throws CompileException {
-        return new EmptyStatement(subject.getLocation());
+        return new EmptyStatement(this.copyLocation(subject));
     }
 
     public BlockStatement
@@ -899,18 +964,18 @@ class DeepCopier {
 
     public Atom
     copyPackage(Package subject) throws CompileException {
-        return new Package(subject.getLocation(), subject.name);
+        return new Package(this.copyLocation(subject), subject.name);
     }
 
     public Rvalue
     copyArrayLength(ArrayLength subject) throws CompileException {
-        return new ArrayLength(subject.getLocation(), this.copyRvalue(subject.lhs));
+        return new ArrayLength(this.copyLocation(subject), this.copyRvalue(subject.lhs));
     }
 
     public Rvalue
     copyAssignment(Assignment subject) throws CompileException {
         return new Assignment(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyLvalue(subject.lhs),
             subject.operator,
             this.copyRvalue(subject.rhs)
@@ -920,7 +985,7 @@ class DeepCopier {
     public Rvalue
     copyUnaryOperation(UnaryOperation subject) throws CompileException {
         return new UnaryOperation(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.operator,
             this.copyRvalue(subject.operand)
         );
@@ -929,7 +994,7 @@ class DeepCopier {
     public Rvalue
     copyBinaryOperation(BinaryOperation subject) throws CompileException {
         return new BinaryOperation(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyRvalue(subject.lhs),
             subject.operator,
             this.copyRvalue(subject.rhs)
@@ -938,18 +1003,18 @@ class DeepCopier {
 
     public Rvalue
     copyCast(Cast subject) throws CompileException {
-        return new Cast(subject.getLocation(), this.copyType(subject.targetType), this.copyRvalue(subject.value));
+        return new Cast(this.copyLocation(subject), this.copyType(subject.targetType), this.copyRvalue(subject.value));
     }
 
     public Rvalue
     copyClassLiteral(ClassLiteral subject) throws CompileException {
-        return new ClassLiteral(subject.getLocation(), this.copyType(subject.type));
+        return new ClassLiteral(this.copyLocation(subject), this.copyType(subject.type));
     }
 
     public Rvalue
     copyConditionalExpression(ConditionalExpression subject) throws CompileException {
         return new ConditionalExpression(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyRvalue(subject.lhs),
             this.copyRvalue(subject.mhs),
             this.copyRvalue(subject.rhs)
@@ -960,20 +1025,20 @@ class DeepCopier {
     copyCrement(Crement subject) throws CompileException {
         return (
             subject.pre
-            ? new Crement(subject.getLocation(), subject.operator, this.copyLvalue(subject.operand))
-            : new Crement(subject.getLocation(), this.copyLvalue(subject.operand), subject.operator)
+            ? new Crement(this.copyLocation(subject), subject.operator, this.copyLvalue(subject.operand))
+            : new Crement(this.copyLocation(subject), this.copyLvalue(subject.operand), subject.operator)
         );
     }
 
     public Rvalue
     copyInstanceof(Instanceof subject) throws CompileException {
-        return new Instanceof(subject.getLocation(), this.copyRvalue(subject.lhs), this.copyType(subject.rhs));
+        return new Instanceof(this.copyLocation(subject), this.copyRvalue(subject.lhs), this.copyType(subject.rhs));
     }
 
     public Rvalue
     copyMethodInvocation(MethodInvocation subject) throws CompileException {
         return new MethodInvocation(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyOptionalAtom(subject.optionalTarget),
             subject.methodName,
             this.copyRvalues(subject.arguments)
@@ -983,7 +1048,7 @@ class DeepCopier {
     public Rvalue
     copySuperclassMethodInvocation(SuperclassMethodInvocation subject) throws CompileException {
         return new SuperclassMethodInvocation(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.methodName,
             this.copyRvalues(subject.arguments)
         );
@@ -991,32 +1056,32 @@ class DeepCopier {
 
     public Rvalue
     copyIntegerLiteral(IntegerLiteral subject) throws CompileException {
-        return new IntegerLiteral(subject.getLocation(), subject.value);
+        return new IntegerLiteral(this.copyLocation(subject), subject.value);
     }
 
     public Rvalue
     copyFloatingPointLiteral(FloatingPointLiteral subject) throws CompileException {
-        return new FloatingPointLiteral(subject.getLocation(), subject.value);
+        return new FloatingPointLiteral(this.copyLocation(subject), subject.value);
     }
 
     public Rvalue
     copyBooleanLiteral(BooleanLiteral subject) throws CompileException {
-        return new BooleanLiteral(subject.getLocation(), subject.value);
+        return new BooleanLiteral(this.copyLocation(subject), subject.value);
     }
 
     public Rvalue
     copyCharacterLiteral(CharacterLiteral subject) throws CompileException {
-        return new CharacterLiteral(subject.getLocation(), subject.value);
+        return new CharacterLiteral(this.copyLocation(subject), subject.value);
     }
 
     public Rvalue
     copyStringLiteral(StringLiteral subject) throws CompileException {
-        return new StringLiteral(subject.getLocation(), subject.value);
+        return new StringLiteral(this.copyLocation(subject), subject.value);
     }
 
     public Rvalue
     copyNullLiteral(NullLiteral subject) throws CompileException {
-        return new NullLiteral(subject.getLocation());
+        return new NullLiteral(this.copyLocation(subject));
     }
 
     public Rvalue
@@ -1025,8 +1090,8 @@ class DeepCopier {
     public Rvalue
     copyNewAnonymousClassInstance(NewAnonymousClassInstance subject) throws CompileException {
         return new NewAnonymousClassInstance(
-            subject.getLocation(),
-            this.copyOptionalRvalue(subject.optionalQualification),
+            this.copyLocation(subject),
+            this.copyOptionalQualification(subject.optionalQualification),
             this.copyAnonymousClassDeclaration(subject.anonymousClassDeclaration),
             this.copyRvalues(subject.arguments)
         );
@@ -1035,7 +1100,7 @@ class DeepCopier {
     public Rvalue
     copyNewArray(NewArray subject) throws CompileException {
         return new NewArray(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyType(subject.type),
             this.copyRvalues(subject.dimExprs),
             subject.dims
@@ -1045,7 +1110,7 @@ class DeepCopier {
     public Rvalue
     copyNewInitializedArray(NewInitializedArray subject) throws CompileException {
         return new NewInitializedArray(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyOptionalArrayType(subject.arrayType),
             this.copyArrayInitializer(subject.arrayInitializer)
         );
@@ -1053,7 +1118,7 @@ class DeepCopier {
 
     public ArrayInitializer
     copyArrayInitializer(ArrayInitializer subject) throws CompileException {
-        return new ArrayInitializer(subject.getLocation(), this.copyArrayInitializerOrRvalues(subject.values));
+        return new ArrayInitializer(this.copyLocation(subject), this.copyArrayInitializerOrRvalues(subject.values));
     }
 
     public ArrayInitializerOrRvalue
@@ -1074,15 +1139,15 @@ class DeepCopier {
         return (
             subject.type != null
             ? new NewClassInstance(
-                subject.getLocation(),
-                this.copyOptionalRvalue(subject.optionalQualification),
-                this.copyType(DeepCopier.assertNotNull(subject.type)),
+                this.copyLocation(subject),
+                this.copyOptionalQualification(subject.optionalQualification),
+                this.copyType((Type) DeepCopier.assertNotNull(subject.type)),
                 this.copyRvalues(subject.arguments)
             )
             : new NewClassInstance(
-                subject.getLocation(),
+                this.copyLocation(subject),
                 this.copyOptionalRvalue(subject.optionalQualification),
-                DeepCopier.assertNotNull(subject.iClass),
+                (IClass) DeepCopier.assertNotNull(subject.iClass),
                 this.copyRvalues(subject.arguments)
             )
         );
@@ -1093,28 +1158,57 @@ class DeepCopier {
 
     public Rvalue
     copyQualifiedThisReference(QualifiedThisReference subject) throws CompileException {
-        return new QualifiedThisReference(subject.getLocation(), this.copyType(subject.qualification));
+        return new QualifiedThisReference(this.copyLocation(subject), this.copyType(subject.qualification));
     }
 
     public Rvalue
     copyThisReference(ThisReference subject) throws CompileException {
-        return new ThisReference(subject.getLocation());
+        return new ThisReference(this.copyLocation(subject));
     }
 
     public Rvalue
-    copyLambdaExpression(LambdaExpression subject) {
-        return new LambdaExpression(subject.getLocation(), subject.parameters, subject.body);
+    copyLambdaExpression(LambdaExpression subject) throws CompileException {
+        return new LambdaExpression(
+            this.copyLocation(subject),
+            this.copyLambdaParameters(subject.parameters),
+            this.copyLambdaBody(subject.body)
+        );
+    }
+
+    public LambdaParameters
+    copyIdentifierLambdaParameters(IdentifierLambdaParameters subject) {
+        return new IdentifierLambdaParameters(subject.identifier);
+    }
+
+    public LambdaParameters
+    copyFormalLambdaParameters(FormalLambdaParameters subject) throws CompileException {
+        return new FormalLambdaParameters(this.copyFormalParameters(subject.formalParameters));
+    }
+
+    public LambdaParameters
+    copyInferredLambdaParameters(InferredLambdaParameters subject) {
+        return new InferredLambdaParameters((String[]) subject.names.clone());
+    }
+
+    public LambdaBody
+    copyBlockLambdaBody(BlockLambdaBody subject) throws CompileException {
+        return new BlockLambdaBody(this.copyBlock(subject.block));
+    }
+
+    public LambdaBody
+    copyExpressionLambdaBody(ExpressionLambdaBody subject) throws CompileException {
+        return new ExpressionLambdaBody(this.copyRvalue(subject.expression));
     }
 
     public Rvalue
     copyArrayCreationReference(ArrayCreationReference subject) throws CompileException {
-        return new ArrayCreationReference(subject.getLocation(), this.copyArrayType(subject.type));
+        return new ArrayCreationReference(this.copyLocation(subject), this.copyArrayType(subject.type));
     }
 
     public Rvalue
     copyClassInstanceCreationReference(ClassInstanceCreationReference subject) throws CompileException {
         return new ClassInstanceCreationReference(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyType(subject.type),
             this.copyOptionalTypeArguments(subject.typeArguments)
         );
@@ -1122,7 +1216,7 @@ class DeepCopier {
 
     public Rvalue
     copyMethodReference(MethodReference subject) throws CompileException {
-        return new MethodReference(subject.getLocation(), this.copyAtom(subject.lhs), subject.methodName);
+        return new MethodReference(this.copyLocation(subject), this.copyAtom(subject.lhs), subject.methodName);
     }
 
     public ArrayType
@@ -1132,13 +1226,13 @@ class DeepCopier {
 
     public Type
     copyPrimitiveType(PrimitiveType bt) throws CompileException {
-        return new PrimitiveType(bt.getLocation(), bt.primitive);
+        return new PrimitiveType(this.copyLocation(bt), bt.primitive);
     }
 
     public ReferenceType
     copyReferenceType(ReferenceType subject) throws CompileException {
         return new ReferenceType(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyAnnotations(subject.annotations),
             subject.identifiers,
             this.copyOptionalTypeArguments(subject.optionalTypeArguments)
@@ -1147,21 +1241,31 @@ class DeepCopier {
 
     public Type
     copyRvalueMemberType(RvalueMemberType subject) throws CompileException {
-        return new RvalueMemberType(subject.getLocation(), this.copyRvalue(subject.rvalue), subject.identifier);
+        Rvalue rvalue = (Rvalue) this.qualificationCopies.get(subject.rvalue);
+        if (rvalue == null) rvalue = this.copyRvalue(subject.rvalue);
+        return new RvalueMemberType(this.copyLocation(subject), rvalue, subject.identifier);
+    }
+
+    @Nullable private Rvalue
+    copyOptionalQualification(@Nullable Rvalue subject) throws CompileException {
+        if (subject == null) return null;
+        Rvalue result = this.copyRvalue(subject);
+        this.qualificationCopies.put(subject, result);
+        return result;
     }
 
     public Type
-    copySimpleType(SimpleType st) throws CompileException { return new SimpleType(st.getLocation(), st.iClass); }
+    copySimpleType(SimpleType st) throws CompileException { return new SimpleType(this.copyLocation(st), st.iClass); }
 
     public ConstructorInvocation
     copyAlternateConstructorInvocation(AlternateConstructorInvocation subject) throws CompileException {
-        return new AlternateConstructorInvocation(subject.getLocation(), this.copyRvalues(subject.arguments));
+        return new AlternateConstructorInvocation(this.copyLocation(subject), this.copyRvalues(subject.arguments));
     }
 
     public ConstructorInvocation
     copySuperConstructorInvocation(SuperConstructorInvocation subject) throws CompileException {
         return new SuperConstructorInvocation(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyOptionalRvalue(subject.optionalQualification),
             this.copyRvalues(subject.arguments)
         );
@@ -1169,13 +1273,13 @@ class DeepCopier {
 
     public Lvalue
     copyAmbiguousName(AmbiguousName subject) throws CompileException {
-        return new AmbiguousName(subject.getLocation(), Arrays.copyOf(subject.identifiers, subject.n));
+        return new AmbiguousName(this.copyLocation(subject), (String[]) Arrays.copyOf(subject.identifiers, subject.n));
     }
 
     public Lvalue
     copyArrayAccessExpression(ArrayAccessExpression subject) throws CompileException {
         return new ArrayAccessExpression(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyRvalue(subject.lhs),
             this.copyRvalue(subject.index)
         );
@@ -1183,18 +1287,18 @@ class DeepCopier {
 
     public Lvalue
     copyFieldAccess(FieldAccess subject) throws CompileException {
-        return new FieldAccess(subject.getLocation(), this.copyAtom(subject.lhs), subject.field);
+        return new FieldAccess(this.copyLocation(subject), this.copyAtom(subject.lhs), subject.field);
     }
 
     public Lvalue
     copyFieldAccessExpression(FieldAccessExpression subject) throws CompileException {
-        return new FieldAccessExpression(subject.getLocation(), this.copyAtom(subject.lhs), subject.fieldName);
+        return new FieldAccessExpression(this.copyLocation(subject), this.copyAtom(subject.lhs), subject.fieldName);
     }
 
     public Lvalue
     copySuperclassFieldAccessExpression(SuperclassFieldAccessExpression subject) throws CompileException {
         return new SuperclassFieldAccessExpression(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyOptionalType(subject.optionalQualification),
             subject.fieldName
         );
@@ -1207,12 +1311,15 @@ class DeepCopier {
 
     public Lvalue
     copyParenthesizedExpression(ParenthesizedExpression subject) throws CompileException {
-        return new ParenthesizedExpression(subject.getLocation(), this.copyRvalue(subject.value));
+        return new ParenthesizedExpression(this.copyLocation(subject), this.copyRvalue(subject.value));
     }
 
     public ElementValue
     copyElementValueArrayInitializer(ElementValueArrayInitializer subject) throws CompileException {
-        return new ElementValueArrayInitializer(this.copyElementValues(subject.elementValues), subject.getLocation());
+        return new ElementValueArrayInitializer(
+            this.copyElementValues(subject.elementValues),
+            this.copyLocation(subject)
+        );
     }
 
     public Annotation
@@ -1244,7 +1351,7 @@ class DeepCopier {
     public FormalParameters
     copyFormalParameters(FunctionDeclarator.FormalParameters subject) throws CompileException {
         return new FormalParameters(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyFormalParameters(subject.parameters),
             subject.variableArity
         );
@@ -1254,7 +1361,7 @@ class DeepCopier {
     copyFormalParameter(FunctionDeclarator.FormalParameter subject) throws CompileException {
 
         return new FormalParameter(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyModifiers(subject.modifiers),
             this.copyType(subject.type),
             subject.name
@@ -1263,14 +1370,19 @@ class DeepCopier {
 
     public CatchParameter
     copyCatchParameter(CatchParameter subject) throws CompileException {
-        return new CatchParameter(subject.getLocation(), subject.finaL, this.copyTypes(subject.types), subject.name);
+        return new CatchParameter(
+            this.copyLocation(subject),
+            subject.finaL,
+            this.copyTypes(subject.types),
+            subject.name
+        );
     }
 
     public EnumConstant
     copyEnumConstant(EnumConstant subject) throws CompileException {
 
         EnumConstant result = new EnumConstant(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.optionalDocComment,
             this.copyModifiers(subject.getModifiers()),
             subject.name,
@@ -1278,7 +1390,7 @@ class DeepCopier {
         );
 
         for (BlockStatement vdoi : subject.variableDeclaratorsAndInitializers) {
-            result.variableDeclaratorsAndInitializers.add(this.copyBlockStatement(vdoi));
+            DeepCopier.addVariableDeclaratorOrInitializer(result, this.copyBlockStatement(vdoi));
         }
 
         return result;
@@ -1288,7 +1400,7 @@ class DeepCopier {
     copyPackageMemberEnumDeclaration(PackageMemberEnumDeclaration subject) throws CompileException {
 
         PackageMemberEnumDeclaration result = new PackageMemberEnumDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name,
@@ -1308,7 +1420,7 @@ class DeepCopier {
             result.addMemberTypeDeclaration(this.copyMemberTypeDeclaration(mtd));
         }
         for (BlockStatement vdoi : subject.variableDeclaratorsAndInitializers) {
-            result.variableDeclaratorsAndInitializers.add(this.copyBlockStatement(vdoi));
+            DeepCopier.addVariableDeclaratorOrInitializer(result, this.copyBlockStatement(vdoi));
         }
 
         return result;
@@ -1318,7 +1430,7 @@ class DeepCopier {
     copyMemberEnumDeclaration(MemberEnumDeclaration subject) throws CompileException {
 
         MemberEnumDeclaration result = new MemberEnumDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name,
@@ -1338,7 +1450,7 @@ class DeepCopier {
             result.addMemberTypeDeclaration(this.copyMemberTypeDeclaration(mtd));
         }
         for (BlockStatement vdoi : subject.variableDeclaratorsAndInitializers) {
-            result.variableDeclaratorsAndInitializers.add(this.copyBlockStatement(vdoi));
+            DeepCopier.addVariableDeclaratorOrInitializer(result, this.copyBlockStatement(vdoi));
         }
 
         return result;
@@ -1348,7 +1460,7 @@ class DeepCopier {
     copyPackageMemberAnnotationTypeDeclaration(PackageMemberAnnotationTypeDeclaration subject) throws CompileException {
 
         PackageMemberAnnotationTypeDeclaration result = new PackageMemberAnnotationTypeDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name
@@ -1365,7 +1477,7 @@ class DeepCopier {
     copyMemberAnnotationTypeDeclaration(MemberAnnotationTypeDeclaration subject) throws CompileException {
 
         MemberAnnotationTypeDeclaration result = new MemberAnnotationTypeDeclaration(
-            subject.getLocation(),
+            this.copyLocation(subject),
             subject.getDocComment(),
             this.copyModifiers(subject.getModifiers()),
             subject.name
@@ -1387,7 +1499,7 @@ class DeepCopier {
     public TryStatement.Resource
     copyLocalVariableDeclaratorResource(LocalVariableDeclaratorResource subject) throws CompileException {
         return new LocalVariableDeclaratorResource(
-            subject.getLocation(),
+            this.copyLocation(subject),
             this.copyModifiers(subject.modifiers),
             this.copyType(subject.type),
             this.copyVariableDeclarator(subject.variableDeclarator)
@@ -1396,7 +1508,7 @@ class DeepCopier {
 
     public TryStatement.Resource
     copyVariableAccessResource(VariableAccessResource subject) throws CompileException {
-        return new VariableAccessResource(subject.getLocation(), this.copyRvalue(subject.variableAccess));
+        return new VariableAccessResource(this.copyLocation(subject), this.copyRvalue(subject.variableAccess));
     }
 
     public Modifier[]
@@ -1408,11 +1520,11 @@ class DeepCopier {
 
     public Modifier
     copyModifier(Modifier modifier) throws CompileException {
-        return DeepCopier.assertNotNull(modifier.accept(this.modifierCopier));
+        return (Modifier) DeepCopier.assertNotNull(modifier.accept(this.modifierCopier));
     }
 
     public AccessModifier
-    copyAccessModifier(AccessModifier am) { return new AccessModifier(am.keyword, am.getLocation()); }
+    copyAccessModifier(AccessModifier am) { return new AccessModifier(am.keyword, this.copyLocation(am)); }
 
     public TypeParameter
     copyTypeParameter(TypeParameter subject) throws CompileException {
@@ -0,0 +1,76 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.util.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.codehaus.commons.compiler.util.resource.Resource;
+
+/**
+ * Utility methods related to {@link ByteBufferResource}s.
+ */
+public final
+class ByteBufferResources {
+
+    private ByteBufferResources() {}
+
+    /**
+     * @return             The contents of the <var>resource</var>; if it is a {@link ByteBufferResource}, then without
+     *                     copying them
+     * @throws IOException Problems opening or reading the resource
+     */
+    public static ByteBuffer
+    getContents(Resource resource) throws IOException {
+
+        if (resource instanceof ByteBufferResource) return ((ByteBufferResource) resource).getByteBuffer();
+
+        InputStream is = resource.open();
+        try {
+            return ByteBuffer.wrap(ByteBufferResources.readAll(is));
+        } finally {
+            try { is.close(); } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Reads the <var>inputStream</var> until end-of-input, but does not close it.
+     *
+     * @return The bytes read
+     */
+    public static byte[]
+    readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream baos   = new ByteArrayOutputStream();
+        byte[]                buffer = new byte[4096];
+        for (;;) {
+            int cnt = inputStream.read(buffer);
+            if (cnt == -1) break;
+            baos.write(buffer, 0, cnt);
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,649 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.util.resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.codehaus.commons.compiler.util.StringUtil;
+import org.codehaus.commons.compiler.util.resource.DirectoryResourceFinder;
+import org.codehaus.commons.compiler.util.resource.Resource;
+import org.codehaus.commons.compiler.util.resource.ResourceFinder;
+import org.codehaus.commons.nullanalysis.Nullable;
+
+/**
+ * A {@link ResourceFinder} that finds its resources along a "path" consisting of JAR file names, ZIP file names, and
+ * directory names, like the {@link PathResourceFinder}. However, when it is first used, it reads the central
+ * directories of all archives into <em>one</em> hash index. Thus, finding a resource, or finding that it does not
+ * exist, takes one hash lookup (plus one lookup in each directory that precedes the archive on the path), instead of
+ * one {@link ZipFile#getEntry(String)} call per archive.
+ * <p>
+ *   The archives are memory-mapped, and the resources it finds are {@link ByteBufferResource}s; the contents of
+ *   "stored" (i.e. uncompressed) entries are read without copying. Archives that cannot be memory-mapped (e.g. ZIP64
+ *   archives) are read through {@link ZipFile} instead. The archives must not be modified while they are in use.
+ * </p>
+ * <p>
+ *   Optionally, the index is stored in a file, and re-used as long as the path and the sizes and modification times
+ *   of the archives are unchanged.
+ * </p>
+ * <p>
+ *   {@link #close()} releases the archives; see there.
+ * </p>
+ */
+public
+class IndexedPathResourceFinder extends ResourceFinder implements Closeable {
+
+    private static final int INDEX_FILE_MAGIC   = 0x4a504958; // "JPIX"
+    private static final int INDEX_FILE_VERSION = 1;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER_SIGNATURE        = 0x04034b50;
+
+    private static final short STORED   = 0;
+    private static final short DEFLATED = 8;
+
+    /**
+     * Designates an entry that is read through {@link ZipFile}, because its archive could not be memory-mapped.
+     */
+    private static final short VIA_ZIP_FILE = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File[]         entries;
+    @Nullable private final File indexFile;
+
+    /**
+     * The directories on the path, by path index; {@code null} for archives and invalid entries.
+     */
+    @Nullable private DirectoryResourceFinder[] directories;
+
+    /**
+     * Maps resource names to the archive entries, where an entry of a preceding archive hides the entries with the
+     * same name in the following archives.
+     */
+    @Nullable private Map<String, ArchiveEntry> index;
+
+    /**
+     * The archives on the path; {@code null} iff the {@link #index} has not yet been loaded.
+     */
+    @Nullable private List<Archive> archives;
+
+    /**
+     * @param entries The entries of the "path"
+     */
+    public
+    IndexedPathResourceFinder(File[] entries) { this(entries, null); }
+
+    /**
+     * @param entries   The entries of the "path"
+     * @param indexFile Where the index is stored and re-used, or {@code null}
+     */
+    public
+    IndexedPathResourceFinder(File[] entries, @Nullable File indexFile) {
+        this.entries   = entries;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * @param path A java-like path, i.e. a "path separator"-separated list of entries
+     */
+    public
+    IndexedPathResourceFinder(String path) { this(StringUtil.parsePath(path)); }
+
+    @Override public final String toString() { return "indexed:" + Arrays.asList(this.entries); }
+
+    // Implement ResourceFinder.
+
+    @Override @Nullable public final Resource
+    findResource(String resourceName) {
+
+        Map<String, ArchiveEntry> index       = this.getIndex();
+        DirectoryResourceFinder[] directories = this.directories;
+        assert directories != null;
+
+        ArchiveEntry ae = (ArchiveEntry) index.get(resourceName);
+
+        // Directories that precede the archive on the path take precedence.
+        int end = ae == null ? directories.length : ae.archive.pathIndex;
+        for (int i = 0; i < end; i++) {
+            DirectoryResourceFinder drf = directories[i];
+            if (drf == null) continue;
+
+            Resource result = drf.findResource(resourceName);
+            if (result != null) return result;
+        }
+
+        return ae;
+    }
+
+    private synchronized Map<String, ArchiveEntry>
+    getIndex() {
+
+        Map<String, ArchiveEntry> result = this.index;
+        if (result != null) return result;
+
+        List<Archive>             archives    = new ArrayList<Archive>();
+        DirectoryResourceFinder[] directories = new DirectoryResourceFinder[this.entries.length];
+        for (int i = 0; i < this.entries.length; i++) {
+            File entry = this.entries[i];
+            if ((entry.getName().endsWith(".jar") || entry.getName().endsWith(".zip")) && entry.isFile()) {
+                archives.add(new Archive(entry, i));
+            } else
+            if (entry.isDirectory()) {
+                directories[i] = new DirectoryResourceFinder(entry);
+            }
+        }
+
+        result = this.loadIndex(archives);
+        if (result == null) {
+            result = new HashMap<String, ArchiveEntry>();
+            for (Archive archive : archives) IndexedPathResourceFinder.indexArchive(archive, result);
+            this.storeIndex(archives, result);
+        }
+
+        this.directories = directories;
+        this.archives    = archives;
+        return (this.index = result);
+    }
+
+    /**
+     * Closes the archives that were opened as {@link ZipFile}s, and drops the references to the memory-mapped
+     * archives and to the index. The JVM offers no way to unmap a file explicitly; each mapping is released when it
+     * and all buffers that were obtained from it (e.g. through {@link ByteBufferResource#getByteBuffer()}) have been
+     * garbage-collected.
+     * <p>
+     *   The finder remains usable; when it is used again, it re-opens the archives.
+     * </p>
+     */
+    @Override public synchronized void
+    close() throws IOException {
+
+        List<Archive> archives = this.archives;
+        if (archives == null) return;
+
+        this.index       = null;
+        this.directories = null;
+        this.archives    = null;
+
+        IOException caughtException = null;
+        for (Archive archive : archives) {
+            try {
+                archive.close();
+            } catch (IOException ioe) {
+                if (caughtException == null) caughtException = ioe;
+            }
+        }
+        if (caughtException != null) throw caughtException;
+    }
+
+    /**
+     * Adds the entries of the <var>archive</var> to the <var>index</var>, except those that are hidden by an entry of
+     * a preceding archive.
+     */
+    private static void
+    indexArchive(Archive archive, Map<String, ArchiveEntry> index) {
+
+        List<ArchiveEntry> archiveEntries;
+        try {
+            archiveEntries = IndexedPathResourceFinder.readCentralDirectory(archive);
+        } catch (IOException ioe) {
+            archiveEntries = null;
+        } catch (RuntimeException re) {
+            archiveEntries = null;
+        }
+
+        // Fall back to "ZipFile", e.g. for ZIP64 archives and archives larger than 2 GB.
+        if (archiveEntries == null) {
+            archiveEntries = new ArrayList<ArchiveEntry>();
+            try {
+                for (Enumeration<? extends ZipEntry> en = archive.getZipFile().entries(); en.hasMoreElements();) {
+                    String name = ((ZipEntry) en.nextElement()).getName();
+                    archiveEntries.add(
+                        new ArchiveEntry(name, archive, IndexedPathResourceFinder.VIA_ZIP_FILE, 0, 0, 0, 0)
+                    );
+                }
+            } catch (IOException ioe) {
+
+                // Like the "PathResourceFinder", ignore archives that cannot be opened.
+                return;
+            }
+        }
+
+        for (ArchiveEntry ae : archiveEntries) {
+            if (!index.containsKey(ae.name)) index.put(ae.name, ae);
+        }
+    }
+
+    /**
+     * Reads the "central directory" of the <var>archive</var>, see the "ZIP File Format Specification", section 4.3.
+     */
+    private static List<ArchiveEntry>
+    readCentralDirectory(Archive archive) throws IOException {
+
+        ByteBuffer map = archive.getMap();
+
+        // Find the "end of central directory record"; it is followed by a comment of up to 65535 bytes.
+        int eocd = map.limit() - 22;
+        while (map.getInt(eocd) != IndexedPathResourceFinder.END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+            if (eocd == 0 || eocd == map.limit() - 22 - 0xffff) {
+                throw new ZipException("End of central directory record not found");
+            }
+            eocd--;
+        }
+
+        int  entryCount = 0xffff & map.getShort(eocd + 10);
+        long cdOffset   = 0xffffffffL & map.getInt(eocd + 16);
+        if (entryCount == 0xffff || cdOffset == 0xffffffffL) throw new ZipException("ZIP64 archive");
+
+        List<ArchiveEntry> result = new ArrayList<ArchiveEntry>(entryCount);
+        ByteBuffer         bb     = (ByteBuffer) map.duplicate();
+        int                offset = (int) cdOffset;
+        for (int i = 0; i < entryCount; i++) {
+            if (map.getInt(offset) != IndexedPathResourceFinder.CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+
+            short method            = map.getShort(offset + 10);
+            int   dosTime           = map.getInt(offset + 12);
+            int   compressedSize    = map.getInt(offset + 20);
+            int   size              = map.getInt(offset + 24);
+            int   nameLength        = 0xffff & map.getShort(offset + 28);
+            int   extraFieldLength  = 0xffff & map.getShort(offset + 30);
+            int   commentLength     = 0xffff & map.getShort(offset + 32);
+            int   localHeaderOffset = map.getInt(offset + 42);
+            if (compressedSize == -1 || size == -1 || localHeaderOffset == -1) throw new ZipException("ZIP64 entry");
+
+            byte[] name = new byte[nameLength];
+            bb.position(offset + 46);
+            bb.get(name);
+
+            result.add(new ArchiveEntry(
+                new String(name, IndexedPathResourceFinder.UTF_8),
+                archive,
+                method,
+                localHeaderOffset,
+                compressedSize,
+                size,
+                dosTime
+            ));
+
+            offset += 46 + nameLength + extraFieldLength + commentLength;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The index stored in the {@link #indexFile}, or {@code null} if there is no such file, or if it does not
+     *         match the <var>archives</var>
+     */
+    @Nullable private Map<String, ArchiveEntry>
+    loadIndex(List<Archive> archives) {
+
+        File indexFile = this.indexFile;
+        if (indexFile == null || !indexFile.isFile()) return null;
+
+        try {
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (dis.readInt() != IndexedPathResourceFinder.INDEX_FILE_MAGIC) return null;
+                if (dis.readInt() != IndexedPathResourceFinder.INDEX_FILE_VERSION) return null;
+
+                if (dis.readInt() != archives.size()) return null;
+                for (Archive archive : archives) {
+                    if (
+                        !dis.readUTF().equals(archive.file.getAbsolutePath())
+                        || dis.readInt() != archive.pathIndex
+                        || dis.readLong() != archive.length
+                        || dis.readLong() != archive.lastModified
+                    ) return null;
+                }
+
+                Map<String, ArchiveEntry> result = new HashMap<String, ArchiveEntry>();
+                for (int i = dis.readInt(); i > 0; i--) {
+                    String name = dis.readUTF();
+                    result.put(name, new ArchiveEntry(
+                        name,
+                        (Archive) archives.get(dis.readInt()),
+                        dis.readShort(), // method
+                        dis.readInt(),   // localHeaderOffset
+                        dis.readInt(),   // compressedSize
+                        dis.readInt(),   // size
+                        dis.readInt()    // dosTime
+                    ));
+                }
+                return result;
+            } finally {
+                dis.close();
+            }
+        } catch (IOException ioe) {
+            return null;
+        } catch (IndexOutOfBoundsException ioobe) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the <var>index</var> in the {@link #indexFile}; failure to do so is not an error.
+     */
+    private void
+    storeIndex(List<Archive> archives, Map<String, ArchiveEntry> index) {
+
+        File indexFile = this.indexFile;
+        if (indexFile == null) return;
+
+        Map<Archive, Integer> archiveNumbers = new HashMap<Archive, Integer>();
+        try {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+            try {
+                dos.writeInt(IndexedPathResourceFinder.INDEX_FILE_MAGIC);
+                dos.writeInt(IndexedPathResourceFinder.INDEX_FILE_VERSION);
+
+                dos.writeInt(archives.size());
+                for (Archive archive : archives) {
+                    archiveNumbers.put(archive, Integer.valueOf(archiveNumbers.size()));
+                    dos.writeUTF(archive.file.getAbsolutePath());
+                    dos.writeInt(archive.pathIndex);
+                    dos.writeLong(archive.length);
+                    dos.writeLong(archive.lastModified);
+                }
+
+                dos.writeInt(index.size());
+                for (ArchiveEntry ae : index.values()) {
+                    dos.writeUTF(ae.name);
+                    dos.writeInt(((Integer) archiveNumbers.get(ae.archive)).intValue());
+                    dos.writeShort(ae.method);
+                    dos.writeInt(ae.localHeaderOffset);
+                    dos.writeInt(ae.compressedSize);
+                    dos.writeInt(ae.size);
+                    dos.writeInt(ae.dosTime);
+                }
+            } finally {
+                dos.close();
+            }
+        } catch (IOException ioe) {
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * An archive on the path, which is memory-mapped or opened as a {@link ZipFile} when it is first accessed.
+     */
+    private static final
+    class Archive {
+
+        final File file;
+        final int  pathIndex;
+        final long length;
+        final long lastModified;
+
+        @Nullable private ByteBuffer map;
+        @Nullable private ZipFile    zipFile;
+
+        Archive(File file, int pathIndex) {
+            this.file         = file;
+            this.pathIndex    = pathIndex;
+            this.length       = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        /**
+         * @return The contents of the archive, memory-mapped, in little-endian byte order
+         */
+        synchronized ByteBuffer
+        getMap() throws IOException {
+
+            ByteBuffer result = this.map;
+            if (result != null) return result;
+
+            FileInputStream fis = new FileInputStream(this.file);
+            try {
+                FileChannel fc = fis.getChannel();
+                result = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            } finally {
+                fis.close();
+            }
+            result.order(ByteOrder.LITTLE_ENDIAN);
+
+            return (this.map = result);
+        }
+
+        synchronized ZipFile
+        getZipFile() throws IOException {
+
+            ZipFile result = this.zipFile;
+            if (result != null) return result;
+
+            return (this.zipFile = new ZipFile(this.file));
+        }
+
+        /**
+         * Closes the {@link ZipFile} and drops the mapping; both are re-opened when the archive is accessed again.
+         */
+        synchronized void
+        close() throws IOException {
+
+            this.map = null;
+
+            ZipFile zf = this.zipFile;
+            if (zf == null) return;
+
+            this.zipFile = null;
+            zf.close();
+        }
+    }
+
+    /**
+     * An entry of an {@link Archive}, as described by its "central directory file header".
+     */
+    private static final
+    class ArchiveEntry implements ByteBufferResource {
+
+        final String  name;
+        final Archive archive;
+        final short   method;
+        final int     localHeaderOffset;
+        final int     compressedSize;
+        final int     size;
+        final int     dosTime;
+
+        ArchiveEntry(
+            String  name,
+            Archive archive,
+            short   method,
+            int     localHeaderOffset,
+            int     compressedSize,
+            int     size,
+            int     dosTime
+        ) {
+            this.name              = name;
+            this.archive           = archive;
+            this.method            = method;
+            this.localHeaderOffset = localHeaderOffset;
+            this.compressedSize    = compressedSize;
+            this.size              = size;
+            this.dosTime           = dosTime;
+        }
+
+        @Override public ByteBuffer
+        getByteBuffer() throws IOException {
+
+            if (this.method == IndexedPathResourceFinder.VIA_ZIP_FILE) {
+                InputStream is = this.open();
+                try {
+                    return ByteBuffer.wrap(ByteBufferResources.readAll(is));
+                } finally {
+                    try { is.close(); } catch (IOException e) {}
+                }
+            }
+
+            ByteBuffer map = this.archive.getMap();
+
+            // The "local file header" precedes the entry data; its extra field may differ from the one in the central
+            // directory.
+            int lho = this.localHeaderOffset;
+            if (map.getInt(lho) != IndexedPathResourceFinder.LOCAL_FILE_HEADER_SIGNATURE) {
+                throw new ZipException(this.getFileName() + ": Invalid local file header");
+            }
+            int dataOffset = lho + 30 + (0xffff & map.getShort(lho + 26)) + (0xffff & map.getShort(lho + 28));
+
+            ByteBuffer data = (ByteBuffer) map.duplicate();
+            data.limit(dataOffset + this.compressedSize);
+            data.position(dataOffset);
+            data = (ByteBuffer) data.slice();
+
+            if (this.method == IndexedPathResourceFinder.STORED) return data;
+
+            if (this.method != IndexedPathResourceFinder.DEFLATED) {
+                throw new ZipException(this.getFileName() + ": Unsupported compression method " + this.method);
+            }
+
+            // Notice: With the "nowrap" option, the inflater requires an extra "dummy" input byte.
+            byte[] input = new byte[this.compressedSize + 1];
+            data.get(input, 0, this.compressedSize);
+
+            byte[]   output   = new byte[this.size];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(input);
+                for (int n = 0; n < output.length;) {
+                    int count = inflater.inflate(output, n, output.length - n);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new ZipException(this.getFileName() + ": Truncated entry data");
+                    }
+                    n += count;
+                }
+            } catch (DataFormatException dfe) {
+                throw new ZipException(this.getFileName() + ": " + dfe.getMessage());
+            } finally {
+                inflater.end();
+            }
+
+            return ByteBuffer.wrap(output);
+        }
+
+        @Override public InputStream
+        open() throws IOException {
+
+            if (this.method == IndexedPathResourceFinder.VIA_ZIP_FILE) {
+                ZipFile  zf = this.archive.getZipFile();
+                ZipEntry ze = zf.getEntry(this.name);
+                if (ze == null) throw new ZipException(this.getFileName() + ": Entry has disappeared");
+                return zf.getInputStream(ze);
+            }
+
+            return new ByteBufferInputStream(this.getByteBuffer());
+        }
+
+        @Override public String
+        getFileName() { return this.archive.file.getPath() + ':' + this.name; }
+
+        @Override public long
+        lastModified() {
+
+            if (this.method == IndexedPathResourceFinder.VIA_ZIP_FILE) {
+                try {
+                    ZipEntry ze = this.archive.getZipFile().getEntry(this.name);
+                    long     l  = ze == null ? -1L : ze.getTime();
+                    return l == -1L ? 0L : l;
+                } catch (IOException ioe) {
+                    return 0L;
+                }
+            }
+
+            // Decode the MS-DOS date and time.
+            int      dt = this.dosTime;
+            Calendar c  = Calendar.getInstance();
+            c.clear();
+            c.set(
+                ((dt >> 25) & 0x7f) + 1980, // year
+                ((dt >> 21) & 0x0f) - 1,    // month
+                (dt >> 16) & 0x1f,          // day
+                (dt >> 11) & 0x1f,          // hour
+                (dt >> 5) & 0x3f,           // minute
+                (dt << 1) & 0x3e            // second
+            );
+            return c.getTimeInMillis();
+        }
+
+        @Override public String
+        toString() { return this.getFileName(); }
+    }
+
+    /**
+     * An {@link InputStream} that reads the remaining bytes of a {@link ByteBuffer}.
+     */
+    private static final
+    class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) { this.buffer = buffer; }
+
+        @Override public int
+        read() { return this.buffer.hasRemaining() ? 0xff & this.buffer.get() : -1; }
+
+        @Override public int
+        read(@Nullable byte[] b, int off, int len) {
+            assert b != null;
+
+            if (len == 0) return 0;
+            if (!this.buffer.hasRemaining()) return -1;
+
+            int n = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override public int
+        available() { return this.buffer.remaining(); }
+    }
+}
@@ -0,0 +1,213 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.codehaus.janino.Descriptor;
+import org.codehaus.janino.Mod;
+import org.codehaus.janino.util.ClassFile;
+import org.codehaus.janino.util.ClassFile.ClassFileException;
+import org.junit.Assert;
+import org.junit.Test;
+
+// SUPPRESS CHECKSTYLE JavadocMethod:9999
+
+/**
+ * Tests for the {@link ClassFile}.
+ */
+public
+class ClassFileTest {
+
+    /**
+     * Characters that modified UTF-8 encodes in two, three and six bytes.
+     */
+    private static final String NON_ASCII = "\u0000\u00e4\u20ac\ud83d\ude00";
+
+    @Test public void
+    testConstantPoolDeduplication() throws Exception {
+
+        ClassFile cf = ClassFileTest.newClassFile();
+
+        short s1 = cf.addConstantStringInfo("foo");
+        short i1 = cf.addConstantIntegerInfo(7);
+        short l1 = cf.addConstantLongInfo(7L);
+        short f1 = cf.addConstantFloatInfo(7F);
+        short d1 = cf.addConstantDoubleInfo(7D);
+        short m1 = cf.addConstantMethodrefInfo("Lpkg/A;", "meth", "()V");
+        short u1 = cf.addConstantUtf8Info(ClassFileTest.NON_ASCII);
+
+        Assert.assertEquals(s1, cf.addConstantStringInfo("foo"));
+        Assert.assertEquals(i1, cf.addConstantIntegerInfo(7));
+        Assert.assertEquals(l1, cf.addConstantLongInfo(7L));
+        Assert.assertEquals(f1, cf.addConstantFloatInfo(7F));
+        Assert.assertEquals(d1, cf.addConstantDoubleInfo(7D));
+        Assert.assertEquals(m1, cf.addConstantMethodrefInfo("Lpkg/A;", "meth", "()V"));
+        Assert.assertEquals(u1, cf.addConstantUtf8Info(ClassFileTest.NON_ASCII));
+
+        // Entries with equal payloads, but different tags, must not be merged.
+        Assert.assertFalse(cf.addConstantFloatInfo(Float.intBitsToFloat(7)) == i1);
+        Assert.assertFalse(cf.addConstantUtf8Info("foo") == s1);
+
+        // LONG and DOUBLE entries occupy two indexes.
+        Assert.assertNull(cf.getConstantPoolInfo((short) (l1 + 1)));
+        Assert.assertNull(cf.getConstantPoolInfo((short) (d1 + 1)));
+
+        Assert.assertEquals("foo",     cf.getConstantValuePoolInfo(s1).getValue(cf));
+        Assert.assertEquals(7,         cf.getConstantValuePoolInfo(i1).getValue(cf));
+        Assert.assertEquals(7L,        cf.getConstantValuePoolInfo(l1).getValue(cf));
+        Assert.assertEquals(7F,        cf.getConstantValuePoolInfo(f1).getValue(cf));
+        Assert.assertEquals(7D,        cf.getConstantValuePoolInfo(d1).getValue(cf));
+        Assert.assertEquals("meth",    cf.getConstantMethodrefInfo(m1).getNameAndType(cf).getName(cf));
+        Assert.assertEquals(ClassFileTest.NON_ASCII, cf.getConstantUtf8(u1));
+    }
+
+    /**
+     * Adds many constants, as e.g. a big lookup table does, and verifies that the class file survives a store/load
+     * cycle unchanged.
+     */
+    @Test public void
+    testStoreAndLoad() throws Exception {
+
+        ClassFile cf = ClassFileTest.newClassFile();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertEquals(cf.addConstantIntegerInfo(i), cf.addConstantIntegerInfo(i));
+            cf.addConstantStringInfo("s" + i % 5000);
+            cf.addConstantLongInfo(i);
+            cf.addConstantFieldrefInfo("Lpkg/A;", "f" + i % 100, Descriptor.INT);
+        }
+        cf.addSourceFileAttribute("A.java");
+
+        byte[] ba1 = ClassFileTest.store(cf);
+
+        ClassFile cf2 = new ClassFile(new ByteArrayInputStream(ba1));
+        Assert.assertEquals(cf.getConstantPoolSize(), cf2.getConstantPoolSize());
+        for (int i = 0; i < cf.getConstantPoolSize(); i++) {
+            Assert.assertEquals(cf.getConstantPoolInfo((short) i), cf2.getConstantPoolInfo((short) i));
+        }
+        Assert.assertEquals("pkg.A", cf2.getThisClassName());
+        Assert.assertTrue(Arrays.equals(ba1, ClassFileTest.store(cf2)));
+
+        // Adding to a loaded class file reuses the existing entries.
+        Assert.assertEquals(cf.addConstantStringInfo("s4999"), cf2.addConstantStringInfo("s4999"));
+        Assert.assertEquals(cf.getConstantPoolSize(), cf2.getConstantPoolSize());
+    }
+
+    @Test public void
+    testConstantPoolLimits() throws Exception {
+
+        ClassFile cf = ClassFileTest.newClassFile();
+
+        char[] ca = new char[40000];
+        Arrays.fill(ca, 'ä');
+        try {
+            cf.addConstantUtf8Info(new String(ca));
+            Assert.fail("ClassFileException expected");
+        } catch (ClassFileException cfe) {
+            Assert.assertEquals("String constant too long to store in class file", cfe.getMessage());
+        }
+
+        try {
+            for (int i = 0;; i++) cf.addConstantIntegerInfo(i);
+        } catch (ClassFileException cfe) {
+            Assert.assertEquals("Constant pool for class pkg.A has grown past JVM limit of 0xFFFF", cfe.getMessage());
+        }
+    }
+
+    /**
+     * Loads a real-world class file from a {@link ByteBuffer}, and verifies that the outcome equals that of loading it
+     * from an {@link InputStream}.
+     */
+    @Test public void
+    testLoadFromByteBuffer() throws Exception {
+
+        byte[] ba = ClassFileTest.readClassFile(ClassFile.class);
+
+        // Embed the class file in a bigger, little-endian buffer.
+        ByteBuffer bb = ByteBuffer.allocate(7 + ba.length + 3).order(ByteOrder.LITTLE_ENDIAN);
+        bb.position(7);
+        bb.put(ba);
+        bb.position(7);
+
+        ClassFile cf1 = new ClassFile(new ByteArrayInputStream(ba));
+        ClassFile cf2 = new ClassFile(bb);
+        Assert.assertEquals(7, bb.position());
+        Assert.assertEquals(ClassFile.class.getName(), cf2.getThisClassName());
+        Assert.assertNotNull(cf2.getInnerClassesAttribute());
+
+        for (ClassFile.MethodInfo mi : cf2.methodInfos) {
+            if (!"store".equals(mi.getName())) continue;
+            ClassFile.ExceptionsAttribute ea = mi.getExceptionsAttribute();
+            Assert.assertNotNull(ea);
+            Assert.assertEquals("java/io/IOException", ea.getExceptions(cf2)[0].getName(cf2));
+        }
+        for (ClassFile.FieldInfo fi : cf2.fieldInfos) {
+            if (!"MAJOR_VERSION_JDK_1_1".equals(fi.getName(cf2))) continue;
+            ClassFile.ConstantValueAttribute cva = fi.getConstantValueAttribute();
+            Assert.assertNotNull(cva);
+            Assert.assertEquals((int) ClassFile.MAJOR_VERSION_JDK_1_1, cva.getConstantValue(cf2).getValue(cf2));
+        }
+
+        Assert.assertTrue(Arrays.equals(ClassFileTest.store(cf1), ClassFileTest.store(cf2)));
+
+        try {
+            new ClassFile(ByteBuffer.wrap(ba, 0, ba.length - 1));
+            Assert.fail("ClassFileException expected");
+        } catch (ClassFileException cfe) {
+            Assert.assertEquals("Unexpected end of class file", cfe.getMessage());
+        }
+    }
+
+    private static ClassFile
+    newClassFile() {
+        return new ClassFile(Mod.PUBLIC, "Lpkg/A;", Descriptor.JAVA_LANG_OBJECT, new String[0]);
+    }
+
+    private static byte[]
+    store(ClassFile cf) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        cf.store(baos);
+        return baos.toByteArray();
+    }
+
+    private static byte[]
+    readClassFile(Class<?> clazz) throws Exception {
+        InputStream is = clazz.getResourceAsStream(clazz.getSimpleName() + ".class");
+        try {
+            ByteArrayOutputStream baos   = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[4096];
+            for (int n = is.read(buffer); n != -1; n = is.read(buffer)) baos.write(buffer, 0, n);
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.tests;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.commons.compiler.ICookable;
+import org.codehaus.commons.compiler.util.resource.DirectoryResourceFinder;
+import org.codehaus.commons.compiler.util.resource.FileResource;
+import org.codehaus.commons.compiler.util.resource.Resource;
+import org.codehaus.commons.compiler.util.resource.ResourceFinder;
+import org.codehaus.janino.ClassLoaderIClassLoader;
+import org.codehaus.janino.CompilationListener;
+import org.codehaus.janino.CompilationMetrics;
+import org.codehaus.janino.Compiler;
+import org.codehaus.janino.Descriptor;
+import org.codehaus.janino.IClassLoader;
+import org.codehaus.janino.JfrCompilationListener;
+import org.codehaus.janino.ScriptEvaluator;
+import org.codehaus.janino.util.resource.MapResourceCreator;
+import org.codehaus.janino.util.resource.MapResourceFinder;
+import org.codehaus.janino.util.resource.MultiResourceFinder;
+import org.junit.Assert;
+import org.junit.Test;
+
+// SUPPRESS CHECKSTYLE JavadocMethod:9999
+
+/**
+ * Tests for the {@link CompilationListener} and the {@link CompilationMetrics}.
+ */
+public
+class CompilationMetricsTest {
+
+    private static final String JANINO_SRC           = "../janino/src/main/java";
+    private static final String COMMONS_COMPILER_SRC = "../commons-compiler/src/main/java";
+
+    @Test public void
+    testScriptEvaluator() throws Exception {
+
+        RecordingCompilationListener rcl = new RecordingCompilationListener();
+
+        ScriptEvaluator se = new ScriptEvaluator();
+        se.setCompilationListener(rcl);
+        se.setReturnType(int.class);
+        se.cook("script.txt", new StringReader((
+            ""
+            + "java.util.List<Integer> l = new java.util.ArrayList<Integer>();\n"
+            + "for (int i = 0; i < 10; i++) l.add(i);\n"
+            + "int sum = 0;\n"
+            + "for (int i = 0; i < l.size(); i++) sum += (Integer) l.get(i);\n"
+            + "return sum;\n"
+        )));
+
+        Assert.assertEquals(1, rcl.metrics.size());
+        CompilationMetrics cm = (CompilationMetrics) rcl.metrics.get(0);
+        Assert.assertEquals("script.txt", cm.getFileName());
+        Assert.assertTrue(cm.toString(), cm.getScanNanos() > 0);
+        Assert.assertTrue(cm.toString(), cm.getParseNanos() > 0);
+        Assert.assertTrue(cm.toString(), cm.getTypeResolutionNanos() > 0);
+        Assert.assertTrue(cm.toString(), cm.getCodeGenerationNanos() > 0);
+        Assert.assertTrue(cm.toString(), cm.getRelocationNanos() > 0);
+        Assert.assertTrue(cm.toString(), cm.getStoreNanos() > 0);
+        Assert.assertTrue(cm.toString(), cm.getIClassesLoaded() > 0);
+        Assert.assertEquals(cm.toString(), 1, cm.getClassFileCount());
+        Assert.assertTrue(cm.toString(), cm.getBytecodeSize() > 0);
+        Assert.assertTrue(cm.toString(), cm.getConstantPoolSize() > 0);
+        Assert.assertTrue(cm.toString(), cm.getRelocationIterations() >= 2); // The script method and the constructor.
+
+        // The script evaluator loads, and thus defines, the generated class immediately.
+        Assert.assertEquals(1, rcl.definedClasses.size());
+        Assert.assertEquals(45, se.evaluate(new Object[0]));
+    }
+
+    @Test public void
+    testWideBranches() throws Exception {
+
+        // The loop body is larger than 32 KB, so the loop's branches must be widened. The SWITCH statement within it
+        // must still be padded correctly.
+        StringBuilder sb = new StringBuilder();
+        sb.append("int sum = 0;\n");
+        sb.append("for (int i = 0; i < 3; i++) {\n");
+        sb.append("    switch (i) { case 0: sum += 1; break; case 1: sum += 2; break; default: sum += 4; }\n");
+        for (int j = 0; j < 10000; j++) sb.append("    sum += i;\n");
+        sb.append("}\n");
+        sb.append("return sum;\n");
+
+        RecordingCompilationListener rcl = new RecordingCompilationListener();
+
+        ScriptEvaluator se = new ScriptEvaluator();
+        se.setCompilationListener(rcl);
+        se.setReturnType(int.class);
+        se.cook(sb.toString());
+
+        CompilationMetrics cm = (CompilationMetrics) rcl.metrics.get(0);
+        Assert.assertTrue(cm.toString(), cm.getBytecodeSize() > 40000);
+
+        // Two relaxation rounds for the script method (the second finds nothing more to widen), one for the
+        // constructor.
+        Assert.assertEquals(cm.toString(), 3, cm.getRelocationIterations());
+
+        Assert.assertEquals(1 + 2 + 4 + 10000 * (0 + 1 + 2), se.evaluate(new Object[0]));
+    }
+
+    @Test public void
+    testCompiler() throws Exception {
+
+        MapResourceFinder sourceFinder = new MapResourceFinder();
+        sourceFinder.addResource("pkg1/A.java", (
+            ""
+            + "package pkg1;\n"
+            + "public class A { public static String meth() { return pkg2.B.meth(); } }\n"
+        ));
+        sourceFinder.addResource("pkg2/B.java", (
+            ""
+            + "package pkg2;\n"
+            + "public class B { public static String meth() { return \"HELLO\"; } }\n"
+        ));
+
+        RecordingCompilationListener rcl     = new RecordingCompilationListener();
+        Map<String, byte[]>          classes = new HashMap<String, byte[]>();
+
+        Compiler compiler = new Compiler();
+        compiler.setSourceFinder(sourceFinder);
+        compiler.setIClassLoader(new ClassLoaderIClassLoader(CompilationMetricsTest.class.getClassLoader()));
+        compiler.setClassFileCreator(new MapResourceCreator(classes));
+        compiler.setClassFileFinder(new MapResourceFinder(classes));
+        compiler.setCompilationListener(rcl);
+
+        // Compile only "A"; "B" is found through the source finder, and is parsed and compiled on the fly.
+        compiler.compile(new Resource[] { sourceFinder.findResource("pkg1/A.java") });
+
+        Assert.assertEquals(2, rcl.metrics.size());
+        Assert.assertEquals("pkg1/A.java", ((CompilationMetrics) rcl.metrics.get(0)).getFileName());
+        Assert.assertEquals("pkg2/B.java", ((CompilationMetrics) rcl.metrics.get(1)).getFileName());
+        for (CompilationMetrics cm : rcl.metrics) {
+            Assert.assertTrue(cm.toString(), cm.getScanNanos() > 0);
+            Assert.assertTrue(cm.toString(), cm.getParseNanos() > 0);
+            Assert.assertTrue(cm.toString(), cm.getStoreNanos() > 0);
+            Assert.assertEquals(cm.toString(), 1, cm.getClassFileCount());
+        }
+
+        // The batch compiler writes class files, but does not define classes.
+        Assert.assertEquals(0, rcl.definedClasses.size());
+        Assert.assertEquals(2, classes.size());
+    }
+
+    @Test public void
+    testConcurrentCompiler() throws Exception {
+
+        // Compile some of JANINO's own source files, which reference each other heavily; the other referenced source
+        // files are found through the source finder.
+        String[] fileNames = {
+            "util/ClassFile.java",
+            "Descriptor.java",
+            "Mod.java",
+            "Opcode.java",
+            "util/Benchmark.java",
+            "util/StringPattern.java",
+            "Access.java",
+            "util/Numbers.java",
+        };
+        Resource[] sourceResources = new Resource[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            sourceResources[i] = new FileResource(
+                new File(CompilationMetricsTest.JANINO_SRC + "/org/codehaus/janino/" + fileNames[i])
+            );
+        }
+
+        RecordingCompilationListener sequential = CompilationMetricsTest.compile(sourceResources, 1);
+
+        // The partitions share the parent IClassLoader; each compilation unit must count only its own type loading.
+        long                         begin      = System.nanoTime();
+        RecordingCompilationListener concurrent = CompilationMetricsTest.compile(sourceResources, 4);
+        long                         wallNanos  = System.nanoTime() - begin;
+
+        Assert.assertEquals(sequential.metrics.size(), concurrent.metrics.size());
+        long typeResolutionNanos = 0, compileNanos = 0;
+        for (CompilationMetrics cm : concurrent.metrics) {
+            Assert.assertTrue(cm.toString(), cm.getTypeResolutionNanos() >= 0);
+            Assert.assertTrue(cm.toString(), cm.getCodeGenerationNanos() >= 0);
+            Assert.assertTrue(cm.toString(), cm.getIClassesLoaded() >= 0);
+            typeResolutionNanos      += cm.getTypeResolutionNanos();
+            compileNanos             += (
+                cm.getTypeResolutionNanos()
+                + cm.getCodeGenerationNanos()
+                + cm.getRelocationNanos()
+            );
+        }
+
+        // Four threads cannot spend more than four times the wall time.
+        Assert.assertTrue(typeResolutionNanos + " > 4 * " + wallNanos, typeResolutionNanos <= 4 * wallNanos);
+        Assert.assertTrue(compileNanos + " > 4 * " + wallNanos, compileNanos <= 4 * wallNanos);
+    }
+
+    @Test public void
+    testIClassLoadCountIsPerThread() throws Exception {
+
+        int  count = IClassLoader.getIClassLoadCount();
+        long nanos = IClassLoader.getIClassLoadNanos();
+
+        // Load some types on another thread.
+        final int[]       otherCount = new int[1];
+        final Exception[] exception  = new Exception[1];
+        Thread thread = new Thread() {
+
+            @Override public void
+            run() {
+                IClassLoader icl = new ClassLoaderIClassLoader(CompilationMetricsTest.class.getClassLoader());
+                try {
+                    Assert.assertNotNull(icl.loadIClass(Descriptor.fromClassName(Compiler.class.getName())));
+                    Assert.assertNotNull(icl.loadIClass(Descriptor.fromClassName(IClassLoader.class.getName())));
+                } catch (ClassNotFoundException cnfe) {
+                    exception[0] = cnfe;
+                }
+                otherCount[0] = IClassLoader.getIClassLoadCount();
+            }
+        };
+        thread.start();
+        thread.join();
+        if (exception[0] != null) throw exception[0];
+
+        // The other thread counted its own type loading, but that of this thread is unchanged.
+        Assert.assertTrue(otherCount[0] + " < 2", otherCount[0] >= 2);
+        Assert.assertEquals(count, IClassLoader.getIClassLoadCount());
+        Assert.assertEquals(nanos, IClassLoader.getIClassLoadNanos());
+    }
+
+    private static RecordingCompilationListener
+    compile(Resource[] sourceResources, int threadCount) throws Exception {
+
+        RecordingCompilationListener rcl = new RecordingCompilationListener();
+
+        Compiler compiler = new Compiler();
+        compiler.setSourceFinder(new MultiResourceFinder(Arrays.asList(
+            new DirectoryResourceFinder(new File(CompilationMetricsTest.JANINO_SRC)),
+            new DirectoryResourceFinder(new File(CompilationMetricsTest.COMMONS_COMPILER_SRC))
+        )));
+        compiler.setIClassLoader(new ClassLoaderIClassLoader(ICookable.BOOT_CLASS_LOADER));
+        compiler.setClassFileCreator(new MapResourceCreator(new HashMap<String, byte[]>()));
+        compiler.setClassFileFinder(ResourceFinder.EMPTY_RESOURCE_FINDER);
+        compiler.setCompilationListener(rcl);
+        compiler.setThreadCount(threadCount);
+        compiler.compile(sourceResources);
+
+        return rcl;
+    }
+
+    @Test public void
+    testJfrCompilationListener() throws Exception {
+
+        JfrCompilationListener jcl;
+        try {
+            jcl = new JfrCompilationListener();
+        } catch (UnsupportedOperationException uoe) {
+            return; // The running JRE has no JFR.
+        }
+
+        ScriptEvaluator se = new ScriptEvaluator();
+        se.setCompilationListener(jcl);
+        se.setReturnType(int.class);
+        se.cook("return 7;");
+
+        Assert.assertEquals(7, se.evaluate(new Object[0]));
+    }
+
+    private static
+    class RecordingCompilationListener implements CompilationListener {
+
+        final List<CompilationMetrics> metrics        = new ArrayList<CompilationMetrics>();
+        final List<String>             definedClasses = new ArrayList<String>();
+
+        @Override public void
+        compilationUnitCompiled(CompilationMetrics metrics) { this.metrics.add(metrics); }
+
+        @Override public void
+        classDefined(String className, int classFileSize, long nanos) { this.definedClasses.add(className); }
+    }
+}
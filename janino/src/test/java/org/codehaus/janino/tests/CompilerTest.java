@@ -31,12 +31,18 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,13 +53,17 @@ import org.codehaus.commons.compiler.ICookable;
 import org.codehaus.commons.compiler.ISimpleCompiler;
 import org.codehaus.commons.compiler.Location;
 import org.codehaus.commons.compiler.util.resource.DirectoryResourceFinder;
+import org.codehaus.commons.compiler.util.resource.FileResource;
 import org.codehaus.commons.compiler.util.resource.Resource;
 import org.codehaus.commons.compiler.util.resource.ResourceCreator;
 import org.codehaus.commons.compiler.util.resource.ResourceFinder;
 import org.codehaus.commons.nullanalysis.Nullable;
 import org.codehaus.janino.ByteArrayClassLoader;
 import org.codehaus.janino.ClassLoaderIClassLoader;
+import org.codehaus.janino.CompilationListener;
+import org.codehaus.janino.CompilationMetrics;
 import org.codehaus.janino.Compiler;
+import org.codehaus.janino.IClass;
 import org.codehaus.janino.IClassLoader;
 import org.codehaus.janino.Java;
 import org.codehaus.janino.Java.AbstractCompilationUnit;
@@ -478,6 +488,365 @@ class CompilerTest {
         s.getClassLoader().loadClass("a.TestLocalVarTable");
     }
 
+    @Test public void
+    testConcurrentLoadIClass() throws Exception {
+
+        final IClassLoader icl = new ClassLoaderIClassLoader(CompilerTest.class.getClassLoader());
+        Assert.assertTrue(icl.isParallelCapable());
+
+        final String[] descriptors = {
+            "Ljava/util/HashMap;",
+            "[[Ljava/util/TreeMap;",
+            "Ljava/util/concurrent/ConcurrentHashMap;",
+            "Lorg/codehaus/janino/Java;",
+            "Lno/such/Clazz;",
+            "[Lno/such/Clazz;",
+        };
+
+        // Let many threads load the same types at the same time.
+        final IClass[][] results = new IClass[8][];
+        Thread[]         threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadIndex = i;
+            threads[i] = new Thread() {
+
+                @Override public void
+                run() {
+                    IClass[] r = new IClass[descriptors.length];
+                    try {
+                        for (int j = 0; j < descriptors.length; j++) r[j] = icl.loadIClass(descriptors[j]);
+                    } catch (ClassNotFoundException cnfe) {
+                        throw new AssertionError(cnfe);
+                    }
+                    results[threadIndex] = r;
+                }
+            };
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+
+        // All threads must have gotten the SAME IClass objects.
+        for (IClass[] r : results) {
+            Assert.assertNotNull(r);
+            for (int j = 0; j < descriptors.length; j++) {
+                Assert.assertSame(descriptors[j], results[0][j], r[j]);
+                Assert.assertSame(descriptors[j], icl.loadIClass(descriptors[j]), r[j]);
+            }
+        }
+        Assert.assertNotNull(results[0][1]);
+        Assert.assertNull(results[0][4]);
+        Assert.assertNull(results[0][5]);
+    }
+
+    @Test public void
+    testSharedJdkIClasses() throws Exception {
+
+        IClassLoader icl1 = new ClassLoaderIClassLoader(CompilerTest.class.getClassLoader());
+        IClassLoader icl2 = new ClassLoaderIClassLoader(new URLClassLoader(new URL[0], null));
+
+        // JDK types are wrapped only once.
+        Assert.assertSame(icl1.TYPE_java_lang_String, icl2.TYPE_java_lang_String);
+        Assert.assertSame(icl1.METH_java_lang_String__valueOf__int, icl2.METH_java_lang_String__valueOf__int);
+        Assert.assertSame(icl1.loadIClass("Ljava/util/HashMap;"), icl2.loadIClass("Ljava/util/HashMap;"));
+        Assert.assertSame(icl1.loadIClass("[[Ljava/util/List;"), icl2.loadIClass("[[Ljava/util/List;"));
+
+        // Application types are not.
+        IClass javaIClass = icl1.loadIClass("Lorg/codehaus/janino/Java;");
+        Assert.assertNotNull(javaIClass);
+        Assert.assertNotSame(javaIClass, new ClassLoaderIClassLoader(CompilerTest.class.getClassLoader()).loadIClass(
+            "Lorg/codehaus/janino/Java;"
+        ));
+        Assert.assertNull(icl2.loadIClass("Lorg/codehaus/janino/Java;"));
+    }
+
+    @Test public void
+    testJdkPackageMisses() throws Exception {
+
+        final List<String> requestedClassNames = new ArrayList<String>();
+        ClassLoader        cl                  = new ClassLoader(CompilerTest.class.getClassLoader()) {
+
+            @Override protected Class<?>
+            loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                synchronized (requestedClassNames) { requestedClassNames.add(name); }
+                return super.loadClass(name, resolve);
+            }
+        };
+        IClassLoader icl = new ClassLoaderIClassLoader(cl);
+
+        // Misses in the "java.*" packages are answered without asking the class loader.
+        Assert.assertNull(icl.loadIClass("Ljava/util/String;"));
+        Assert.assertNull(icl.loadIClass("Ljava/io/Map$Entry;"));
+        Assert.assertFalse(requestedClassNames.contains("java.util.String"));
+        Assert.assertFalse(requestedClassNames.contains("java.io.Map$Entry"));
+
+        // Hits in the "java.*" packages, and misses in other packages, are not.
+        Assert.assertNotNull(icl.loadIClass("Ljava/util/Map$Entry;"));
+        Assert.assertTrue(requestedClassNames.contains("java.util.Map$Entry"));
+        Assert.assertNull(icl.loadIClass("Lorg/codehaus/janino/String;"));
+        Assert.assertTrue(requestedClassNames.contains("org.codehaus.janino.String"));
+
+        // A script with many imports-on-demand still resolves its simple type names.
+        ISimpleCompiler sc = new SimpleCompiler();
+        sc.setParentClassLoader(cl);
+        sc.cook(
+            ""
+            + "import java.io.*;\n"
+            + "import java.util.*;\n"
+            + "import java.util.concurrent.*;\n"
+            + "public class A {\n"
+            + "    public static String meth() { List<Map.Entry> l = new ArrayList(); return \"\" + l.size(); }\n"
+            + "}\n"
+        );
+        Assert.assertEquals("0", sc.getClassLoader().loadClass("A").getMethod("meth").invoke(null));
+    }
+
+    @Test public void
+    testConcurrentCompilation() throws Exception {
+
+        // Compile some of JANINO's own source files, which reference each other heavily; the other referenced source
+        // files are found through the source finder.
+        String[] fileNames = {
+            "util/ClassFile.java",
+            "Descriptor.java",
+            "Mod.java",
+            "Opcode.java",
+            "util/Benchmark.java",
+            "util/StringPattern.java",
+            "Access.java",
+            "util/Numbers.java",
+        };
+        Resource[] sourceResources = new Resource[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            sourceResources[i] = new FileResource(
+                new File(CompilerTest.JANINO_SRC + "/org/codehaus/janino/" + fileNames[i])
+            );
+        }
+
+        ResourceFinder janinoSourceFinder = new MultiResourceFinder(Arrays.asList(new ResourceFinder[] {
+            new DirectoryResourceFinder(new File(CompilerTest.JANINO_SRC)),
+            new DirectoryResourceFinder(new File(CompilerTest.COMMONS_COMPILER_SRC)),
+        }));
+
+        // The class files must be identical with those of a sequential compilation. (A sequential compilation stores
+        // the compilation units that were found through the source finder in the order in which it found them, thus
+        // only the concurrent compilations must agree on the order.)
+        Map<String, byte[]> expected = CompilerTest.compile(sourceResources, janinoSourceFinder, 1);
+        List<String>        order    = null;
+        for (int threadCount : new int[] { 2, 3, 8 }) {
+            Map<String, byte[]> actual = CompilerTest.compile(sourceResources, janinoSourceFinder, threadCount);
+            CompilerTest.assertEqualClassFiles(expected, actual);
+            if (order == null) {
+                order = new ArrayList<String>(actual.keySet());
+            } else {
+                Assert.assertEquals(order, new ArrayList<String>(actual.keySet()));
+            }
+        }
+
+        // Classes A and B reference each other and class C, which is only found through the source finder.
+        MapResourceFinder sourceFinder = new MapResourceFinder();
+        sourceFinder.addResource("pkg/A.java", (
+            ""
+            + "package pkg;\n"
+            + "public class A { B b; C c; static int meth() { return B.meth() + C.X; } }\n"
+        ));
+        sourceFinder.addResource("pkg/B.java", (
+            ""
+            + "package pkg;\n"
+            + "public class B { A a; static int meth() { return C.X; } }\n"
+        ));
+        sourceFinder.addResource("pkg/C.java", (
+            ""
+            + "package pkg;\n"
+            + "public class C { static final int X = 7; }\n"
+        ));
+        sourceFinder.addResource("pkg/D.java", (
+            ""
+            + "package pkg;\n"
+            + "public class D extends E {}\n" // Compile error, because a class "E" is not defined.
+        ));
+
+        // Class C must be stored after the explicitly given A and B, no matter which partition finds it first.
+        Resource[] ab = { sourceFinder.findResource("pkg/A.java"), sourceFinder.findResource("pkg/B.java") };
+        expected = CompilerTest.compile(ab, sourceFinder, 1);
+        Assert.assertEquals(
+            Arrays.asList("pkg/A.class", "pkg/B.class", "pkg/C.class"),
+            new ArrayList<String>(expected.keySet())
+        );
+        for (int i = 0; i < 20; i++) {
+            Map<String, byte[]> actual = CompilerTest.compile(ab, sourceFinder, 2);
+            Assert.assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()));
+            CompilerTest.assertEqualClassFiles(expected, actual);
+        }
+
+        // A compile error in any partition must be reported.
+        Resource[] ad = { sourceFinder.findResource("pkg/A.java"), sourceFinder.findResource("pkg/D.java") };
+        try {
+            CompilerTest.compile(ad, sourceFinder, 2);
+            Assert.fail("CompileException expected");
+        } catch (CompileException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("Cannot determine simple type name \"E\""));
+        }
+    }
+
+    @Test public void
+    testIncrementalCompilation() throws Exception {
+
+        MapResourceFinder sourceFinder = new MapResourceFinder();
+        sourceFinder.addResource("pkg/A.java", (
+            ""
+            + "package pkg;\n"
+            + "public class A { int meth() { return (int) B.meth(); } }\n"
+        ));
+        sourceFinder.addResource("pkg/B.java", (
+            ""
+            + "package pkg;\n"
+            + "public class B { public static final int X = 1; static int meth() { return 1; } }\n"
+        ));
+        sourceFinder.addResource("pkg/C.java", (
+            ""
+            + "package pkg;\n"
+            + "public class C { static final int Y = B.X + 1; }\n"
+        ));
+        sourceFinder.addResource("pkg/D.java", (
+            ""
+            + "package pkg;\n"
+            + "public class D {}\n"
+        ));
+        sourceFinder.addResource("pkg/E.java", (
+            ""
+            + "package pkg;\n"
+            + "public class E extends B {}\n"
+        ));
+
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+
+        // The first compilation compiles all compilation units.
+        CompilerTest.assertIncrementallyCompiled(
+            sourceFinder,
+            classes,
+            "pkg/A.java", "pkg/B.java", "pkg/C.java", "pkg/D.java", "pkg/E.java"
+        );
+
+        // No source has changed, although the time stamps have.
+        sourceFinder.setLastModified(1);
+        CompilerTest.assertIncrementallyCompiled(sourceFinder, classes);
+
+        // Change the body of method "B.meth()", which does not change the API of "B".
+        sourceFinder.setLastModified(2);
+        sourceFinder.addResource("pkg/B.java", (
+            ""
+            + "package pkg;\n"
+            + "public class B { public static final int X = 1; static int meth() { return 2; } }\n"
+        ));
+        CompilerTest.assertIncrementallyCompiled(sourceFinder, classes, "pkg/B.java");
+
+        // Change constant "B.X", which "C" uses, and which subclass "E" inherits.
+        sourceFinder.setLastModified(3);
+        sourceFinder.addResource("pkg/B.java", (
+            ""
+            + "package pkg;\n"
+            + "public class B { public static final int X = 2; static int meth() { return 2; } }\n"
+        ));
+        CompilerTest.assertIncrementallyCompiled(sourceFinder, classes, "pkg/B.java", "pkg/C.java", "pkg/E.java");
+
+        // Change the return type of "B.meth()", which "A" uses.
+        sourceFinder.setLastModified(4);
+        sourceFinder.addResource("pkg/B.java", (
+            ""
+            + "package pkg;\n"
+            + "public class B { public static final int X = 2; static long meth() { return 2; } }\n"
+        ));
+        CompilerTest.assertIncrementallyCompiled(sourceFinder, classes, "pkg/A.java", "pkg/B.java", "pkg/E.java");
+
+        // Remove "D"; its class file must be deleted.
+        sourceFinder.addResource("pkg/D.java", new byte[0]);
+        Assert.assertTrue(classes.containsKey("pkg/D.class"));
+        CompilerTest.assertIncrementallyCompiled(sourceFinder, classes);
+        Assert.assertFalse(classes.containsKey("pkg/D.class"));
+    }
+
+    /**
+     * Compiles the non-empty sources of the <var>sourceFinder</var> incrementally, verifies that exactly the
+     * <var>expectedFileNames</var> were compiled, and that the class files are identical with those of a
+     * non-incremental compilation.
+     */
+    private static void
+    assertIncrementallyCompiled(
+        MapResourceFinder         sourceFinder,
+        final Map<String, byte[]> classes,
+        String...                 expectedFileNames
+    ) throws CompileException, IOException {
+
+        List<Resource> sourceResources = new ArrayList<Resource>();
+        for (String fileName : new String[] { "pkg/A.java", "pkg/B.java", "pkg/C.java", "pkg/D.java", "pkg/E.java" }) {
+            Resource r = sourceFinder.findResource(fileName);
+            assert r != null;
+            if (r.open().read() != -1) sourceResources.add(r);
+        }
+        Resource[] sra = sourceResources.toArray(new Resource[sourceResources.size()]);
+
+        final Set<String> compiledFileNames = new HashSet<String>();
+
+        Compiler compiler = new Compiler();
+        compiler.setIClassLoader(new ClassLoaderIClassLoader(CompilerTest.class.getClassLoader()));
+        compiler.setClassFileCreator(new MapResourceCreator(classes));
+        compiler.setClassFileFinder(new ResourceFinder() {
+
+            @Override @Nullable public Resource
+            findResource(String resourceName) {
+                byte[] data = classes.get(resourceName);
+                if (data == null) return null;
+
+                MapResourceFinder mrf = new MapResourceFinder();
+                mrf.addResource(resourceName, data);
+                return mrf.findResource(resourceName);
+            }
+        });
+        compiler.setCompilationListener(new CompilationListener() {
+
+            @Override public void
+            compilationUnitCompiled(CompilationMetrics metrics) { compiledFileNames.add(metrics.getFileName()); }
+
+            @Override public void
+            classDefined(String className, int classFileSize, long nanos) {}
+        });
+        compiler.setIncremental(true);
+        compiler.compile(sra);
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(expectedFileNames)), compiledFileNames);
+
+        Map<String, byte[]> expected = CompilerTest.compile(sra, ResourceFinder.EMPTY_RESOURCE_FINDER, 1);
+        Map<String, byte[]> actual   = new HashMap<String, byte[]>(classes);
+        actual.remove("janino-dependencies.idx");
+        CompilerTest.assertEqualClassFiles(expected, actual);
+    }
+
+    private static Map<String, byte[]>
+    compile(Resource[] sourceResources, ResourceFinder sourceFinder, int threadCount)
+    throws CompileException, IOException {
+
+        // Storage for generated bytecode, in the order in which the class files are stored.
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+
+        Compiler compiler = new Compiler();
+        compiler.setSourceFinder(sourceFinder);
+        compiler.setIClassLoader(new ClassLoaderIClassLoader(ICookable.BOOT_CLASS_LOADER));
+        compiler.setClassFileCreator(new MapResourceCreator(classes));
+        compiler.setClassFileFinder(ResourceFinder.EMPTY_RESOURCE_FINDER);
+        compiler.setThreadCount(threadCount);
+        compiler.compile(sourceResources);
+
+        return classes;
+    }
+
+    private static void
+    assertEqualClassFiles(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> me : expected.entrySet()) {
+            Assert.assertTrue(me.getKey(), Arrays.equals(me.getValue(), actual.get(me.getKey())));
+        }
+    }
+
     public static List<ClassFile>
     doCompile(
         boolean   debugSource,
@@ -27,15 +27,21 @@
 package org.codehaus.janino.tests;
 
 import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.IExpressionEvaluator;
+import org.codehaus.janino.ClassBodyEvaluator;
+import org.codehaus.janino.EvaluatorCache;
 import org.codehaus.janino.ExpressionEvaluator;
 import org.codehaus.janino.Scanner;
 import org.codehaus.janino.ScriptEvaluator;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 // SUPPRESS CHECKSTYLE JavadocMethod:9999
@@ -103,4 +109,173 @@ class ExpressionEvaluatorTest {
         ee.setStaticMethod(new boolean[] { false, false });
         ee.cook("9*3;7+1".split(";"));
     }
+
+    @Test public void
+    testNestedWideningConversions() throws Exception {
+
+        // Every "I2L" is inserted before the code of the right operand, i.e. in the middle of the bytecode.
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < 300; j++) sb.append("i + (");
+        sb.append("1L");
+        for (int j = 0; j < 300; j++) sb.append(')');
+
+        ExpressionEvaluator ee = new ExpressionEvaluator();
+        ee.setParameters(new String[] { "i" }, new Class<?>[] { int.class });
+        ee.setExpressionType(long.class);
+        ee.cook(sb.toString());
+        Assert.assertEquals(300L * 7 + 1, ee.evaluate(new Object[] { 7 }));
+    }
+
+    @Test public void
+    testCache() throws Exception {
+        EvaluatorCache cache = new EvaluatorCache(2);
+
+        ExpressionEvaluator ee1 = new ExpressionEvaluator();
+        ee1.setCache(cache);
+        ee1.setParameters(new String[] { "a", "b" }, new Class[] { int.class, int.class });
+        ee1.setExpressionType(int.class);
+        ee1.cook("a + b");
+        Assert.assertEquals(3, ee1.evaluate(new Object[] { 1, 2 }));
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        // Same expression and settings => cache hit, same generated class.
+        ExpressionEvaluator ee2 = new ExpressionEvaluator();
+        ee2.setCache(cache);
+        ee2.setParameters(new String[] { "a", "b" }, new Class[] { int.class, int.class });
+        ee2.setExpressionType(int.class);
+        ee2.cook("a + b");
+        Assert.assertEquals(7, ee2.evaluate(new Object[] { 3, 4 }));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(ee1.getMethod(), ee2.getMethod());
+
+        // Different parameter type => cache miss.
+        ExpressionEvaluator ee3 = new ExpressionEvaluator();
+        ee3.setCache(cache);
+        ee3.setParameters(new String[] { "a", "b" }, new Class[] { long.class, int.class });
+        ee3.setExpressionType(long.class);
+        ee3.cook("a + b");
+        Assert.assertEquals(2, cache.getMissCount());
+
+        // Exceeding the maximum size evicts the least recently used entry.
+        ExpressionEvaluator ee4 = new ExpressionEvaluator();
+        ee4.setCache(cache);
+        ee4.cook("7");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+
+        // Uncookable expressions are not cached.
+        EvaluatorCache cache2 = new EvaluatorCache(10);
+        ExpressionEvaluator ee5 = new ExpressionEvaluator();
+        ee5.setCache(cache2);
+        try {
+            ee5.cook("a +");
+            Assert.fail();
+        } catch (CompileException ce) {
+            ;
+        }
+        Assert.assertEquals(0, cache2.size());
+
+        // Fast evaluators also use the cache.
+        ExpressionEvaluator ee6 = new ExpressionEvaluator();
+        ee6.setCache(cache);
+        Comparable<?> c1 = (Comparable<?>) ee6.createFastEvaluator("7", Comparable.class, new String[] { "o" });
+        ExpressionEvaluator ee7 = new ExpressionEvaluator();
+        ee7.setCache(cache);
+        Comparable<?> c2 = (Comparable<?>) ee7.createFastEvaluator("7", Comparable.class, new String[] { "o" });
+        Assert.assertSame(c1.getClass(), c2.getClass());
+    }
+
+    @Test public void
+    testHiddenClassHost() throws Exception {
+        ExpressionEvaluatorTest.assumeHiddenClassesAvailable();
+
+        // The generated class is defined as a hidden class in the package of the host.
+        ExpressionEvaluator ee1 = new ExpressionEvaluator();
+        ee1.setHiddenClassHost(MethodHandles.lookup());
+        ee1.setParameters(new String[] { "a", "b" }, new Class[] { int.class, int.class });
+        ee1.setExpressionType(int.class);
+        ee1.cook("a + b");
+        Assert.assertEquals(3, ee1.evaluate(new Object[] { 1, 2 }));
+        Class<?> c1 = ee1.getMethod().getDeclaringClass();
+        Assert.assertTrue(c1.getName(), c1.getName().startsWith("org.codehaus.janino.tests.SC/"));
+        Assert.assertSame(ExpressionEvaluatorTest.class.getClassLoader(), c1.getClassLoader());
+
+        // Fast evaluators and scripts work as well.
+        ExpressionEvaluator ee2 = new ExpressionEvaluator();
+        ee2.setHiddenClassHost(MethodHandles.lookup());
+        Comparable<?> c = (Comparable<?>) ee2.createFastEvaluator("7", Comparable.class, new String[] { "o" });
+        Assert.assertTrue(c.getClass().getName().indexOf('/') != -1);
+        Assert.assertEquals(7, ((Comparable<Object>) c).compareTo(null));
+
+        ScriptEvaluator se1 = new ScriptEvaluator();
+        se1.setHiddenClassHost(MethodHandles.lookup());
+        se1.setReturnType(String.class);
+        se1.cook("return \"x\" + 1;");
+        Assert.assertEquals("x1", se1.evaluate(null));
+        Assert.assertTrue(se1.getMethod().getDeclaringClass().getName().indexOf('/') != -1);
+
+        // A script that declares an anonymous class yields two classes, and is loaded through a class loader.
+        ScriptEvaluator se2 = new ScriptEvaluator();
+        se2.setHiddenClassHost(MethodHandles.lookup());
+        se2.setReturnType(String.class);
+        se2.cook("return new Object() { public String toString() { return \"y\"; } }.toString();");
+        Assert.assertEquals("y", se2.evaluate(null));
+        Assert.assertEquals("org.codehaus.janino.tests.SC", se2.getMethod().getDeclaringClass().getName());
+
+        // Exceptions that the hidden method throws are wrapped, as with "Method.invoke()".
+        ScriptEvaluator se3 = new ScriptEvaluator();
+        se3.setHiddenClassHost(MethodHandles.lookup());
+        se3.setReturnType(long.class);
+        se3.setParameters(new String[] { "x" }, new Class[] { int.class });
+        se3.cook("if (x < 0) throw new IllegalStateException(); return 2L * x;");
+        Assert.assertTrue(se3.getMethod().getDeclaringClass().getName().indexOf('/') != -1);
+        Assert.assertEquals(6L, se3.evaluate(new Object[] { (short) 3 }));
+        try {
+            se3.evaluate(new Object[] { -1 });
+            Assert.fail();
+        } catch (InvocationTargetException ite) {
+            Assert.assertTrue(ite.getTargetException() instanceof IllegalStateException);
+        }
+    }
+
+    @Test public void
+    testHiddenClassHostFallback() throws Exception {
+        ExpressionEvaluatorTest.assumeHiddenClassesAvailable();
+
+        // A hidden class cannot reference its own type by name, so these class bodies are loaded through a class
+        // loader.
+        String[] classBodies = {
+            "static SC inst = new SC(); public static int meth() { return 1; }",
+            "public static int meth() { return meth2(null); } static int meth2(SC sc) { return 2; }",
+            "public static int meth() { java.util.function.IntSupplier s = () -> 3; return s.getAsInt(); }",
+        };
+        for (int i = 0; i < classBodies.length; i++) {
+            ClassBodyEvaluator cbe = new ClassBodyEvaluator();
+            cbe.setHiddenClassHost(MethodHandles.lookup());
+            cbe.setTargetVersion(8);
+            cbe.cook(classBodies[i]);
+            Assert.assertEquals("org.codehaus.janino.tests.SC", cbe.getClazz().getName());
+            Assert.assertEquals(i + 1, cbe.getClazz().getMethod("meth").invoke(null));
+        }
+
+        // Instantiating the class itself is fine, because that goes through its "this_class" constant.
+        ClassBodyEvaluator cbe = new ClassBodyEvaluator();
+        cbe.setHiddenClassHost(MethodHandles.lookup());
+        cbe.cook("public static int meth() { return new SC().meth2(); } int meth2() { return 4; }");
+        Assert.assertTrue(cbe.getClazz().getName().indexOf('/') != -1);
+        Assert.assertEquals(4, cbe.getClazz().getMethod("meth").invoke(null));
+    }
+
+    private static void
+    assumeHiddenClassesAvailable() {
+        boolean hiddenClassesAvailable;
+        try {
+            Class.class.getMethod("isHidden");
+            hiddenClassesAvailable = true;
+        } catch (NoSuchMethodException nsme) {
+            hiddenClassesAvailable = false;
+        }
+        Assume.assumeTrue(hiddenClassesAvailable);
+    }
 }
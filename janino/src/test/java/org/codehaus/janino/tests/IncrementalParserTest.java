@@ -0,0 +1,272 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.Cookable;
+import org.codehaus.commons.compiler.Location;
+import org.codehaus.janino.IncrementalParser;
+import org.codehaus.janino.Java.AbstractCompilationUnit;
+import org.codehaus.janino.Java.Locatable;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.SimpleCompiler;
+import org.codehaus.janino.Unparser;
+import org.codehaus.janino.util.DeepCopier;
+import org.junit.Assert;
+import org.junit.Test;
+
+// SUPPRESS CHECKSTYLE JavadocMethod:9999
+
+/**
+ * Tests for the {@link IncrementalParser}.
+ */
+public
+class IncrementalParserTest {
+
+    private static final String SOURCE = (
+        ""
+        + "package pkg;\n"
+        + "\n"
+        + "import java.util.List;\n"
+        + "\n"
+        + "public class A extends Object {\n"
+        + "\n"
+        + "    static int x = 7, y[] = { 1, 2 };\n"
+        + "    Object o = new Object() { public String toString() { return \"o\"; } }.toString();\n"
+        + "\n"
+        + "    static { x++; }\n"
+        + "\n"
+        + "    public A() { this(3); }\n"
+        + "    A(int i) {}\n"
+        + "\n"
+        + "\t<T> T meth(T t) { return t; }\n"
+        + "    void meth2() { Runnable r = () -> { x++; }; ; }\n"
+        + "    class Inner { int z; }\n"
+        + "    enum E { E1, E2 }\n"
+        + "}\n"
+        + "\n"
+        + "interface I { int C = 1; void meth(); }\n"
+        + "\n"
+        + "class B { B() {} int meth() { return 99; } }\n"
+    );
+
+    @Test public void
+    testEdits() throws Exception {
+
+        // Insert into a method body.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "{ return t;", 1, "{\n        t.hashCode();\n");
+
+        // Insert into a field declaration.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "x = 7", 4, "x = 77 + 8");
+
+        // Rename a method.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "meth2", 5, "method2");
+
+        // Add a member declaration at the end of a class body.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "E2 }\n", 5, "E2 }\n    int added;\n");
+
+        // Split a member declaration into two.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "x++; };", 0, "}\n    void meth3() { ");
+
+        // Merge two member declarations.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "}\n    A(int i) {", 17, "");
+
+        // Edit the header of a class declaration.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "extends Object", 14, "");
+
+        // Edit an import declaration.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "List", 4, "Map");
+
+        // Edits that cause syntax errors.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "return 99;", 0, "}");
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "x++; }\n", 0, "x++");
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "int z;", 0, "/*");
+
+        // Introduce a Unicode escape.
+        IncrementalParserTest.assertEdit(IncrementalParserTest.SOURCE, "x = 7", 5, "\\u0078 = 8");
+    }
+
+    /**
+     * Types a new method into the source, one character at a time, and verifies that all intermediate ASTs and
+     * syntax errors are identical with those of a complete parse.
+     */
+    @Test public void
+    testTyping() throws Exception {
+
+        String typed = "\n    /** Doc. */ String meth4(int a) { if (a > 0) return \"x\"; else { return null; } }";
+
+        String            source = IncrementalParserTest.SOURCE;
+        int               offset = source.indexOf("A(int i) {}") + 11;
+        IncrementalParser ip     = new IncrementalParser("A.java", source);
+        ip.parse();
+        for (int i = 0; i < typed.length(); i++) {
+            IncrementalParserTest.assertEdit(ip, offset + i, 0, typed.substring(i, i + 1));
+        }
+
+        // And now delete it again, one character at a time.
+        for (int i = typed.length() - 1; i >= 0; i--) IncrementalParserTest.assertEdit(ip, offset + i, 1, "");
+        Assert.assertEquals(source, ip.getText());
+    }
+
+    /**
+     * Applies pseudo-random edits to real-world sources, and verifies that the ASTs and syntax errors are identical
+     * with those of a complete parse.
+     */
+    @Test public void
+    testRandomEdits() throws Exception {
+
+        String[] edits = { " ", "\n", "\t", "x", ";", "}", "{", "/* */", "int i;", "\r\n", "" };
+        Random   r     = new Random(42);
+
+        for (String fileName : new String[] { "Parser.java", "Scanner.java", "CodeContext.java" }) {
+
+            InputStreamReader isr = new InputStreamReader(
+                new FileInputStream(new File("src/main/java/org/codehaus/janino", fileName)),
+                "UTF-8"
+            );
+            String source;
+            try {
+                source = Cookable.readString(isr);
+            } finally {
+                isr.close();
+            }
+
+            IncrementalParser ip = new IncrementalParser("A.java", source);
+            ip.parse();
+            for (int i = 0; i < 40; i++) {
+                String text          = ip.getText();
+                int    offset        = r.nextInt(text.length());
+                int    removedLength = r.nextInt(4) == 0 ? Math.min(r.nextInt(20), text.length() - offset) : 0;
+                IncrementalParserTest.assertEdit(ip, offset, removedLength, edits[r.nextInt(edits.length)]);
+            }
+        }
+    }
+
+    /**
+     * Verifies that compiling an AST does not affect the ASTs of subsequent edits, which share the unchanged
+     * member declarations, including lambda expressions and method references.
+     */
+    @Test public void
+    testCompileAfterEdit() throws Exception {
+
+        String source = (
+            ""
+            + "import java.util.function.*;\n"
+            + "\n"
+            + "public class A {\n"
+            + "    public static int run() {\n"
+            + "        IntUnaryOperator f = i -> { return i * 2; };\n"
+            + "        IntSupplier      g = A::one;\n"
+            + "        return f.applyAsInt(3) + g.getAsInt() + A.two();\n"
+            + "    }\n"
+            + "    static int one() { return 1; }\n"
+            + "    static int two() { return 2; }\n"
+            + "}\n"
+        );
+
+        IncrementalParser ip = new IncrementalParser("A.java", source);
+        Assert.assertEquals(9, IncrementalParserTest.compileAndRun(ip.parse()));
+
+        int offset = source.indexOf("return 2");
+        Assert.assertEquals(13, IncrementalParserTest.compileAndRun(ip.edit(offset + 7, 1, "6")));
+        Assert.assertEquals(10, IncrementalParserTest.compileAndRun(ip.edit(offset + 7, 1, "3")));
+    }
+
+    private static Object
+    compileAndRun(AbstractCompilationUnit acu) throws Exception {
+        SimpleCompiler sc = new SimpleCompiler();
+        sc.setTargetVersion(8);
+        sc.cook(acu);
+        return sc.getClassLoader().loadClass("A").getMethod("run").invoke(null);
+    }
+
+    private static void
+    assertEdit(String source, String anchor, int removedLength, String insertedText) throws Exception {
+        IncrementalParser ip = new IncrementalParser("A.java", source);
+        ip.parse();
+        IncrementalParserTest.assertEdit(ip, source.indexOf(anchor), removedLength, insertedText);
+    }
+
+    /**
+     * Applies the edit to the <var>ip</var>, and verifies that the outcome is identical with that of a complete
+     * parse of the new text.
+     */
+    private static void
+    assertEdit(IncrementalParser ip, int offset, int removedLength, String insertedText) throws Exception {
+
+        String expected;
+        String newText = (
+            ip.getText().substring(0, offset)
+            + insertedText
+            + ip.getText().substring(offset + removedLength)
+        );
+        try {
+            expected = IncrementalParserTest.dump(
+                new Parser(new Scanner("A.java", newText.toCharArray())).parseAbstractCompilationUnit()
+            );
+        } catch (CompileException ce) {
+            expected = ce.toString();
+        }
+
+        String actual;
+        try {
+            actual = IncrementalParserTest.dump(ip.edit(offset, removedLength, insertedText));
+        } catch (CompileException ce) {
+            actual = ce.toString();
+        }
+
+        Assert.assertEquals(newText, ip.getText());
+        Assert.assertEquals(expected, actual);
+    }
+
+    /**
+     * @return The unparsed <var>acu</var>, followed by the locations of all its AST elements
+     */
+    private static String
+    dump(AbstractCompilationUnit acu) throws CompileException {
+
+        final StringWriter sw = new StringWriter();
+        Unparser.unparse(acu, sw);
+
+        new DeepCopier() {
+
+            @Override public Location
+            copyLocation(Locatable subject) {
+                sw.write("\n" + subject.getClass().getSimpleName() + " " + subject.getLocation());
+                return subject.getLocation();
+            }
+        }.copyAbstractCompilationUnit(acu);
+
+        return sw.toString();
+    }
+}
@@ -0,0 +1,284 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.commons.compiler.util.resource.Resource;
+import org.codehaus.commons.compiler.util.resource.ResourceFinder;
+import org.codehaus.janino.util.resource.ByteBufferResource;
+import org.codehaus.janino.util.resource.IndexedPathResourceFinder;
+import org.codehaus.janino.util.resource.PathResourceFinder;
+import org.junit.Assert;
+import org.junit.Test;
+
+// SUPPRESS CHECKSTYLE JavadocMethod:9999
+
+/**
+ * Tests for the {@link IndexedPathResourceFinder}.
+ */
+public
+class IndexedPathResourceFinderTest {
+
+    private static final String[] RESOURCE_NAMES = {
+        "pkg/A.class", "pkg/S.txt", "pkg/B.txt", "pkg/C.txt", "pkg/D.txt", "pkg/E.txt", "pkg/", "E.txt",
+    };
+
+    @Test public void
+    testFindResource() throws Exception {
+
+        File tmp = IndexedPathResourceFinderTest.createTempDirectory();
+        try {
+            File[] path = IndexedPathResourceFinderTest.createPath(tmp, "D");
+
+            ResourceFinder expected = new PathResourceFinder(path);
+            ResourceFinder actual   = new IndexedPathResourceFinder(path);
+            IndexedPathResourceFinderTest.assertFindResource(expected, actual);
+
+            // "Stored" entries are memory-mapped.
+            Resource r = actual.findResource("pkg/S.txt");
+            Assert.assertTrue(r instanceof ByteBufferResource);
+            ByteBuffer bb = ((ByteBufferResource) r).getByteBuffer();
+            Assert.assertTrue(bb.isDirect());
+            Assert.assertTrue(bb.isReadOnly());
+            Assert.assertEquals("S from a.jar", IndexedPathResourceFinderTest.toString(bb));
+
+            // Entries that are "deflated".
+            r = actual.findResource("pkg/A.class");
+            Assert.assertTrue(r instanceof ByteBufferResource);
+            Assert.assertEquals(
+                "A from a.jar",
+                IndexedPathResourceFinderTest.toString(((ByteBufferResource) r).getByteBuffer())
+            );
+        } finally {
+            IndexedPathResourceFinderTest.delete(tmp);
+        }
+    }
+
+    @Test public void
+    testIndexFile() throws Exception {
+
+        File tmp = IndexedPathResourceFinderTest.createTempDirectory();
+        try {
+            File   indexFile = new File(tmp, "index");
+            File[] path      = IndexedPathResourceFinderTest.createPath(tmp, "D");
+
+            // Create the index file.
+            IndexedPathResourceFinderTest.assertFindResource(
+                new PathResourceFinder(path),
+                new IndexedPathResourceFinder(path, indexFile)
+            );
+            Assert.assertTrue(indexFile.isFile());
+
+            // Re-use the index file.
+            IndexedPathResourceFinderTest.assertFindResource(
+                new PathResourceFinder(path),
+                new IndexedPathResourceFinder(path, indexFile)
+            );
+
+            // Modify an archive; the index file must then be re-created.
+            IndexedPathResourceFinderTest.createPath(tmp, "D2");
+            IndexedPathResourceFinderTest.assertFindResource(
+                new PathResourceFinder(path),
+                new IndexedPathResourceFinder(path, indexFile)
+            );
+
+            // A corrupt index file is ignored.
+            new FileOutputStream(indexFile).close();
+            IndexedPathResourceFinderTest.assertFindResource(
+                new PathResourceFinder(path),
+                new IndexedPathResourceFinder(path, indexFile)
+            );
+        } finally {
+            IndexedPathResourceFinderTest.delete(tmp);
+        }
+    }
+
+    @Test public void
+    testClose() throws Exception {
+
+        File tmp = IndexedPathResourceFinderTest.createTempDirectory();
+        try {
+            File[]                    path   = IndexedPathResourceFinderTest.createPath(tmp, "D");
+            IndexedPathResourceFinder finder = new IndexedPathResourceFinder(path);
+            IndexedPathResourceFinderTest.assertFindResource(new PathResourceFinder(path), finder);
+
+            // After "close()", the archives may be replaced, and the finder re-opens them when it is used again.
+            finder.close();
+            finder.close();
+            IndexedPathResourceFinderTest.createPath(tmp, "D2");
+            IndexedPathResourceFinderTest.assertFindResource(new PathResourceFinder(path), finder);
+            finder.close();
+        } finally {
+            IndexedPathResourceFinderTest.delete(tmp);
+        }
+    }
+
+    /**
+     * Verifies that both resource finders find the same resources, with the same contents.
+     */
+    private static void
+    assertFindResource(ResourceFinder expected, ResourceFinder actual) throws Exception {
+
+        for (String resourceName : IndexedPathResourceFinderTest.RESOURCE_NAMES) {
+            Resource er = expected.findResource(resourceName);
+            Resource ar = actual.findResource(resourceName);
+            if (er == null) {
+                Assert.assertNull(resourceName, ar);
+                continue;
+            }
+            Assert.assertNotNull(resourceName, ar);
+
+            Assert.assertEquals(er.getFileName(), ar.getFileName());
+            Assert.assertEquals(resourceName, er.lastModified(), ar.lastModified());
+            Assert.assertEquals(
+                resourceName,
+                IndexedPathResourceFinderTest.read(er),
+                IndexedPathResourceFinderTest.read(ar)
+            );
+        }
+    }
+
+    /**
+     * Creates the path "a.jar", "dir", "b.jar", "missing.jar". Resource "pkg/B.txt" exists in "a.jar" and "dir", and
+     * "pkg/C.txt" exists in "dir" and "b.jar".
+     *
+     * @param d The contents of the resource "pkg/D.txt"
+     */
+    private static File[]
+    createPath(File tmp, String d) throws Exception {
+
+        File aJar = new File(tmp, "a.jar");
+        IndexedPathResourceFinderTest.createArchive(aJar, new String[] {
+            "pkg/A.class", "A from a.jar",
+            "pkg/S.txt",   "S from a.jar",
+            "pkg/B.txt",   "B from a.jar",
+        });
+
+        File dir = new File(tmp, "dir");
+        new File(dir, "pkg").mkdirs();
+        IndexedPathResourceFinderTest.write(new File(dir, "pkg/B.txt"), "B from dir");
+        IndexedPathResourceFinderTest.write(new File(dir, "pkg/C.txt"), "C from dir");
+        IndexedPathResourceFinderTest.write(new File(dir, "E.txt"), "E from dir");
+
+        File bJar = new File(tmp, "b.jar");
+        IndexedPathResourceFinderTest.createArchive(bJar, new String[] {
+            "pkg/",      null,
+            "pkg/C.txt", "C from b.jar",
+            "pkg/D.txt", d,
+            "pkg/E.txt", "E from b.jar",
+        });
+
+        return new File[] { aJar, dir, bJar, new File(tmp, "missing.jar") };
+    }
+
+    /**
+     * @param namesAndContents Entry names and contents; entries with names containing "S" are "stored", all other
+     *                         entries are "deflated"; {@code null} contents designate a directory entry
+     */
+    private static void
+    createArchive(File file, String[] namesAndContents) throws Exception {
+
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                String name     = namesAndContents[i];
+                String contents = namesAndContents[i + 1];
+                byte[] data     = contents == null ? new byte[0] : contents.getBytes("UTF-8");
+
+                ZipEntry ze = new ZipEntry(name);
+                ze.setTime(1500000000000L + 1000000L * i);
+                if (name.contains("S")) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    ze.setMethod(ZipEntry.STORED);
+                    ze.setSize(data.length);
+                    ze.setCompressedSize(data.length);
+                    ze.setCrc(crc.getValue());
+                }
+                zos.putNextEntry(ze);
+                zos.write(data);
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+    }
+
+    private static String
+    read(Resource r) throws Exception {
+        InputStream is = r.open();
+        try {
+            ByteArrayOutputStream baos   = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[3];
+            for (int n = is.read(buffer); n != -1; n = is.read(buffer)) baos.write(buffer, 0, n);
+            return new String(baos.toByteArray(), "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    private static String
+    toString(ByteBuffer bb) throws Exception {
+        byte[] ba = new byte[bb.remaining()];
+        bb.get(ba);
+        return new String(ba, "UTF-8");
+    }
+
+    private static void
+    write(File file, String contents) throws Exception {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(contents.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+
+    private static File
+    createTempDirectory() throws Exception {
+        File result = File.createTempFile("janino", ".tmp");
+        Assert.assertTrue(result.delete());
+        Assert.assertTrue(result.mkdir());
+        return result;
+    }
+
+    private static void
+    delete(File file) {
+        File[] members = file.listFiles();
+        if (members != null) {
+            for (File member : members) IndexedPathResourceFinderTest.delete(member);
+        }
+        file.delete();
+    }
+}
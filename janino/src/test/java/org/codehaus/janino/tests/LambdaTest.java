@@ -0,0 +1,214 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.tests;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.SimpleCompiler;
+import org.junit.Assert;
+import org.junit.Test;
+
+// SUPPRESS CHECKSTYLE JavadocMethod:9999
+
+/**
+ * Tests for the compilation and execution of lambda expressions and method references, which require target version
+ * 8 or higher.
+ */
+public
+class LambdaTest {
+
+    @Test public void
+    testCapturingLambda() throws Exception {
+        LambdaTest.assertReturns("17 x1 x2 21", (
+            ""
+            + "import java.util.function.*;\n"
+            + "\n"
+            + "public class Foo {\n"
+            + "\n"
+            + "    final int offset = 20;\n"
+            + "\n"
+            + "    public static String\n"
+            + "    run() { return new Foo().run2(7); }\n"
+            + "\n"
+            + "    String\n"
+            + "    run2(int param) {\n"
+            + "        int      base   = 10;\n"
+            + "        String   prefix = \"x\";\n"
+            + "        long     wide;\n"
+            + "        if (param > 0) wide = 1L; else wide = 2L;\n"
+            + "\n"
+            + "        IntSupplier          sum    = () -> base + param;\n"
+            + "        IntFunction<String>  concat = i -> prefix + i;\n"
+            + "        IntUnaryOperator     field  = i -> i + this.offset + (int) wide - 1;\n"
+            + "        return (\n"
+            + "            sum.getAsInt()\n"
+            + "            + \" \" + concat.apply(1)\n"
+            + "            + \" \" + concat.apply(2)\n"
+            + "            + \" \" + field.applyAsInt(1)\n"
+            + "        );\n"
+            + "    }\n"
+            + "}\n"
+        ));
+    }
+
+    @Test public void
+    testMethodReferences() throws Exception {
+        LambdaTest.assertReturns("3 5 7 sb:abc 2 2", (
+            ""
+            + "import java.util.function.*;\n"
+            + "\n"
+            + "public class Foo {\n"
+            + "\n"
+            + "    public static String\n"
+            + "    run() {\n"
+            + "        String s = \"abc\";\n"
+            + "\n"
+            + "        // Bound, unbound and static method references.\n"
+            + "        IntSupplier             bound   = s::length;\n"
+            + "        ToIntFunction<String>   unbound = String::length;\n"
+            + "        IntBinaryOperator       statiC  = Math::max;\n"
+            + "\n"
+            + "        // Constructor and array constructor references.\n"
+            + "        Supplier<StringBuilder>         ctor0 = StringBuilder::new;\n"
+            + "        IntFunction<StringBuilder>      ctor1 = StringBuilder::new;\n"
+            + "        IntFunction<String[]>           array = String[]::new;\n"
+            + "        Function<Integer, int[]>        boxed = int[]::new;\n"
+            + "\n"
+            + "        return (\n"
+            + "            bound.getAsInt()\n"
+            + "            + \" \" + unbound.applyAsInt(\"fives\")\n"
+            + "            + \" \" + statiC.applyAsInt(7, 2)\n"
+            + "            + \" \" + ((StringBuilder) ctor0.get()).append(\"sb:\")\n"
+            + "            + ((StringBuilder) ctor1.apply(16)).append(s)\n"
+            + "            + \" \" + ((String[]) array.apply(2)).length\n"
+            + "            + \" \" + ((int[]) boxed.apply(2)).length\n"
+            + "        );\n"
+            + "    }\n"
+            + "}\n"
+        ));
+    }
+
+    @Test public void
+    testBoundReceiverIsEvaluatedOnce() throws Exception {
+        LambdaTest.assertReturns("1 abc abc", (
+            ""
+            + "import java.util.function.*;\n"
+            + "\n"
+            + "public class Foo {\n"
+            + "\n"
+            + "    static int count;\n"
+            + "\n"
+            + "    static String\n"
+            + "    next() { count++; return \"abc\"; }\n"
+            + "\n"
+            + "    public static String\n"
+            + "    run() {\n"
+            + "        Supplier<String> s = Foo.next()::toString;\n"
+            + "        return count + \" \" + s.get() + \" \" + s.get();\n"
+            + "    }\n"
+            + "}\n"
+        ));
+    }
+
+    @Test public void
+    testBridgeMethods() throws Exception {
+
+        // Because of erasure, "StringFunction" has two abstract methods, "apply(Object)" and "apply(String)", thus
+        // the lambda object must be created through "altMetafactory()" with a bridge.
+        LambdaTest.assertReturns("ABC DEF", (
+            ""
+            + "import java.util.function.*;\n"
+            + "\n"
+            + "public class Foo {\n"
+            + "\n"
+            + "    public interface StringFunction extends Function<String, String> { String apply(String s); }\n"
+            + "\n"
+            + "    public static String\n"
+            + "    run() {\n"
+            + "        StringFunction           sf = s -> s.toUpperCase();\n"
+            + "        Function<String, String> f  = sf;\n"
+            + "        return sf.apply(\"abc\") + \" \" + (String) f.apply(\"def\");\n"
+            + "    }\n"
+            + "}\n"
+        ));
+    }
+
+    @Test public void
+    testShadowedNamesAreNotCaptured() throws Exception {
+
+        // "n" is not effectively final, but the lambda body only refers to the field and the local variable of the
+        // anonymous class that shadow it.
+        LambdaTest.assertReturns("7 8 2", (
+            ""
+            + "import java.util.function.*;\n"
+            + "\n"
+            + "public class Foo {\n"
+            + "\n"
+            + "    public static String\n"
+            + "    run() {\n"
+            + "        int n = 1;\n"
+            + "        n++;\n"
+            + "        Supplier<Object> s = () -> new Object() {\n"
+            + "            int n = 7;\n"
+            + "            public String toString() { return n + \" \" + this.m(); }\n"
+            + "            int m() { int n = 8; return n; }\n"
+            + "        };\n"
+            + "        return s.get() + \" \" + n;\n"
+            + "    }\n"
+            + "}\n"
+        ));
+    }
+
+    @Test public void
+    testCaptureOfNonEffectivelyFinalVariable() throws Exception {
+        String[] bodies = {
+            "int k = 5; k++;     java.util.function.IntSupplier f = () -> k;",
+            "int k = 5; k = 6;   java.util.function.IntSupplier f = () -> k;",
+            "int k = 5; k += 1;  java.util.function.IntSupplier f = () -> k;",
+            "int k = 5; --(k);   java.util.function.IntSupplier f = () -> k;",
+            "int k = 5; java.util.function.IntSupplier f = () -> k; k = 7;",
+            "int k = 5; java.util.function.IntSupplier f = () -> k; Runnable r = () -> { k = 7; };",
+        };
+        for (String body : bodies) {
+            SimpleCompiler sc = new SimpleCompiler();
+            sc.setTargetVersion(8);
+            try {
+                sc.cook("public class Foo { public static void run() { " + body + " } }");
+                Assert.fail(body);
+            } catch (CompileException ce) {
+                Assert.assertTrue(ce.getMessage(), ce.getMessage().contains("neither final nor effectively final"));
+            }
+        }
+    }
+
+    private static void
+    assertReturns(String expected, String source) throws Exception {
+
+        SimpleCompiler sc = new SimpleCompiler();
+        sc.setTargetVersion(8);
+        sc.cook(source);
+
+        Assert.assertEquals(expected, sc.getClassLoader().loadClass("Foo").getMethod("run").invoke(null));
+    }
+}
@@ -26,18 +26,38 @@
 
 package org.codehaus.janino.tests;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.ClassLoaderIClassLoader;
 import org.codehaus.janino.JaninoOption;
+import org.codehaus.janino.Java.AbstractCompilationUnit;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
 import org.codehaus.janino.ScriptEvaluator;
 import org.codehaus.janino.SimpleCompiler;
 import org.codehaus.janino.UnitCompiler;
+import org.codehaus.janino.util.ClassFile;
+import org.codehaus.janino.util.ClassFile.BootstrapMethodsAttribute;
+import org.codehaus.janino.util.ClassFile.BootstrapMethodsAttribute.BootstrapMethod;
+import org.codehaus.janino.util.ClassFile.ConstantInvokeDynamicInfo;
+import org.codehaus.janino.util.ClassFile.ConstantMethodrefInfo;
+import org.codehaus.janino.util.ClassFile.ConstantPoolInfo;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -50,6 +70,22 @@ import org.junit.Test;
 public
 class OptionsTest {
 
+    // Some opcodes, for the assertions on the bytecode of the peephole optimization tests.
+    private static final int ICONST_1      = 4;
+    private static final int ICONST_2      = 5;
+    private static final int ILOAD_0       = 26;
+    private static final int ISTORE_1      = 60;
+    private static final int POP           = 87;
+    private static final int IMUL          = 104;
+    private static final int IFEQ          = 153;
+    private static final int IFNE          = 154;
+    private static final int GOTO          = 167;
+    private static final int IRETURN       = 172;
+    private static final int INVOKEVIRTUAL = 182;
+    private static final int INVOKESTATIC  = 184;
+    private static final int IFNULL        = 198;
+    private static final int IFNONNULL     = 199;
+
     @Before
     public void
     setUp() throws Exception {
@@ -93,6 +129,553 @@ class OptionsTest {
         OptionsTest.assertScriptExecutable(script, JaninoOption.EXPRESSIONS_IN_TRY_WITH_RESOURCES_ALLOWED);
     }
 
+    /**
+     * Tests {@link JaninoOption#INDY_STRING_CONCATENATION}.
+     */
+    @Test public void
+    testIndyStringConcatenation() throws Exception {
+
+        // More than 200 parameter slots, so the concatenation must be split into two call sites.
+        StringBuilder longs = new StringBuilder();
+        StringBuilder fives = new StringBuilder();
+        for (int i = 0; i < 150; i++) {
+            longs.append(" + l5");
+            fives.append('5');
+        }
+
+        String script = (
+            ""
+            + "import org.junit.Assert;\n"
+            + "\n"
+            + "int    i  = 7;\n"
+            + "long   l  = 1L << 40;\n"
+            + "long   l5 = 5;\n"
+            + "char   c  = 'q';\n"
+            + "Object o  = null;\n"
+            + "\n"
+            + "Assert.assertEquals(\"a7\\1q1099511627776null!8\", \"a\" + i + \"\\1\" + c + l + o + '!' + (i + 1));\n"
+            + "Assert.assertEquals(\"null7\", null + \"\" + i);\n"
+            + "Assert.assertEquals(\"8x12\", i + 1 + \"x\" + 1 + 2);\n"
+            + "Assert.assertEquals(\"" + fives + "|7\", \"\"" + longs + " + '|' + i);\n"
+        );
+
+        // For class file versions below 53, the option has no effect.
+        for (int targetVersion : new int[] { 8, 11 }) {
+            ScriptEvaluator se = new ScriptEvaluator();
+            se.setTargetVersion(targetVersion);
+            se.options(EnumSet.of(JaninoOption.INDY_STRING_CONCATENATION));
+            se.cook(script);
+            se.evaluate(null);
+        }
+
+        // The concatenations must be INVOKEDYNAMIC instructions that are bootstrapped by "StringConcatFactory", the
+        // long one with two call sites.
+        String cu = (
+            ""
+            + "public class Foo {\n"
+            + "    public static String meth1(int i, char c) { return \"a\" + i + \"\\1\" + c; }\n"
+            + "    public static String meth2(long l5)       { return \"\"" + longs + "; }\n"
+            + "}\n"
+        );
+        Assert.assertEquals(0, OptionsTest.countIndyStringConcatenations(cu, 8));
+        Assert.assertEquals(3, OptionsTest.countIndyStringConcatenations(cu, 11));
+    }
+
+    /**
+     * Compiles the <var>cu</var> with {@link JaninoOption#INDY_STRING_CONCATENATION}.
+     *
+     * @return The number of INVOKEDYNAMIC instructions that are bootstrapped by {@code
+     *         StringConcatFactory.makeConcatWithConstants()}
+     */
+    private static int
+    countIndyStringConcatenations(String cu, int targetVersion) throws Exception {
+
+        AbstractCompilationUnit
+        acu = new Parser(new Scanner(null, new StringReader(cu))).parseAbstractCompilationUnit();
+
+        UnitCompiler uc = new UnitCompiler(acu, new ClassLoaderIClassLoader(OptionsTest.class.getClassLoader()));
+        uc.options(EnumSet.of(JaninoOption.INDY_STRING_CONCATENATION));
+        uc.setTargetVersion(targetVersion);
+
+        ClassFile[] classFiles = uc.compileUnit(
+            false, // debugSource
+            false, // debugLines
+            false  // debugVars
+        );
+        Assert.assertEquals(1, classFiles.length);
+        ClassFile cf = classFiles[0];
+
+        BootstrapMethodsAttribute bma = cf.getBootstrapMethodsAttribute();
+        if (bma == null) return 0;
+
+        // Find the CONSTANT_InvokeDynamic_info entries that designate "StringConcatFactory.makeConcatWithConstants()".
+        Set<Short> cpIndexes = new HashSet<Short>();
+        for (int i = 1; i < cf.getConstantPoolSize(); i++) {
+            ConstantPoolInfo cpi = cf.getConstantPoolInfo((short) i);
+            if (!(cpi instanceof ConstantInvokeDynamicInfo)) continue;
+
+            BootstrapMethod bm = (
+                bma.getBootstrapMethods().get(((ConstantInvokeDynamicInfo) cpi).getBootstrapMethodAttrIndex())
+            );
+            ConstantMethodrefInfo mri = cf.getConstantMethodrefInfo(
+                cf.getConstantMethodHandleInfo(bm.bootstrapMethodRef).getReferenceIndex()
+            );
+            if (
+                "java/lang/invoke/StringConcatFactory".equals(mri.getClassInfo(cf).getName(cf))
+                && "makeConcatWithConstants".equals(mri.getNameAndType(cf).getName(cf))
+            ) cpIndexes.add((short) i);
+        }
+
+        // Count the "INVOKEDYNAMIC <index> 0 0" instructions that reference these entries.
+        byte[] ba     = cf.toByteArray();
+        int    result = 0;
+        for (int i = 0; i + 4 < ba.length; i++) {
+            if (
+                ba[i] == (byte) 186 // INVOKEDYNAMIC
+                && cpIndexes.contains((short) ((ba[i + 1] << 8) | (0xff & ba[i + 2])))
+                && ba[i + 3] == 0
+                && ba[i + 4] == 0
+            ) result++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Tests {@link JaninoOption#SPLIT_LARGE_METHODS}.
+     */
+    @Test public void
+    testSplitLargeMethods() throws Exception {
+
+        // Some 75 KB of bytecode, which exceeds the JVM's limit of 64 KB per method.
+        StringBuilder sb = new StringBuilder("int sum = 0;\nfinal int[] count = new int[1];\nint[] arr = { 1, 2 };\n");
+        int           expected = 0;
+        for (int k = 0; k < 5000; k++) {
+            sb.append("sum += i * " + k + ";\n");
+            sb.append("count[0]++;\n");
+            expected += 3 * k;
+            if (k % 1000 == 0) {
+                sb.append("new Runnable() { public void run() { count[0] += 10; } }.run();\n");
+                sb.append("try { sum += Integer.parseInt(\"x\"); } catch (NumberFormatException nfe) { sum++; }\n");
+                expected++;
+            }
+            if (k % 1000 == 500) {
+
+                // Statements that declare their own local variables.
+                sb.append("for (int x : arr) sum += x;\n");
+                sb.append("for (int j = 0, n = 2; j < n; j++) sum += j;\n");
+                expected += 3 + 1;
+            }
+        }
+        sb.append("return sum + count[0];\n");
+        expected += 5000 + 5 * 10;
+        String script = sb.toString();
+
+        try {
+            new ScriptEvaluator(script, int.class, new String[] { "i" }, new Class<?>[] { int.class });
+            Assert.fail("Exception expected");
+        } catch (Exception e) {
+            ;
+        }
+
+        ScriptEvaluator se = new ScriptEvaluator();
+        se.setDebuggingInformation(true, true, true);
+        se.options(EnumSet.of(JaninoOption.SPLIT_LARGE_METHODS));
+        se.setParameters(new String[] { "i" }, new Class<?>[] { int.class });
+        se.setReturnType(int.class);
+        se.cook(script);
+        Assert.assertEquals(expected, se.evaluate(new Object[] { 3 }));
+
+        int splitMethodCount = 0;
+        for (Method m : se.getMethod().getDeclaringClass().getDeclaredMethods()) {
+            if (m.getName().startsWith("split$")) splitMethodCount++;
+        }
+        Assert.assertTrue(splitMethodCount >= 10);
+    }
+
+    @Test public void
+    testSplitLargeMethodsClassInitializer() throws Exception {
+
+        // The class initializer consists of field declarations, which are not split.
+        StringBuilder sb = new StringBuilder("public class Foo {\n");
+        for (int k = 0; k < 1500; k++) {
+            sb.append("    public static int f" + k + " = Integer.parseInt(\"" + k + "\");\n");
+        }
+        sb.append("}\n");
+
+        SimpleCompiler sc = new SimpleCompiler();
+        sc.options(EnumSet.of(JaninoOption.SPLIT_LARGE_METHODS));
+        sc.cook(sb.toString());
+        Assert.assertEquals(1499, sc.getClassLoader().loadClass("Foo").getDeclaredField("f1499").get(null));
+    }
+
+    @Test public void
+    testPeepholeOptimization() throws Exception {
+        String cu = (
+            ""
+            + "public class Foo {\n"
+            + "    public static int meth(int n, String s) {\n"
+            + "        Integer boxed = n;\n"
+            + "        int     sum   = boxed;\n"
+            + "        for (int i = 0; i < n; i++) {\n"
+            + "            if (i % 3 == 0) continue;\n"
+            + "            long tmp = (long) i * i;\n"
+            + "            sum += (int) tmp;\n"
+            + "        }\n"
+            + "        switch (sum % 4) {\n"
+            + "        case 0:  sum += 1; break;\n"
+            + "        case 1:  sum += 2; break;\n"
+            + "        default: sum += 3; break;\n"
+            + "        }\n"
+            + "        do { sum++; } while (false);\n"
+            + "        while (true) {\n"
+            + "            sum *= 2;\n"
+            + "            if (sum > 1000) break;\n"
+            + "        }\n"
+            + "        try {\n"
+            + "            sum += Integer.parseInt(s);\n"
+            + "        } catch (NumberFormatException nfe) {\n"
+            + "            return -sum;\n"
+            + "        } finally {\n"
+            + "            sum++;\n"
+            + "        }\n"
+            + "        Object o = s.length() > 2 ? null : s;\n"
+            + "        return o == null ? sum : sum + 7;\n"
+            + "    }\n"
+            + "}\n"
+        );
+
+        SimpleCompiler sc1 = new SimpleCompiler();
+        sc1.cook(cu);
+
+        SimpleCompiler sc2 = new SimpleCompiler();
+        sc2.options(EnumSet.of(JaninoOption.PEEPHOLE_OPTIMIZATION));
+        sc2.cook(cu);
+
+        for (int n = 0; n < 40; n += 7) {
+            for (String s : new String[] { "1", "12", "123", "x" }) {
+                Assert.assertEquals(
+                    "n=" + n + ", s=" + s,
+                    OptionsTest.invokeMeth(sc1, n, s),
+                    OptionsTest.invokeMeth(sc2, n, s)
+                );
+            }
+        }
+
+        Assert.assertTrue(
+            OptionsTest.classFileSize(cu, JaninoOption.PEEPHOLE_OPTIMIZATION) < OptionsTest.classFileSize(cu)
+        );
+    }
+
+    @Test public void
+    testPeepholeJumpThreading() throws Exception {
+        for (int targetVersion : new int[] { 6, 8 }) {
+
+            // The GOTO at the end of the inner conditional leads to the GOTO at the end of the outer conditional, and
+            // is redirected to its destination.
+            String body = "int r = x > 0 ? (x > 5 ? 1 : 2) : 3; r *= x; return r;";
+            Assert.assertEquals(1, OptionsTest.branchesToGotos(OptionsTest.methCode(body, targetVersion, false)));
+            Assert.assertEquals(0, OptionsTest.branchesToGotos(OptionsTest.methCode(body, targetVersion, true)));
+
+            // A GOTO to an IRETURN is replaced with the IRETURN.
+            List<Integer> opcodes = OptionsTest.opcodes(OptionsTest.methCode(
+                "return x > 0 ? 1 : 2;",
+                targetVersion,
+                true
+            ));
+            Assert.assertFalse(opcodes.toString(), opcodes.contains(OptionsTest.GOTO));
+            Assert.assertEquals(opcodes.toString(), 2, OptionsTest.count(opcodes, OptionsTest.IRETURN));
+        }
+    }
+
+    @Test public void
+    testPeepholeConstantFolding() throws Exception {
+        for (int targetVersion : new int[] { 6, 8 }) {
+
+            // "ICONST_0 IFNE" is never taken.
+            String body = "do { x++; } while (false); return x;";
+            Assert.assertTrue(OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, false)).contains(
+                OptionsTest.IFNE
+            ));
+            List<Integer> opcodes = OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, true));
+            Assert.assertFalse(opcodes.toString(), opcodes.contains(OptionsTest.IFNE));
+
+            // "ACONST_NULL IFNONNULL" (after the elimination of the store and load of "o") is never taken; thus the
+            // entire method folds into "ICONST_1 IRETURN".
+            opcodes = OptionsTest.opcodes(OptionsTest.methCode(
+                "Object o = null; return o == null ? 1 : 2;",
+                targetVersion,
+                true
+            ));
+            Assert.assertEquals(Arrays.asList(OptionsTest.ICONST_1, OptionsTest.IRETURN), opcodes);
+            Assert.assertFalse(opcodes.contains(OptionsTest.IFNONNULL));
+        }
+    }
+
+    @Test public void
+    testPeepholeBoxingAndUnboxing() throws Exception {
+        for (int targetVersion : new int[] { 6, 8 }) {
+            String body = "Integer boxed = x; int y = boxed; return y;";
+
+            List<Integer> opcodes = OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, false));
+            Assert.assertTrue(opcodes.toString(), opcodes.contains(OptionsTest.INVOKESTATIC));
+            Assert.assertTrue(opcodes.toString(), opcodes.contains(OptionsTest.INVOKEVIRTUAL));
+
+            // "Integer.valueOf(int)" followed by "Integer.intValue()" cancels out.
+            opcodes = OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, true));
+            Assert.assertEquals(Arrays.asList(OptionsTest.ILOAD_0, OptionsTest.IRETURN), opcodes);
+        }
+    }
+
+    @Test public void
+    testPeepholePushAndPop() throws Exception {
+        for (int targetVersion : new int[] { 6, 8 }) {
+
+            // The condition of "if (b) ; else ;" is loaded and immediately popped.
+            String body = "boolean b = x > 3; if (b) ; else ; return b ? 1 : 2;";
+            Assert.assertTrue(OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, false)).contains(
+                OptionsTest.POP
+            ));
+            List<Integer> opcodes = OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, true));
+            Assert.assertFalse(opcodes.toString(), opcodes.contains(OptionsTest.POP));
+        }
+    }
+
+    @Test public void
+    testPeepholeStoreAndLoad() throws Exception {
+        for (int targetVersion : new int[] { 6, 8 }) {
+
+            // "x = x" loads "x" and stores it back; "y" is stored and then read only once.
+            String body = "x = x; int y = x * 2; return y;";
+            Assert.assertTrue(OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, false)).contains(
+                OptionsTest.ISTORE_1
+            ));
+            Assert.assertEquals(
+                Arrays.asList(OptionsTest.ILOAD_0, OptionsTest.ICONST_2, OptionsTest.IMUL, OptionsTest.IRETURN),
+                OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, true))
+            );
+        }
+    }
+
+    @Test public void
+    testPeepholeUnreachableCode() throws Exception {
+        for (int targetVersion : new int[] { 6, 8 }) {
+
+            // The branch around "return 1" is never taken, so "return 2" becomes unreachable.
+            String body = "boolean b = true; if (b) return 1; return 2;";
+            List<Integer> opcodes = OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, false));
+            Assert.assertTrue(opcodes.toString(), opcodes.contains(OptionsTest.ICONST_2));
+            Assert.assertEquals(opcodes.toString(), 2, OptionsTest.count(opcodes, OptionsTest.IRETURN));
+
+            opcodes = OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, true));
+            Assert.assertFalse(opcodes.toString(), opcodes.contains(OptionsTest.ICONST_2));
+            Assert.assertEquals(opcodes.toString(), 1, OptionsTest.count(opcodes, OptionsTest.IRETURN));
+
+            // The GOTO that leaves the loop after "break" is redirected, and the original GOTO becomes unreachable.
+            body = "int r = 0; for (;;) { if (x-- > 5) { r++; } else { break; } } return r;";
+            Assert.assertEquals(3, OptionsTest.count(
+                OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, false)),
+                OptionsTest.GOTO
+            ));
+            Assert.assertEquals(1, OptionsTest.count(
+                OptionsTest.opcodes(OptionsTest.methCode(body, targetVersion, true)),
+                OptionsTest.GOTO
+            ));
+        }
+    }
+
+    /**
+     * Compiles the <var>body</var> as that of a method "{@code public static int meth(int x)}", with and without
+     * {@link JaninoOption#PEEPHOLE_OPTIMIZATION}, and verifies that both variants compute the same results.
+     *
+     * @return The bytecode of {@code meth()}, optimized iff <var>optimize</var>
+     */
+    private static byte[]
+    methCode(String body, int targetVersion, boolean optimize) throws Exception {
+
+        String cu = "public class Foo { public static int meth(int x) { " + body + " } }";
+
+        ClassFile plain     = OptionsTest.compile(cu, targetVersion);
+        ClassFile optimized = OptionsTest.compile(cu, targetVersion, JaninoOption.PEEPHOLE_OPTIMIZATION);
+
+        SimpleCompiler sc1 = new SimpleCompiler();
+        sc1.cook(new ClassFile[] { plain });
+        Method m1 = sc1.getClassLoader().loadClass("Foo").getMethod("meth", int.class);
+
+        SimpleCompiler sc2 = new SimpleCompiler();
+        sc2.cook(new ClassFile[] { optimized });
+        Method m2 = sc2.getClassLoader().loadClass("Foo").getMethod("meth", int.class);
+
+        for (int x = -3; x <= 12; x++) Assert.assertEquals("x=" + x, m1.invoke(null, x), m2.invoke(null, x));
+
+        for (ClassFile.MethodInfo mi : (optimize ? optimized : plain).methodInfos) {
+            if (!"meth".equals(mi.getName())) continue;
+
+            for (ClassFile.AttributeInfo ai : mi.getAttributes()) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                ai.store(new DataOutputStream(baos));
+
+                DataInputStream dis = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+                if (!"Code".equals(plain.getConstantUtf8(dis.readShort()))) continue; // attribute_name_index
+                dis.readInt();                                                         // attribute_length
+                dis.readInt();                                                         // max_stack, max_locals
+
+                byte[] code = new byte[dis.readInt()];                                 // code_length
+                dis.readFully(code);                                                   // code
+                return code;
+            }
+        }
+        throw new AssertionError("No code for \"meth()\"");
+    }
+
+    private static ClassFile
+    compile(String cu, int targetVersion, JaninoOption... options) throws Exception {
+
+        AbstractCompilationUnit
+        acu = new Parser(new Scanner(null, new StringReader(cu))).parseAbstractCompilationUnit();
+
+        UnitCompiler uc = new UnitCompiler(acu, new ClassLoaderIClassLoader(OptionsTest.class.getClassLoader()));
+        if (options.length >= 1) uc.options(EnumSet.copyOf(Arrays.asList(options)));
+        uc.setTargetVersion(targetVersion);
+
+        ClassFile[] classFiles = uc.compileUnit(
+            false, // debugSource
+            false, // debugLines
+            false  // debugVars
+        );
+        Assert.assertEquals(1, classFiles.length);
+
+        return classFiles[0];
+    }
+
+    /**
+     * @return The opcodes of the instructions of the <var>code</var>
+     */
+    private static List<Integer>
+    opcodes(byte[] code) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int offset = 0; offset < code.length; offset += OptionsTest.instructionLength(code, offset)) {
+            result.add(0xff & code[offset]);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of conditional and unconditional branches within the <var>code</var> that lead to a GOTO
+     */
+    private static int
+    branchesToGotos(byte[] code) {
+        int result = 0;
+        for (int offset = 0; offset < code.length; offset += OptionsTest.instructionLength(code, offset)) {
+            int opcode = 0xff & code[offset];
+            if (
+                (opcode >= OptionsTest.IFEQ && opcode <= OptionsTest.GOTO)
+                || opcode == OptionsTest.IFNULL
+                || opcode == OptionsTest.IFNONNULL
+            ) {
+                int destination = offset + (short) ((code[offset + 1] << 8) | (0xff & code[offset + 2]));
+                if ((0xff & code[destination]) == OptionsTest.GOTO) result++;
+            }
+        }
+        return result;
+    }
+
+    private static int
+    instructionLength(byte[] code, int offset) {
+        int opcode = 0xff & code[offset];
+
+        if (opcode == 170 || opcode == 171) { // TABLESWITCH, LOOKUPSWITCH
+            int o = (offset + 4) & ~3;
+            if (opcode == 170) {
+                int low  = OptionsTest.readInt(code, o + 4);
+                int high = OptionsTest.readInt(code, o + 8);
+                return o + 12 + 4 * (high - low + 1) - offset;
+            } else {
+                return o + 8 + 8 * OptionsTest.readInt(code, o + 4) - offset;
+            }
+        }
+        if (opcode == 196) return (0xff & code[offset + 1]) == 132 ? 6 : 4; // WIDE IINC, WIDE xLOAD/xSTORE/RET
+
+        if (
+            opcode == 16                          // BIPUSH
+            || opcode == 18                       // LDC
+            || (opcode >= 21 && opcode <= 25)     // xLOAD
+            || (opcode >= 54 && opcode <= 58)     // xSTORE
+            || opcode == 169                      // RET
+            || opcode == 188                      // NEWARRAY
+        ) return 2;
+        if (
+            opcode == 17                          // SIPUSH
+            || opcode == 19                       // LDC_W
+            || opcode == 20                       // LDC2_W
+            || opcode == 132                      // IINC
+            || (opcode >= 153 && opcode <= 168)   // IFxx, IF_xCMPxx, GOTO, JSR
+            || (opcode >= 178 && opcode <= 184)   // GETSTATIC ... INVOKESTATIC
+            || opcode == 187                      // NEW
+            || opcode == 189                      // ANEWARRAY
+            || opcode == 192                      // CHECKCAST
+            || opcode == 193                      // INSTANCEOF
+            || opcode == 198                      // IFNULL
+            || opcode == 199                      // IFNONNULL
+        ) return 3;
+        if (opcode == 197) return 4;              // MULTIANEWARRAY
+        if (
+            opcode == 185                         // INVOKEINTERFACE
+            || opcode == 186                      // INVOKEDYNAMIC
+            || opcode == 200                      // GOTO_W
+            || opcode == 201                      // JSR_W
+        ) return 5;
+        return 1;
+    }
+
+    private static int
+    readInt(byte[] code, int offset) {
+        return (
+            (code[offset] << 24)
+            | ((0xff & code[offset + 1]) << 16)
+            | ((0xff & code[offset + 2]) << 8)
+            | (0xff & code[offset + 3])
+        );
+    }
+
+    private static int
+    count(List<Integer> opcodes, int opcode) {
+        int result = 0;
+        for (Integer o : opcodes) {
+            if (o == opcode) result++;
+        }
+        return result;
+    }
+
+    private static int
+    classFileSize(String cu, JaninoOption... options) throws Exception {
+
+        AbstractCompilationUnit
+        acu = new Parser(new Scanner(null, new StringReader(cu))).parseAbstractCompilationUnit();
+
+        UnitCompiler uc = new UnitCompiler(acu, new ClassLoaderIClassLoader(OptionsTest.class.getClassLoader()));
+        if (options.length >= 1) uc.options(EnumSet.copyOf(Arrays.asList(options)));
+
+        ClassFile[] classFiles = uc.compileUnit(
+            false, // debugSource
+            false, // debugLines
+            false  // debugVars
+        );
+        Assert.assertEquals(1, classFiles.length);
+
+        return classFiles[0].toByteArray().length;
+    }
+
+    private static Object
+    invokeMeth(SimpleCompiler sc, int n, String s) throws Exception {
+        return (
+            sc.getClassLoader()
+            .loadClass("Foo")
+            .getMethod("meth", int.class, String.class)
+            .invoke(null, n, s)
+        );
+    }
+
     private static void
     assertScriptExecutable(String script, JaninoOption... options)
     throws CompileException, InvocationTargetException {
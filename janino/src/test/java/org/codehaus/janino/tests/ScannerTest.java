@@ -0,0 +1,151 @@
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2019 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.Cookable;
+import org.codehaus.commons.compiler.Location;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.Token;
+import org.codehaus.janino.TokenType;
+import org.junit.Assert;
+import org.junit.Test;
+
+// SUPPRESS CHECKSTYLE JavadocMethod:9999
+
+/**
+ * Tests for the {@link Scanner}.
+ */
+public
+class ScannerTest {
+
+    /**
+     * Verifies that the character array mode and the {@link java.io.Reader} mode produce identical tokens, with
+     * identical locations.
+     */
+    @Test public void
+    testCharArrayScannerEqualsReaderScanner() throws Exception {
+
+        ScannerTest.assertSameTokens(
+            ""
+            + "package pkg;\r\n"
+            + "\tclass A { // comment\n"
+            + "  /* c-style\r  comment */ int x = 0x7f + .5e3 + 'c' + \"s\\t\" >>>= 077L;\n"
+            + "  \u00e4 \u00c4\u00f6 \t\t@Override void meth() { return; }\n"
+            + "}"
+        );
+
+        File[] files = new File("src/main/java/org/codehaus/janino").listFiles();
+        Assert.assertNotNull(files);
+        for (File file : files) {
+            if (!file.getName().endsWith(".java")) continue;
+            InputStreamReader r = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+                ScannerTest.assertSameTokens(Cookable.readString(r));
+            } finally {
+                r.close();
+            }
+        }
+    }
+
+    @Test public void
+    testUnicodeEscapes() throws Exception {
+
+        // Unicode escapes are not processed in place, but through the "UnicodeUnescapeReader".
+        Scanner scanner = new Scanner(null, "a\\u0062c \"\\u0041\"".toCharArray());
+        Assert.assertEquals("abc", scanner.produce().value);
+        Assert.assertEquals(TokenType.WHITE_SPACE, scanner.produce().type);
+        Assert.assertEquals("\"A\"", scanner.produce().value);
+        Assert.assertEquals(TokenType.END_OF_INPUT, scanner.produce().type);
+    }
+
+    @Test public void
+    testSymbols() throws Exception {
+
+        for (boolean useReader : new boolean[] { false, true }) {
+            String  source  = "foo >>>= foo class null";
+            Scanner scanner = (
+                useReader
+                ? new Scanner(null, new StringReader(source))
+                : new Scanner(null, source.toCharArray())
+            );
+            scanner.setIgnoreWhiteSpace(true);
+
+            Token foo1 = scanner.produce();
+            Token op   = scanner.produce();
+            Token foo2 = scanner.produce();
+            Token kw   = scanner.produce();
+            Token nl   = scanner.produce();
+
+            // Identifiers are canonicalized; keywords and operators are interned.
+            Assert.assertSame(foo1.value, foo2.value);
+            Assert.assertSame(">>>=", op.value);
+            Assert.assertSame("class", kw.value);
+            Assert.assertEquals(TokenType.KEYWORD, kw.type);
+            Assert.assertSame("null", nl.value);
+            Assert.assertEquals(TokenType.NULL_LITERAL, nl.type);
+        }
+    }
+
+    @Test public void
+    testLocations() throws Exception {
+
+        Scanner scanner = new Scanner(null, "a\n  bb\r\n\tc".toCharArray(), 10, 0);
+        scanner.setIgnoreWhiteSpace(true);
+
+        ScannerTest.assertLocation(10, 1, scanner.produce());
+        ScannerTest.assertLocation(11, 3, scanner.produce());
+        ScannerTest.assertLocation(12, 9, scanner.produce());
+        Assert.assertEquals(TokenType.END_OF_INPUT, scanner.produce().type);
+    }
+
+    private static void
+    assertSameTokens(String source) throws CompileException, IOException {
+
+        Scanner s1 = new Scanner("x", new StringReader(source));
+        Scanner s2 = new Scanner("x", source.toCharArray());
+        for (;;) {
+            Token t1 = s1.produce();
+            Token t2 = s2.produce();
+            Assert.assertEquals(t1.getLocation().toString(), t1.type, t2.type);
+            Assert.assertEquals(t1.getLocation().toString(), t1.value, t2.value);
+            Assert.assertEquals(t1.getLocation().toString(), t1.getLocation().toString(), t2.getLocation().toString());
+            if (t1.type == TokenType.END_OF_INPUT) break;
+        }
+    }
+
+    private static void
+    assertLocation(int expectedLineNumber, int expectedColumnNumber, Token token) {
+        Location location = token.getLocation();
+        Assert.assertEquals(token.value, expectedLineNumber, location.getLineNumber());
+        Assert.assertEquals(token.value, expectedColumnNumber, location.getColumnNumber());
+    }
+}
@@ -26,11 +26,18 @@
 
 package org.codehaus.janino.tests;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
 import java.util.EnumSet;
 
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.IScriptEvaluator;
+import org.codehaus.janino.ClassBodyEvaluator;
 import org.codehaus.janino.JaninoOption;
+import org.codehaus.janino.PersistentEvaluatorCache;
 import org.codehaus.janino.ScriptEvaluator;
 import org.junit.Assert;
 import org.junit.Test;
@@ -107,4 +114,183 @@ class ScriptEvaluatorTest {
             Assert.assertTrue(ce.getMessage().contains("Private member cannot be accessed"));
         }
     }
+
+    @Test public void
+    testPersistentCache() throws Exception {
+        File file = File.createTempFile("janino", ".cache");
+        try {
+
+            // Populate the cache.
+            PersistentEvaluatorCache pc = new PersistentEvaluatorCache(file);
+            try {
+                ScriptEvaluator se = new ScriptEvaluator();
+                se.setPersistentCache(pc);
+                se.setReturnType(int.class);
+                se.cook("return 3 * meth();\nstatic int meth() { return 7; }\n");
+                Assert.assertEquals(21, se.evaluate(null));
+
+                ClassBodyEvaluator cbe = new ClassBodyEvaluator();
+                cbe.setPersistentCache(pc);
+                cbe.setImplementedInterfaces(new Class[] { Runnable.class });
+                cbe.cook("public void run() {}");
+
+                Assert.assertEquals(0, pc.getHitCount());
+                Assert.assertEquals(2, pc.getMissCount());
+                Assert.assertEquals(2, pc.size());
+            } finally {
+                pc.close();
+            }
+
+            // The header identifies the JANINO version, even when JANINO is not loaded from a JAR file.
+            DataInputStream dis = new DataInputStream(new FileInputStream(file));
+            try {
+                dis.readInt(); // magic
+                dis.readInt(); // formatVersion
+                Assert.assertFalse("null".equals(dis.readUTF()));
+            } finally {
+                dis.close();
+            }
+
+            // Re-open the cache file, as after a restart.
+            pc = new PersistentEvaluatorCache(file);
+            try {
+                Assert.assertEquals(2, pc.size());
+
+                ScriptEvaluator se = new ScriptEvaluator();
+                se.setPersistentCache(pc);
+                se.setReturnType(int.class);
+                se.cook("return 3 * meth();\r\nstatic int meth() { return 7; }\r\n");
+                Assert.assertEquals(21, se.evaluate(null));
+
+                ClassBodyEvaluator cbe = new ClassBodyEvaluator();
+                cbe.setPersistentCache(pc);
+                cbe.setImplementedInterfaces(new Class[] { Runnable.class });
+                cbe.cook("public void run() {}");
+                Assert.assertTrue(Runnable.class.isAssignableFrom(cbe.getClazz()));
+
+                Assert.assertEquals(2, pc.getHitCount());
+                Assert.assertEquals(0, pc.getMissCount());
+            } finally {
+                pc.close();
+            }
+
+            // Corrupt the last record; it must be discarded.
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.seek(raf.length() - 1);
+                int b = raf.read();
+                raf.seek(raf.length() - 1);
+                raf.write(b ^ 1);
+            } finally {
+                raf.close();
+            }
+            pc = new PersistentEvaluatorCache(file);
+            try {
+                Assert.assertEquals(1, pc.size());
+            } finally {
+                pc.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test public void
+    testDirectInvocation() throws Exception {
+
+        ScriptEvaluator se = new ScriptEvaluator();
+        se.setReturnTypes(new Class[] { int.class, void.class, String.class, boolean.class });
+        se.setParameters(
+            new String[][] { { "a", "b" }, {}, { "s" }, { "d" } },
+            new Class[][] { { int.class, long.class }, {}, { String.class }, { double.class } }
+        );
+        se.cook(new String[] {
+            "return a + (int) b;",
+            "throw new IllegalStateException(\"boom\");",
+            "return s + s;",
+            "return d > 1.5;",
+        });
+
+        Assert.assertEquals(7, se.evaluate(0, new Object[] { 3, 4L }));
+        Assert.assertEquals(7, se.evaluateInt(0, new Object[] { 3, 4L }));
+        Assert.assertEquals(7L, se.evaluateLong(0, new Object[] { 3, 4L }));
+        Assert.assertEquals(7.0, se.evaluateDouble(0, new Object[] { 3, 4L }), 0.0);
+
+        // Widening of arguments, like "Method.invoke()".
+        Assert.assertEquals(7, se.evaluateInt(0, new Object[] { (short) 3, 'A' - 61 }));
+
+        try {
+            se.evaluate(0, new Object[] { 3L, 4L });
+            Assert.fail();
+        } catch (IllegalArgumentException iae) {
+            ;
+        }
+        try {
+            se.evaluate(0, new Object[] { 3 });
+            Assert.fail();
+        } catch (IllegalArgumentException iae) {
+            ;
+        }
+
+        // Exceptions thrown by the script are wrapped.
+        try {
+            se.evaluate(1, null);
+            Assert.fail();
+        } catch (InvocationTargetException ite) {
+            Assert.assertEquals("boom", ite.getTargetException().getMessage());
+
+            // The InvocationTargetException was created by the generated invoker, not by reflection.
+            String className = ite.getStackTrace()[0].getClassName();
+            Assert.assertTrue(className, className.endsWith("$$DirectInvoker"));
+        }
+
+        Assert.assertEquals("abab", se.evaluate(2, new Object[] { "ab" }));
+        try {
+            se.evaluate(2, new Object[] { 7 });
+            Assert.fail();
+        } catch (IllegalArgumentException iae) {
+            ;
+        }
+        try {
+            se.evaluateInt(2, new Object[] { "ab" });
+            Assert.fail();
+        } catch (IllegalArgumentException iae) {
+            ;
+        }
+
+        Assert.assertTrue(se.evaluateBoolean(3, new Object[] { 2.0 }));
+        Assert.assertEquals(false, se.evaluate(3, new Object[] { 1.0F }));
+    }
+
+    @Test public void
+    testManyBasicBlocks() throws Exception {
+
+        StringBuilder sb = new StringBuilder("int sum = 0;\n");
+        for (int k = 0; k < 3000; k++) sb.append("if (i == " + k + ") sum += " + k + ";\n");
+        sb.append("return sum;\n");
+        final String script = sb.toString();
+
+        // The flow analysis must not recurse per basic block, so a small Java stack suffices.
+        final Object[] result = new Object[1];
+        Thread thread = new Thread(null, new Runnable() {
+
+            @Override public void
+            run() {
+                try {
+                    ScriptEvaluator se = new ScriptEvaluator();
+                    se.setParameters(new String[] { "i" }, new Class<?>[] { int.class });
+                    se.setReturnType(int.class);
+                    se.cook(script);
+                    result[0] = se.evaluate(new Object[] { 77 });
+                } catch (Throwable t) { // SUPPRESS CHECKSTYLE IllegalCatch
+                    result[0] = t;
+                }
+            }
+        }, "testManyBasicBlocks", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        if (result[0] instanceof Throwable) throw new AssertionError((Throwable) result[0]);
+        Assert.assertEquals(77, result[0]);
+    }
 }
@@ -0,0 +1,213 @@
+
+/*
+ * Janino - An embedded Java[TM] compiler
+ *
+ * Copyright (c) 2001-2018 Arno Unkrig. All rights reserved.
+ * Copyright (c) 2015-2016 TIBCO Software Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.codehaus.janino.tests;
+
+import org.codehaus.janino.SimpleCompiler;
+import org.junit.Assert;
+import org.junit.Test;
+
+// SUPPRESS CHECKSTYLE JavadocMethod:9999
+
+/**
+ * Tests for {@link SimpleCompiler#setTargetVersion(int)}, i.e. for the generation of STACK_MAP_TABLE attributes.
+ */
+public
+class TargetVersionTest {
+
+    private static final String SOURCE = (
+        ""
+        + "import java.util.*;\n"
+        + "\n"
+        + "public class Foo {\n"
+        + "\n"
+        + "    public static String\n"
+        + "    run() {\n"
+        + "        StringBuilder sb = new StringBuilder();\n"
+        + "\n"
+        + "        // Loops, BREAK and CONTINUE.\n"
+        + "        int sum = 0;\n"
+        + "        for (int i = 0; i < 10; i++) {\n"
+        + "            if (i == 2) continue;\n"
+        + "            if (i == 7) break;\n"
+        + "            sum += i;\n"
+        + "        }\n"
+        + "        sb.append(sum).append(' ');\n"
+        + "\n"
+        + "        // Conditional expressions with different reference types, and wide types.\n"
+        + "        List<String> l = sum > 0 ? new ArrayList<String>() : new LinkedList<String>();\n"
+        + "        long   lv = sum > 0 ? 5L : 6L;\n"
+        + "        double dv = lv > 3 ? 1.5 : 2.5;\n"
+        + "        sb.append(l.getClass().getSimpleName()).append(lv).append(dv).append(' ');\n"
+        + "\n"
+        + "        // SWITCH.\n"
+        + "        for (int i = 0; i < 4; i++) {\n"
+        + "            switch (i) {\n"
+        + "            case 0:  sb.append('a'); break;\n"
+        + "            case 2:  sb.append('c');\n"
+        + "            default: sb.append('x');\n"
+        + "            }\n"
+        + "        }\n"
+        + "        sb.append(' ');\n"
+        + "\n"
+        + "        // TRY/CATCH/FINALLY.\n"
+        + "        sb.append(Foo.tryFinally(0)).append(Foo.tryFinally(1)).append(Foo.tryFinally(2)).append(' ');\n"
+        + "        sb.append(Foo.finallyReturns()).append(' ');\n"
+        + "        sb.append(Foo.nestedFinally()).append(' ');\n"
+        + "\n"
+        + "        // SYNCHRONIZED.\n"
+        + "        synchronized (sb) { sb.append(\"sync \"); }\n"
+        + "\n"
+        + "        // Constructor invocations with conditional arguments.\n"
+        + "        sb.append(new Foo(sum > 0 ? \"p\" : null).s);\n"
+        + "\n"
+        + "        return sb.toString();\n"
+        + "    }\n"
+        + "\n"
+        + "    final String s;\n"
+        + "\n"
+        + "    public Foo(String s) { this(s, s == null ? 1 : 2); }\n"
+        + "    public Foo(String s, int n) { this.s = s + n; }\n"
+        + "\n"
+        + "    private static int\n"
+        + "    tryFinally(int x) {\n"
+        + "        int result = 0;\n"
+        + "        for (;;) {\n"
+        + "            try {\n"
+        + "                if (x == 0) return 1;\n"
+        + "                if (x == 1) throw new RuntimeException();\n"
+        + "                break;\n"
+        + "            } catch (RuntimeException re) {\n"
+        + "                result = 2;\n"
+        + "                break;\n"
+        + "            } finally {\n"
+        + "                result += 10;\n"
+        + "            }\n"
+        + "        }\n"
+        + "        return result;\n"
+        + "    }\n"
+        + "\n"
+        + "    @SuppressWarnings(\"finally\") private static int\n"
+        + "    finallyReturns() {\n"
+        + "        try {\n"
+        + "            return 1;\n"
+        + "        } finally {\n"
+        + "            return 2;\n"
+        + "        }\n"
+        + "    }\n"
+        + "\n"
+        + "    private static String\n"
+        + "    nestedFinally() {\n"
+        + "        StringBuilder sb = new StringBuilder();\n"
+        + "        try {\n"
+        + "            try {\n"
+        + "                sb.append('a');\n"
+        + "                return sb.append('b').toString();\n"
+        + "            } finally {\n"
+        + "                sb.append('c');\n"
+        + "            }\n"
+        + "        } finally {\n"
+        + "            sb.append('d');\n"
+        + "        }\n"
+        + "    }\n"
+        + "}\n"
+    );
+
+    private static final String EXPECTED = "19 ArrayList51.5 axcxx 11210 2 ab sync p2";
+
+    @Test public void
+    testTargetVersion6() throws Exception { TargetVersionTest.assertRuns(6); }
+
+    @Test public void
+    testTargetVersion8() throws Exception { TargetVersionTest.assertRuns(8); }
+
+    @Test public void
+    testTargetVersion11() throws Exception { TargetVersionTest.assertRuns(11); }
+
+    @Test public void
+    testTargetVersion17() throws Exception { TargetVersionTest.assertRuns(17); }
+
+    @Test public void
+    testWideInstructionsTargetVersion6() throws Exception { TargetVersionTest.assertWideInstructionsRun(6); }
+
+    @Test public void
+    testWideInstructionsTargetVersion8() throws Exception { TargetVersionTest.assertWideInstructionsRun(8); }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    testInvalidTargetVersion() throws Exception {
+        SimpleCompiler sc = new SimpleCompiler();
+        sc.setTargetVersion(99);
+        sc.cook("public class Foo {}");
+    }
+
+    /**
+     * Verifies the code of a method with more than 255 local variables, which requires WIDE instructions before and
+     * after the branch targets.
+     */
+    private static void
+    assertWideInstructionsRun(int targetVersion) throws Exception {
+
+        StringBuilder sb = new StringBuilder("public class Foo {\n    public static String\n    run(int x) {\n");
+        for (int i = 0; i < 300; i++) sb.append("        int i").append(i).append(" = x + ").append(i).append(";\n");
+        sb.append(
+            ""
+            + "        String s = \"\";\n"
+            + "        if (i299 >= 300) s += \"if \"; else s += \"else \";\n"
+            + "        try {\n"
+            + "            if (i298 == 299) throw new RuntimeException();\n"
+            + "            s += \"try \";\n"
+            + "        } catch (RuntimeException re) {\n"
+            + "            s += \"catch \";\n"
+            + "        } finally {\n"
+            + "            s += \"finally \";\n"
+            + "        }\n"
+            + "        return s + (i0 + i299);\n"
+            + "    }\n"
+            + "}\n"
+        );
+
+        SimpleCompiler sc = new SimpleCompiler();
+        sc.setTargetVersion(targetVersion);
+        sc.cook(sb.toString());
+
+        Class<?> c = sc.getClassLoader().loadClass("Foo");
+        Assert.assertEquals("else try finally 299", c.getMethod("run", int.class).invoke(null, 0));
+        Assert.assertEquals("if catch finally 301", c.getMethod("run", int.class).invoke(null, 1));
+    }
+
+    private static void
+    assertRuns(int targetVersion) throws Exception {
+
+        SimpleCompiler sc = new SimpleCompiler();
+        sc.setTargetVersion(targetVersion);
+        sc.cook(TargetVersionTest.SOURCE);
+
+        Assert.assertEquals(
+            TargetVersionTest.EXPECTED,
+            sc.getClassLoader().loadClass("Foo").getMethod("run").invoke(null)
+        );
+    }
+}